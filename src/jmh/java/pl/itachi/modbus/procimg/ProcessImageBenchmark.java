@@ -0,0 +1,110 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.io.BytesOutputStream;
+import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+
+/**
+ * Compares <tt>ArrayProcessImage</tt> against <tt>SimpleProcessImage</tt>:
+ * the time to build and encode a FC 3 response of 125 registers, and
+ * the heap taken by a table of 65536 registers. The footprint is
+ * reported as <tt>gc.alloc.rate.norm</tt> of <tt>fill</tt> when run
+ * with <tt>-prof gc</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+  private static final int TABLE = 65536;
+  private static final int WORDS = 125;
+
+  @Param({"simple", "array"})
+  public String image;
+
+  private ReadMultipleRegistersRequest m_Request;
+  private BytesOutputStream m_Out;
+
+  @Setup
+  public void setUp() {
+    ModbusCoupler.getReference().setProcessImage(fill());
+    m_Request = new ReadMultipleRegistersRequest(1000, WORDS);
+    m_Out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+  }//setUp
+
+  @Benchmark
+  public BytesOutputStream fc3Response() throws Exception {
+    ModbusResponse response = m_Request.createResponse();
+    m_Out.reset();
+    response.writeData(m_Out);
+    return m_Out;
+  }//fc3Response
+
+  @Benchmark
+  public ProcessImage fill() {
+    if ("array".equals(image)) {
+      ArrayProcessImage img = new ArrayProcessImage(0, 0, 0, TABLE);
+      for (int i = 0; i < TABLE; i++) {
+        img.setRegisterValue(i, i);
+      }
+      return img;
+    }
+    SimpleProcessImage img = new SimpleProcessImage();
+    for (int i = 0; i < TABLE; i++) {
+      img.addRegister(new SimpleRegister(i));
+    }
+    return img;
+  }//fill
+
+}//class ProcessImageBenchmark
@@ -0,0 +1,135 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of FC 3 sized range reads of a
+ * <tt>StripedProcessImage</tt> against the image wide lock of
+ * <tt>ArrayProcessImage</tt>, while 1 to 32 background threads
+ * keep writing short ranges across the table.
+ * <p>
+ * The writers are plain threads started with the trial, so the
+ * reader count can be varied independently with <tt>-t</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedReadBenchmark {
+
+  private static final int TABLE = 4096;
+  private static final int WORDS = 125;
+  private static final int WRITE_WORDS = 8;
+
+  @Param({"striped", "array"})
+  public String image;
+
+  @Param({"1", "2", "4", "8", "16", "32"})
+  public int writers;
+
+  private BulkProcessImage m_Image;
+  private volatile boolean m_Running;
+  private Thread[] m_Writers;
+
+  @Setup
+  public void setUp() {
+    if ("array".equals(image)) {
+      m_Image = new ArrayProcessImage(0, 0, 0, TABLE);
+    } else {
+      m_Image = new StripedProcessImage(0, 0, 0, TABLE);
+    }
+    m_Running = true;
+    m_Writers = new Thread[writers];
+    for (int i = 0; i < writers; i++) {
+      final int seed = i;
+      m_Writers[i] = new Thread("writer-" + i) {
+        public void run() {
+          byte[] values = new byte[WRITE_WORDS * 2];
+          int ref = (seed * 997) % (TABLE - WRITE_WORDS);
+          while (m_Running) {
+            values[0]++;
+            m_Image.setRegisterBytes(ref, WRITE_WORDS, values, 0);
+            ref = (ref + 61) % (TABLE - WRITE_WORDS);
+          }
+        }
+      };
+      m_Writers[i].setDaemon(true);
+      m_Writers[i].start();
+    }
+  }//setUp
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    m_Running = false;
+    for (Thread t : m_Writers) {
+      t.join();
+    }
+  }//tearDown
+
+  @Benchmark
+  public byte[] read(Reader reader) {
+    reader.m_Ref = (reader.m_Ref + 127) % (TABLE - WORDS);
+    m_Image.getRegisterBytes(reader.m_Ref, WORDS, reader.m_Bytes, 0);
+    return reader.m_Bytes;
+  }//read
+
+  /**
+   * The buffer and position of one reading thread.
+   */
+  @State(Scope.Thread)
+  public static class Reader {
+
+    int m_Ref;
+    final byte[] m_Bytes = new byte[WORDS * 2];
+
+  }//class Reader
+
+}//class StripedReadBenchmark
@@ -0,0 +1,148 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.itachi.modbus.procimg.Register;
+import pl.itachi.modbus.procimg.SimpleRegister;
+
+/**
+ * Compares decoding and encoding a block of float32 and
+ * float64 values with <tt>RegisterCodec</tt> against the
+ * <tt>ModbusUtil</tt> path, which assembles a <tt>byte[]</tt>
+ * per value from the registers of a response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterCodecBenchmark {
+
+  //a full FC3 response
+  private static final int REGISTERS = 124;
+
+  @Param({"ABCD", "CDAB"})
+  public String order;
+
+  private RegisterCodec m_Codec;
+  private byte[] m_Payload;
+  private Register[] m_Registers;
+
+  @Setup
+  public void setUp() {
+    m_Codec = RegisterCodec.forName(order);
+    m_Payload = new byte[REGISTERS * 2];
+    for (int i = 0; i < REGISTERS / 2; i++) {
+      m_Codec.putFloat(m_Payload, i * 2, i * 1.5f);
+    }
+    m_Registers = new Register[REGISTERS];
+    for (int i = 0; i < REGISTERS; i++) {
+      m_Registers[i] = new SimpleRegister(m_Payload[i * 2], m_Payload[i * 2 + 1]);
+    }
+  }//setUp
+
+  @Benchmark
+  public void codecGetFloat(Blackhole bh) {
+    for (int i = 0; i < REGISTERS; i += 2) {
+      bh.consume(m_Codec.getFloat(m_Payload, i));
+    }
+  }//codecGetFloat
+
+  @Benchmark
+  public void modbusUtilGetFloat(Blackhole bh) {
+    boolean swapped = m_Codec.isWordSwapped();
+    for (int i = 0; i < REGISTERS; i += 2) {
+      byte[] hi = m_Registers[swapped ? i + 1 : i].toBytes();
+      byte[] lo = m_Registers[swapped ? i : i + 1].toBytes();
+      byte[] bytes = new byte[4];
+      System.arraycopy(hi, 0, bytes, 0, 2);
+      System.arraycopy(lo, 0, bytes, 2, 2);
+      bh.consume(ModbusUtil.registersToFloat(bytes));
+    }
+  }//modbusUtilGetFloat
+
+  @Benchmark
+  public void codecGetDouble(Blackhole bh) {
+    for (int i = 0; i + 4 <= REGISTERS; i += 4) {
+      bh.consume(m_Codec.getDouble(m_Payload, i));
+    }
+  }//codecGetDouble
+
+  @Benchmark
+  public void modbusUtilGetDouble(Blackhole bh) {
+    boolean swapped = m_Codec.isWordSwapped();
+    for (int i = 0; i + 4 <= REGISTERS; i += 4) {
+      byte[] bytes = new byte[8];
+      for (int w = 0; w < 4; w++) {
+        System.arraycopy(m_Registers[i + (swapped ? 3 - w : w)].toBytes(), 0, bytes, w * 2, 2);
+      }
+      bh.consume(ModbusUtil.registersToDouble(bytes));
+    }
+  }//modbusUtilGetDouble
+
+  @Benchmark
+  public byte[] codecPutFloat() {
+    for (int i = 0; i < REGISTERS; i += 2) {
+      m_Codec.putFloat(m_Payload, i, i * 0.5f);
+    }
+    return m_Payload;
+  }//codecPutFloat
+
+  @Benchmark
+  public Register[] modbusUtilPutFloat() {
+    boolean swapped = m_Codec.isWordSwapped();
+    for (int i = 0; i < REGISTERS; i += 2) {
+      byte[] bytes = ModbusUtil.floatToRegisters(i * 0.5f);
+      m_Registers[swapped ? i + 1 : i] = new SimpleRegister(bytes[0], bytes[1]);
+      m_Registers[swapped ? i : i + 1] = new SimpleRegister(bytes[2], bytes[3]);
+    }
+    return m_Registers;
+  }//modbusUtilPutFloat
+
+}//class RegisterCodecBenchmark
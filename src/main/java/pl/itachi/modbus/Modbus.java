@@ -123,6 +123,24 @@ public interface Modbus {
    */
   public static final int MAX_BITS = 2000;
 
+  /**
+   * Defines the maximum number of registers in a multiple read
+   * of input or holding registers (<b>125</b>).
+   */
+  public static final int MAX_READ_REGISTERS = 125;
+
+  /**
+   * Defines the maximum number of registers in a multiple write
+   * of holding registers (<b>123</b>).
+   */
+  public static final int MAX_WRITE_REGISTERS = 123;
+
+  /**
+   * Defines the maximum number of bits in a multiple write
+   * of coils (<b>1968</b>).
+   */
+  public static final int MAX_WRITE_BITS = 1968;
+
   /**
    * Defines the Modbus slave exception offset that is added to the
    * function code, to flag an exception.
@@ -160,6 +178,21 @@ public interface Modbus {
    */
   public static final int ILLEGAL_VALUE_EXCEPTION = 3;
 
+  /**
+   * Defines the Modbus slave exception type <tt>slave device busy</tt>.
+   * This exception code is returned if the slave is engaged in processing
+   * other requests and cannot accept the request at this time; the master
+   * should retransmit the request later.
+   */
+  public static final int SLAVE_BUSY_EXCEPTION = 6;
+
+  /**
+   * Defines the Modbus slave exception type <tt>gateway path unavailable</tt>.
+   * This exception code is returned if a gateway (or a slave hosting several
+   * units) has no device with the unit identifier of the request.
+   */
+  public static final int GATEWAY_PATH_UNAVAILABLE_EXCEPTION = 10;
+
 
   /**
    * Defines the default port number of Modbus
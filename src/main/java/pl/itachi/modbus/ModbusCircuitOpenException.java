@@ -0,0 +1,70 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus;
+
+/**
+ * Class that implements a <tt>ModbusCircuitOpenException</tt>.
+ * Instances of this exception are thrown instead of executing
+ * a transaction, while the circuit breaker of the slave is
+ * open after it failed to respond repeatedly.
+ *
+ * @see pl.itachi.modbus.io.CircuitBreaker
+ */
+public class ModbusCircuitOpenException
+    extends ModbusException {
+
+  //instance attributes
+  private int m_UnitID;
+
+  /**
+   * Constructs a new <tt>ModbusCircuitOpenException</tt>
+   * instance for the given unit.
+   *
+   * @param unitid the unit identifier of the slave.
+   */
+  public ModbusCircuitOpenException(int unitid) {
+    super("Circuit open for unit " + unitid + ".");
+    m_UnitID = unitid;
+  }//constructor
+
+  /**
+   * Returns the unit identifier of the slave.
+   *
+   * @return the unit identifier as <tt>int</tt>.
+   */
+  public int getUnitID() {
+    return m_UnitID;
+  }//getUnitID
+
+}//ModbusCircuitOpenException
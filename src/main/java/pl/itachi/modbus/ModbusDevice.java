@@ -1,10 +1,10 @@
 package pl.itachi.modbus;
 
 import pl.itachi.modbus.msg.ModbusRequest;
-import pl.itachi.modbus.procimg.SimpleProcessImage;
+import pl.itachi.modbus.procimg.ProcessImage;
 
 public class ModbusDevice {
-    private SimpleProcessImage processImage;
+    private ProcessImage processImage;
     private int unitID;
     private boolean isMaster;
 
@@ -12,11 +12,11 @@ public class ModbusDevice {
         return request.getUnitID() == this.unitID;
     }
 
-    public SimpleProcessImage getProcessImage() {
+    public ProcessImage getProcessImage() {
         return processImage;
     }
 
-    public void setProcessImage(SimpleProcessImage processImage) {
+    public void setProcessImage(ProcessImage processImage) {
         this.processImage = processImage;
     }
 
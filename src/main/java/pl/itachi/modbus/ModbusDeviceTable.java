@@ -0,0 +1,134 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus;
+
+import java.util.List;
+
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+
+/**
+ * Class implementing a table of the <tt>ModbusDevice</tt>
+ * instances hosted by a slave, indexed by unit identifier.
+ * <p>
+ * Each request is dispatched to the device of its unit through a
+ * single array access; requests for a unit without a device are
+ * answered with a <i>gateway path unavailable</i> exception.
+ * Devices may be added and removed while requests are served.
+ */
+public class ModbusDeviceTable {
+
+  //instance attributes
+  private volatile ModbusDevice[] m_Devices = new ModbusDevice[256];
+
+  /**
+   * Constructs a new, empty <tt>ModbusDeviceTable</tt> instance.
+   */
+  public ModbusDeviceTable() {
+  }//constructor
+
+  /**
+   * Constructs a new <tt>ModbusDeviceTable</tt> instance
+   * holding the given devices.
+   *
+   * @param devices a list of <tt>ModbusDevice</tt> instances.
+   */
+  public ModbusDeviceTable(List<ModbusDevice> devices) {
+    for (int i = 0; i < devices.size(); i++) {
+      addDevice(devices.get(i));
+    }
+  }//constructor
+
+  /**
+   * Adds a device, replacing the one with the same
+   * unit identifier, if any.
+   *
+   * @param device the <tt>ModbusDevice</tt> to be added.
+   * @throws IllegalArgumentException if the unit identifier
+   *         is not in the range 0-255.
+   */
+  public synchronized void addDevice(ModbusDevice device) {
+    int unit = device.getUnitID();
+    if (unit < 0 || unit > 255) {
+      throw new IllegalArgumentException("Unit identifier out of range: " + unit);
+    }
+    ModbusDevice[] devices = m_Devices.clone();
+    devices[unit] = device;
+    m_Devices = devices;
+  }//addDevice
+
+  /**
+   * Removes the device with the given unit identifier.
+   *
+   * @param unit the unit identifier as <tt>int</tt>.
+   * @return the removed <tt>ModbusDevice</tt>, or null if
+   *         there was none.
+   */
+  public synchronized ModbusDevice removeDevice(int unit) {
+    ModbusDevice[] devices = m_Devices.clone();
+    ModbusDevice device = devices[unit & 0xff];
+    devices[unit & 0xff] = null;
+    m_Devices = devices;
+    return device;
+  }//removeDevice
+
+  /**
+   * Returns the device with the given unit identifier.
+   *
+   * @param unit the unit identifier as <tt>int</tt>.
+   * @return the <tt>ModbusDevice</tt>, or null if there is none.
+   */
+  public ModbusDevice getDevice(int unit) {
+    return m_Devices[unit & 0xff];
+  }//getDevice
+
+  /**
+   * Creates the response of the device addressed by the
+   * given request.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be answered.
+   * @return the corresponding <tt>ModbusResponse</tt>.
+   */
+  public ModbusResponse createResponse(ModbusRequest request) {
+    ModbusDevice device = m_Devices[request.getUnitID() & 0xff];
+    if (device == null) {
+      return request.createExceptionResponse(Modbus.GATEWAY_PATH_UNAVAILABLE_EXCEPTION);
+    }
+    if (device.getProcessImage() == null) {
+      return request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+    }
+    return request.createResponse(device);
+  }//createResponse
+
+}//class ModbusDeviceTable
@@ -0,0 +1,249 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.cmd;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.io.ModbusTCPTransaction;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+import pl.itachi.modbus.net.ModbusNIOTCPListener;
+import pl.itachi.modbus.net.ModbusTCPListener;
+import pl.itachi.modbus.net.TCPMasterConnection;
+import pl.itachi.modbus.procimg.SimpleProcessImage;
+import pl.itachi.modbus.procimg.SimpleRegister;
+
+/**
+ * Class that implements a simple commandline
+ * tool for benchmarking the slave listeners.
+ * <p>
+ * A listener is started on the loopback interface
+ * in the given mode (<tt>pool</tt>, <tt>virtual</tt> or
+ * <tt>nio</tt>), then the given number of connections is
+ * opened and each of them repeatedly reads a block of
+ * registers. The tool reports how many connections were
+ * actually served and the latency distribution of the
+ * requests.
+ * <p>
+ * In <tt>nio</tt> mode the last argument is the maximum number
+ * of reactors; the benchmark is repeated with 1, 2, 4, ... up to
+ * that number of reactors to show how throughput scales.
+ */
+public class TCPSlaveBenchmark {
+
+  private static final int PORT = 15502;
+  private static final int CLIENT_THREADS = 64;
+
+  public static void main(String[] args) {
+    String mode = null;
+    int connections = 0;
+    int requests = 0;
+    int poolsize = 16;
+
+    try {
+      //1. Setup parameters
+      if (args.length < 3) {
+        printUsage();
+        System.exit(1);
+      } else {
+        try {
+          mode = args[0];
+          connections = Integer.parseInt(args[1]);
+          requests = Integer.parseInt(args[2]);
+          if (args.length == 4) {
+            poolsize = Integer.parseInt(args[3]);
+          } else if ("nio".equals(mode)) {
+            poolsize = 1;
+          }
+        } catch (Exception ex) {
+          ex.printStackTrace();
+          printUsage();
+          System.exit(1);
+        }
+      }
+
+      //2. Prepare the process image
+      SimpleProcessImage spi = new SimpleProcessImage();
+      for (int i = 0; i < 100; i++) {
+        spi.addRegister(new SimpleRegister(i));
+      }
+      ModbusCoupler.getReference().setProcessImage(spi);
+      ModbusCoupler.getReference().setMaster(false);
+
+      //3. Start the listener(s) and run
+      InetAddress addr = InetAddress.getByName("127.0.0.1");
+      if ("nio".equals(mode)) {
+        int port = PORT;
+        for (int reactors = 1; ; reactors = Math.min(reactors * 2, poolsize)) {
+          ModbusNIOTCPListener listener = new ModbusNIOTCPListener(addr);
+          listener.setReactorCount(reactors);
+          listener.setPort(port);
+          listener.start();
+          Thread.sleep(500);
+          run("nio, " + reactors + " reactor(s)", addr, port++, connections, requests);
+          listener.stop();
+          if (reactors == poolsize) {
+            break;
+          }
+        }
+      } else {
+        ModbusTCPListener listener = ("virtual".equals(mode))
+            ? ModbusTCPListener.createVirtualThreadListener()
+            : new ModbusTCPListener(poolsize);
+        listener.setAddress(addr);
+        listener.setPort(PORT);
+        listener.start();
+        Thread.sleep(500);
+        run(mode, addr, PORT, connections, requests);
+      }
+      System.exit(0);
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }//main
+
+  private static void run(String mode, InetAddress addr, int port,
+                          int connections, final int reqs)
+      throws Exception {
+
+    //1. Open the connections
+    final TCPMasterConnection[] cons = new TCPMasterConnection[connections];
+    int connected = 0;
+    for (int i = 0; i < connections; i++) {
+      cons[i] = new TCPMasterConnection(addr);
+      cons[i].setPort(port);
+      try {
+        cons[i].connect();
+        cons[i].setTimeout(1000);
+        connected++;
+      } catch (Exception ex) {
+        cons[i] = null;
+      }
+    }
+
+    //2. Drive the requests from a fixed number of client threads
+    final int workers = Math.min(CLIENT_THREADS, connections);
+    final long[][] latencies = new long[workers][];
+    final int[] failures = new int[workers];
+    final boolean[] served = new boolean[connections];
+    Thread[] threads = new Thread[workers];
+    long start = System.nanoTime();
+    for (int w = 0; w < workers; w++) {
+      final int id = w;
+      threads[w] = new Thread() {
+        public void run() {
+          long[] lat = new long[((cons.length + workers - 1) / workers) * reqs];
+          int n = 0;
+          ModbusTCPTransaction[] trans = new ModbusTCPTransaction[cons.length];
+          for (int r = 0; r < reqs; r++) {
+            for (int c = id; c < cons.length; c += workers) {
+              if (cons[c] == null) {
+                failures[id]++;
+                continue;
+              }
+              if (trans[c] == null) {
+                trans[c] = new ModbusTCPTransaction(cons[c]);
+                trans[c].setRequest(new ReadMultipleRegistersRequest(0, 100));
+                trans[c].setRetries(0);
+              }
+              long t = System.nanoTime();
+              try {
+                trans[c].execute();
+                lat[n++] = System.nanoTime() - t;
+                served[c] = true;
+              } catch (Exception ex) {
+                //stream state is unknown after a failure
+                failures[id]++;
+                cons[c].close();
+                cons[c] = null;
+              }
+            }
+          }
+          latencies[id] = Arrays.copyOf(lat, n);
+        }
+      };
+      threads[w].start();
+    }
+    for (int w = 0; w < workers; w++) {
+      threads[w].join();
+    }
+    long elapsed = System.nanoTime() - start;
+    for (int i = 0; i < cons.length; i++) {
+      if (cons[i] != null) {
+        cons[i].close();
+      }
+    }
+
+    //3. Report
+    int total = 0;
+    int failed = 0;
+    for (int w = 0; w < workers; w++) {
+      total += latencies[w].length;
+      failed += failures[w];
+    }
+    long[] all = new long[total];
+    int pos = 0;
+    for (int w = 0; w < workers; w++) {
+      System.arraycopy(latencies[w], 0, all, pos, latencies[w].length);
+      pos += latencies[w].length;
+    }
+    Arrays.sort(all);
+    int servedCount = 0;
+    for (int i = 0; i < served.length; i++) {
+      if (served[i]) servedCount++;
+    }
+    System.out.println("Mode:        " + mode);
+    System.out.println("Connections: " + connected + "/" + connections + " connected, " + servedCount + " served");
+    System.out.println("Requests:    " + total + " ok, " + failed + " failed");
+    if (total > 0) {
+      System.out.println("Throughput:  " + (long) (total / (elapsed / 1e9)) + " req/s");
+      System.out.println("Latency p50: " + millis(all[total / 2]) + " ms");
+      System.out.println("Latency p99: " + millis(all[Math.min(total - 1, (int) (total * 0.99))]) + " ms");
+      System.out.println("Latency max: " + millis(all[total - 1]) + " ms");
+    }
+  }//run
+
+  private static String millis(long nanos) {
+    return String.valueOf(nanos / 1000 / 1000.0);
+  }//millis
+
+  private static void printUsage() {
+    System.out.println(
+        "java pl.itachi.modbus.cmd.TCPSlaveBenchmark <mode [pool|virtual|nio]> <connections [int]> <requests [int]> {<poolsize|reactors [int]>}"
+    );
+  }//printUsage
+
+}//class TCPSlaveBenchmark
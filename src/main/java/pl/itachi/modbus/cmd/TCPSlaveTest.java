@@ -35,6 +35,7 @@ package pl.itachi.modbus.cmd;
 
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.net.ModbusNIOTCPListener;
 import pl.itachi.modbus.net.ModbusTCPListener;
 import pl.itachi.modbus.procimg.SimpleDigitalIn;
 import pl.itachi.modbus.procimg.SimpleDigitalOut;
@@ -56,14 +57,17 @@ public class TCPSlaveTest {
 
   public static void main(String[] args) {
 
-    ModbusTCPListener listener = null;
     SimpleProcessImage spi = null;
     int port = Modbus.DEFAULT_PORT;
+    String mode = "pool";
   
     try {
-      if(args != null && args.length ==1) {
+      if(args != null && args.length >= 1) {
         port = Integer.parseInt(args[0]);
       }
+      if(args != null && args.length == 2) {
+        mode = args[1];
+      }
       System.out.println("jModbus Modbus Slave (Server)");
 
       //1. prepare a process image
@@ -91,11 +95,22 @@ public class TCPSlaveTest {
       ModbusCoupler.getReference().setMaster(false);
       ModbusCoupler.getReference().setUnitID(15);
 
-      //3. create a listener with 3 threads in pool
+      //3. create a listener with 3 threads in pool,
+      //   with virtual threads or a non-blocking listener
       if (Modbus.debug) System.out.println("Listening...");
-      listener = new ModbusTCPListener(3);
-      listener.setPort(port);
-      listener.start();
+      if ("nio".equals(mode)) {
+        ModbusNIOTCPListener listener = new ModbusNIOTCPListener();
+        listener.setPort(port);
+        listener.start();
+      } else if ("virtual".equals(mode)) {
+        ModbusTCPListener listener = ModbusTCPListener.createVirtualThreadListener();
+        listener.setPort(port);
+        listener.start();
+      } else {
+        ModbusTCPListener listener = new ModbusTCPListener(3);
+        listener.setPort(port);
+        listener.start();
+      }
 
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -35,6 +35,7 @@ package pl.itachi.modbus.facade;
 
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusException;
+import pl.itachi.modbus.io.CircuitBreaker;
 import pl.itachi.modbus.io.ModbusSerialTransaction;
 import pl.itachi.modbus.msg.*;
 import pl.itachi.modbus.net.SerialConnection;
@@ -51,11 +52,13 @@ import pl.itachi.modbus.util.SerialParameters;
  * 
  * @version 1.2rc1 (09/11/2004)
  */
-public class ModbusSerialMaster {
+public class ModbusSerialMaster
+    implements PlanReader, RequestExecutor {
 
   private SerialParameters m_CommParameters;
   private SerialConnection m_Connection;
   private ModbusSerialTransaction m_Transaction;
+  private CircuitBreaker m_CircuitBreaker;
   private ReadCoilsRequest m_ReadCoilsRequest;
   private ReadInputDiscretesRequest m_ReadInputDiscretesRequest;
   private WriteCoilRequest m_WriteCoilRequest;
@@ -107,6 +110,29 @@ public class ModbusSerialMaster {
     return ModbusCoupler.getReference().getUnitID();
   }//setUnitIdentifier
 
+  /**
+   * Sets the circuit breaker guarding the slaves, so that
+   * requests to a slave that stopped responding fail immediately
+   * with a <tt>ModbusCircuitOpenException</tt>.
+   *
+   * @param breaker a <tt>CircuitBreaker</tt>, or null.
+   */
+  public void setCircuitBreaker(CircuitBreaker breaker) {
+    m_CircuitBreaker = breaker;
+    if (m_Transaction != null) {
+      m_Transaction.setCircuitBreaker(breaker);
+    }
+  }//setCircuitBreaker
+
+  /**
+   * Returns the circuit breaker guarding the slaves.
+   *
+   * @return the <tt>CircuitBreaker</tt>, or null.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return m_CircuitBreaker;
+  }//getCircuitBreaker
+
   /**
    * Connects this <tt>ModbusSerialMaster</tt> with the slave.
    *
@@ -117,6 +143,7 @@ public class ModbusSerialMaster {
     if (m_Connection != null && !m_Connection.isOpen()) {
       m_Connection.open();
       m_Transaction = new ModbusSerialTransaction(m_Connection);
+      m_Transaction.setCircuitBreaker(m_CircuitBreaker);
     }
   }//connect
 
@@ -146,12 +173,7 @@ public class ModbusSerialMaster {
    */
   public synchronized BitVector readCoils(int unitid, int ref, int count)
       throws ModbusException {
-    m_ReadCoilsRequest.setUnitID(unitid);
-    m_ReadCoilsRequest.setReference(ref);
-    m_ReadCoilsRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadCoilsRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadCoilsResponse) m_Transaction.getResponse()).getCoils();
+    BitVector bv = transactCoils(unitid, ref, count).getCoils();
     bv.forceSize(count);
     return bv;
   }//readCoils
@@ -213,12 +235,7 @@ public class ModbusSerialMaster {
    */
   public synchronized BitVector readInputDiscretes(int unitid, int ref, int count)
       throws ModbusException {
-    m_ReadInputDiscretesRequest.setUnitID(unitid);
-    m_ReadInputDiscretesRequest.setReference(ref);
-    m_ReadInputDiscretesRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadInputDiscretesRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadInputDiscretesResponse) m_Transaction.getResponse()).getDiscretes();
+    BitVector bv = transactInputDiscretes(unitid, ref, count).getDiscretes();
     bv.forceSize(count);
     return bv;
   }//readInputDiscretes
@@ -239,12 +256,7 @@ public class ModbusSerialMaster {
    */
   public synchronized InputRegister[] readInputRegisters(int unitid, int ref, int count)
       throws ModbusException {
-    m_ReadInputRegistersRequest.setUnitID(unitid);
-    m_ReadInputRegistersRequest.setReference(ref);
-    m_ReadInputRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadInputRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadInputRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    return transactInputRegisters(unitid, ref, count).getRegisters();
   }//readInputRegisters
 
   /**
@@ -262,12 +274,175 @@ public class ModbusSerialMaster {
    */
   public synchronized Register[] readMultipleRegisters(int unitid, int ref, int count)
       throws ModbusException {
-    m_ReadMultipleRegistersRequest.setUnitID(unitid);
-    m_ReadMultipleRegistersRequest.setReference(ref);
-    m_ReadMultipleRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadMultipleRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    return transactMultipleRegisters(unitid, ref, count).getRegisters();
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readCoils(int unitid, int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    transactCoils(unitid, ref, count).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readCoils(int unitid, int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    transactCoils(unitid, ref, count).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readInputDiscretes(int unitid, int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    transactInputDiscretes(unitid, ref, count).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readInputDiscretes(int unitid, int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    transactInputDiscretes(unitid, ref, count).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readInputRegisters(int unitid, int ref, int count, short[] dest, int offset)
+      throws ModbusException {
+    return transactInputRegisters(unitid, ref, count).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readInputRegisters(int unitid, int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return transactInputRegisters(unitid, ref, count).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readMultipleRegisters(int unitid, int ref, int count, short[] dest, int offset)
+      throws ModbusException {
+    return transactMultipleRegisters(unitid, ref, count).getRegisterValues(dest, offset);
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readMultipleRegisters(int unitid, int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return transactMultipleRegisters(unitid, ref, count).getRegisterValues(dest, offset);
   }//readMultipleRegisters
 
   /**
@@ -308,4 +483,112 @@ public class ModbusSerialMaster {
     m_Transaction.execute();
   }//writeMultipleRegisters
 
+  /**
+   * Executes the given <tt>ReadPlan</tt>, scattering the values
+   * read back to its items.
+   *
+   * @param plan the <tt>ReadPlan</tt> to be executed.
+   * @throws ModbusException if an I/O error or a transaction error occurs.
+   * @see ReadPlan#execute(pl.itachi.modbus.io.ModbusTransaction)
+   */
+  public synchronized void read(ReadPlan plan)
+      throws ModbusException {
+    plan.execute(m_Transaction);
+  }//read
+
+  /**
+   * Executes the given request with the slave.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be executed.
+   * @return the <tt>ModbusResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  public synchronized ModbusResponse execute(ModbusRequest request)
+      throws ModbusException {
+    m_Transaction.setRequest(request);
+    m_Transaction.execute();
+    return m_Transaction.getResponse();
+  }//execute
+
+  /**
+   * Executes the reused <tt>ReadCoilsRequest</tt>.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset to start reading from.
+   * @param count  the number of coil states to be read.
+   * @return the <tt>ReadCoilsResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadCoilsResponse transactCoils(int unitid, int ref, int count)
+      throws ModbusException {
+    m_ReadCoilsRequest.setUnitID(unitid);
+    m_ReadCoilsRequest.setReference(ref);
+    m_ReadCoilsRequest.setBitCount(count);
+    m_Transaction.setRequest(m_ReadCoilsRequest);
+    m_Transaction.execute();
+    return (ReadCoilsResponse) m_Transaction.getResponse();
+  }//transactCoils
+
+  /**
+   * Executes the reused <tt>ReadInputDiscretesRequest</tt>.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @return the <tt>ReadInputDiscretesResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadInputDiscretesResponse transactInputDiscretes(int unitid, int ref, int count)
+      throws ModbusException {
+    m_ReadInputDiscretesRequest.setUnitID(unitid);
+    m_ReadInputDiscretesRequest.setReference(ref);
+    m_ReadInputDiscretesRequest.setBitCount(count);
+    m_Transaction.setRequest(m_ReadInputDiscretesRequest);
+    m_Transaction.execute();
+    return (ReadInputDiscretesResponse) m_Transaction.getResponse();
+  }//transactInputDiscretes
+
+  /**
+   * Executes the reused <tt>ReadInputRegistersRequest</tt>.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset to start reading from.
+   * @param count  the number of input registers to be read.
+   * @return the <tt>ReadInputRegistersResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadInputRegistersResponse transactInputRegisters(int unitid, int ref, int count)
+      throws ModbusException {
+    m_ReadInputRegistersRequest.setUnitID(unitid);
+    m_ReadInputRegistersRequest.setReference(ref);
+    m_ReadInputRegistersRequest.setWordCount(count);
+    m_Transaction.setRequest(m_ReadInputRegistersRequest);
+    m_Transaction.execute();
+    return (ReadInputRegistersResponse) m_Transaction.getResponse();
+  }//transactInputRegisters
+
+  /**
+   * Executes the reused <tt>ReadMultipleRegistersRequest</tt>.
+   *
+   * @param unitid the slave unit id.
+   * @param ref    the offset to start reading from.
+   * @param count  the number of registers to be read.
+   * @return the <tt>ReadMultipleRegistersResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadMultipleRegistersResponse transactMultipleRegisters(int unitid, int ref, int count)
+      throws ModbusException {
+    m_ReadMultipleRegistersRequest.setUnitID(unitid);
+    m_ReadMultipleRegistersRequest.setReference(ref);
+    m_ReadMultipleRegistersRequest.setWordCount(count);
+    m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+    m_Transaction.execute();
+    return (ReadMultipleRegistersResponse) m_Transaction.getResponse();
+  }//transactMultipleRegisters
+
 }//class ModbusSerialMaster
@@ -33,10 +33,15 @@
  ***/
 package pl.itachi.modbus.facade;
 
+import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusException;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.io.CircuitBreaker;
 import pl.itachi.modbus.io.ModbusTCPTransaction;
 import pl.itachi.modbus.msg.*;
+import pl.itachi.modbus.net.RTTEstimator;
 import pl.itachi.modbus.net.TCPMasterConnection;
+import pl.itachi.modbus.net.TCPMasterConnectionPool;
 import pl.itachi.modbus.procimg.InputRegister;
 import pl.itachi.modbus.procimg.Register;
 import pl.itachi.modbus.util.BitVector;
@@ -46,24 +51,22 @@ import java.net.UnknownHostException;
 
 /**
  * Modbus/TCP Master facade.
+ * <p>
+ * The facade may be used by several threads at the same time;
+ * each call checks a connection out of a
+ * <tt>TCPMasterConnectionPool</tt>, so that as many calls as the
+ * pool has connections are executed in parallel.
  *
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
  */
-public class ModbusTCPMaster {
+public class ModbusTCPMaster
+    implements PlanReader, RequestExecutor {
 
-  private TCPMasterConnection m_Connection;
+  private TCPMasterConnectionPool m_Pool;
   private InetAddress m_SlaveAddress;
-  private ModbusTCPTransaction m_Transaction;
-  private ReadCoilsRequest m_ReadCoilsRequest;
-  private ReadInputDiscretesRequest m_ReadInputDiscretesRequest;
-  private WriteCoilRequest m_WriteCoilRequest;
-  private WriteMultipleCoilsRequest m_WriteMultipleCoilsRequest;
-  private ReadInputRegistersRequest m_ReadInputRegistersRequest;
-  private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
-  private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
-  private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
-  private boolean m_Reconnecting = false;
+  private volatile boolean m_Reconnecting = false;
+  private volatile CircuitBreaker m_CircuitBreaker;
 
   /**
    * Constructs a new master facade instance for communication
@@ -73,21 +76,7 @@ public class ModbusTCPMaster {
    *             specifying the slave to communicate with.
    */
   public ModbusTCPMaster(String addr) {
-    try {
-      m_SlaveAddress = InetAddress.getByName(addr);
-      m_Connection = new TCPMasterConnection(m_SlaveAddress);
-      m_ReadCoilsRequest = new ReadCoilsRequest();
-      m_ReadInputDiscretesRequest = new ReadInputDiscretesRequest();
-      m_WriteCoilRequest = new WriteCoilRequest();
-      m_WriteMultipleCoilsRequest = new WriteMultipleCoilsRequest();
-      m_ReadInputRegistersRequest = new ReadInputRegistersRequest();
-      m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
-      m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
-      m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
-
-    } catch (UnknownHostException e) {
-      throw new RuntimeException(e.getMessage());
-    }
+    this(addr, Modbus.DEFAULT_PORT);
   }//constructor
 
   /**
@@ -99,10 +88,80 @@ public class ModbusTCPMaster {
    * @param port the port the slave is listening to.
    */
   public ModbusTCPMaster(String addr, int port) {
-    this(addr);
-    m_Connection.setPort(port);
+    this(addr, port, 1);
   }//constructor
 
+  /**
+   * Constructs a new master facade instance for communication
+   * with a given slave over up to <tt>poolsize</tt> connections.
+   *
+   * @param addr     an internet address as resolvable IP name or IP number,
+   *                 specifying the slave to communicate with.
+   * @param port     the port the slave is listening to.
+   * @param poolsize the maximum number of connections to the slave.
+   */
+  public ModbusTCPMaster(String addr, int port, int poolsize) {
+    try {
+      m_SlaveAddress = InetAddress.getByName(addr);
+      m_Pool = new TCPMasterConnectionPool(m_SlaveAddress, port, poolsize);
+    } catch (UnknownHostException e) {
+      throw new RuntimeException(e.getMessage());
+    }
+  }//constructor
+
+  /**
+   * Returns the pool of connections to the slave,
+   * e.g. to configure or monitor it.
+   *
+   * @return the <tt>TCPMasterConnectionPool</tt>.
+   */
+  public TCPMasterConnectionPool getConnectionPool() {
+    return m_Pool;
+  }//getConnectionPool
+
+  /**
+   * Sets the estimator of the round-trip time to the slave,
+   * which then determines the time to wait for a response and
+   * the backoff of retries, instead of the fixed timeout.
+   *
+   * @param estimator a <tt>RTTEstimator</tt>, or null to
+   *                  apply the fixed timeout.
+   */
+  public void setRTTEstimator(RTTEstimator estimator) {
+    m_Pool.setRTTEstimator(estimator);
+  }//setRTTEstimator
+
+  /**
+   * Returns the estimator of the round-trip time to the slave,
+   * e.g. to read the live estimate.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null if the fixed timeout applies.
+   */
+  public RTTEstimator getRTTEstimator() {
+    return m_Pool.getRTTEstimator();
+  }//getRTTEstimator
+
+  /**
+   * Sets the circuit breaker guarding the slaves, so that
+   * requests to a slave that stopped responding fail immediately
+   * with a <tt>ModbusCircuitOpenException</tt>. While the circuits
+   * are open, no connections to the slave are opened.
+   *
+   * @param breaker a <tt>CircuitBreaker</tt>, or null.
+   */
+  public void setCircuitBreaker(CircuitBreaker breaker) {
+    m_CircuitBreaker = breaker;
+  }//setCircuitBreaker
+
+  /**
+   * Returns the circuit breaker guarding the slaves.
+   *
+   * @return the <tt>CircuitBreaker</tt>, or null.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return m_CircuitBreaker;
+  }//getCircuitBreaker
+
   /**
    * Connects this <tt>ModbusTCPMaster</tt> with the slave.
    *
@@ -110,21 +169,15 @@ public class ModbusTCPMaster {
    */
   public void connect()
       throws Exception {
-    if (m_Connection != null && !m_Connection.isConnected()) {
-      m_Connection.connect();
-      m_Transaction = new ModbusTCPTransaction(m_Connection);
-      m_Transaction.setReconnecting(m_Reconnecting);
-    }
+    m_Pool.checkin(m_Pool.checkout());
   }//connect
 
   /**
    * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
+   * Connections in use are closed when they are given back.
    */
   public void disconnect() {
-    if (m_Connection != null && m_Connection.isConnected()) {
-      m_Connection.close();
-      m_Transaction = null;
-    }
+    m_Pool.close();
   }//disconnect
 
   /**
@@ -136,9 +189,6 @@ public class ModbusTCPMaster {
    */
   public void setReconnecting(boolean b) {
     m_Reconnecting = b;
-    if (m_Transaction != null) {
-      m_Transaction.setReconnecting(b);
-    }
   }//setReconnecting
 
   /**
@@ -165,13 +215,10 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized BitVector readCoils(int ref, int count)
+  public BitVector readCoils(int ref, int count)
       throws ModbusException {
-    m_ReadCoilsRequest.setReference(ref);
-    m_ReadCoilsRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadCoilsRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadCoilsResponse) m_Transaction.getResponse()).getCoils();
+    ReadCoilsRequest request = new ReadCoilsRequest(ref, count);
+    BitVector bv = ((ReadCoilsResponse) execute(request)).getCoils();
     bv.forceSize(count);
     return bv;
   }//readCoils
@@ -186,14 +233,11 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized boolean writeCoil(int unitid, int ref, boolean state)
+  public boolean writeCoil(int unitid, int ref, boolean state)
       throws ModbusException {
-    m_WriteCoilRequest.setUnitID(unitid);
-    m_WriteCoilRequest.setReference(ref);
-    m_WriteCoilRequest.setCoil(state);
-    m_Transaction.setRequest(m_WriteCoilRequest);
-    m_Transaction.execute();
-    return ((WriteCoilResponse) m_Transaction.getResponse()).getCoil();
+    WriteCoilRequest request = new WriteCoilRequest(ref, state);
+    request.setUnitID(unitid);
+    return ((WriteCoilResponse) execute(request)).getCoil();
   }//writeCoil
 
   /**
@@ -207,12 +251,9 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized void writeMultipleCoils(int ref, BitVector coils)
+  public void writeMultipleCoils(int ref, BitVector coils)
       throws ModbusException {
-    m_WriteMultipleCoilsRequest.setReference(ref);
-    m_WriteMultipleCoilsRequest.setCoils(coils);
-    m_Transaction.setRequest(m_WriteMultipleCoilsRequest);
-    m_Transaction.execute();
+    execute(new WriteMultipleCoilsRequest(ref, coils));
   }//writeMultipleCoils
 
   /**
@@ -228,13 +269,10 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized BitVector readInputDiscretes(int ref, int count)
+  public BitVector readInputDiscretes(int ref, int count)
       throws ModbusException {
-    m_ReadInputDiscretesRequest.setReference(ref);
-    m_ReadInputDiscretesRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadInputDiscretesRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadInputDiscretesResponse) m_Transaction.getResponse()).getDiscretes();
+    ReadInputDiscretesRequest request = new ReadInputDiscretesRequest(ref, count);
+    BitVector bv = ((ReadInputDiscretesResponse) execute(request)).getDiscretes();
     bv.forceSize(count);
     return bv;
   }//readInputDiscretes
@@ -252,13 +290,10 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized InputRegister[] readInputRegisters(int ref, int count)
+  public InputRegister[] readInputRegisters(int ref, int count)
       throws ModbusException {
-    m_ReadInputRegistersRequest.setReference(ref);
-    m_ReadInputRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadInputRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadInputRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    ReadInputRegistersRequest request = new ReadInputRegistersRequest(ref, count);
+    return ((ReadInputRegistersResponse) execute(request)).getRegisters();
   }//readInputRegisters
 
   /**
@@ -273,13 +308,170 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized Register[] readMultipleRegisters(int ref, int count)
+  public Register[] readMultipleRegisters(int ref, int count)
+      throws ModbusException {
+    ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(ref, count);
+    return ((ReadMultipleRegistersResponse) execute(request)).getRegisters();
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public void readCoils(int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    ((ReadCoilsResponse) execute(new ReadCoilsRequest(ref, count))).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public void readCoils(int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    ((ReadCoilsResponse) execute(new ReadCoilsRequest(ref, count))).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public void readInputDiscretes(int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    ((ReadInputDiscretesResponse) execute(new ReadInputDiscretesRequest(ref, count))).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public void readInputDiscretes(int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    ((ReadInputDiscretesResponse) execute(new ReadInputDiscretesRequest(ref, count))).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int readInputRegisters(int ref, int count, short[] dest, int offset)
       throws ModbusException {
-    m_ReadMultipleRegistersRequest.setReference(ref);
-    m_ReadMultipleRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadMultipleRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    return ((ReadInputRegistersResponse) execute(new ReadInputRegistersRequest(ref, count))).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int readInputRegisters(int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return ((ReadInputRegistersResponse) execute(new ReadInputRegistersRequest(ref, count))).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int readMultipleRegisters(int ref, int count, short[] dest, int offset)
+      throws ModbusException {
+    return ((ReadMultipleRegistersResponse) execute(new ReadMultipleRegistersRequest(ref, count))).getRegisterValues(dest, offset);
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int readMultipleRegisters(int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return ((ReadMultipleRegistersResponse) execute(new ReadMultipleRegistersRequest(ref, count))).getRegisterValues(dest, offset);
   }//readMultipleRegisters
 
   /**
@@ -291,12 +483,9 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized void writeSingleRegister(int ref, Register register)
+  public void writeSingleRegister(int ref, Register register)
       throws ModbusException {
-    m_WriteSingleRegisterRequest.setReference(ref);
-    m_WriteSingleRegisterRequest.setRegister(register);
-    m_Transaction.setRequest(m_WriteSingleRegisterRequest);
-    m_Transaction.execute();
+    execute(new WriteSingleRegisterRequest(ref, register));
   }//writeSingleRegister
 
   /**
@@ -308,12 +497,145 @@ public class ModbusTCPMaster {
    * @throws ModbusException if an I/O error, a slave exception or
    *                         a transaction error occurs.
    */
-  public synchronized void writeMultipleRegisters(int ref, Register[] registers)
+  public void writeMultipleRegisters(int ref, Register[] registers)
       throws ModbusException {
-    m_WriteMultipleRegistersRequest.setReference(ref);
-    m_WriteMultipleRegistersRequest.setRegisters(registers);
-    m_Transaction.setRequest(m_WriteMultipleRegistersRequest);
-    m_Transaction.execute();
+    execute(new WriteMultipleRegistersRequest(ref, registers));
   }//writeMultipleRegisters
 
+  /**
+   * Executes the given <tt>ReadPlan</tt>, scattering the values
+   * read back to its items. All requests of the plan are
+   * executed over the same connection of the pool.
+   *
+   * @param plan the <tt>ReadPlan</tt> to be executed.
+   * @throws ModbusException if an I/O error or a transaction error occurs.
+   * @see ReadPlan#execute(pl.itachi.modbus.io.ModbusTransaction)
+   */
+  public void read(ReadPlan plan)
+      throws ModbusException {
+    CircuitBreaker breaker = m_CircuitBreaker;
+    TCPMasterConnection con = checkout(breaker, plan);
+    try {
+      ModbusTCPTransaction transaction = new ModbusTCPTransaction(con);
+      transaction.setCircuitBreaker(breaker);
+      plan.execute(transaction);
+    } catch (ModbusIOException ex) {
+      m_Pool.invalidate(con);
+      con = null;
+      throw ex;
+    } finally {
+      release(con);
+    }
+  }//read
+
+  /**
+   * Executes the given request over a connection of the pool.
+   * A connection that failed is discarded, as is every connection
+   * if reconnecting.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be executed.
+   * @return the <tt>ModbusResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  public ModbusResponse execute(ModbusRequest request)
+      throws ModbusException {
+    CircuitBreaker breaker = m_CircuitBreaker;
+    if (breaker != null) {
+      breaker.check(request.getUnitID());
+    }
+    TCPMasterConnection con = checkout(breaker, request.getUnitID());
+    try {
+      ModbusTCPTransaction transaction = new ModbusTCPTransaction(con);
+      transaction.setCircuitBreaker(breaker);
+      transaction.setRequest(request);
+      transaction.execute();
+      return transaction.getResponse();
+    } catch (ModbusIOException ex) {
+      m_Pool.invalidate(con);
+      con = null;
+      throw ex;
+    } finally {
+      release(con);
+    }
+  }//execute
+
+  /**
+   * Checks a connection out of the pool for executing the given
+   * plan, unless the circuits of all its units are open.
+   * A failure to connect counts against the circuits.
+   *
+   * @param breaker the <tt>CircuitBreaker</tt>, or null.
+   * @param plan    the <tt>ReadPlan</tt> to be executed.
+   * @return a <tt>TCPMasterConnection</tt>.
+   * @throws ModbusException if no connection could be checked out
+   *                         or all circuits are open.
+   */
+  private TCPMasterConnection checkout(CircuitBreaker breaker, ReadPlan plan)
+      throws ModbusException {
+    if (breaker == null) {
+      return m_Pool.checkout();
+    }
+    boolean[] units = new boolean[256];
+    boolean allowed = false;
+    for (int i = 0; i < plan.getRequestCount(); i++) {
+      int unitid = plan.getRequest(i).getUnitID();
+      units[unitid] = true;
+      allowed |= breaker.isAllowed(unitid);
+    }
+    if (!allowed && plan.getRequestCount() > 0) {
+      //all open, fail through the circuit of the first unit
+      breaker.check(plan.getRequest(0).getUnitID());
+    }
+    try {
+      return m_Pool.checkout();
+    } catch (ModbusIOException ex) {
+      for (int unitid = 0; unitid < units.length; unitid++) {
+        if (units[unitid]) {
+          breaker.release(unitid, false);
+        }
+      }
+      throw ex;
+    }
+  }//checkout
+
+  /**
+   * Checks a connection out of the pool for executing a
+   * request with the given unit. A failure to connect counts
+   * against the circuit of the unit.
+   *
+   * @param breaker the <tt>CircuitBreaker</tt>, or null.
+   * @param unitid  the unit identifier of the slave.
+   * @return a <tt>TCPMasterConnection</tt>.
+   * @throws ModbusIOException if no connection could be checked out.
+   */
+  private TCPMasterConnection checkout(CircuitBreaker breaker, int unitid)
+      throws ModbusIOException {
+    try {
+      return m_Pool.checkout();
+    } catch (ModbusIOException ex) {
+      if (breaker != null) {
+        breaker.release(unitid, false);
+      }
+      throw ex;
+    }
+  }//checkout
+
+  /**
+   * Gives a connection back to the pool, or discards it
+   * if reconnecting.
+   *
+   * @param con the <tt>TCPMasterConnection</tt>, or null if already
+   *            discarded.
+   */
+  private void release(TCPMasterConnection con) {
+    if (con != null) {
+      if (m_Reconnecting) {
+        m_Pool.invalidate(con);
+      } else {
+        m_Pool.checkin(con);
+      }
+    }
+  }//release
+
 }//class ModbusTCPMaster
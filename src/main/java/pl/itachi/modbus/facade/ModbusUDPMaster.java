@@ -34,8 +34,10 @@
 package pl.itachi.modbus.facade;
 
 import pl.itachi.modbus.ModbusException;
+import pl.itachi.modbus.io.CircuitBreaker;
 import pl.itachi.modbus.io.ModbusUDPTransaction;
 import pl.itachi.modbus.msg.*;
+import pl.itachi.modbus.net.RTTEstimator;
 import pl.itachi.modbus.net.UDPMasterConnection;
 import pl.itachi.modbus.procimg.InputRegister;
 import pl.itachi.modbus.procimg.Register;
@@ -50,11 +52,13 @@ import java.net.UnknownHostException;
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
  */
-public class ModbusUDPMaster {
+public class ModbusUDPMaster
+    implements PlanReader, RequestExecutor {
 
   private UDPMasterConnection m_Connection;
   private InetAddress m_SlaveAddress;
   private ModbusUDPTransaction m_Transaction;
+  private CircuitBreaker m_CircuitBreaker;
   private ReadCoilsRequest m_ReadCoilsRequest;
   private ReadInputDiscretesRequest m_ReadInputDiscretesRequest;
   private WriteCoilRequest m_WriteCoilRequest;
@@ -102,6 +106,51 @@ public class ModbusUDPMaster {
     m_Connection.setPort(port);
   }//constructor
 
+  /**
+   * Sets the estimator of the round-trip time to the slave,
+   * which then determines the time to wait for a response and
+   * the backoff of retries, instead of the fixed timeout.
+   *
+   * @param estimator a <tt>RTTEstimator</tt>, or null to
+   *                  apply the fixed timeout.
+   */
+  public void setRTTEstimator(RTTEstimator estimator) {
+    m_Connection.setRTTEstimator(estimator);
+  }//setRTTEstimator
+
+  /**
+   * Returns the estimator of the round-trip time to the slave,
+   * e.g. to read the live estimate.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null if the fixed timeout applies.
+   */
+  public RTTEstimator getRTTEstimator() {
+    return m_Connection.getRTTEstimator();
+  }//getRTTEstimator
+
+  /**
+   * Sets the circuit breaker guarding the slaves, so that
+   * requests to a slave that stopped responding fail immediately
+   * with a <tt>ModbusCircuitOpenException</tt>.
+   *
+   * @param breaker a <tt>CircuitBreaker</tt>, or null.
+   */
+  public void setCircuitBreaker(CircuitBreaker breaker) {
+    m_CircuitBreaker = breaker;
+    if (m_Transaction != null) {
+      m_Transaction.setCircuitBreaker(breaker);
+    }
+  }//setCircuitBreaker
+
+  /**
+   * Returns the circuit breaker guarding the slaves.
+   *
+   * @return the <tt>CircuitBreaker</tt>, or null.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return m_CircuitBreaker;
+  }//getCircuitBreaker
+
   /**
    * Connects this <tt>ModbusUDPMaster</tt> with the slave.
    *
@@ -112,6 +161,7 @@ public class ModbusUDPMaster {
     if (m_Connection != null && !m_Connection.isConnected()) {
       m_Connection.connect();
       m_Transaction = new ModbusUDPTransaction(m_Connection);
+      m_Transaction.setCircuitBreaker(m_CircuitBreaker);
     }
   }//connect
 
@@ -140,11 +190,7 @@ public class ModbusUDPMaster {
    */
   public synchronized BitVector readCoils(int ref, int count)
       throws ModbusException {
-    m_ReadCoilsRequest.setReference(ref);
-    m_ReadCoilsRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadCoilsRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadCoilsResponse) m_Transaction.getResponse()).getCoils();
+    BitVector bv = transactCoils(ref, count).getCoils();
     bv.forceSize(count);
     return bv;
   }//readCoils
@@ -203,11 +249,7 @@ public class ModbusUDPMaster {
    */
   public synchronized BitVector readInputDiscretes(int ref, int count)
       throws ModbusException {
-    m_ReadInputDiscretesRequest.setReference(ref);
-    m_ReadInputDiscretesRequest.setBitCount(count);
-    m_Transaction.setRequest(m_ReadInputDiscretesRequest);
-    m_Transaction.execute();
-    BitVector bv = ((ReadInputDiscretesResponse) m_Transaction.getResponse()).getDiscretes();
+    BitVector bv = transactInputDiscretes(ref, count).getDiscretes();
     bv.forceSize(count);
     return bv;
   }//readInputDiscretes
@@ -227,11 +269,7 @@ public class ModbusUDPMaster {
    */
   public synchronized InputRegister[] readInputRegisters(int ref, int count)
       throws ModbusException {
-    m_ReadInputRegistersRequest.setReference(ref);
-    m_ReadInputRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadInputRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadInputRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    return transactInputRegisters(ref, count).getRegisters();
   }//readInputRegisters
 
   /**
@@ -248,11 +286,167 @@ public class ModbusUDPMaster {
    */
   public synchronized Register[] readMultipleRegisters(int ref, int count)
       throws ModbusException {
-    m_ReadMultipleRegistersRequest.setReference(ref);
-    m_ReadMultipleRegistersRequest.setWordCount(count);
-    m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
-    m_Transaction.execute();
-    return ((ReadMultipleRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    return transactMultipleRegisters(ref, count).getRegisters();
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readCoils(int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    transactCoils(ref, count).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of coil states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param ref    the offset of the coil to start reading from.
+   * @param count  the number of coil states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readCoils(int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    transactCoils(ref, count).getCoils().getBits(dest, offset, count);
+  }//readCoils
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, one <tt>boolean</tt> per state.
+   *
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>boolean[]</tt> to store the states in.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readInputDiscretes(int ref, int count, boolean[] dest, int offset)
+      throws ModbusException {
+    transactInputDiscretes(ref, count).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input discrete states from the slave into
+   * the given array, packed into bits, as by {@link BitVector#getBits(long[], int, int)}.
+   *
+   * @param ref    the offset of the input discrete to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @param dest   the <tt>long[]</tt> to store the states in.
+   * @param offset the index of the first destination bit.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized void readInputDiscretes(int ref, int count, long[] dest, int offset)
+      throws ModbusException {
+    transactInputDiscretes(ref, count).getDiscretes().getBits(dest, offset, count);
+  }//readInputDiscretes
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readInputRegisters(int ref, int count, short[] dest, int offset)
+      throws ModbusException {
+    return transactInputRegisters(ref, count).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of input registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the input register to start reading from.
+   * @param count  the number of input registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readInputRegisters(int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return transactInputRegisters(ref, count).getRegisterValues(dest, offset);
+  }//readInputRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as signed short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>short[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readMultipleRegisters(int ref, int count, short[] dest, int offset)
+      throws ModbusException {
+    return transactMultipleRegisters(ref, count).getRegisterValues(dest, offset);
+  }//readMultipleRegisters
+
+  /**
+   * Reads a given number of registers from the slave into
+   * the given array, interpreted as unsigned short. The values are
+   * taken from the response payload, without creating
+   * register instances.
+   * <p/>
+   * Note that the number of values stored will be according
+   * to the number received in the slave response.
+   *
+   * @param ref    the offset of the register to start reading from.
+   * @param count  the number of registers to be read.
+   * @param dest   the <tt>int[]</tt> to store the values in.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values stored.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public synchronized int readMultipleRegisters(int ref, int count, int[] dest, int offset)
+      throws ModbusException {
+    return transactMultipleRegisters(ref, count).getRegisterValues(dest, offset);
   }//readMultipleRegisters
 
   /**
@@ -289,4 +483,104 @@ public class ModbusUDPMaster {
     m_Transaction.execute();
   }//writeMultipleRegisters
 
+  /**
+   * Executes the given <tt>ReadPlan</tt>, scattering the values
+   * read back to its items.
+   *
+   * @param plan the <tt>ReadPlan</tt> to be executed.
+   * @throws ModbusException if an I/O error or a transaction error occurs.
+   * @see ReadPlan#execute(pl.itachi.modbus.io.ModbusTransaction)
+   */
+  public synchronized void read(ReadPlan plan)
+      throws ModbusException {
+    plan.execute(m_Transaction);
+  }//read
+
+  /**
+   * Executes the given request with the slave.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be executed.
+   * @return the <tt>ModbusResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  public synchronized ModbusResponse execute(ModbusRequest request)
+      throws ModbusException {
+    m_Transaction.setRequest(request);
+    m_Transaction.execute();
+    return m_Transaction.getResponse();
+  }//execute
+
+  /**
+   * Executes the reused <tt>ReadCoilsRequest</tt>.
+   *
+   * @param ref    the offset to start reading from.
+   * @param count  the number of coil states to be read.
+   * @return the <tt>ReadCoilsResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadCoilsResponse transactCoils(int ref, int count)
+      throws ModbusException {
+    m_ReadCoilsRequest.setReference(ref);
+    m_ReadCoilsRequest.setBitCount(count);
+    m_Transaction.setRequest(m_ReadCoilsRequest);
+    m_Transaction.execute();
+    return (ReadCoilsResponse) m_Transaction.getResponse();
+  }//transactCoils
+
+  /**
+   * Executes the reused <tt>ReadInputDiscretesRequest</tt>.
+   *
+   * @param ref    the offset to start reading from.
+   * @param count  the number of input discrete states to be read.
+   * @return the <tt>ReadInputDiscretesResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadInputDiscretesResponse transactInputDiscretes(int ref, int count)
+      throws ModbusException {
+    m_ReadInputDiscretesRequest.setReference(ref);
+    m_ReadInputDiscretesRequest.setBitCount(count);
+    m_Transaction.setRequest(m_ReadInputDiscretesRequest);
+    m_Transaction.execute();
+    return (ReadInputDiscretesResponse) m_Transaction.getResponse();
+  }//transactInputDiscretes
+
+  /**
+   * Executes the reused <tt>ReadInputRegistersRequest</tt>.
+   *
+   * @param ref    the offset to start reading from.
+   * @param count  the number of input registers to be read.
+   * @return the <tt>ReadInputRegistersResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadInputRegistersResponse transactInputRegisters(int ref, int count)
+      throws ModbusException {
+    m_ReadInputRegistersRequest.setReference(ref);
+    m_ReadInputRegistersRequest.setWordCount(count);
+    m_Transaction.setRequest(m_ReadInputRegistersRequest);
+    m_Transaction.execute();
+    return (ReadInputRegistersResponse) m_Transaction.getResponse();
+  }//transactInputRegisters
+
+  /**
+   * Executes the reused <tt>ReadMultipleRegistersRequest</tt>.
+   *
+   * @param ref    the offset to start reading from.
+   * @param count  the number of registers to be read.
+   * @return the <tt>ReadMultipleRegistersResponse</tt> of the slave.
+   * @throws ModbusException if an I/O error, a slave exception or
+   *                         a transaction error occurs.
+   */
+  private ReadMultipleRegistersResponse transactMultipleRegisters(int ref, int count)
+      throws ModbusException {
+    m_ReadMultipleRegistersRequest.setReference(ref);
+    m_ReadMultipleRegistersRequest.setWordCount(count);
+    m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+    m_Transaction.execute();
+    return (ReadMultipleRegistersResponse) m_Transaction.getResponse();
+  }//transactMultipleRegisters
+
 }//class ModbusUDPMaster
@@ -0,0 +1,259 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import pl.itachi.modbus.Modbus;
+
+/**
+ * Class representing a range of coils, input discretes or
+ * registers of a unit that is to be read as part of a
+ * <tt>ReadPlan</tt>.
+ * <p>
+ * The values are scattered back into the item each time the
+ * plan has been executed; registers are held as unsigned
+ * 16 bit values, bits as 1 or 0.
+ *
+ * @see ReadPlanner
+ */
+public class ReadItem {
+
+  /**
+   * Enumeration of the tables of the Modbus data model,
+   * each read with its own function code.
+   */
+  public enum Table {
+    /**
+     * Coils, read with function code 1.
+     */
+    COILS(Modbus.READ_COILS, Modbus.MAX_BITS),
+    /**
+     * Input discretes, read with function code 2.
+     */
+    INPUT_DISCRETES(Modbus.READ_INPUT_DISCRETES, Modbus.MAX_BITS),
+    /**
+     * Holding registers, read with function code 3.
+     */
+    HOLDING_REGISTERS(Modbus.READ_MULTIPLE_REGISTERS, Modbus.MAX_READ_REGISTERS),
+    /**
+     * Input registers, read with function code 4.
+     */
+    INPUT_REGISTERS(Modbus.READ_INPUT_REGISTERS, Modbus.MAX_READ_REGISTERS);
+
+    private final int m_FunctionCode;
+    private final int m_MaxCount;
+
+    Table(int functionCode, int maxCount) {
+      m_FunctionCode = functionCode;
+      m_MaxCount = maxCount;
+    }//constructor
+
+    /**
+     * Returns the function code reading this table.
+     *
+     * @return the function code as <tt>int</tt>.
+     */
+    public int getFunctionCode() {
+      return m_FunctionCode;
+    }//getFunctionCode
+
+    /**
+     * Returns the maximum number of elements of this
+     * table that can be read with a single request.
+     *
+     * @return the maximum count as <tt>int</tt>.
+     */
+    public int getMaxCount() {
+      return m_MaxCount;
+    }//getMaxCount
+
+    /**
+     * Tests if this table holds bits rather than registers.
+     *
+     * @return true if coils or input discretes, false otherwise.
+     */
+    public boolean isBitTable() {
+      return m_MaxCount == Modbus.MAX_BITS;
+    }//isBitTable
+  }//enum Table
+
+  //instance attributes
+  private final int m_UnitID;
+  private final Table m_Table;
+  private final int m_Reference;
+  private final int m_Count;
+  private final int[] m_Values;
+  private volatile boolean m_Valid;
+  private volatile int m_ExceptionCode;
+
+  /**
+   * Constructs a new <tt>ReadItem</tt> instance.
+   *
+   * @param unitid    the unit identifier of the slave.
+   * @param table     the <tt>Table</tt> to be read.
+   * @param reference the address of the first element.
+   * @param count     the number of elements to be read.
+   * @throws IllegalArgumentException if the range cannot be read
+   *                                  with a single request.
+   */
+  public ReadItem(int unitid, Table table, int reference, int count) {
+    if (unitid < 0 || unitid > 255) {
+      throw new IllegalArgumentException("Unit identifier out of range: " + unitid);
+    }
+    if (count < 1 || count > table.getMaxCount()
+        || reference < 0 || reference + count > 65536) {
+      throw new IllegalArgumentException(
+          "Invalid range " + reference + "+" + count + " of " + table);
+    }
+    m_UnitID = unitid;
+    m_Table = table;
+    m_Reference = reference;
+    m_Count = count;
+    m_Values = new int[count];
+  }//constructor
+
+  /**
+   * Returns the unit identifier of the slave.
+   *
+   * @return the unit identifier as <tt>int</tt>.
+   */
+  public int getUnitID() {
+    return m_UnitID;
+  }//getUnitID
+
+  /**
+   * Returns the table this item is read from.
+   *
+   * @return the <tt>Table</tt>.
+   */
+  public Table getTable() {
+    return m_Table;
+  }//getTable
+
+  /**
+   * Returns the address of the first element.
+   *
+   * @return the reference as <tt>int</tt>.
+   */
+  public int getReference() {
+    return m_Reference;
+  }//getReference
+
+  /**
+   * Returns the number of elements of this item.
+   *
+   * @return the count as <tt>int</tt>.
+   */
+  public int getCount() {
+    return m_Count;
+  }//getCount
+
+  /**
+   * Returns the value of the element at the given index,
+   * relative to the reference of this item.
+   *
+   * @param index the relative index of the element.
+   * @return the unsigned register value, or 1 or 0 for a bit.
+   * @throws IndexOutOfBoundsException if the index is out of bounds.
+   */
+  public int getValue(int index) {
+    return m_Values[index];
+  }//getValue
+
+  /**
+   * Returns the state of the bit at the given index,
+   * relative to the reference of this item.
+   *
+   * @param index the relative index of the element.
+   * @return true if set, false otherwise.
+   * @throws IndexOutOfBoundsException if the index is out of bounds.
+   */
+  public boolean getBit(int index) {
+    return m_Values[index] != 0;
+  }//getBit
+
+  /**
+   * Returns a copy of the values of this item.
+   *
+   * @return the values as <tt>int[]</tt>.
+   */
+  public int[] getValues() {
+    return m_Values.clone();
+  }//getValues
+
+  /**
+   * Tests if the values of this item have been read
+   * successfully with the last execution of the plan.
+   *
+   * @return true if valid, false otherwise.
+   */
+  public boolean isValid() {
+    return m_Valid;
+  }//isValid
+
+  /**
+   * Returns the code of the exception the slave answered the
+   * last read of this item with.
+   *
+   * @return the exception code, or 0 if there was no exception.
+   */
+  public int getExceptionCode() {
+    return m_ExceptionCode;
+  }//getExceptionCode
+
+  /**
+   * Sets the value of the element at the given index.
+   *
+   * @param index the relative index of the element.
+   * @param value the value to be set.
+   */
+  void setValue(int index, int value) {
+    m_Values[index] = value;
+  }//setValue
+
+  /**
+   * Sets the outcome of the last read of this item.
+   *
+   * @param valid         true if the values have been read.
+   * @param exceptionCode the exception code of the slave, or 0.
+   */
+  void setResult(boolean valid, int exceptionCode) {
+    m_ExceptionCode = exceptionCode;
+    m_Valid = valid;
+  }//setResult
+
+  public String toString() {
+    return "ReadItem[unit=" + m_UnitID + "," + m_Table + "," + m_Reference + "+" + m_Count + "]";
+  }//toString
+
+}//class ReadItem
@@ -0,0 +1,291 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import pl.itachi.modbus.ModbusCircuitOpenException;
+import pl.itachi.modbus.ModbusException;
+import pl.itachi.modbus.ModbusSlaveException;
+import pl.itachi.modbus.io.ModbusTransaction;
+import pl.itachi.modbus.msg.ExceptionResponse;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.msg.ReadCoilsRequest;
+import pl.itachi.modbus.msg.ReadCoilsResponse;
+import pl.itachi.modbus.msg.ReadInputDiscretesRequest;
+import pl.itachi.modbus.msg.ReadInputDiscretesResponse;
+import pl.itachi.modbus.msg.ReadInputRegistersRequest;
+import pl.itachi.modbus.msg.ReadInputRegistersResponse;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+import pl.itachi.modbus.msg.ReadMultipleRegistersResponse;
+
+/**
+ * Class representing a compiled set of read requests, each
+ * covering one or more <tt>ReadItem</tt>s.
+ * <p>
+ * A plan is created by a <tt>ReadPlanner</tt> and reused for every
+ * scan cycle; its requests are created once. After the response
+ * to a request has been received, its values are scattered back
+ * to the items the request covers.
+ * <p>
+ * The requests may be executed one after another with
+ * {@link #execute(ModbusTransaction)}, or by the caller, e.g.
+ * pipelined, using {@link #getRequest(int)} and
+ * {@link #scatter(int, ModbusResponse)}. Executions of the same
+ * plan must not overlap.
+ *
+ * @see ReadPlanner
+ */
+public class ReadPlan {
+
+  //instance attributes
+  private final Block[] m_Blocks;
+  private final List<ReadItem> m_Items;
+
+  /**
+   * Constructs a new <tt>ReadPlan</tt> instance.
+   *
+   * @param blocks the requests of the plan with the items they cover.
+   */
+  ReadPlan(List<Block> blocks) {
+    m_Blocks = blocks.toArray(new Block[blocks.size()]);
+    List<ReadItem> items = new ArrayList<ReadItem>();
+    for (int i = 0; i < m_Blocks.length; i++) {
+      Collections.addAll(items, m_Blocks[i].m_Items);
+    }
+    m_Items = Collections.unmodifiableList(items);
+  }//constructor
+
+  /**
+   * Returns the number of requests of this plan.
+   *
+   * @return the number of requests as <tt>int</tt>.
+   */
+  public int getRequestCount() {
+    return m_Blocks.length;
+  }//getRequestCount
+
+  /**
+   * Returns the request with the given index.
+   *
+   * @param index the index of the request.
+   * @return the <tt>ModbusRequest</tt>.
+   * @throws IndexOutOfBoundsException if the index is out of bounds.
+   */
+  public ModbusRequest getRequest(int index) {
+    return m_Blocks[index].m_Request;
+  }//getRequest
+
+  /**
+   * Returns the items covered by this plan.
+   *
+   * @return an unmodifiable <tt>List</tt> of <tt>ReadItem</tt>s.
+   */
+  public List<ReadItem> getItems() {
+    return m_Items;
+  }//getItems
+
+  /**
+   * Executes all requests of this plan with the given transaction
+   * and scatters the values read back to the items.
+   * <p>
+   * Items of a request answered with an exception by the slave, or
+   * not executed because the circuit of the slave is open, are marked
+   * invalid and the remaining requests are executed. Any other failure
+   * marks the items of the remaining requests invalid and is rethrown.
+   *
+   * @param transaction the <tt>ModbusTransaction</tt> to be used.
+   * @throws ModbusException if an I/O or transaction error occurs.
+   */
+  public void execute(ModbusTransaction transaction)
+      throws ModbusException {
+    for (int i = 0; i < m_Blocks.length; i++) {
+      transaction.setRequest(m_Blocks[i].m_Request);
+      try {
+        transaction.execute();
+      } catch (ModbusSlaveException ex) {
+        m_Blocks[i].setResult(false, ex.getType());
+        continue;
+      } catch (ModbusCircuitOpenException ex) {
+        invalidate(i);
+        continue;
+      } catch (ModbusException ex) {
+        for (int j = i; j < m_Blocks.length; j++) {
+          invalidate(j);
+        }
+        throw ex;
+      }
+      scatter(i, transaction.getResponse());
+    }
+  }//execute
+
+  /**
+   * Scatters the values of the given response back to the items
+   * covered by the request with the given index.
+   * An <tt>ExceptionResponse</tt> marks the items invalid.
+   *
+   * @param index    the index of the request.
+   * @param response the <tt>ModbusResponse</tt> to the request.
+   */
+  public void scatter(int index, ModbusResponse response) {
+    Block block = m_Blocks[index];
+    if (response instanceof ExceptionResponse) {
+      block.setResult(false, ((ExceptionResponse) response).getExceptionCode());
+      return;
+    }
+    for (int i = 0; i < block.m_Items.length; i++) {
+      ReadItem item = block.m_Items[i];
+      item.setResult(copy(item, item.getReference() - block.m_Reference, response), 0);
+    }
+  }//scatter
+
+  /**
+   * Marks the items covered by the request with the given index
+   * invalid, e.g. because the request failed or timed out.
+   *
+   * @param index the index of the request.
+   */
+  public void invalidate(int index) {
+    m_Blocks[index].setResult(false, 0);
+  }//invalidate
+
+  public String toString() {
+    return "ReadPlan[requests=" + m_Blocks.length + ",items=" + m_Items.size() + "]";
+  }//toString
+
+  /**
+   * Copies the values of an item from the given response.
+   *
+   * @param item     the <tt>ReadItem</tt> to be filled.
+   * @param offset   the offset of the item within the response.
+   * @param response the <tt>ModbusResponse</tt> holding the values.
+   * @return true if the response holds all values of the item,
+   *         false otherwise.
+   */
+  private static boolean copy(ReadItem item, int offset, ModbusResponse response) {
+    int count = item.getCount();
+    if (response instanceof ReadMultipleRegistersResponse) {
+      ReadMultipleRegistersResponse r = (ReadMultipleRegistersResponse) response;
+      if (r.getWordCount() < offset + count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        item.setValue(i, r.getRegisterValue(offset + i));
+      }
+    } else if (response instanceof ReadInputRegistersResponse) {
+      ReadInputRegistersResponse r = (ReadInputRegistersResponse) response;
+      if (r.getWordCount() < offset + count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        item.setValue(i, r.getRegisterValue(offset + i));
+      }
+    } else if (response instanceof ReadCoilsResponse) {
+      ReadCoilsResponse r = (ReadCoilsResponse) response;
+      if (r.getBitCount() < offset + count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        item.setValue(i, r.getCoilStatus(offset + i) ? 1 : 0);
+      }
+    } else if (response instanceof ReadInputDiscretesResponse) {
+      ReadInputDiscretesResponse r = (ReadInputDiscretesResponse) response;
+      //the bit count is not decoded, the vector holds all bytes received
+      if (r.getDiscretes().size() < offset + count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        item.setValue(i, r.getDiscreteStatus(offset + i) ? 1 : 0);
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }//copy
+
+  /**
+   * Class representing one request of the plan
+   * together with the items it covers.
+   */
+  static final class Block {
+
+    private final int m_Reference;
+    private final ReadItem[] m_Items;
+    private final ModbusRequest m_Request;
+
+    /**
+     * Constructs a new <tt>Block</tt> instance.
+     *
+     * @param first the item with the lowest address.
+     * @param end   the address following the last element read.
+     * @param items the items covered by the request.
+     */
+    Block(ReadItem first, int end, List<ReadItem> items) {
+      m_Reference = first.getReference();
+      m_Items = items.toArray(new ReadItem[items.size()]);
+      int count = end - m_Reference;
+      switch (first.getTable()) {
+        case COILS:
+          m_Request = new ReadCoilsRequest(m_Reference, count);
+          break;
+        case INPUT_DISCRETES:
+          m_Request = new ReadInputDiscretesRequest(m_Reference, count);
+          break;
+        case INPUT_REGISTERS:
+          m_Request = new ReadInputRegistersRequest(m_Reference, count);
+          break;
+        default:
+          m_Request = new ReadMultipleRegistersRequest(m_Reference, count);
+          break;
+      }
+      m_Request.setUnitID(first.getUnitID());
+    }//constructor
+
+    /**
+     * Sets the outcome of the request for all items it covers.
+     *
+     * @param valid         true if the values have been read.
+     * @param exceptionCode the exception code of the slave, or 0.
+     */
+    void setResult(boolean valid, int exceptionCode) {
+      for (int i = 0; i < m_Items.length; i++) {
+        m_Items[i].setResult(valid, exceptionCode);
+      }
+    }//setResult
+  }//class Block
+
+}//class ReadPlan
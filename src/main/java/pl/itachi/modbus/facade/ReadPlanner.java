@@ -0,0 +1,220 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class implementing a planner that compiles a set of
+ * <tt>ReadItem</tt>s into the minimal set of read requests
+ * (function codes 1 to 4) covering them.
+ * <p>
+ * Items of the same unit and table are merged into one request
+ * as long as the request stays within the limits of the protocol
+ * (125 registers or {@link pl.itachi.modbus.Modbus#MAX_BITS} bits)
+ * and the gap between neighbouring items does not exceed the
+ * configured maximum. Bridging a small gap costs a few bytes
+ * of payload, whereas an extra request costs a full round trip.
+ * <p>
+ * Note that bridged gaps are read from the slave as well; slaves
+ * answering unmapped addresses with an exception require the
+ * gaps to be set to 0.
+ * <p>
+ * The resulting <tt>ReadPlan</tt> is meant to be compiled once
+ * and executed every scan cycle.
+ *
+ * @see ReadPlan
+ */
+public class ReadPlanner {
+
+  /**
+   * Defines the default maximum gap of registers
+   * bridged within one request (<b>16</b>).
+   */
+  public static final int DEFAULT_REGISTER_GAP = 16;
+
+  /**
+   * Defines the default maximum gap of bits
+   * bridged within one request (<b>256</b>).
+   */
+  public static final int DEFAULT_BIT_GAP = 256;
+
+  //orders items by unit, table and address
+  private static final Comparator<ReadItem> ITEM_ORDER = new Comparator<ReadItem>() {
+    public int compare(ReadItem a, ReadItem b) {
+      if (a.getUnitID() != b.getUnitID()) {
+        return a.getUnitID() - b.getUnitID();
+      }
+      if (a.getTable() != b.getTable()) {
+        return a.getTable().compareTo(b.getTable());
+      }
+      return a.getReference() - b.getReference();
+    }
+  };
+
+  //instance attributes
+  private List<ReadItem> m_Items = new ArrayList<ReadItem>();
+  private int m_MaxRegisterGap = DEFAULT_REGISTER_GAP;
+  private int m_MaxBitGap = DEFAULT_BIT_GAP;
+
+  /**
+   * Adds an item to be read.
+   *
+   * @param item the <tt>ReadItem</tt> to be added.
+   * @return the item.
+   */
+  public ReadItem addItem(ReadItem item) {
+    m_Items.add(item);
+    return item;
+  }//addItem
+
+  /**
+   * Adds an item to be read.
+   *
+   * @param unitid    the unit identifier of the slave.
+   * @param table     the <tt>ReadItem.Table</tt> to be read.
+   * @param reference the address of the first element.
+   * @param count     the number of elements to be read.
+   * @return the new <tt>ReadItem</tt>, holding the values read.
+   * @throws IllegalArgumentException if the range cannot be read
+   *                                  with a single request.
+   */
+  public ReadItem addItem(int unitid, ReadItem.Table table, int reference, int count) {
+    return addItem(new ReadItem(unitid, table, reference, count));
+  }//addItem
+
+  /**
+   * Returns the number of items added to this planner.
+   *
+   * @return the number of items as <tt>int</tt>.
+   */
+  public int getItemCount() {
+    return m_Items.size();
+  }//getItemCount
+
+  /**
+   * Sets the maximum number of unused registers between two
+   * items that are bridged to read both with one request.
+   *
+   * @param gap the maximum gap, 0 to merge adjacent items only.
+   */
+  public void setMaxRegisterGap(int gap) {
+    m_MaxRegisterGap = Math.max(0, gap);
+  }//setMaxRegisterGap
+
+  /**
+   * Returns the maximum number of unused registers
+   * bridged within one request.
+   *
+   * @return the maximum gap as <tt>int</tt>.
+   */
+  public int getMaxRegisterGap() {
+    return m_MaxRegisterGap;
+  }//getMaxRegisterGap
+
+  /**
+   * Sets the maximum number of unused bits between two
+   * items that are bridged to read both with one request.
+   *
+   * @param gap the maximum gap, 0 to merge adjacent items only.
+   */
+  public void setMaxBitGap(int gap) {
+    m_MaxBitGap = Math.max(0, gap);
+  }//setMaxBitGap
+
+  /**
+   * Returns the maximum number of unused bits
+   * bridged within one request.
+   *
+   * @return the maximum gap as <tt>int</tt>.
+   */
+  public int getMaxBitGap() {
+    return m_MaxBitGap;
+  }//getMaxBitGap
+
+  /**
+   * Compiles the items added so far into a <tt>ReadPlan</tt>.
+   * <p>
+   * Items are taken in the order of their addresses and merged
+   * greedily, which yields the minimal number of requests for
+   * the given gaps and limits.
+   *
+   * @return the compiled <tt>ReadPlan</tt>.
+   */
+  public ReadPlan compile() {
+    List<ReadItem> items = new ArrayList<ReadItem>(m_Items);
+    Collections.sort(items, ITEM_ORDER);
+
+    List<ReadPlan.Block> blocks = new ArrayList<ReadPlan.Block>();
+    List<ReadItem> members = new ArrayList<ReadItem>();
+    ReadItem first = null;
+    int end = 0;
+    for (ReadItem item : items) {
+      int itemEnd = item.getReference() + item.getCount();
+      if (first != null
+          && item.getUnitID() == first.getUnitID()
+          && item.getTable() == first.getTable()
+          && item.getReference() - end <= getMaxGap(item.getTable())
+          && Math.max(end, itemEnd) - first.getReference() <= item.getTable().getMaxCount()) {
+        end = Math.max(end, itemEnd);
+      } else {
+        if (first != null) {
+          blocks.add(new ReadPlan.Block(first, end, members));
+          members.clear();
+        }
+        first = item;
+        end = itemEnd;
+      }
+      members.add(item);
+    }
+    if (first != null) {
+      blocks.add(new ReadPlan.Block(first, end, members));
+    }
+    return new ReadPlan(blocks);
+  }//compile
+
+  /**
+   * Returns the maximum gap bridged in the given table.
+   *
+   * @param table a <tt>ReadItem.Table</tt>.
+   * @return the maximum gap as <tt>int</tt>.
+   */
+  private int getMaxGap(ReadItem.Table table) {
+    return (table.isBitTable()) ? m_MaxBitGap : m_MaxRegisterGap;
+  }//getMaxGap
+
+}//class ReadPlanner
@@ -0,0 +1,534 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusException;
+
+/**
+ * Class implementing a scan engine that executes the
+ * <tt>ReadPlan</tt>s of many <tt>ScanGroup</tt>s at fixed rates.
+ * <p>
+ * A single timer thread keeps the groups in a heap ordered by
+ * their next deadline and hands due cycles to a fixed number of
+ * worker threads. Cycles are aligned to the wall clock: a group
+ * with a period of 1000 ms is scanned at the same offset within
+ * every second. Unless given explicitly, the offsets of groups
+ * with the same period are spread over the period, so that they
+ * are not all due at once.
+ * <p>
+ * Each <tt>PlanReader</tt> is an endpoint that executes at most
+ * a given number of cycles at the same time; further due cycles
+ * wait for the endpoint in the order they became due.
+ * <p>
+ * A cycle that is due while the previous cycle of the same group
+ * is still waiting or running is skipped and counted as overrun,
+ * instead of piling up behind it.
+ *
+ * @see ReadPlanner
+ */
+public class ScanEngine
+    implements Runnable {
+
+  /**
+   * Defines the default number of cycles an endpoint
+   * executes at the same time (<b>1</b>).
+   */
+  public static final int DEFAULT_CONCURRENCY = 1;
+
+  /**
+   * Defines the number of recent cycles of a group
+   * duration percentiles are computed over (<b>1024</b>).
+   */
+  public static final int STATISTICS_WINDOW = 1024;
+
+  //fraction of the period between the offsets of consecutive groups
+  private static final double PHASE_SPREAD = 0.6180339887498949;
+
+  //orders groups by their next deadline
+  private static final Comparator<ScanGroup> DEADLINE_ORDER = new Comparator<ScanGroup>() {
+    public int compare(ScanGroup a, ScanGroup b) {
+      return Long.signum(a.m_Deadline - b.m_Deadline);
+    }
+  };
+
+  //instance attributes
+  private final ReentrantLock m_Lock = new ReentrantLock();
+  private final Condition m_Changed = m_Lock.newCondition();
+  private final PriorityQueue<ScanGroup> m_Timer =
+      new PriorityQueue<ScanGroup>(64, DEADLINE_ORDER);
+  private final List<ScanGroup> m_Groups = new ArrayList<ScanGroup>();
+  private final Map<PlanReader, Endpoint> m_Endpoints =
+      new IdentityHashMap<PlanReader, Endpoint>();
+  private final Map<Long, Integer> m_PeriodCounts = new HashMap<Long, Integer>();
+  private final ScanStatistics m_Statistics = new ScanStatistics(STATISTICS_WINDOW * 8);
+  private final int m_WorkerCount;
+  private ExecutorService m_Workers;
+  private Thread m_Thread;
+  private volatile boolean m_Running;
+
+  /**
+   * Constructs a new <tt>ScanEngine</tt> instance.
+   *
+   * @param workers the number of threads executing cycles.
+   */
+  public ScanEngine(int workers) {
+    m_WorkerCount = Math.max(1, workers);
+  }//constructor
+
+  /**
+   * Adds a group scanning the given plan at a fixed rate,
+   * at an offset within the period chosen by the engine.
+   *
+   * @param reader   the <tt>PlanReader</tt> executing the plan.
+   * @param plan     the <tt>ReadPlan</tt> to be executed every cycle.
+   * @param period   the period in milliseconds.
+   * @param listener the <tt>ScanListener</tt> to be called after every
+   *                 cycle, or null.
+   * @return the new <tt>ScanGroup</tt>.
+   */
+  public ScanGroup addGroup(PlanReader reader, ReadPlan plan, long period,
+                            ScanListener listener) {
+    if (period < 1) {
+      throw new IllegalArgumentException("Invalid period: " + period);
+    }
+    m_Lock.lock();
+    try {
+      Integer count = m_PeriodCounts.get(period);
+      int n = (count == null) ? 0 : count;
+      m_PeriodCounts.put(period, n + 1);
+      long phase = (long) ((n * PHASE_SPREAD) % 1.0 * period);
+      ScanGroup group = addGroup(reader, plan, period, phase, listener);
+      group.m_Spread = true;
+      return group;
+    } finally {
+      m_Lock.unlock();
+    }
+  }//addGroup
+
+  /**
+   * Adds a group scanning the given plan at a fixed rate.
+   *
+   * @param reader   the <tt>PlanReader</tt> executing the plan.
+   * @param plan     the <tt>ReadPlan</tt> to be executed every cycle.
+   * @param period   the period in milliseconds.
+   * @param phase    the offset of the cycles within the period,
+   *                 relative to the wall clock, in milliseconds.
+   * @param listener the <tt>ScanListener</tt> to be called after every
+   *                 cycle, or null.
+   * @return the new <tt>ScanGroup</tt>.
+   */
+  public ScanGroup addGroup(PlanReader reader, ReadPlan plan, long period,
+                            long phase, ScanListener listener) {
+    if (period < 1 || phase < 0 || phase >= period) {
+      throw new IllegalArgumentException("Invalid period or phase: " + period + "/" + phase);
+    }
+    m_Lock.lock();
+    try {
+      ScanGroup group = new ScanGroup(reader, plan, period, phase, listener,
+          getEndpoint(reader), new ScanStatistics(STATISTICS_WINDOW));
+      m_Groups.add(group);
+      if (m_Running) {
+        schedule(group);
+      }
+      return group;
+    } finally {
+      m_Lock.unlock();
+    }
+  }//addGroup
+
+  /**
+   * Removes the given group; a cycle already due will
+   * still be completed. The endpoint of its reader, and with it
+   * the maximum concurrency set for the reader, is dropped with
+   * the last group of the reader.
+   *
+   * @param group the <tt>ScanGroup</tt> to be removed.
+   */
+  public void removeGroup(ScanGroup group) {
+    m_Lock.lock();
+    try {
+      if (group.m_Removed || !m_Groups.remove(group)) {
+        return;
+      }
+      group.m_Removed = true;
+      m_Timer.remove(group);
+      if (group.m_Spread) {
+        //frees the slot, so that later groups spread over the remaining ones
+        Integer count = m_PeriodCounts.get(group.getPeriod());
+        if (count == null || count <= 1) {
+          m_PeriodCounts.remove(group.getPeriod());
+        } else {
+          m_PeriodCounts.put(group.getPeriod(), count - 1);
+        }
+      }
+      for (ScanGroup g : m_Groups) {
+        if (g.getReader() == group.getReader()) {
+          return;
+        }
+      }
+      m_Endpoints.remove(group.getReader());
+    } finally {
+      m_Lock.unlock();
+    }
+  }//removeGroup
+
+  /**
+   * Returns the number of groups of this engine.
+   *
+   * @return the number of groups as <tt>int</tt>.
+   */
+  public int getGroupCount() {
+    m_Lock.lock();
+    try {
+      return m_Groups.size();
+    } finally {
+      m_Lock.unlock();
+    }
+  }//getGroupCount
+
+  /**
+   * Sets the number of cycles the given reader
+   * executes at the same time.
+   *
+   * @param reader the <tt>PlanReader</tt>.
+   * @param max    the maximum number of cycles, at least 1.
+   */
+  public void setMaxConcurrency(PlanReader reader, int max) {
+    Endpoint endpoint;
+    m_Lock.lock();
+    try {
+      endpoint = getEndpoint(reader);
+    } finally {
+      m_Lock.unlock();
+    }
+    synchronized (endpoint) {
+      endpoint.m_MaxConcurrency = Math.max(1, max);
+    }
+    drain(endpoint);
+  }//setMaxConcurrency
+
+  /**
+   * Returns the statistics of all cycles of this engine.
+   *
+   * @return the <tt>ScanStatistics</tt>.
+   */
+  public ScanStatistics getStatistics() {
+    return m_Statistics;
+  }//getStatistics
+
+  /**
+   * Starts this <tt>ScanEngine</tt>.
+   */
+  public void start() {
+    m_Lock.lock();
+    try {
+      if (m_Running) {
+        return;
+      }
+      final AtomicInteger threads = new AtomicInteger();
+      m_Workers = Executors.newFixedThreadPool(m_WorkerCount, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "ScanEngine-" + threads.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      m_Running = true;
+      for (ScanGroup group : m_Groups) {
+        schedule(group);
+      }
+      m_Thread = new Thread(this, "ScanEngine");
+      m_Thread.setDaemon(true);
+      m_Thread.start();
+    } finally {
+      m_Lock.unlock();
+    }
+  }//start
+
+  /**
+   * Stops this <tt>ScanEngine</tt>. Cycles already running
+   * are completed, waiting cycles are dropped.
+   */
+  public void stop() {
+    Thread thread;
+    m_Lock.lock();
+    try {
+      if (!m_Running) {
+        return;
+      }
+      m_Running = false;
+      m_Timer.clear();
+      m_Changed.signal();
+      thread = m_Thread;
+      m_Workers.shutdown();
+      for (Endpoint endpoint : m_Endpoints.values()) {
+        synchronized (endpoint) {
+          ScanGroup group;
+          while ((group = endpoint.m_Pending.poll()) != null) {
+            group.m_Busy.set(false);
+          }
+        }
+      }
+    } finally {
+      m_Lock.unlock();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }//stop
+
+  /**
+   * Tests if this <tt>ScanEngine</tt> is running.
+   *
+   * @return true if running, false otherwise.
+   */
+  public boolean isRunning() {
+    return m_Running;
+  }//isRunning
+
+  /**
+   * Runs the timer, dispatching the cycles of
+   * the groups as they become due.
+   */
+  public void run() {
+    m_Lock.lock();
+    try {
+      while (m_Running) {
+        ScanGroup group = m_Timer.peek();
+        if (group == null) {
+          m_Changed.await();
+          continue;
+        }
+        long now = System.nanoTime();
+        if (group.m_Deadline - now > 0) {
+          m_Changed.awaitNanos(group.m_Deadline - now);
+          continue;
+        }
+        m_Timer.poll();
+        //skip deadlines the timer missed altogether
+        long period = group.getPeriod() * 1000000L;
+        long missed = (now - group.m_Deadline) / period;
+        long deadline = group.m_Deadline + missed * period;
+        if (missed > 0) {
+          overrun(group, missed);
+        }
+        group.m_Deadline = deadline + period;
+        m_Timer.add(group);
+        dispatch(group, deadline);
+      }
+    } catch (InterruptedException ex) {
+      if (Modbus.debug) ex.printStackTrace();
+    } finally {
+      m_Lock.unlock();
+    }
+  }//run
+
+  /**
+   * Schedules the first cycle of the given group at the next
+   * time its phase is reached on the wall clock.
+   *
+   * @param group the <tt>ScanGroup</tt> to be scheduled.
+   */
+  private void schedule(ScanGroup group) {
+    long wall = System.currentTimeMillis();
+    long now = System.nanoTime();
+    long period = group.getPeriod();
+    long next = Math.floorDiv(wall - group.getPhase(), period) * period
+        + group.getPhase() + period;
+    group.m_Deadline = now + (next - wall) * 1000000L;
+    m_Timer.add(group);
+    m_Changed.signal();
+  }//schedule
+
+  /**
+   * Dispatches a due cycle of the given group to its endpoint,
+   * unless the previous cycle has not been completed yet.
+   *
+   * @param group    the <tt>ScanGroup</tt> that is due.
+   * @param deadline the deadline of the cycle, in nanoseconds.
+   */
+  private void dispatch(ScanGroup group, long deadline) {
+    if (!group.m_Busy.compareAndSet(false, true)) {
+      overrun(group, 1);
+      return;
+    }
+    group.m_CycleDeadline = deadline;
+    Endpoint endpoint = group.m_Endpoint;
+    synchronized (endpoint) {
+      endpoint.m_Pending.add(group);
+    }
+    drain(endpoint);
+  }//dispatch
+
+  /**
+   * Starts waiting cycles of the given endpoint as
+   * long as it has capacity left.
+   *
+   * @param endpoint the <tt>Endpoint</tt>.
+   */
+  private void drain(Endpoint endpoint) {
+    while (true) {
+      ScanGroup group;
+      synchronized (endpoint) {
+        if (endpoint.m_Active >= endpoint.m_MaxConcurrency
+            || endpoint.m_Pending.isEmpty()) {
+          return;
+        }
+        group = endpoint.m_Pending.poll();
+        endpoint.m_Active++;
+      }
+      execute(group);
+    }
+  }//drain
+
+  /**
+   * Hands a cycle of the given group to the workers.
+   *
+   * @param group the <tt>ScanGroup</tt> to be scanned.
+   */
+  private void execute(final ScanGroup group) {
+    try {
+      m_Workers.execute(new Runnable() {
+        public void run() {
+          scan(group);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      //stopped
+      group.m_Busy.set(false);
+      synchronized (group.m_Endpoint) {
+        group.m_Endpoint.m_Active--;
+      }
+    }
+  }//execute
+
+  /**
+   * Executes a cycle of the given group and notifies its listener.
+   *
+   * @param group the <tt>ScanGroup</tt> to be scanned.
+   */
+  private void scan(ScanGroup group) {
+    try {
+      long start = System.nanoTime();
+      ModbusException failure = null;
+      try {
+        group.getReader().read(group.getPlan());
+      } catch (ModbusException ex) {
+        failure = ex;
+      } catch (RuntimeException ex) {
+        failure = new ModbusException(ex.toString());
+      }
+      long duration = System.nanoTime() - start;
+      long jitter = Math.max(0, start - group.m_CycleDeadline);
+      group.getStatistics().cycleCompleted(jitter, duration, failure != null);
+      m_Statistics.cycleCompleted(jitter, duration, failure != null);
+
+      ScanListener listener = group.getListener();
+      if (listener != null) {
+        if (failure == null) {
+          listener.scanCompleted(group);
+        } else {
+          listener.scanFailed(group, failure);
+        }
+      }
+    } catch (RuntimeException ex) {
+      //a failing listener must not stop the engine
+      if (Modbus.debug) ex.printStackTrace();
+    } finally {
+      group.m_Busy.set(false);
+      Endpoint endpoint = group.m_Endpoint;
+      synchronized (endpoint) {
+        endpoint.m_Active--;
+      }
+      drain(endpoint);
+    }
+  }//scan
+
+  /**
+   * Accounts for skipped cycles of the given group.
+   *
+   * @param group the <tt>ScanGroup</tt>.
+   * @param count the number of cycles skipped.
+   */
+  private void overrun(ScanGroup group, long count) {
+    group.getStatistics().overrun(count);
+    m_Statistics.overrun(count);
+  }//overrun
+
+  /**
+   * Returns the endpoint of the given reader, creating it
+   * if necessary. Must be called holding the lock.
+   *
+   * @param reader the <tt>PlanReader</tt>.
+   * @return the <tt>Endpoint</tt>.
+   */
+  private Endpoint getEndpoint(PlanReader reader) {
+    Endpoint endpoint = m_Endpoints.get(reader);
+    if (endpoint == null) {
+      endpoint = new Endpoint();
+      m_Endpoints.put(reader, endpoint);
+    }
+    return endpoint;
+  }//getEndpoint
+
+  /**
+   * Class holding the cycles running and waiting
+   * for one <tt>PlanReader</tt>.
+   */
+  static final class Endpoint {
+    private int m_MaxConcurrency = DEFAULT_CONCURRENCY;
+    private int m_Active;
+    private final ArrayDeque<ScanGroup> m_Pending = new ArrayDeque<ScanGroup>();
+  }//class Endpoint
+
+}//class ScanEngine
@@ -0,0 +1,146 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class representing a <tt>ReadPlan</tt> that is executed by a
+ * <tt>ScanEngine</tt> at a fixed rate against a <tt>PlanReader</tt>.
+ * <p>
+ * Groups are created by {@link ScanEngine#addGroup}.
+ */
+public class ScanGroup {
+
+  //instance attributes
+  private final PlanReader m_Reader;
+  private final ReadPlan m_Plan;
+  private final long m_Period;
+  private final long m_Phase;
+  private final ScanListener m_Listener;
+  private final ScanStatistics m_Statistics;
+
+  //scheduling state, maintained by the engine
+  final ScanEngine.Endpoint m_Endpoint;
+  final AtomicBoolean m_Busy = new AtomicBoolean();
+  long m_Deadline;
+  long m_CycleDeadline;
+  boolean m_Removed;
+  //true if the engine chose the phase, spreading the groups of a period
+  boolean m_Spread;
+
+  /**
+   * Constructs a new <tt>ScanGroup</tt> instance.
+   *
+   * @param reader     the <tt>PlanReader</tt> executing the plan.
+   * @param plan       the <tt>ReadPlan</tt> to be executed.
+   * @param period     the period in milliseconds.
+   * @param phase      the offset of the cycles within the period,
+   *                   in milliseconds.
+   * @param listener   the <tt>ScanListener</tt>, or null.
+   * @param endpoint   the endpoint of the reader.
+   * @param statistics the <tt>ScanStatistics</tt> of the group.
+   */
+  ScanGroup(PlanReader reader, ReadPlan plan, long period, long phase,
+            ScanListener listener, ScanEngine.Endpoint endpoint,
+            ScanStatistics statistics) {
+    m_Reader = reader;
+    m_Plan = plan;
+    m_Period = period;
+    m_Phase = phase;
+    m_Listener = listener;
+    m_Endpoint = endpoint;
+    m_Statistics = statistics;
+  }//constructor
+
+  /**
+   * Returns the reader executing the plan of this group.
+   *
+   * @return the <tt>PlanReader</tt>.
+   */
+  public PlanReader getReader() {
+    return m_Reader;
+  }//getReader
+
+  /**
+   * Returns the plan executed every cycle.
+   *
+   * @return the <tt>ReadPlan</tt>.
+   */
+  public ReadPlan getPlan() {
+    return m_Plan;
+  }//getPlan
+
+  /**
+   * Returns the period of the cycles.
+   *
+   * @return the period in milliseconds.
+   */
+  public long getPeriod() {
+    return m_Period;
+  }//getPeriod
+
+  /**
+   * Returns the offset of the cycles within the period,
+   * relative to the wall clock.
+   *
+   * @return the phase in milliseconds.
+   */
+  public long getPhase() {
+    return m_Phase;
+  }//getPhase
+
+  /**
+   * Returns the listener of this group.
+   *
+   * @return the <tt>ScanListener</tt>, or null.
+   */
+  public ScanListener getListener() {
+    return m_Listener;
+  }//getListener
+
+  /**
+   * Returns the statistics of the cycles of this group.
+   *
+   * @return the <tt>ScanStatistics</tt>.
+   */
+  public ScanStatistics getStatistics() {
+    return m_Statistics;
+  }//getStatistics
+
+  public String toString() {
+    return "ScanGroup[period=" + m_Period + "ms,phase=" + m_Phase + "ms," + m_Plan + "]";
+  }//toString
+
+}//class ScanGroup
@@ -0,0 +1,68 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import pl.itachi.modbus.ModbusException;
+
+/**
+ * Interface defining a listener for the scan cycles
+ * of a <tt>ScanGroup</tt>.
+ * <p>
+ * Listeners are called from the worker thread that executed
+ * the cycle; the next cycle of the group does not start before
+ * the listener returns, so the values of the items of its
+ * <tt>ReadPlan</tt> may be taken without copying.
+ *
+ * @see ScanEngine
+ */
+public interface ScanListener {
+
+  /**
+   * Called when a scan cycle has been completed.
+   * Items answered with an exception by the slave are
+   * marked invalid.
+   *
+   * @param group the <tt>ScanGroup</tt> that has been scanned.
+   */
+  public void scanCompleted(ScanGroup group);
+
+  /**
+   * Called when a scan cycle failed.
+   *
+   * @param group the <tt>ScanGroup</tt> that has been scanned.
+   * @param ex    the <tt>ModbusException</tt> that occurred.
+   */
+  public void scanFailed(ScanGroup group, ModbusException ex);
+
+}//interface ScanListener
@@ -0,0 +1,203 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing the statistics of scan cycles,
+ * kept for each <tt>ScanGroup</tt> and for the
+ * <tt>ScanEngine</tt> as a whole.
+ * <p>
+ * The jitter of a cycle is the delay of its start against its
+ * deadline, including the time spent waiting for the endpoint.
+ * Duration percentiles are computed over a window of the most
+ * recent cycles.
+ */
+public class ScanStatistics {
+
+  //instance attributes
+  private long m_Cycles;
+  private long m_Failures;
+  private long m_Overruns;
+  private long m_JitterSum;
+  private long m_MaxJitter;
+  private long m_MaxDuration;
+  private long[] m_Durations;
+  private int m_Next;
+  private int m_Samples;
+
+  /**
+   * Constructs a new <tt>ScanStatistics</tt> instance.
+   *
+   * @param window the number of recent durations
+   *               percentiles are computed over.
+   */
+  ScanStatistics(int window) {
+    m_Durations = new long[window];
+  }//constructor
+
+  /**
+   * Accounts for a cycle that has been completed.
+   *
+   * @param jitter   the delay of the start in nanoseconds.
+   * @param duration the duration in nanoseconds.
+   * @param failed   true if the cycle failed, false otherwise.
+   */
+  synchronized void cycleCompleted(long jitter, long duration, boolean failed) {
+    m_Cycles++;
+    if (failed) {
+      m_Failures++;
+    }
+    m_JitterSum += jitter;
+    m_MaxJitter = Math.max(m_MaxJitter, jitter);
+    m_MaxDuration = Math.max(m_MaxDuration, duration);
+    m_Durations[m_Next] = duration;
+    m_Next = (m_Next + 1) % m_Durations.length;
+    m_Samples = Math.min(m_Samples + 1, m_Durations.length);
+  }//cycleCompleted
+
+  /**
+   * Accounts for the given number of cycles that have been
+   * skipped, because the previous cycle had not completed
+   * by their deadline.
+   *
+   * @param count the number of cycles skipped.
+   */
+  synchronized void overrun(long count) {
+    m_Overruns += count;
+  }//overrun
+
+  /**
+   * Returns the number of completed cycles.
+   *
+   * @return the number of cycles as <tt>long</tt>.
+   */
+  public synchronized long getCycleCount() {
+    return m_Cycles;
+  }//getCycleCount
+
+  /**
+   * Returns the number of completed cycles that failed.
+   *
+   * @return the number of failures as <tt>long</tt>.
+   */
+  public synchronized long getFailureCount() {
+    return m_Failures;
+  }//getFailureCount
+
+  /**
+   * Returns the number of cycles skipped because of overruns.
+   *
+   * @return the number of overruns as <tt>long</tt>.
+   */
+  public synchronized long getOverrunCount() {
+    return m_Overruns;
+  }//getOverrunCount
+
+  /**
+   * Returns the average delay of the start of a
+   * cycle against its deadline.
+   *
+   * @return the average jitter in milliseconds.
+   */
+  public synchronized double getAverageJitter() {
+    return (m_Cycles == 0) ? 0 : m_JitterSum / (m_Cycles * 1000000.0);
+  }//getAverageJitter
+
+  /**
+   * Returns the maximum delay of the start of a
+   * cycle against its deadline.
+   *
+   * @return the maximum jitter in milliseconds.
+   */
+  public synchronized double getMaxJitter() {
+    return m_MaxJitter / 1000000.0;
+  }//getMaxJitter
+
+  /**
+   * Returns the maximum duration of a cycle.
+   *
+   * @return the maximum duration in milliseconds.
+   */
+  public synchronized double getMaxDuration() {
+    return m_MaxDuration / 1000000.0;
+  }//getMaxDuration
+
+  /**
+   * Returns the given percentile of the durations
+   * of the most recent cycles.
+   *
+   * @param percentile the percentile, between 0 and 100.
+   * @return the duration in milliseconds, or 0 if there are no cycles.
+   */
+  public double getDurationPercentile(double percentile) {
+    long[] durations;
+    synchronized (this) {
+      durations = Arrays.copyOf(m_Durations, m_Samples);
+    }
+    if (durations.length == 0) {
+      return 0;
+    }
+    Arrays.sort(durations);
+    int index = (int) Math.ceil(percentile / 100 * durations.length) - 1;
+    index = Math.max(0, Math.min(durations.length - 1, index));
+    return durations[index] / 1000000.0;
+  }//getDurationPercentile
+
+  /**
+   * Resets all statistics.
+   */
+  public synchronized void reset() {
+    m_Cycles = 0;
+    m_Failures = 0;
+    m_Overruns = 0;
+    m_JitterSum = 0;
+    m_MaxJitter = 0;
+    m_MaxDuration = 0;
+    m_Next = 0;
+    m_Samples = 0;
+  }//reset
+
+  public String toString() {
+    return "ScanStatistics[cycles=" + getCycleCount()
+        + ",failures=" + getFailureCount()
+        + ",overruns=" + getOverrunCount()
+        + ",jitter=" + getAverageJitter() + "/" + getMaxJitter()
+        + "ms,p50=" + getDurationPercentile(50)
+        + "ms,p99=" + getDurationPercentile(99)
+        + "ms,max=" + getMaxDuration() + "ms]";
+  }//toString
+
+}//class ScanStatistics
@@ -0,0 +1,394 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusException;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.WriteCoilRequest;
+import pl.itachi.modbus.msg.WriteMultipleCoilsRequest;
+import pl.itachi.modbus.msg.WriteMultipleRegistersRequest;
+import pl.itachi.modbus.msg.WriteSingleRegisterRequest;
+import pl.itachi.modbus.procimg.Register;
+import pl.itachi.modbus.procimg.SimpleRegister;
+import pl.itachi.modbus.util.BitVector;
+
+/**
+ * Class implementing a buffer that collects single register
+ * and coil writes to one endpoint and writes them in batches.
+ * <p>
+ * Writes to contiguous addresses of the same unit are merged
+ * into one write multiple registers (FC 16) or write multiple
+ * coils (FC 15) request; a write standing alone is written with
+ * a write single register (FC 6) or write coil (FC 5) request.
+ * If an address is written again before the buffer has been
+ * flushed, only the last value is written.
+ * <p>
+ * The buffer is flushed when the oldest pending write has waited
+ * for the maximum delay, when the maximum number of addresses is
+ * pending, or on {@link #flush()}. Batches are written one after
+ * another by a thread of the buffer, in the order they were
+ * flushed. Every write returns a future that completes once its
+ * value (or a later value for the same address) has been written.
+ */
+public class WriteBuffer {
+
+  /**
+   * Defines the default maximum time in milliseconds a
+   * write waits for the buffer to be flushed (<b>10</b>).
+   */
+  public static final long DEFAULT_MAX_DELAY = 10;
+
+  /**
+   * Defines the default maximum number of addresses pending
+   * before the buffer is flushed (<b>256</b>).
+   */
+  public static final int DEFAULT_MAX_PENDING = 256;
+
+  //instance attributes
+  private final RequestExecutor m_Executor;
+  private final ScheduledThreadPoolExecutor m_Flusher;
+  private TreeMap<Integer, PendingWrite> m_Pending = new TreeMap<Integer, PendingWrite>();
+  private long m_MaxDelay = DEFAULT_MAX_DELAY;
+  private int m_MaxPending = DEFAULT_MAX_PENDING;
+  private boolean m_FlushScheduled;
+  private boolean m_Closed;
+  private final AtomicLong m_Writes = new AtomicLong();
+  private final AtomicLong m_Requests = new AtomicLong();
+
+  /**
+   * Constructs a new <tt>WriteBuffer</tt> instance.
+   *
+   * @param executor the <tt>RequestExecutor</tt> writing to the endpoint.
+   */
+  public WriteBuffer(RequestExecutor executor) {
+    m_Executor = executor;
+    m_Flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "WriteBuffer");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }//constructor
+
+  /**
+   * Sets the maximum time a write waits for the buffer to be flushed.
+   *
+   * @param ms the maximum delay in milliseconds.
+   */
+  public synchronized void setMaxDelay(long ms) {
+    m_MaxDelay = Math.max(0, ms);
+  }//setMaxDelay
+
+  /**
+   * Returns the maximum time a write waits for the buffer to be flushed.
+   *
+   * @return the maximum delay in milliseconds.
+   */
+  public synchronized long getMaxDelay() {
+    return m_MaxDelay;
+  }//getMaxDelay
+
+  /**
+   * Sets the maximum number of addresses pending
+   * before the buffer is flushed.
+   *
+   * @param count the maximum number of addresses, at least 1.
+   */
+  public synchronized void setMaxPending(int count) {
+    m_MaxPending = Math.max(1, count);
+  }//setMaxPending
+
+  /**
+   * Returns the maximum number of addresses pending
+   * before the buffer is flushed.
+   *
+   * @return the maximum number of addresses as <tt>int</tt>.
+   */
+  public synchronized int getMaxPending() {
+    return m_MaxPending;
+  }//getMaxPending
+
+  /**
+   * Returns the number of addresses currently pending.
+   *
+   * @return the number of addresses as <tt>int</tt>.
+   */
+  public synchronized int getPendingCount() {
+    return m_Pending.size();
+  }//getPendingCount
+
+  /**
+   * Returns the number of writes accepted by this buffer.
+   *
+   * @return the number of writes as <tt>long</tt>.
+   */
+  public long getWriteCount() {
+    return m_Writes.get();
+  }//getWriteCount
+
+  /**
+   * Returns the number of requests the writes have been merged into.
+   *
+   * @return the number of requests as <tt>long</tt>.
+   */
+  public long getRequestCount() {
+    return m_Requests.get();
+  }//getRequestCount
+
+  /**
+   * Writes a register of the given unit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @param ref    the address of the register.
+   * @param value  the value to be written, as unsigned 16 bit value.
+   * @return a <tt>CompletableFuture</tt> completing when the value has
+   *         been written, or exceptionally with the <tt>ModbusException</tt>
+   *         that occurred.
+   */
+  public CompletableFuture<Void> writeRegister(int unitid, int ref, int value) {
+    return enqueue(unitid, false, ref, value & 0xffff);
+  }//writeRegister
+
+  /**
+   * Writes a coil of the given unit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @param ref    the address of the coil.
+   * @param state  the state to be written.
+   * @return a <tt>CompletableFuture</tt> completing when the state has
+   *         been written, or exceptionally with the <tt>ModbusException</tt>
+   *         that occurred.
+   */
+  public CompletableFuture<Void> writeCoil(int unitid, int ref, boolean state) {
+    return enqueue(unitid, true, ref, state ? 1 : 0);
+  }//writeCoil
+
+  /**
+   * Flushes all pending writes.
+   *
+   * @return a <tt>CompletableFuture</tt> completing when all writes
+   *         made before have been completed.
+   */
+  public CompletableFuture<Void> flush() {
+    final CompletableFuture<Void> barrier = new CompletableFuture<Void>();
+    synchronized (this) {
+      if (m_Closed) {
+        barrier.complete(null);
+        return barrier;
+      }
+      m_Flusher.execute(new Runnable() {
+        public void run() {
+          drain();
+          barrier.complete(null);
+        }
+      });
+    }
+    return barrier;
+  }//flush
+
+  /**
+   * Flushes all pending writes and stops the thread of this buffer.
+   * Writes made afterwards fail.
+   */
+  public void close() {
+    flush();
+    synchronized (this) {
+      m_Closed = true;
+    }
+    m_Flusher.shutdown();
+  }//close
+
+  /**
+   * Adds a write to the pending writes, replacing the value
+   * of a pending write to the same address.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @param coil   true for a coil, false for a register.
+   * @param ref    the address.
+   * @param value  the value to be written.
+   * @return a <tt>CompletableFuture</tt> completing with the write.
+   */
+  private CompletableFuture<Void> enqueue(int unitid, boolean coil, int ref, int value) {
+    if (unitid < 0 || unitid > 255 || ref < 0 || ref > 65535) {
+      throw new IllegalArgumentException("Invalid unit or address: " + unitid + "/" + ref);
+    }
+    CompletableFuture<Void> future = new CompletableFuture<Void>();
+    boolean flushNow = false;
+    synchronized (this) {
+      if (m_Closed) {
+        future.completeExceptionally(new ModbusIOException("Write buffer closed."));
+        return future;
+      }
+      Integer key = (unitid << 17) | (coil ? 0x10000 : 0) | ref;
+      PendingWrite write = m_Pending.get(key);
+      if (write == null) {
+        write = new PendingWrite();
+        m_Pending.put(key, write);
+      }
+      write.m_Value = value;
+      write.m_Futures.add(future);
+      m_Writes.incrementAndGet();
+
+      if (m_Pending.size() >= m_MaxPending) {
+        flushNow = true;
+      } else if (!m_FlushScheduled) {
+        m_FlushScheduled = true;
+        m_Flusher.schedule(new Runnable() {
+          public void run() {
+            drain();
+          }
+        }, m_MaxDelay, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (flushNow) {
+      flush();
+    }
+    return future;
+  }//enqueue
+
+  /**
+   * Takes all pending writes and writes them, merged into
+   * as few requests as possible. Runs in the thread of this buffer.
+   */
+  private void drain() {
+    TreeMap<Integer, PendingWrite> pending;
+    synchronized (this) {
+      if (m_Pending.isEmpty()) {
+        return;
+      }
+      pending = m_Pending;
+      m_Pending = new TreeMap<Integer, PendingWrite>();
+      m_FlushScheduled = false;
+    }
+    //keys are ordered by unit, table and address
+    List<PendingWrite> run = new ArrayList<PendingWrite>();
+    int first = -1;
+    int last = -1;
+    for (Map.Entry<Integer, PendingWrite> entry : pending.entrySet()) {
+      int key = entry.getKey();
+      boolean coil = (key & 0x10000) != 0;
+      int max = coil ? Modbus.MAX_WRITE_BITS : Modbus.MAX_WRITE_REGISTERS;
+      if (first >= 0 && (key != last + 1 || key - first >= max
+          || (key >>> 16) != (first >>> 16))) {
+        write(first, run);
+        run.clear();
+        first = -1;
+      }
+      if (first < 0) {
+        first = key;
+      }
+      last = key;
+      run.add(entry.getValue());
+    }
+    if (first >= 0) {
+      write(first, run);
+    }
+  }//drain
+
+  /**
+   * Writes a run of contiguous addresses with a single request
+   * and completes the futures of the writes.
+   *
+   * @param key the key of the first address.
+   * @param run the pending writes, in order of their addresses.
+   */
+  private void write(int key, List<PendingWrite> run) {
+    int unitid = key >>> 17;
+    boolean coil = (key & 0x10000) != 0;
+    int ref = key & 0xffff;
+    ModbusRequest request;
+    if (run.size() == 1) {
+      int value = run.get(0).m_Value;
+      request = coil
+          ? new WriteCoilRequest(ref, value != 0)
+          : new WriteSingleRegisterRequest(ref, new SimpleRegister(value));
+    } else if (coil) {
+      BitVector bv = new BitVector(run.size());
+      for (int i = 0; i < run.size(); i++) {
+        bv.setBit(i, run.get(i).m_Value != 0);
+      }
+      request = new WriteMultipleCoilsRequest(ref, bv);
+    } else {
+      Register[] registers = new Register[run.size()];
+      for (int i = 0; i < registers.length; i++) {
+        registers[i] = new SimpleRegister(run.get(i).m_Value);
+      }
+      request = new WriteMultipleRegistersRequest(ref, registers);
+    }
+    request.setUnitID(unitid);
+    m_Requests.incrementAndGet();
+
+    Exception failure = null;
+    try {
+      m_Executor.execute(request);
+    } catch (ModbusException ex) {
+      failure = ex;
+    } catch (RuntimeException ex) {
+      failure = ex;
+    }
+    for (int i = 0; i < run.size(); i++) {
+      for (CompletableFuture<Void> future : run.get(i).m_Futures) {
+        if (failure == null) {
+          future.complete(null);
+        } else {
+          future.completeExceptionally(failure);
+        }
+      }
+    }
+  }//write
+
+  /**
+   * Holds the value pending for one address together
+   * with the futures of all writes to it.
+   */
+  private static class PendingWrite {
+    private int m_Value;
+    private List<CompletableFuture<Void>> m_Futures =
+        new ArrayList<CompletableFuture<Void>>(1);
+  }//inner class PendingWrite
+
+}//class WriteBuffer
@@ -0,0 +1,304 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import pl.itachi.modbus.ModbusCircuitOpenException;
+
+/**
+ * Class implementing circuit breakers for the slaves
+ * reached over one connection, one per unit identifier.
+ * <p>
+ * A circuit is <i>closed</i> as long as the slave responds.
+ * After the configured number of consecutive transactions
+ * failed with an I/O error (e.g. a timeout), it <i>opens</i>:
+ * transactions fail immediately with a
+ * <tt>ModbusCircuitOpenException</tt> instead of waiting for the
+ * timeout. Once the probe interval has passed, the circuit is
+ * <i>half-open</i> and a single transaction is let through as a
+ * probe, without retries; its success closes the circuit, its
+ * failure opens it for another interval.
+ * <p>
+ * Exception responses count as responses, as the slave
+ * has answered.
+ *
+ * @see ModbusTransaction#setCircuitBreaker(CircuitBreaker)
+ */
+public class CircuitBreaker {
+
+  /**
+   * Enumeration of the states of a circuit.
+   */
+  public enum State {
+    /**
+     * Transactions are executed.
+     */
+    CLOSED,
+    /**
+     * Transactions fail immediately.
+     */
+    OPEN,
+    /**
+     * A single transaction probes the slave.
+     */
+    HALF_OPEN
+  }//enum State
+
+  /**
+   * Defines the default number of consecutive failed
+   * transactions that open a circuit (<b>3</b>).
+   */
+  public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+  /**
+   * Defines the default time in milliseconds after which
+   * an open circuit is probed (<b>10000</b>).
+   */
+  public static final long DEFAULT_PROBE_INTERVAL = 10000;
+
+  //instance attributes
+  private final Circuit[] m_Circuits = new Circuit[256];
+  private int m_FailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  private long m_ProbeInterval = DEFAULT_PROBE_INTERVAL;
+  private long m_Trips;
+  private long m_Rejected;
+
+  /**
+   * Constructs a new <tt>CircuitBreaker</tt> instance
+   * with the default threshold and probe interval.
+   */
+  public CircuitBreaker() {
+  }//constructor
+
+  /**
+   * Constructs a new <tt>CircuitBreaker</tt> instance.
+   *
+   * @param threshold     the number of consecutive failed transactions
+   *                      that open a circuit.
+   * @param probeInterval the time in milliseconds after which an open
+   *                      circuit is probed.
+   */
+  public CircuitBreaker(int threshold, long probeInterval) {
+    setFailureThreshold(threshold);
+    setProbeInterval(probeInterval);
+  }//constructor
+
+  /**
+   * Sets the number of consecutive failed transactions
+   * that open a circuit.
+   *
+   * @param threshold the threshold, at least 1.
+   */
+  public synchronized void setFailureThreshold(int threshold) {
+    m_FailureThreshold = Math.max(1, threshold);
+  }//setFailureThreshold
+
+  /**
+   * Returns the number of consecutive failed transactions
+   * that open a circuit.
+   *
+   * @return the threshold as <tt>int</tt>.
+   */
+  public synchronized int getFailureThreshold() {
+    return m_FailureThreshold;
+  }//getFailureThreshold
+
+  /**
+   * Sets the time after which an open circuit is probed.
+   *
+   * @param ms the probe interval in milliseconds.
+   */
+  public synchronized void setProbeInterval(long ms) {
+    m_ProbeInterval = Math.max(0, ms);
+  }//setProbeInterval
+
+  /**
+   * Returns the time after which an open circuit is probed.
+   *
+   * @return the probe interval in milliseconds.
+   */
+  public synchronized long getProbeInterval() {
+    return m_ProbeInterval;
+  }//getProbeInterval
+
+  /**
+   * Tests if a transaction with the given unit would be
+   * executed, without changing the state of its circuit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @return true if closed or due to be probed, false otherwise.
+   */
+  public synchronized boolean isAllowed(int unitid) {
+    Circuit c = m_Circuits[unitid & 0xff];
+    if (c == null || c.m_State == State.CLOSED) {
+      return true;
+    }
+    return c.m_State == State.OPEN && isProbeDue(c);
+  }//isAllowed
+
+  /**
+   * Fails immediately if a transaction with the given unit
+   * would not be executed, without changing the state of its
+   * circuit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @throws ModbusCircuitOpenException if the circuit is open.
+   */
+  public synchronized void check(int unitid)
+      throws ModbusCircuitOpenException {
+    if (!isAllowed(unitid)) {
+      m_Rejected++;
+      throw new ModbusCircuitOpenException(unitid);
+    }
+  }//check
+
+  /**
+   * Acquires the circuit of the given unit for a transaction,
+   * which must be followed by a call to {@link #release}.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @return true if the transaction probes a half-open circuit and
+   *         should not be retried, false otherwise.
+   * @throws ModbusCircuitOpenException if the circuit is open.
+   */
+  public synchronized boolean acquire(int unitid)
+      throws ModbusCircuitOpenException {
+    Circuit c = m_Circuits[unitid & 0xff];
+    if (c == null || c.m_State == State.CLOSED) {
+      return false;
+    }
+    if (c.m_State == State.OPEN && isProbeDue(c)) {
+      c.m_State = State.HALF_OPEN;
+      return true;
+    }
+    m_Rejected++;
+    throw new ModbusCircuitOpenException(unitid);
+  }//acquire
+
+  /**
+   * Accounts for the outcome of a transaction with the given unit.
+   *
+   * @param unitid   the unit identifier of the slave.
+   * @param answered true if the slave responded, false if the
+   *                 transaction failed with an I/O error.
+   */
+  public synchronized void release(int unitid, boolean answered) {
+    Circuit c = m_Circuits[unitid & 0xff];
+    if (answered) {
+      if (c != null) {
+        c.m_State = State.CLOSED;
+        c.m_Failures = 0;
+      }
+      return;
+    }
+    if (c == null) {
+      c = new Circuit();
+      m_Circuits[unitid & 0xff] = c;
+    }
+    c.m_Failures++;
+    if (c.m_State != State.CLOSED || c.m_Failures >= m_FailureThreshold) {
+      if (c.m_State == State.CLOSED) {
+        m_Trips++;
+      }
+      c.m_State = State.OPEN;
+      c.m_OpenedAt = System.nanoTime();
+    }
+  }//release
+
+  /**
+   * Returns the state of the circuit of the given unit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @return the <tt>State</tt> of the circuit.
+   */
+  public synchronized State getState(int unitid) {
+    Circuit c = m_Circuits[unitid & 0xff];
+    return (c == null) ? State.CLOSED : c.m_State;
+  }//getState
+
+  /**
+   * Returns the number of consecutive failed transactions
+   * with the given unit.
+   *
+   * @param unitid the unit identifier of the slave.
+   * @return the number of failures as <tt>int</tt>.
+   */
+  public synchronized int getFailureCount(int unitid) {
+    Circuit c = m_Circuits[unitid & 0xff];
+    return (c == null) ? 0 : c.m_Failures;
+  }//getFailureCount
+
+  /**
+   * Returns the number of times a closed circuit opened.
+   *
+   * @return the number of trips as <tt>long</tt>.
+   */
+  public synchronized long getTripCount() {
+    return m_Trips;
+  }//getTripCount
+
+  /**
+   * Returns the number of transactions that failed
+   * immediately because of an open circuit.
+   *
+   * @return the number of rejected transactions as <tt>long</tt>.
+   */
+  public synchronized long getRejectedCount() {
+    return m_Rejected;
+  }//getRejectedCount
+
+  /**
+   * Closes all circuits and resets the counters.
+   */
+  public synchronized void reset() {
+    for (int i = 0; i < m_Circuits.length; i++) {
+      m_Circuits[i] = null;
+    }
+    m_Trips = 0;
+    m_Rejected = 0;
+  }//reset
+
+  private boolean isProbeDue(Circuit c) {
+    return System.nanoTime() - c.m_OpenedAt >= m_ProbeInterval * 1000000L;
+  }//isProbeDue
+
+  /**
+   * Holds the state of the circuit of one unit.
+   */
+  private static class Circuit {
+    private State m_State = State.CLOSED;
+    private int m_Failures;
+    private long m_OpenedAt;
+  }//inner class Circuit
+
+}//class CircuitBreaker
@@ -0,0 +1,233 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.nio.ByteBuffer;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ReadCoilsRequest;
+import pl.itachi.modbus.msg.ReadInputDiscretesRequest;
+import pl.itachi.modbus.msg.ReadInputRegistersRequest;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+import pl.itachi.modbus.procimg.BulkProcessImage;
+import pl.itachi.modbus.procimg.IllegalAddressException;
+import pl.itachi.modbus.procimg.ProcessImage;
+
+/**
+ * Helper class that encodes the responses to read requests
+ * (FC 1, 2, 3 and 4) directly into a <tt>ByteBuffer</tt>.
+ * <p>
+ * The response is written in a single pass, including the MBAP
+ * header; neither a response message, nor a <tt>Register[]</tt> or
+ * a stream is involved. A {@link BulkProcessImage} is read with one
+ * range transfer, so the values are consistent with each other;
+ * other images are read value by value. Requests that cannot be
+ * encoded this way are left to the regular
+ * <tt>ModbusRequest.createResponse()</tt> path.
+ */
+public final class DirectResponseEncoder {
+
+  private DirectResponseEncoder() {
+  }//constructor
+
+  /**
+   * Encodes the complete Modbus/TCP response to the given
+   * request at the position of the given buffer.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be answered.
+   * @param image the <tt>ProcessImage</tt> to read from.
+   * @param out the <tt>ByteBuffer</tt> to encode into.
+   * @return true if the response has been encoded, false if the
+   *         request has to be answered through the regular path;
+   *         in that case the buffer is left unchanged.
+   */
+  public static boolean encode(ModbusRequest request, ProcessImage image, ByteBuffer out) {
+    return encode(request, image, out, null);
+  }//encode
+
+  /**
+   * Encodes the complete Modbus/TCP response to the given
+   * request at the position of the given buffer, staging range
+   * transfers of a direct buffer in the given array.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be answered.
+   * @param image the <tt>ProcessImage</tt> to read from.
+   * @param out the <tt>ByteBuffer</tt> to encode into.
+   * @param scratch a <tt>byte[]</tt> of at least
+   *        <tt>Modbus.MAX_MESSAGE_LENGTH</tt> bytes, or null.
+   * @return true if the response has been encoded, false if the
+   *         request has to be answered through the regular path;
+   *         in that case the buffer is left unchanged.
+   */
+  public static boolean encode(ModbusRequest request, ProcessImage image,
+                               ByteBuffer out, byte[] scratch) {
+    if (request.isHeadless() || image == null) {
+      return false;
+    }
+    int start = out.position();
+    try {
+      switch (request.getFunctionCode()) {
+        case Modbus.READ_MULTIPLE_REGISTERS: {
+          ReadMultipleRegistersRequest req = (ReadMultipleRegistersRequest) request;
+          return encodeRegisters(request, image, req.getReference(), req.getWordCount(),
+              Modbus.READ_MULTIPLE_REGISTERS, out, scratch);
+        }
+        case Modbus.READ_INPUT_REGISTERS: {
+          ReadInputRegistersRequest req = (ReadInputRegistersRequest) request;
+          return encodeRegisters(request, image, req.getReference(), req.getWordCount(),
+              Modbus.READ_INPUT_REGISTERS, out, scratch);
+        }
+        case Modbus.READ_COILS: {
+          ReadCoilsRequest req = (ReadCoilsRequest) request;
+          return encodeBits(request, image, req.getReference(), req.getBitCount(),
+              Modbus.READ_COILS, out, scratch);
+        }
+        case Modbus.READ_INPUT_DISCRETES: {
+          ReadInputDiscretesRequest req = (ReadInputDiscretesRequest) request;
+          return encodeBits(request, image, req.getReference(), req.getBitCount(),
+              Modbus.READ_INPUT_DISCRETES, out, scratch);
+        }
+        default:
+          return false;
+      }
+    } catch (IllegalAddressException ex) {
+      //leave the exception response to the regular path
+      out.position(start);
+      return false;
+    }
+  }//encode
+
+  private static boolean encodeRegisters(ModbusRequest request, ProcessImage image,
+                                         int ref, int count, int fc, ByteBuffer out,
+                                         byte[] scratch) {
+    if (count < 1 || count > Modbus.MAX_READ_REGISTERS || out.remaining() < 9 + count * 2) {
+      return false;
+    }
+    writeHeader(request, count * 2, out);
+    if (image instanceof BulkProcessImage) {
+      transfer((BulkProcessImage) image, fc, ref, count, count * 2, out, scratch);
+      return true;
+    }
+    boolean input = (fc == Modbus.READ_INPUT_REGISTERS);
+    for (int i = 0; i < count; i++) {
+      if (input) {
+        out.putShort((short) image.getInputRegister(ref + i).getValue());
+      } else {
+        out.putShort((short) image.getRegister(ref + i).getValue());
+      }
+    }
+    return true;
+  }//encodeRegisters
+
+  private static boolean encodeBits(ModbusRequest request, ProcessImage image,
+                                    int ref, int count, int fc, ByteBuffer out,
+                                    byte[] scratch) {
+    int bytes = (count + 7) / 8;
+    if (count < 1 || count > Modbus.MAX_BITS || out.remaining() < 9 + bytes) {
+      return false;
+    }
+    writeHeader(request, bytes, out);
+    if (image instanceof BulkProcessImage) {
+      transfer((BulkProcessImage) image, fc, ref, count, bytes, out, scratch);
+      return true;
+    }
+    boolean input = (fc == Modbus.READ_INPUT_DISCRETES);
+    int value = 0;
+    for (int i = 0; i < count; i++) {
+      boolean set = (input)
+          ? image.getDigitalIn(ref + i).isSet()
+          : image.getDigitalOut(ref + i).isSet();
+      if (set) {
+        value |= 1 << (i % 8);
+      }
+      if (i % 8 == 7 || i == count - 1) {
+        out.put((byte) value);
+        value = 0;
+      }
+    }
+    return true;
+  }//encodeBits
+
+  /**
+   * Copies a range of the given table of the image into the
+   * buffer with a single transfer, in place if the buffer is
+   * backed by an array.
+   */
+  private static void transfer(BulkProcessImage image, int fc, int ref, int count,
+                               int length, ByteBuffer out, byte[] scratch) {
+    byte[] dest;
+    int off;
+    if (out.hasArray()) {
+      dest = out.array();
+      off = out.arrayOffset() + out.position();
+    } else {
+      dest = (scratch != null && scratch.length >= length) ? scratch : new byte[length];
+      off = 0;
+    }
+    switch (fc) {
+      case Modbus.READ_MULTIPLE_REGISTERS:
+        image.getRegisterBytes(ref, count, dest, off);
+        break;
+      case Modbus.READ_INPUT_REGISTERS:
+        image.getInputRegisterBytes(ref, count, dest, off);
+        break;
+      case Modbus.READ_COILS:
+        image.getDigitalOutBits(ref, count, dest, off);
+        break;
+      default:
+        image.getDigitalInBits(ref, count, dest, off);
+    }
+    if (out.hasArray()) {
+      out.position(out.position() + length);
+    } else {
+      out.put(dest, 0, length);
+    }
+  }//transfer
+
+  /**
+   * Writes the MBAP header, unit identifier, function code
+   * and byte count of a read response.
+   */
+  private static void writeHeader(ModbusRequest request, int bytecount, ByteBuffer out) {
+    out.putShort((short) request.getTransactionID());
+    out.putShort((short) request.getProtocolID());
+    //unit id, function code and byte count precede the data
+    out.putShort((short) (bytecount + 3));
+    out.put((byte) request.getUnitID());
+    out.put((byte) request.getFunctionCode());
+    out.put((byte) bytecount);
+  }//writeHeader
+
+}//class DirectResponseEncoder
@@ -0,0 +1,211 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+
+/**
+ * Class implementing an incremental decoder for
+ * Modbus/TCP (MBAP) frames.
+ * <p>
+ * Bytes can be fed in chunks of any size, from a stream or a
+ * <tt>ByteBuffer</tt>; the decoder collects them in a buffer of
+ * its own until a complete frame is available. The header is
+ * validated as soon as it is complete, so frames with a foreign
+ * protocol identifier or a length out of bounds are rejected
+ * before their body is read.
+ * <p>
+ * The decoder never consumes bytes beyond the end of the
+ * current frame. Once a frame has been processed, {@link #next()}
+ * prepares the decoder for the following one.
+ * Instances are not thread safe.
+ */
+public final class MBAPFrameDecoder {
+
+  /**
+   * Defines the length of the MBAP header preceding the unit
+   * identifier: transaction identifier, protocol identifier
+   * and length.
+   */
+  public static final int HEADER_LENGTH = 6;
+
+  /**
+   * Defines the maximum length of a complete frame.
+   */
+  public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + Modbus.MAX_MESSAGE_LENGTH;
+
+  //instance attributes
+  private byte[] m_Buffer = new byte[MAX_FRAME_LENGTH];
+  private int m_Count;
+  private int m_FrameLength = HEADER_LENGTH;
+  private boolean m_HeaderValid;
+
+  /**
+   * Returns the buffer holding the current frame,
+   * starting at index 0.
+   *
+   * @return the frame buffer.
+   */
+  public byte[] getBuffer() {
+    return m_Buffer;
+  }//getBuffer
+
+  /**
+   * Tests if a complete frame is available.
+   *
+   * @return true if a frame is complete, false otherwise.
+   */
+  public boolean hasFrame() {
+    return m_HeaderValid && m_Count == m_FrameLength;
+  }//hasFrame
+
+  /**
+   * Returns the length of the current frame including the header.
+   * Only defined once the header has been decoded.
+   *
+   * @return the length of the frame in bytes.
+   */
+  public int getFrameLength() {
+    return m_FrameLength;
+  }//getFrameLength
+
+  /**
+   * Tests if the decoder is between two frames,
+   * i.e. no byte of the next frame has been fed yet.
+   *
+   * @return true if at a frame boundary, false otherwise.
+   */
+  public boolean isIdle() {
+    return m_Count == 0;
+  }//isIdle
+
+  /**
+   * Discards the current frame and prepares the
+   * decoder for the next one.
+   */
+  public void next() {
+    m_Count = 0;
+    m_FrameLength = HEADER_LENGTH;
+    m_HeaderValid = false;
+  }//next
+
+  /**
+   * Feeds bytes from the given array, up to the end
+   * of the current frame.
+   *
+   * @param data the bytes to be decoded.
+   * @param off the offset of the first byte.
+   * @param len the number of bytes available.
+   * @return the number of bytes consumed.
+   * @throws ModbusIOException if the header of the frame is invalid.
+   */
+  public int feed(byte[] data, int off, int len) throws ModbusIOException {
+    int n = Math.min(len, m_FrameLength - m_Count);
+    System.arraycopy(data, off, m_Buffer, m_Count, n);
+    advance(n);
+    return n;
+  }//feed
+
+  /**
+   * Feeds the remaining bytes of the given buffer, up to
+   * the end of the current frame; the buffer's position
+   * is moved past the bytes consumed.
+   *
+   * @param data the <tt>ByteBuffer</tt> to be decoded.
+   * @return true if a frame is complete, false otherwise.
+   * @throws ModbusIOException if the header of the frame is invalid.
+   */
+  public boolean feed(ByteBuffer data) throws ModbusIOException {
+    int n = Math.min(data.remaining(), m_FrameLength - m_Count);
+    data.get(m_Buffer, m_Count, n);
+    advance(n);
+    return hasFrame();
+  }//feed
+
+  /**
+   * Reads from the given stream until a complete frame is
+   * available, never reading beyond the end of the frame.
+   *
+   * @param in the <tt>InputStream</tt> to read from.
+   * @return true if a frame is complete, false if the stream ended
+   *         at a frame boundary.
+   * @throws EOFException if the stream ended within a frame.
+   * @throws ModbusIOException if the header of the frame is invalid.
+   * @throws IOException if an I/O related error occurs.
+   */
+  public boolean readFrame(InputStream in) throws IOException, ModbusIOException {
+    while (!hasFrame()) {
+      int n = in.read(m_Buffer, m_Count, m_FrameLength - m_Count);
+      if (n == -1) {
+        if (isIdle()) {
+          return false;
+        }
+        throw new EOFException("Premature end of stream (Frame truncated).");
+      }
+      advance(n);
+    }
+    return true;
+  }//readFrame
+
+  /**
+   * Accounts for bytes added to the buffer and validates
+   * the header once it is complete. An invalid header is
+   * discarded, leaving the decoder idle.
+   */
+  private void advance(int n) throws ModbusIOException {
+    m_Count += n;
+    if (!m_HeaderValid && m_Count == HEADER_LENGTH) {
+      int protocol = ((m_Buffer[2] & 0xff) << 8) | (m_Buffer[3] & 0xff);
+      int length = ((m_Buffer[4] & 0xff) << 8) | (m_Buffer[5] & 0xff);
+      if (protocol != Modbus.DEFAULT_PROTOCOL_ID) {
+        next();
+        throw new ModbusIOException("Invalid protocol identifier " + protocol + ".");
+      }
+      //at least unit identifier and function code
+      if (length < 2 || length > Modbus.MAX_MESSAGE_LENGTH) {
+        next();
+        throw new ModbusIOException("Invalid frame length " + length + ".");
+      }
+      m_FrameLength = HEADER_LENGTH + length;
+      m_HeaderValid = true;
+    }
+  }//advance
+
+}//class MBAPFrameDecoder
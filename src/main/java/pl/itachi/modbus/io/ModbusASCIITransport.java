@@ -136,7 +136,7 @@ public class ModbusASCIITransport
           m_ByteIn.readUnsignedByte();
           in = m_ByteIn.readUnsignedByte();
           //create request
-          request = ModbusRequest.createModbusRequest(in);
+          request = createRequest(in);
           request.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
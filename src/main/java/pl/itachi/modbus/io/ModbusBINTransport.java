@@ -143,7 +143,7 @@ public class ModbusBINTransport
           }
           in = m_ByteIn.readUnsignedByte();
           //create request
-          request = ModbusRequest.createModbusRequest(in);
+          request = createRequest(in);
           request.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
@@ -51,9 +51,6 @@ import pl.itachi.modbus.net.SerialConnection;
  */
 public class ModbusSerialTransaction implements ModbusTransaction {
 
-    //class attributes
-    private static int c_TransactionID = Modbus.DEFAULT_TRANSACTION_ID;
-
     //instance attributes and associations
     private ModbusTransport m_IO;
     private ModbusRequest m_Request;
@@ -62,6 +59,7 @@ public class ModbusSerialTransaction implements ModbusTransaction {
     private int m_Retries = Modbus.DEFAULT_RETRIES;
     private int m_TransDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
     private SerialConnection m_SerialCon;
+    private CircuitBreaker m_CircuitBreaker;
 
     /**
      * Constructs a new <tt>ModbusSerialTransaction</tt>
@@ -107,7 +105,7 @@ public class ModbusSerialTransaction implements ModbusTransaction {
     }//setConnection
 
     public int getTransactionID() {
-        return c_TransactionID;
+        return (m_Request == null) ? Modbus.DEFAULT_TRANSACTION_ID : m_Request.getTransactionID();
     }//getTransactionID
 
 
@@ -158,15 +156,51 @@ public class ModbusSerialTransaction implements ModbusTransaction {
         this.m_TransDelayMS = newTransDelayMS;
     }
 
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        m_CircuitBreaker = breaker;
+    }//setCircuitBreaker
+
+    public CircuitBreaker getCircuitBreaker() {
+        return m_CircuitBreaker;
+    }//getCircuitBreaker
+
     public void execute() throws ModbusIOException, ModbusSlaveException, ModbusException {
         //1. assert executeability
         assertExecutable();
+        CircuitBreaker breaker = m_CircuitBreaker;
+        boolean probe = (breaker != null) && breaker.acquire(m_Request.getUnitID());
+        boolean answered = false;
+        try {
+            transmit(probe ? 1 : m_Retries);
+            answered = true;
+        } finally {
+            if (breaker != null) {
+                breaker.release(m_Request.getUnitID(), answered);
+            }
+        }
+
+        //4. deal with exceptions
+        if (m_Response instanceof ExceptionResponse) {
+            throw new ModbusSlaveException(
+                    ((ExceptionResponse) m_Response).getExceptionCode()
+            );
+        }
+    }//execute
 
+    /**
+     * Sends the request and reads the response, trying
+     * the given number of times.
+     *
+     * @param attempts the number of attempts.
+     * @throws ModbusIOException if no response could be read.
+     */
+    private void transmit(int attempts) throws ModbusIOException {
         //3. write request, and read response,
         //   while holding the lock on the IO object
         synchronized (m_IO) {
             int tries = 0;
             boolean finished = false;
+            m_Request.setTransactionID(m_IO.nextTransactionID());
             do {
                 try {
                     if (m_TransDelayMS > 0) {
@@ -179,10 +213,10 @@ public class ModbusSerialTransaction implements ModbusTransaction {
                     //write request message
                     m_IO.writeMessage(m_Request);
                     //read response message
-                    m_Response = m_IO.readResponse();
+                    m_Response = ResponseReader.read(m_IO, m_Request, isCheckingValidity(), Modbus.DEFAULT_TIMEOUT);
                     finished = true;
                 } catch (ModbusIOException e) {
-                    if (++tries >= m_Retries) {
+                    if (++tries >= attempts) {
                         throw e;
                     }
                     System.err.println("execute try " + tries + " error: " +
@@ -190,20 +224,7 @@ public class ModbusSerialTransaction implements ModbusTransaction {
                 }
             } while (!finished);
         }
-
-        //4. deal with exceptions
-        if (m_Response instanceof ExceptionResponse) {
-            throw new ModbusSlaveException(
-                    ((ExceptionResponse) m_Response).getExceptionCode()
-            );
-        }
-
-        if (isCheckingValidity()) {
-            checkValidity();
-        }
-        //toggle the id
-        toggleTransactionID();
-    }//execute
+    }//transmit
 
     /**
      * Asserts if this <tt>ModbusTCPTransaction</tt> is
@@ -221,33 +242,4 @@ public class ModbusSerialTransaction implements ModbusTransaction {
         }
     }//assertExecuteable
 
-    /**
-     * Checks the validity of the transaction, by
-     * checking if the values of the response correspond
-     * to the values of the request.
-     *
-     * @throws ModbusException if the transaction is not valid.
-     */
-    private void checkValidity() throws ModbusException {
-
-    }//checkValidity
-
-    /**
-     * Toggles the transaction identifier, to ensure
-     * that each transaction has a distinctive
-     * identifier.<br>
-     * When the maximum value of 65535 has been reached,
-     * the identifiers will start from zero again.
-     */
-    private void toggleTransactionID() {
-        if (isCheckingValidity()) {
-            if (c_TransactionID == (Short.MAX_VALUE * 2)) {
-                c_TransactionID = 0;
-            } else {
-                c_TransactionID++;
-            }
-        }
-        m_Request.setTransactionID(getTransactionID());
-    }//toggleTransactionID
-
 }//class ModbusSerialTransaction
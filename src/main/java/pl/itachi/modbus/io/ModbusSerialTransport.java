@@ -38,6 +38,7 @@ import gnu.io.UnsupportedCommOperationException;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusIOException;
 import pl.itachi.modbus.msg.ModbusMessage;
+import pl.itachi.modbus.msg.ModbusMessagePool;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
 import pl.itachi.modbus.util.ModbusUtil;
@@ -59,6 +60,39 @@ abstract public class ModbusSerialTransport
     implements ModbusTransport {
   protected CommPort m_CommPort;
   protected boolean m_Echo = false;     // require RS-485 echo processing
+  protected ModbusMessagePool m_MessagePool;
+  private TransactionIDSequence m_TransactionIDs = new TransactionIDSequence();
+
+  /**
+   * Sets the pool requests are read into; null makes this
+   * transport create a new request for every message read.
+   * <p>
+   * A pool may only be set if each request has been answered
+   * before the next one is read.
+   *
+   * @param pool a <tt>ModbusMessagePool</tt> instance.
+   */
+  public void setMessagePool(ModbusMessagePool pool) {
+    m_MessagePool = pool;
+  }//setMessagePool
+
+  public int nextTransactionID() {
+    return m_TransactionIDs.next();
+  }//nextTransactionID
+
+  /**
+   * Returns the request instance to read a message with the
+   * given function code into, taken from the message pool if set.
+   *
+   * @param functionCode the function code of the message.
+   * @return a <tt>ModbusRequest</tt> instance.
+   */
+  protected ModbusRequest createRequest(int functionCode) {
+    if (m_MessagePool == null) {
+      return ModbusRequest.createModbusRequest(functionCode);
+    }
+    return m_MessagePool.getRequest(functionCode);
+  }//createRequest
 
   /**
    * <code>prepareStreams</code> prepares the input and output streams of this
@@ -0,0 +1,421 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.ModbusSlaveException;
+import pl.itachi.modbus.msg.ExceptionResponse;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.net.RTTEstimator;
+import pl.itachi.modbus.net.TCPMasterConnection;
+
+/**
+ * Class implementing asynchronous, pipelined Modbus/TCP
+ * transactions over a <tt>TCPMasterConnection</tt>.
+ * <p>
+ * In contrast to the <tt>ModbusTCPTransaction</tt>, a request does
+ * not wait for the response of the previous one: up to a given number
+ * of requests are outstanding on the connection at the same time.
+ * Each request gets a transaction identifier of its own; a dedicated
+ * reader thread matches the responses to the requests by that
+ * identifier and completes the returned futures. Responses that match
+ * no outstanding request, e.g. because it has timed out already,
+ * are dropped and counted.
+ * <p>
+ * The pipeline takes over the connection: while it is running, the
+ * connection must not be used for other transactions. The futures
+ * are completed on the reader thread, so dependent actions that
+ * block should be run through the <tt>async</tt> methods of the
+ * <tt>CompletableFuture</tt>.
+ *
+ * @see ModbusTCPTransaction
+ */
+public class ModbusTCPPipeline {
+
+  //class attributes
+  private static final ScheduledThreadPoolExecutor c_Timer = createTimer();
+
+  //instance attributes
+  private TCPMasterConnection m_Connection;
+  private ModbusTransport m_IO;
+  private int m_MaxOutstanding;
+  private Semaphore m_Window;
+  private Map<Integer, Transaction> m_Outstanding =
+      new ConcurrentHashMap<Integer, Transaction>();
+  private AtomicLong m_Dropped = new AtomicLong();
+  private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+  private int m_ConnectionTimeout;
+  private Thread m_Reader;
+  private volatile boolean m_Running;
+
+  /**
+   * Constructs a new <tt>ModbusTCPPipeline</tt> instance.
+   *
+   * @param con            the <tt>TCPMasterConnection</tt> to be used.
+   * @param maxOutstanding the maximum number of requests awaiting
+   *                       their response at the same time.
+   */
+  public ModbusTCPPipeline(TCPMasterConnection con, int maxOutstanding) {
+    m_Connection = con;
+    m_MaxOutstanding = Math.max(1, Math.min(maxOutstanding, Modbus.MAX_TRANSACTION_ID));
+    m_Window = new Semaphore(m_MaxOutstanding);
+  }//constructor
+
+  /**
+   * Sets the time to wait for the response of a request,
+   * unless the connection has a <tt>RTTEstimator</tt>.
+   *
+   * @param timeout the timeout in milliseconds.
+   */
+  public void setTimeout(int timeout) {
+    m_Timeout = timeout;
+  }//setTimeout
+
+  /**
+   * Returns the time to wait for the response of a request.
+   *
+   * @return the timeout in milliseconds.
+   */
+  public int getTimeout() {
+    return m_Timeout;
+  }//getTimeout
+
+  /**
+   * Returns the maximum number of outstanding requests.
+   *
+   * @return the maximum number as <tt>int</tt>.
+   */
+  public int getMaxOutstanding() {
+    return m_MaxOutstanding;
+  }//getMaxOutstanding
+
+  /**
+   * Returns the number of requests awaiting their response.
+   *
+   * @return the number of requests as <tt>int</tt>.
+   */
+  public int getOutstandingCount() {
+    return m_Outstanding.size();
+  }//getOutstandingCount
+
+  /**
+   * Returns the number of responses dropped, because they
+   * did not match an outstanding request.
+   *
+   * @return the number of responses as <tt>long</tt>.
+   */
+  public long getDroppedCount() {
+    return m_Dropped.get();
+  }//getDroppedCount
+
+  /**
+   * Sends the given request, blocking while the maximum number
+   * of requests is outstanding.<br>
+   * The request is assigned a transaction identifier; it may be
+   * reused as soon as this method has returned.
+   * <p>
+   * The returned future completes with the response, or
+   * exceptionally with a <tt>ModbusSlaveException</tt> if the slave
+   * answered with an exception, or with a <tt>ModbusIOException</tt>
+   * if the request could not be sent, timed out or the connection
+   * failed.
+   *
+   * @param request the <tt>ModbusRequest</tt> to be sent.
+   * @return the <tt>CompletableFuture</tt> of the response.
+   */
+  public CompletableFuture<ModbusResponse> execute(ModbusRequest request) {
+    CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+    try {
+      start();
+      m_Window.acquire();
+    } catch (ModbusIOException ex) {
+      future.completeExceptionally(ex);
+      return future;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(new ModbusIOException("Interrupted."));
+      return future;
+    }
+
+    Transaction tx = new Transaction(request, future);
+    int tid = nextTransactionID();
+    RTTEstimator estimator = m_Connection.getRTTEstimator();
+    int timeout = (estimator != null) ? estimator.getTimeout() : m_Timeout;
+    m_Outstanding.put(tid, tx);
+    tx.m_Timeout = c_Timer.schedule(new Expiry(tid, tx), timeout, TimeUnit.MILLISECONDS);
+    try {
+      synchronized (m_IO) {
+        request.setTransactionID(tid);
+        tx.m_Sent = System.nanoTime();
+        m_IO.writeMessage(request);
+      }
+    } catch (ModbusIOException ex) {
+      if (fail(tid, tx, ex)) {
+        //the reader will notice the closed connection
+        m_Connection.close();
+      }
+    }
+    return future;
+  }//execute
+
+  /**
+   * Closes this pipeline and its connection; requests still
+   * outstanding fail with a <tt>ModbusIOException</tt>.
+   */
+  public void close() {
+    Thread reader = null;
+    synchronized (this) {
+      if (!m_Running) {
+        return;
+      }
+      m_Running = false;
+      m_Connection.close();
+      m_Connection.setTimeout(m_ConnectionTimeout);
+      reader = m_Reader;
+    }
+    if (Thread.currentThread() != reader) {
+      try {
+        reader.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }//close
+
+  /**
+   * Connects if necessary and starts the reader thread,
+   * unless it is running already.
+   *
+   * @throws ModbusIOException if the connection cannot be opened.
+   */
+  private synchronized void start() throws ModbusIOException {
+    if (m_Running) {
+      return;
+    }
+    try {
+      m_Connection.connect();
+    } catch (Exception ex) {
+      throw new ModbusIOException("Connecting failed.");
+    }
+    m_IO = m_Connection.getModbusTransport();
+    //requests are timed out individually, the reader just waits
+    m_ConnectionTimeout = m_Connection.getTimeout();
+    m_Connection.setTimeout(0);
+    m_Running = true;
+    m_Reader = new Thread(new Reader(), "ModbusTCPPipeline-" + m_Connection.getAddress());
+    m_Reader.setDaemon(true);
+    m_Reader.start();
+  }//start
+
+  /**
+   * Returns the next transaction identifier that is not
+   * used by an outstanding request.
+   *
+   * @return the transaction identifier as <tt>int</tt>.
+   */
+  private int nextTransactionID() {
+    int tid;
+    do {
+      tid = m_IO.nextTransactionID();
+    } while (m_Outstanding.containsKey(tid));
+    return tid;
+  }//nextTransactionID
+
+  /**
+   * Ends the given outstanding transaction with a failure.
+   *
+   * @param tid the transaction identifier.
+   * @param tx  the <tt>Transaction</tt>.
+   * @param ex  the cause of the failure.
+   * @return true if the transaction was still outstanding, false otherwise.
+   */
+  private boolean fail(int tid, Transaction tx, Exception ex) {
+    if (!m_Outstanding.remove(tid, tx)) {
+      return false;
+    }
+    tx.cancelTimeout();
+    m_Window.release();
+    tx.m_Future.completeExceptionally(ex);
+    return true;
+  }//fail
+
+  /**
+   * Hands a response to the outstanding transaction it
+   * belongs to, or drops it if there is none.
+   *
+   * @param response the <tt>ModbusResponse</tt> read.
+   */
+  private void dispatch(ModbusResponse response) {
+    int tid = response.getTransactionID();
+    Transaction tx = m_Outstanding.get(tid);
+    if (tx == null
+        || tx.m_UnitID != response.getUnitID()
+        || tx.m_FunctionCode != (response.getFunctionCode() & ~Modbus.EXCEPTION_OFFSET)
+        || !m_Outstanding.remove(tid, tx)) {
+      m_Dropped.incrementAndGet();
+      return;
+    }
+    tx.cancelTimeout();
+    m_Window.release();
+    //requests are never retried, so the response
+    //answers the single attempt measured
+    RTTEstimator estimator = m_Connection.getRTTEstimator();
+    if (estimator != null) {
+      estimator.sample(System.nanoTime() - tx.m_Sent);
+    }
+    if (response instanceof ExceptionResponse) {
+      tx.m_Future.completeExceptionally(
+          new ModbusSlaveException(((ExceptionResponse) response).getExceptionCode()));
+    } else {
+      tx.m_Future.complete(response);
+    }
+  }//dispatch
+
+  /**
+   * Fails all outstanding transactions.
+   *
+   * @param ex the cause of the failure.
+   */
+  private void failAll(Exception ex) {
+    for (Iterator<Map.Entry<Integer, Transaction>> iter =
+             m_Outstanding.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry<Integer, Transaction> entry = iter.next();
+      fail(entry.getKey(), entry.getValue(), ex);
+    }
+  }//failAll
+
+  private static ScheduledThreadPoolExecutor createTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "ModbusTCPPipeline-Timer");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }//createTimer
+
+  /**
+   * Reads responses until the connection is closed or fails.
+   */
+  private class Reader implements Runnable {
+
+    public void run() {
+      try {
+        while (m_Running) {
+          dispatch(m_IO.readResponse());
+        }
+      } catch (ModbusIOException ex) {
+        if (m_Running && Modbus.debug) ex.printStackTrace();
+      } finally {
+        synchronized (ModbusTCPPipeline.this) {
+          if (m_Running) {
+            //the connection failed, reconnect with the next request
+            m_Running = false;
+            m_Connection.close();
+            m_Connection.setTimeout(m_ConnectionTimeout);
+          }
+        }
+        failAll(new ModbusIOException("Connection closed."));
+      }
+    }//run
+
+  }//inner class Reader
+
+  /**
+   * Times out an outstanding transaction.
+   */
+  private class Expiry implements Runnable {
+
+    private int m_TID;
+    private Transaction m_Transaction;
+
+    Expiry(int tid, Transaction tx) {
+      m_TID = tid;
+      m_Transaction = tx;
+    }//constructor
+
+    public void run() {
+      if (fail(m_TID, m_Transaction, new ModbusIOException("Timeout - no response."))) {
+        RTTEstimator estimator = m_Connection.getRTTEstimator();
+        if (estimator != null) {
+          estimator.timedOut();
+        }
+      }
+    }//run
+
+  }//inner class Expiry
+
+  /**
+   * Holds the state of an outstanding request.
+   */
+  private static class Transaction {
+
+    private int m_UnitID;
+    private int m_FunctionCode;
+    private CompletableFuture<ModbusResponse> m_Future;
+    private volatile ScheduledFuture<?> m_Timeout;
+    private volatile long m_Sent = System.nanoTime();
+
+    Transaction(ModbusRequest request, CompletableFuture<ModbusResponse> future) {
+      m_UnitID = request.getUnitID();
+      m_FunctionCode = request.getFunctionCode();
+      m_Future = future;
+    }//constructor
+
+    void cancelTimeout() {
+      //null if answered before the timeout was scheduled
+      ScheduledFuture<?> timeout = m_Timeout;
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+    }//cancelTimeout
+
+  }//inner class Transaction
+
+}//class ModbusTCPPipeline
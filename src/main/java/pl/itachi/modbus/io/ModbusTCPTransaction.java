@@ -40,6 +40,7 @@ import pl.itachi.modbus.ModbusSlaveException;
 import pl.itachi.modbus.msg.ExceptionResponse;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.net.RTTEstimator;
 import pl.itachi.modbus.net.TCPMasterConnection;
 
 /**
@@ -52,10 +53,6 @@ import pl.itachi.modbus.net.TCPMasterConnection;
 public class ModbusTCPTransaction
     implements ModbusTransaction {
 
-  //class attributes
-  private static int c_TransactionID =
-      Modbus.DEFAULT_TRANSACTION_ID;
-
   //instance attributes and associations
   private TCPMasterConnection m_Connection;
   private ModbusTransport m_IO;
@@ -65,6 +62,7 @@ public class ModbusTCPTransaction
       Modbus.DEFAULT_VALIDITYCHECK;
   private boolean m_Reconnecting = Modbus.DEFAULT_RECONNECTING;
   private int m_Retries = Modbus.DEFAULT_RETRIES;
+  private CircuitBreaker m_CircuitBreaker;
 
   /**
    * Constructs a new <tt>ModbusTCPTransaction</tt>
@@ -122,7 +120,7 @@ public class ModbusTCPTransaction
   }//getResponse
 
   public int getTransactionID() {
-    return c_TransactionID;
+    return (m_Request == null) ? Modbus.DEFAULT_TRANSACTION_ID : m_Request.getTransactionID();
   }//getTransactionID
 
   public void setCheckingValidity(boolean b) {
@@ -162,12 +160,54 @@ public class ModbusTCPTransaction
     m_Retries = num;
   }//setRetries
 
+  public void setCircuitBreaker(CircuitBreaker breaker) {
+    m_CircuitBreaker = breaker;
+  }//setCircuitBreaker
+
+  public CircuitBreaker getCircuitBreaker() {
+    return m_CircuitBreaker;
+  }//getCircuitBreaker
+
   public void execute() throws ModbusIOException,
       ModbusSlaveException,
       ModbusException {
 
     //1. assert executeability
     assertExecutable();
+    CircuitBreaker breaker = m_CircuitBreaker;
+    boolean probe = (breaker != null) && breaker.acquire(m_Request.getUnitID());
+    boolean answered = false;
+    try {
+      transmit(probe ? 0 : m_Retries);
+      answered = true;
+    } finally {
+      if (breaker != null) {
+        breaker.release(m_Request.getUnitID(), answered);
+      }
+    }
+
+    //4. deal with "application level" exceptions
+    if (m_Response instanceof ExceptionResponse) {
+      throw new ModbusSlaveException(
+          ((ExceptionResponse) m_Response).getExceptionCode()
+      );
+    }
+
+    //5. close connection if reconnecting
+    if (isReconnecting()) {
+      m_Connection.close();
+    }
+  }//execute
+
+  /**
+   * Sends the request and reads the response, retrying
+   * the given number of times.
+   *
+   * @param retries the number of retries.
+   * @throws ModbusIOException if no response could be read.
+   */
+  private void transmit(int retries)
+      throws ModbusIOException {
     //2. open the connection if not connected
     if (!m_Connection.isConnected()) {
       try {
@@ -176,12 +216,16 @@ public class ModbusTCPTransaction
         throw new ModbusIOException("Connecting failed.");
 
       }
+      m_IO = m_Connection.getModbusTransport();
     }
 
     //3. Retry transaction m_Retries times, in case of
     //I/O Exception problems.
     int retryCounter = 0;
-    while (retryCounter <= m_Retries) {
+    m_Request.setTransactionID(m_IO.nextTransactionID());
+    while (retryCounter <= retries) {
+      int timeout = m_Connection.prepareResponseTimeout(retryCounter);
+      long sent = System.nanoTime();
       try {
         //3. write request, and read response,
         //   while holding the lock on the IO object
@@ -189,38 +233,21 @@ public class ModbusTCPTransaction
           //write request message
           m_IO.writeMessage(m_Request);
           //read response message
-          m_Response = m_IO.readResponse();
-          break;
+          m_Response = ResponseReader.read(m_IO, m_Request, isCheckingValidity(), timeout);
         }
+        measure(m_Connection.getRTTEstimator(), retryCounter, sent, timeout, true);
+        break;
       } catch (ModbusIOException ex) {
-        if (retryCounter == m_Retries) {
-          throw new ModbusIOException("Executing transaction failed (tried " + m_Retries + " times)");
+        measure(m_Connection.getRTTEstimator(), retryCounter, sent, timeout, false);
+        if (retryCounter == retries) {
+          throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)");
         } else {
           retryCounter++;
           continue;
         }
       }
     }
-
-    //4. deal with "application level" exceptions
-    if (m_Response instanceof ExceptionResponse) {
-      throw new ModbusSlaveException(
-          ((ExceptionResponse) m_Response).getExceptionCode()
-      );
-    }
-
-    //5. close connection if reconnecting
-    if (isReconnecting()) {
-      m_Connection.close();
-    }
-
-    if (isCheckingValidity()) {
-      checkValidity();
-    }
-
-    //toggle the id
-    toggleTransactionID();
-  }//execute
+  }//transmit
 
   /**
    * Asserts if this <tt>ModbusTCPTransaction</tt> is
@@ -240,36 +267,30 @@ public class ModbusTCPTransaction
   }//assertExecuteable
 
   /**
-   * Checks the validity of the transaction, by
-   * checking if the values of the response correspond
-   * to the values of the request.
+   * Accounts for an attempt to execute the request with the
+   * estimator of the round-trip time, if any. Round trips of
+   * retried requests are not measured, as the response may
+   * answer an earlier attempt.
    *
-   * @throws ModbusException if the transaction was not valid.
+   * @param estimator the <tt>RTTEstimator</tt>, or null.
+   * @param retry     the number of retries before the attempt.
+   * @param sent      the time the request was sent, in nanoseconds.
+   * @param timeout   the time waited for the response in milliseconds.
+   * @param answered  true if the response has been received.
    */
-  private void checkValidity() throws ModbusException {
-    //1.check transaction number
-    //if(m_Request.getTransactionID()!=m_Response.getTransactionID()) {
-
-    //}
-
-  }//checkValidity
-
-  /**
-   * Toggles the transaction identifier, to ensure
-   * that each transaction has a distinctive
-   * identifier.<br>
-   * When the maximum value of 65535 has been reached,
-   * the identifiers will start from zero again.
-   */
-  private void toggleTransactionID() {
-    if (isCheckingValidity()) {
-      if (c_TransactionID == Modbus.MAX_TRANSACTION_ID) {
-        c_TransactionID = 0;
-      } else {
-        c_TransactionID++;
+  static void measure(RTTEstimator estimator, int retry, long sent,
+                      int timeout, boolean answered) {
+    if (estimator == null) {
+      return;
+    }
+    long elapsed = System.nanoTime() - sent;
+    if (answered) {
+      if (retry == 0) {
+        estimator.sample(elapsed);
       }
+    } else if (elapsed >= (timeout - 1) * 1000000L) {
+      estimator.timedOut();
     }
-    m_Request.setTransactionID(getTransactionID());
-  }//toggleTransactionID
+  }//measure
 
 }//class ModbusTCPTransaction
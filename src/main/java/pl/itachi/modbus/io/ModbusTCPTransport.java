@@ -36,9 +36,9 @@ package pl.itachi.modbus.io;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusIOException;
 import pl.itachi.modbus.msg.ModbusMessage;
+import pl.itachi.modbus.msg.ModbusMessagePool;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
-import pl.itachi.modbus.util.ModbusUtil;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -46,13 +46,23 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that implements the Modbus transport
  * flavor.
+ * <p>
+ * Written messages are flushed to the socket according to the
+ * configured <tt>FlushPolicy</tt>; with a policy other than
+ * <tt>IMMEDIATE</tt> several messages may be coalesced into one
+ * write call. Pending output is always flushed before blocking
+ * for input.
  *
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
@@ -60,10 +70,60 @@ import java.net.SocketException;
 public class ModbusTCPTransport
     implements ModbusTransport {
 
+  /**
+   * Enumeration of the policies for flushing written
+   * messages to the socket.
+   */
+  public enum FlushPolicy {
+    /**
+     * Every message is flushed as soon as it has been written.
+     */
+    IMMEDIATE,
+    /**
+     * Messages are flushed together at the end of a batch, i.e.
+     * when {@link ModbusTCPTransport#flush()} is called or before
+     * blocking for input.
+     */
+    END_OF_BATCH,
+    /**
+     * Like <tt>END_OF_BATCH</tt>, but messages are flushed earlier
+     * once the pending output reaches the size or age threshold.
+     */
+    THRESHOLD
+  }//enum FlushPolicy
+
+  /**
+   * Defines the default size threshold in bytes of the
+   * <tt>THRESHOLD</tt> flush policy (a typical TCP segment).
+   */
+  public static final int DEFAULT_FLUSH_BYTES = 1460;
+
+  /**
+   * Defines the default age threshold in milliseconds of the
+   * <tt>THRESHOLD</tt> flush policy.
+   */
+  public static final int DEFAULT_FLUSH_DELAY = 5;
+
   //instance attributes
   private DataInputStream m_Input;	  //input stream
   private DataOutputStream m_Output;	 //output stream
+  private Socket m_Socket;
   private BytesInputStream m_ByteIn;
+  private MBAPFrameDecoder m_Decoder;
+  private ModbusMessagePool m_MessagePool;
+  //locks instead of monitors, a virtual thread blocked on
+  //the socket must not pin its carrier thread
+  private final ReentrantLock m_ReadLock = new ReentrantLock();
+  private final ReentrantLock m_WriteLock = new ReentrantLock();
+
+  //flushing
+  private FlushPolicy m_FlushPolicy = FlushPolicy.IMMEDIATE;
+  private int m_FlushBytes = DEFAULT_FLUSH_BYTES;
+  private long m_FlushDelay = DEFAULT_FLUSH_DELAY * 1000000L;
+  private int m_PendingBytes;
+  private long m_PendingSince;
+  private WriteStatistics m_Statistics = new WriteStatistics();
+  private TransactionIDSequence m_TransactionIDs = new TransactionIDSequence();
 
   /**
    * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -94,6 +154,89 @@ public class ModbusTCPTransport
     prepareStreams(socket);
   }//setSocket
 
+  /**
+   * Sets the pool requests are read into; null makes this
+   * transport create a new request for every message read.
+   * <p>
+   * A pool may only be set if each request has been answered
+   * before the next one is read.
+   *
+   * @param pool a <tt>ModbusMessagePool</tt> instance.
+   */
+  public void setMessagePool(ModbusMessagePool pool) {
+    m_MessagePool = pool;
+  }//setMessagePool
+
+  /**
+   * Sets the policy for flushing written messages.
+   *
+   * @param policy a <tt>FlushPolicy</tt>.
+   */
+  public void setFlushPolicy(FlushPolicy policy) {
+    m_FlushPolicy = policy;
+  }//setFlushPolicy
+
+  /**
+   * Returns the policy for flushing written messages.
+   *
+   * @return the <tt>FlushPolicy</tt>.
+   */
+  public FlushPolicy getFlushPolicy() {
+    return m_FlushPolicy;
+  }//getFlushPolicy
+
+  /**
+   * Sets the thresholds of the <tt>THRESHOLD</tt> flush policy.
+   *
+   * @param bytes the number of pending bytes that causes a flush.
+   * @param delay the age in milliseconds of the oldest pending
+   *        message that causes a flush on the next write.
+   */
+  public void setFlushThreshold(int bytes, int delay) {
+    m_FlushBytes = bytes;
+    m_FlushDelay = delay * 1000000L;
+  }//setFlushThreshold
+
+  /**
+   * Sets the statistics the writes of this transport are
+   * accounted in, e.g. to share them between connections.
+   *
+   * @param statistics a <tt>WriteStatistics</tt> instance.
+   */
+  public void setWriteStatistics(WriteStatistics statistics) {
+    m_Statistics = statistics;
+  }//setWriteStatistics
+
+  /**
+   * Returns the statistics the writes of this transport are
+   * accounted in.
+   *
+   * @return the <tt>WriteStatistics</tt> instance.
+   */
+  public WriteStatistics getWriteStatistics() {
+    return m_Statistics;
+  }//getWriteStatistics
+
+  public int nextTransactionID() {
+    return m_TransactionIDs.next();
+  }//nextTransactionID
+
+  public void setReadTimeout(int timeout) {
+    try {
+      m_Socket.setSoTimeout(timeout);
+    } catch (SocketException ex) {
+      if (Modbus.debug) System.out.println("ModbusTCPTransport::Failed to set timeout.");
+    }
+  }//setReadTimeout
+
+  public int getReadTimeout() {
+    try {
+      return m_Socket.getSoTimeout();
+    } catch (SocketException ex) {
+      return -1;
+    }
+  }//getReadTimeout
+
   public void close() throws IOException {
     m_Input.close();
     m_Output.close();
@@ -102,14 +245,79 @@ public class ModbusTCPTransport
   public void writeMessage(ModbusMessage msg)
       throws ModbusIOException {
     try {
-      msg.writeTo((DataOutput) m_Output);
-      m_Output.flush();
+      m_WriteLock.lock();
+      try {
+        msg.writeTo((DataOutput) m_Output);
+        m_Statistics.messageWritten();
+        if (m_PendingBytes == 0) {
+          m_PendingSince = System.nanoTime();
+        }
+        m_PendingBytes += msg.getOutputLength();
+        switch (m_FlushPolicy) {
+          case IMMEDIATE:
+            flushOutput();
+            break;
+          case THRESHOLD:
+            if (m_PendingBytes >= m_FlushBytes
+                || System.nanoTime() - m_PendingSince >= m_FlushDelay) {
+              flushOutput();
+            }
+            break;
+          default:
+            break;
+        }
+      } finally {
+        m_WriteLock.unlock();
+      }
       //write more sophisticated exception handling
     } catch (Exception ex) {
       throw new ModbusIOException("I/O exception - failed to write.");
     }
   }//write
 
+  /**
+   * Flushes the messages written but still pending, ending
+   * the current batch.
+   *
+   * @throws ModbusIOException if the output cannot be flushed.
+   */
+  public void flush() throws ModbusIOException {
+    try {
+      m_WriteLock.lock();
+      try {
+        if (m_PendingBytes > 0) {
+          flushOutput();
+        }
+      } finally {
+        m_WriteLock.unlock();
+      }
+    } catch (IOException ex) {
+      throw new ModbusIOException("I/O exception - failed to write.");
+    }
+  }//flush
+
+  /**
+   * Flushes pending output if no input is available, as the
+   * peer may be waiting for it before sending anything else.
+   *
+   * @throws IOException if an I/O related error occurs.
+   */
+  private void flushBeforeRead() throws IOException {
+    m_WriteLock.lock();
+    try {
+      if (m_PendingBytes > 0 && m_Input.available() == 0) {
+        flushOutput();
+      }
+    } finally {
+      m_WriteLock.unlock();
+    }
+  }//flushBeforeRead
+
+  private void flushOutput() throws IOException {
+    m_PendingBytes = 0;
+    m_Output.flush();
+  }//flushOutput
+
   public ModbusRequest readRequest()
       throws ModbusIOException {
 
@@ -117,26 +325,26 @@ public class ModbusTCPTransport
     try {
 
       ModbusRequest req = null;
-      synchronized (m_ByteIn) {
-        //use same buffer
-        byte[] buffer = m_ByteIn.getBuffer();
-
-        //read to byte length of message
-        if (m_Input.read(buffer, 0, 6) == -1) {
+      flushBeforeRead();
+      m_ReadLock.lock();
+      try {
+        //read a complete frame, however it is segmented
+        if (!m_Decoder.readFrame(m_Input)) {
           throw new EOFException("Premature end of stream (Header truncated).");
         }
-        //extract length of bytes following in message
-        int bf = ModbusUtil.registerToShort(buffer, 4);
-        //read rest
-        if (m_Input.read(buffer, 6, bf) == -1) {
-          throw new ModbusIOException("Premature end of stream (Message truncated).");
-        }
-        m_ByteIn.reset(buffer, (6 + bf));
+        m_ByteIn.reset(m_Decoder.getBuffer(), m_Decoder.getFrameLength());
+        m_Decoder.next();
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
-        req = ModbusRequest.createModbusRequest(functionCode);
+        if (m_MessagePool == null) {
+          req = ModbusRequest.createModbusRequest(functionCode);
+        } else {
+          req = m_MessagePool.getRequest(functionCode);
+        }
         req.readFrom(m_ByteIn);
+      } finally {
+        m_ReadLock.unlock();
       }
       return req;
 /*
@@ -181,26 +389,22 @@ public class ModbusTCPTransport
     try {
 
       ModbusResponse res = null;
-      synchronized (m_ByteIn) {
-        //use same buffer
-        byte[] buffer = m_ByteIn.getBuffer();
-
-        //read to byte length of message
-        if (m_Input.read(buffer, 0, 6) == -1) {
-          throw new ModbusIOException("Premature end of stream (Header truncated).");
-        }
-        //extract length of bytes following in message
-        int bf = ModbusUtil.registerToShort(buffer, 4);
-        //read rest
-        if (m_Input.read(buffer, 6, bf) == -1) {
-          throw new ModbusIOException("Premature end of stream (Message truncated).");
+      flushBeforeRead();
+      m_ReadLock.lock();
+      try {
+        //read a complete frame, however it is segmented
+        if (!m_Decoder.readFrame(m_Input)) {
+          throw new EOFException("Premature end of stream (Header truncated).");
         }
-        m_ByteIn.reset(buffer, (6 + bf));
+        m_ByteIn.reset(m_Decoder.getBuffer(), m_Decoder.getFrameLength());
+        m_Decoder.next();
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
         res = ModbusResponse.createModbusResponse(functionCode);
         res.readFrom(m_ByteIn);
+      } finally {
+        m_ReadLock.unlock();
       }
       return res;
       /*
@@ -229,6 +433,13 @@ public class ModbusTCPTransport
          response.setUnitID(unitID);
          return response;
          */
+    } catch (EOFException eoex) {
+      throw new ModbusIOException(true);
+    } catch (SocketTimeoutException toex) {
+      throw new ModbusIOException("Socket timed out.");
+    } catch (SocketException sockex) {
+      //connection reset by peer or closed, also EOF
+      throw new ModbusIOException(true);
     } catch (Exception ex) {
       ex.printStackTrace();
       throw new ModbusIOException("I/O exception - failed to read.");
@@ -245,13 +456,38 @@ public class ModbusTCPTransport
    */
   private void prepareStreams(Socket socket) throws IOException {
 
+    m_Socket = socket;
     m_Input = new DataInputStream(
         new BufferedInputStream(socket.getInputStream())
     );
     m_Output = new DataOutputStream(
-        new BufferedOutputStream(socket.getOutputStream())
+        new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()))
     );
-    m_ByteIn = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+    m_PendingBytes = 0;
+    m_Decoder = new MBAPFrameDecoder();
+    m_ByteIn = new BytesInputStream(m_Decoder.getBuffer());
   }//prepareStreams
 
+  /**
+   * Output stream accounting each write to the socket
+   * in the transport's <tt>WriteStatistics</tt>.
+   */
+  private class CountingOutputStream extends FilterOutputStream {
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }//constructor
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      m_Statistics.bytesWritten(len);
+    }//write
+
+    public void write(int b) throws IOException {
+      out.write(b);
+      m_Statistics.bytesWritten(1);
+    }//write
+
+  }//class CountingOutputStream
+
 }//class ModbusTCPTransport
@@ -119,6 +119,33 @@ public interface ModbusTransaction {
    */
   public boolean isCheckingValidity();
 
+  /**
+   * Sets the circuit breaker guarding the slaves this
+   * <tt>ModbusTransaction</tt> is executed with; a breaker
+   * should be shared by all transactions over the same
+   * connection.
+   * <p>
+   * Transactions without support for circuit breakers ignore
+   * the breaker, and their {@link #getCircuitBreaker()} keeps
+   * returning null; callers may test this to detect the support.
+   * <p>
+   * @param breaker a <tt>CircuitBreaker</tt>, or null.
+   */
+  public default void setCircuitBreaker(CircuitBreaker breaker) {
+    //not supported, executed without a breaker
+  }//setCircuitBreaker
+
+  /**
+   * Returns the circuit breaker guarding the slaves this
+   * <tt>ModbusTransaction</tt> is executed with.
+   * <p>
+   * @return the <tt>CircuitBreaker</tt>, or null if none has been
+   *         set or circuit breakers are not supported.
+   */
+  public default CircuitBreaker getCircuitBreaker() {
+    return null;
+  }//getCircuitBreaker
+
   /**
    * Executes this <tt>ModbusTransaction</tt>.
    * Locks the <tt>ModbusTransport</tt> for sending
@@ -128,7 +155,8 @@ public interface ModbusTransaction {
    * be opened for the transaction and closed afterwards.
    * <p>
    * @throws ModbusException if an I/O error occurs,
-   *         or the response is a modbus protocol exception.
+   *         or the response is a modbus protocol exception,
+   *         or the circuit of the slave is open.
    */
   public void execute() throws ModbusException;
 
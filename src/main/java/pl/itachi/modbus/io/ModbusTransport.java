@@ -91,4 +91,40 @@ public interface ModbusTransport {
    */
   public ModbusResponse readResponse() throws ModbusIOException;
 
+  /**
+   * Returns the next transaction identifier for a request
+   * sent through this <tt>ModbusTransport</tt>.
+   * Identifiers are sequenced per transport, i.e. per connection,
+   * and start from zero again after <tt>Modbus.MAX_TRANSACTION_ID</tt>.
+   * <p>
+   * Transports that do not keep a sequence of their own draw
+   * from one shared by all of them.
+   * <p>
+   * @return the transaction identifier as <tt>int</tt>.
+   */
+  public default int nextTransactionID() {
+    return TransactionIDSequence.SHARED.next();
+  }//nextTransactionID
+
+  /**
+   * Sets the time a read of a response may block, in
+   * milliseconds; 0 means no limit. Transports that cannot
+   * bound a single read ignore it.
+   * <p>
+   * @param timeout the timeout in milliseconds.
+   */
+  public default void setReadTimeout(int timeout) {
+  }//setReadTimeout
+
+  /**
+   * Returns the time a read of a response may block, in
+   * milliseconds, as set on the underlying connection or terminal.
+   * <p>
+   * @return the timeout in milliseconds, 0 for no limit,
+   *         or -1 if unknown.
+   */
+  public default int getReadTimeout() {
+    return -1;
+  }//getReadTimeout
+
 }//class ModbusTransport
@@ -40,6 +40,7 @@ import pl.itachi.modbus.ModbusSlaveException;
 import pl.itachi.modbus.msg.ExceptionResponse;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.net.RTTEstimator;
 import pl.itachi.modbus.net.UDPMasterConnection;
 import pl.itachi.modbus.net.UDPTerminal;
 
@@ -53,12 +54,9 @@ import pl.itachi.modbus.net.UDPTerminal;
 public class ModbusUDPTransaction
     implements ModbusTransaction {
 
-  //class attributes
-  private static int c_TransactionID =
-      Modbus.DEFAULT_TRANSACTION_ID;
-
   //instance attributes and associations
   private UDPTerminal m_Terminal;
+  private UDPMasterConnection m_Connection;
   private ModbusTransport m_IO;
   private ModbusRequest m_Request;
   private ModbusResponse m_Response;
@@ -66,6 +64,7 @@ public class ModbusUDPTransaction
       Modbus.DEFAULT_VALIDITYCHECK;
   private int m_Retries = Modbus.DEFAULT_RETRIES;
   private int m_RetryCounter = 0;
+  private CircuitBreaker m_CircuitBreaker;
 
   /**
    * Constructs a new <tt>ModbusUDPTransaction</tt>
@@ -104,6 +103,7 @@ public class ModbusUDPTransaction
    * @param con a <tt>ModbusUDPConnection</tt> instance.
    */
   public ModbusUDPTransaction(UDPMasterConnection con) {
+    m_Connection = con;
     setTerminal(con.getTerminal());
   }//constructor
 
@@ -134,7 +134,7 @@ public class ModbusUDPTransaction
   }//getResponse
 
   public int getTransactionID() {
-    return c_TransactionID;
+    return (m_Request == null) ? Modbus.DEFAULT_TRANSACTION_ID : m_Request.getTransactionID();
   }//getTransactionID
 
   public void setCheckingValidity(boolean b) {
@@ -154,12 +154,49 @@ public class ModbusUDPTransaction
     m_Retries = num;
   }//setRetries
 
+  public void setCircuitBreaker(CircuitBreaker breaker) {
+    m_CircuitBreaker = breaker;
+  }//setCircuitBreaker
+
+  public CircuitBreaker getCircuitBreaker() {
+    return m_CircuitBreaker;
+  }//getCircuitBreaker
+
   public void execute() throws ModbusIOException,
       ModbusSlaveException,
       ModbusException {
 
     //1. assert executeability
     assertExecutable();
+    CircuitBreaker breaker = m_CircuitBreaker;
+    boolean probe = (breaker != null) && breaker.acquire(m_Request.getUnitID());
+    boolean answered = false;
+    try {
+      transmit(probe ? 0 : m_Retries);
+      answered = true;
+    } finally {
+      if (breaker != null) {
+        breaker.release(m_Request.getUnitID(), answered);
+      }
+    }
+
+    //4. deal with "application level" exceptions
+    if (m_Response instanceof ExceptionResponse) {
+      throw new ModbusSlaveException(
+          ((ExceptionResponse) m_Response).getExceptionCode()
+      );
+    }
+  }//execute
+
+  /**
+   * Sends the request and reads the response, retrying
+   * the given number of times.
+   *
+   * @param retries the number of retries.
+   * @throws ModbusIOException if no response could be read.
+   */
+  private void transmit(int retries)
+      throws ModbusIOException {
     //2. open the connection if not connected
     if (!m_Terminal.isActive()) {
       try {
@@ -174,7 +211,10 @@ public class ModbusUDPTransaction
     //3. Retry transaction m_Retries times, in case of
     //I/O Exception problems.
     m_RetryCounter = 0;
-    while (m_RetryCounter <= m_Retries) {
+    m_Request.setTransactionID(m_IO.nextTransactionID());
+    while (m_RetryCounter <= retries) {
+      int timeout = getTimeout(m_RetryCounter);
+      long sent = System.nanoTime();
       try {
         //3. write request, and read response,
         //   while holding the lock on the IO object
@@ -182,29 +222,44 @@ public class ModbusUDPTransaction
           //write request message
           m_IO.writeMessage(m_Request);
           //read response message
-          m_Response = m_IO.readResponse();
-          break;
+          m_Response = ResponseReader.read(m_IO, m_Request, isCheckingValidity(), timeout);
         }
+        ModbusTCPTransaction.measure(getRTTEstimator(), m_RetryCounter, sent, timeout, true);
+        break;
       } catch (ModbusIOException ex) {
+        ModbusTCPTransaction.measure(getRTTEstimator(), m_RetryCounter, sent, timeout, false);
+        if (m_RetryCounter == retries) {
+          throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)");
+        }
         m_RetryCounter++;
         continue;
       }
     }
+  }//transmit
 
-    //4. deal with "application level" exceptions
-    if (m_Response instanceof ExceptionResponse) {
-      throw new ModbusSlaveException(
-          ((ExceptionResponse) m_Response).getExceptionCode()
-      );
-    }
-
-    if (isCheckingValidity()) {
-      checkValidity();
+  /**
+   * Returns the time to wait for the response, as determined
+   * by the connection of this transaction, if any.
+   *
+   * @param retry the number of retries so far.
+   * @return the timeout in milliseconds.
+   */
+  private int getTimeout(int retry) {
+    if (m_Connection != null) {
+      return m_Connection.prepareResponseTimeout(retry);
     }
+    return Modbus.DEFAULT_TIMEOUT;
+  }//getTimeout
 
-    //toggle the id
-    toggleTransactionID();
-  }//execute
+  /**
+   * Returns the estimator of the round-trip time of
+   * the connection of this transaction, if any.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null.
+   */
+  private RTTEstimator getRTTEstimator() {
+    return (m_Connection != null) ? m_Connection.getRTTEstimator() : null;
+  }//getRTTEstimator
 
   /**
    * Asserts if this <tt>ModbusTCPTransaction</tt> is
@@ -223,37 +278,4 @@ public class ModbusUDPTransaction
     }
   }//assertExecuteable
 
-  /**
-   * Checks the validity of the transaction, by
-   * checking if the values of the response correspond
-   * to the values of the request.
-   *
-   * @throws ModbusException if this transaction has not been valid.
-   */
-  private void checkValidity() throws ModbusException {
-    //1.check transaction number
-    //if(m_Request.getTransactionID()!=m_Response.getTransactionID()) {
-
-    //}
-
-  }//checkValidity
-
-  /**
-   * Toggles the transaction identifier, to ensure
-   * that each transaction has a distinctive
-   * identifier.<br>
-   * When the maximum value of 65535 has been reached,
-   * the identifiers will start from zero again.
-   */
-  private void toggleTransactionID() {
-    if (isCheckingValidity()) {
-      if (c_TransactionID == Modbus.MAX_TRANSACTION_ID) {
-        c_TransactionID = 0;
-      } else {
-        c_TransactionID++;
-      }
-    }
-    m_Request.setTransactionID(getTransactionID());
-  }//toggleTransactionID
-
 }//class ModbusUDPTransaction
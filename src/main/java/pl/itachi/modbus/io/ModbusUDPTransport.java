@@ -58,6 +58,7 @@ public class ModbusUDPTransport
   private UDPTerminal m_Terminal;
   private BytesOutputStream m_ByteOut;
   private BytesInputStream m_ByteIn;
+  private TransactionIDSequence m_TransactionIDs = new TransactionIDSequence();
 
   /**
    * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -72,6 +73,18 @@ public class ModbusUDPTransport
   }//constructor
 
 
+  public int nextTransactionID() {
+    return m_TransactionIDs.next();
+  }//nextTransactionID
+
+  public void setReadTimeout(int timeout) {
+    m_Terminal.setTimeout(timeout);
+  }//setReadTimeout
+
+  public int getReadTimeout() {
+    return m_Terminal.getTimeout();
+  }//getReadTimeout
+
   public void close()
       throws IOException {
     //?
@@ -83,7 +96,8 @@ public class ModbusUDPTransport
       synchronized (m_ByteOut) {
         m_ByteOut.reset();
         msg.writeTo((DataOutput) m_ByteOut);
-        m_Terminal.sendMessage(m_ByteOut.getBuffer());
+        //hand over a copy, the buffer is reused for the next message
+        m_Terminal.sendMessage(m_ByteOut.toByteArray());
       }
     } catch (Exception ex) {
       throw new ModbusIOException("I/O exception - failed to write.");
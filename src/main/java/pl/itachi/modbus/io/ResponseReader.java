@@ -0,0 +1,100 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+
+/**
+ * Class implementing the reading of the response to a request
+ * on the master side, shared by the transactions.
+ */
+final class ResponseReader {
+
+  private ResponseReader() {
+  }//constructor
+
+  /**
+   * Reads the response to the given request. If checking validity,
+   * responses that do not answer the request, e.g. late responses
+   * to an earlier one, are discarded until the given time has passed.
+   * Each read after a discarded response only waits for the time
+   * left, and the read timeout the transport had before is restored
+   * afterwards (the given timeout, if the transport cannot tell).
+   *
+   * @param io       the <tt>ModbusTransport</tt> to read from.
+   * @param request  the <tt>ModbusRequest</tt> sent.
+   * @param checking true if checking validity, false otherwise.
+   * @param timeout  the time to wait in milliseconds, 0 for no limit.
+   * @return the <tt>ModbusResponse</tt> read.
+   * @throws ModbusIOException if no response answering the
+   *         request could be read.
+   */
+  static ModbusResponse read(ModbusTransport io, ModbusRequest request,
+                             boolean checking, int timeout)
+      throws ModbusIOException {
+    long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    boolean shortened = false;
+    int previous = -1;
+    try {
+      while (true) {
+        ModbusResponse response = io.readResponse();
+        if (!checking || request.isAnsweredBy(response)) {
+          return response;
+        }
+        if (Modbus.debug) {
+          System.out.println("Discarding response:" + response.getHexMessage());
+        }
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          throw new ModbusIOException("No response answering the request.");
+        }
+        if (timeout > 0) {
+          if (!shortened) {
+            previous = io.getReadTimeout();
+            shortened = true;
+          }
+          io.setReadTimeout((int) left);
+        }
+      }
+    } finally {
+      if (shortened) {
+        io.setReadTimeout((previous >= 0) ? previous : timeout);
+      }
+    }
+  }//read
+
+}//class ResponseReader
@@ -0,0 +1,69 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.itachi.modbus.Modbus;
+
+/**
+ * Class implementing a lock-free sequence of transaction
+ * identifiers, starting from zero again after
+ * <tt>Modbus.MAX_TRANSACTION_ID</tt>.
+ */
+final class TransactionIDSequence {
+
+  /**
+   * The sequence used by transports that do not keep their own.
+   */
+  static final TransactionIDSequence SHARED = new TransactionIDSequence();
+
+  //instance attributes
+  private AtomicInteger m_Next = new AtomicInteger(Modbus.DEFAULT_TRANSACTION_ID);
+
+  /**
+   * Returns the next transaction identifier of this sequence.
+   *
+   * @return the transaction identifier as <tt>int</tt>.
+   */
+  int next() {
+    int tid;
+    do {
+      tid = m_Next.get();
+    } while (!m_Next.compareAndSet(tid,
+        (tid >= Modbus.MAX_TRANSACTION_ID) ? 0 : tid + 1));
+    return tid;
+  }//next
+
+}//class TransactionIDSequence
@@ -0,0 +1,123 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class implementing counters for the messages written by
+ * one or more transports and the write calls (syscalls) needed
+ * to put them on the wire.
+ * <p>
+ * The ratio of writes per message shows how well responses
+ * are coalesced; an instance may be shared by all connections
+ * of a listener.
+ */
+public class WriteStatistics {
+
+  //instance attributes
+  private AtomicLong m_Messages = new AtomicLong();
+  private AtomicLong m_Writes = new AtomicLong();
+  private AtomicLong m_Bytes = new AtomicLong();
+
+  /**
+   * Accounts for a message that has been written.
+   */
+  public void messageWritten() {
+    m_Messages.incrementAndGet();
+  }//messageWritten
+
+  /**
+   * Accounts for a write call that passed the given
+   * number of bytes to the network.
+   *
+   * @param bytes the number of bytes written.
+   */
+  public void bytesWritten(int bytes) {
+    m_Writes.incrementAndGet();
+    m_Bytes.addAndGet(bytes);
+  }//bytesWritten
+
+  /**
+   * Returns the number of messages written.
+   *
+   * @return the number of messages as <tt>long</tt>.
+   */
+  public long getMessageCount() {
+    return m_Messages.get();
+  }//getMessageCount
+
+  /**
+   * Returns the number of write calls issued.
+   *
+   * @return the number of writes as <tt>long</tt>.
+   */
+  public long getWriteCount() {
+    return m_Writes.get();
+  }//getWriteCount
+
+  /**
+   * Returns the number of bytes written.
+   *
+   * @return the number of bytes as <tt>long</tt>.
+   */
+  public long getByteCount() {
+    return m_Bytes.get();
+  }//getByteCount
+
+  /**
+   * Returns the average number of write calls per message.
+   *
+   * @return the writes per message, 0 if nothing has been written.
+   */
+  public double getWritesPerMessage() {
+    long messages = m_Messages.get();
+    return (messages == 0) ? 0 : (double) m_Writes.get() / messages;
+  }//getWritesPerMessage
+
+  /**
+   * Resets all counters to zero.
+   */
+  public void reset() {
+    m_Messages.set(0);
+    m_Writes.set(0);
+    m_Bytes.set(0);
+  }//reset
+
+  public String toString() {
+    return "messages=" + getMessageCount() + " writes=" + getWriteCount()
+        + " bytes=" + getByteCount() + " writes/message=" + getWritesPerMessage();
+  }//toString
+
+}//class WriteStatistics
@@ -0,0 +1,91 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.msg;
+
+/**
+ * Class implementing a pool of reusable request and
+ * response instances, keyed by function code.
+ * <p>
+ * A pool is meant to be used by a single connection that
+ * handles one request at a time: the request returned for a
+ * function code is the same instance on every call, overwritten
+ * by the next request read with that code. Requests taken from
+ * a pool also fill a pooled response instead of allocating a
+ * new one where the function supports it (read holding and
+ * input registers, write coil, write single and multiple
+ * registers). Such a response is valid until the next request
+ * with the same function code has been answered.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class ModbusMessagePool {
+
+  //instance attributes
+  private ModbusRequest[] m_Requests = new ModbusRequest[256];
+  private ModbusResponse[] m_Responses = new ModbusResponse[256];
+
+  /**
+   * Returns the pooled request instance for the given
+   * function code, creating it on first use.
+   *
+   * @param functionCode the function code of the request.
+   * @return the <tt>ModbusRequest</tt> to read the request into.
+   */
+  public ModbusRequest getRequest(int functionCode) {
+    ModbusRequest request = m_Requests[functionCode & 0xff];
+    if (request == null) {
+      request = ModbusRequest.createModbusRequest(functionCode);
+      request.setMessagePool(this);
+      m_Requests[functionCode & 0xff] = request;
+    }
+    return request;
+  }//getRequest
+
+  /**
+   * Returns the pooled response instance for the given
+   * function code, creating it on first use.
+   *
+   * @param functionCode the function code of the response.
+   * @return the <tt>ModbusResponse</tt> to be reused.
+   */
+  ModbusResponse getResponse(int functionCode) {
+    ModbusResponse response = m_Responses[functionCode & 0xff];
+    if (response == null) {
+      response = ModbusResponse.createModbusResponse(functionCode);
+      m_Responses[functionCode & 0xff] = response;
+    }
+    return response;
+  }//getResponse
+
+}//class ModbusMessagePool
@@ -47,6 +47,9 @@ import pl.itachi.modbus.ModbusDevice;
 public abstract class ModbusRequest
     extends ModbusMessageImpl {
 
+  //the pool this request belongs to, if any
+  private ModbusMessagePool m_MessagePool;
+
   /**
    * Returns the <tt>ModbusResponse</tt> that
    * correlates with this <tt>ModbusRequest</tt>.
@@ -70,6 +73,55 @@ public abstract class ModbusRequest
 
   public abstract ModbusResponse createResponse();
 
+  /**
+   * Tests if this <tt>ModbusRequest</tt> has been taken
+   * from a <tt>ModbusMessagePool</tt> and is reused.
+   *
+   * @return true if pooled, false otherwise.
+   */
+  public boolean isPooled() {
+    return m_MessagePool != null;
+  }//isPooled
+
+  /**
+   * Sets the pool this request has been taken from.
+   *
+   * @param pool the owning <tt>ModbusMessagePool</tt>.
+   */
+  void setMessagePool(ModbusMessagePool pool) {
+    m_MessagePool = pool;
+  }//setMessagePool
+
+  /**
+   * Returns the pooled response to be filled in place
+   * of a new one, if this request has been taken from a
+   * <tt>ModbusMessagePool</tt>.
+   *
+   * @return the pooled <tt>ModbusResponse</tt> or null.
+   */
+  ModbusResponse getPooledResponse() {
+    if (m_MessagePool == null) {
+      return null;
+    }
+    return m_MessagePool.getResponse(getFunctionCode());
+  }//getPooledResponse
+
+  /**
+   * Tests if the given response answers this <tt>ModbusRequest</tt>,
+   * i.e. if its transaction identifier (unless headless), unit
+   * identifier and function code match those of this request.
+   *
+   * @param response a <tt>ModbusResponse</tt>.
+   * @return true if the response answers this request, false otherwise.
+   */
+  public boolean isAnsweredBy(ModbusResponse response) {
+    if (!isHeadless() && response.getTransactionID() != getTransactionID()) {
+      return false;
+    }
+    return response.getUnitID() == getUnitID()
+        && (response.getFunctionCode() & ~Modbus.EXCEPTION_OFFSET) == getFunctionCode();
+  }//isAnsweredBy
+
   /**
    * Factory method for creating exception responses with the
    * given exception code.
@@ -87,6 +139,7 @@ public abstract class ModbusRequest
     } else {
       response.setHeadless();
     }
+    response.setUnitID(this.getUnitID());
     return response;
   }//createExceptionResponse
 
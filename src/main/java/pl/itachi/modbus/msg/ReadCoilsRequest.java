@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.DigitalOut;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
@@ -107,11 +108,18 @@ public final class ReadCoilsRequest extends ModbusRequest {
         DigitalOut[] douts = null;
 
         try {
-            douts = processImage.getDigitalOutRange(this.getReference(), this.getBitCount());
+            if (processImage instanceof BulkProcessImage) {
+                //pack the states straight into the response
+                response = new ReadCoilsResponse(this.getBitCount());
+                ((BulkProcessImage) processImage).getDigitalOutBits(this.getReference(),
+                        this.getBitCount(), response.getCoils().getBytes(), 0);
+            } else {
+                douts = processImage.getDigitalOutRange(this.getReference(), this.getBitCount());
+                response = new ReadCoilsResponse(douts.length);
+            }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadCoilsResponse(douts.length);
 
         //transfer header data
         if (!isHeadless()) {
@@ -123,8 +131,10 @@ public final class ReadCoilsRequest extends ModbusRequest {
         response.setUnitID(this.getUnitID());
         response.setFunctionCode(this.getFunctionCode());
 
-        for (int i = 0; i < douts.length; i++) {
-            response.setCoilStatus(i, douts[i].isSet());
+        if (douts != null) {
+            for (int i = 0; i < douts.length; i++) {
+                response.setCoilStatus(i, douts[i].isSet());
+            }
         }
         return response;
     }
@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.DigitalIn;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
@@ -117,11 +118,18 @@ public final class ReadInputDiscretesRequest
         DigitalIn[] dins = null;
 
         try {
-            dins = processImage.getDigitalInRange(this.getReference(), this.getBitCount());
+            if (processImage instanceof BulkProcessImage) {
+                //pack the states straight into the response
+                response = new ReadInputDiscretesResponse(this.getBitCount());
+                ((BulkProcessImage) processImage).getDigitalInBits(this.getReference(),
+                        this.getBitCount(), response.getDiscretes().getBytes(), 0);
+            } else {
+                dins = processImage.getDigitalInRange(this.getReference(), this.getBitCount());
+                response = new ReadInputDiscretesResponse(dins.length);
+            }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadInputDiscretesResponse(dins.length);
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -132,8 +140,10 @@ public final class ReadInputDiscretesRequest
         response.setUnitID(this.getUnitID());
         response.setFunctionCode(this.getFunctionCode());
 
-        for (int i = 0; i < dins.length; i++) {
-            response.setDiscreteStatus(i, dins[i].isSet());
+        if (dins != null) {
+            for (int i = 0; i < dins.length; i++) {
+                response.setDiscreteStatus(i, dins[i].isSet());
+            }
         }
         return response;
     }
@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.InputRegister;
 import pl.itachi.modbus.procimg.ProcessImage;
@@ -101,15 +102,28 @@ public final class ReadInputRegistersRequest
     }
 
     private ModbusResponse prepareResponse(ProcessImage processImage) {
-        ReadInputRegistersResponse response = null;
+        ReadInputRegistersResponse response = (ReadInputRegistersResponse) getPooledResponse();
         InputRegister[] inpregs = null;
 
         try {
-            inpregs = processImage.getInputRegisterRange(this.getReference(), this.getWordCount());
+            if (processImage instanceof BulkProcessImage) {
+                //copy the values straight into the response payload
+                if (response == null) {
+                    response = new ReadInputRegistersResponse();
+                }
+                ((BulkProcessImage) processImage).getInputRegisterBytes(this.getReference(),
+                        this.getWordCount(), response.resetPayload(this.getWordCount()), 0);
+            } else {
+                inpregs = processImage.getInputRegisterRange(this.getReference(), this.getWordCount());
+                if (response == null) {
+                    response = new ReadInputRegistersResponse(inpregs);
+                } else {
+                    response.reset(inpregs);
+                }
+            }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadInputRegistersResponse(inpregs);
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
 import pl.itachi.modbus.procimg.Register;
@@ -101,15 +102,28 @@ public final class ReadMultipleRegistersRequest
     }
 
     private ModbusResponse prepareResponse(ProcessImage processImage) {
-        ReadMultipleRegistersResponse response = null;
+        ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse) getPooledResponse();
         Register[] regs = null;
 
         try {
-            regs = processImage.getRegisterRange(this.getReference(), this.getWordCount());
+            if (processImage instanceof BulkProcessImage) {
+                //copy the values straight into the response payload
+                if (response == null) {
+                    response = new ReadMultipleRegistersResponse();
+                }
+                ((BulkProcessImage) processImage).getRegisterBytes(this.getReference(),
+                        this.getWordCount(), response.resetPayload(this.getWordCount()), 0);
+            } else {
+                regs = processImage.getRegisterRange(this.getReference(), this.getWordCount());
+                if (response == null) {
+                    response = new ReadMultipleRegistersResponse(regs);
+                } else {
+                    response.reset(regs);
+                }
+            }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadMultipleRegistersResponse(regs);
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -57,6 +57,7 @@ public final class ReadMultipleRegistersResponse
   //instance attributes
   private int m_ByteCount;
   private Register[] m_Registers;
+  private byte[] m_Payload;
 
   /**
    * Constructs a new <tt>ReadMultipleRegistersResponse</tt>
@@ -113,6 +114,37 @@ public final class ReadMultipleRegistersResponse
     m_ByteCount = count;
   }//setByteCount
 
+  /**
+   * Prepares this response for being reused with the
+   * given registers.
+   *
+   * @param registers the registers to be returned.
+   */
+  void reset(Register[] registers) {
+    m_Registers = registers;
+    m_ByteCount = registers.length * 2;
+    m_Payload = null;
+    setDataLength(m_ByteCount + 1);
+  }//reset
+
+  /**
+   * Prepares this response for being reused with the given
+   * number of registers, filled as raw register data.
+   *
+   * @param count the number of registers to be returned.
+   * @return the <tt>byte[]</tt> to be filled with two bytes per
+   *         register; it may be longer than needed.
+   */
+  byte[] resetPayload(int count) {
+    m_ByteCount = count * 2;
+    if (m_Payload == null || m_Payload.length < m_ByteCount) {
+      m_Payload = new byte[m_ByteCount];
+    }
+    m_Registers = null;
+    setDataLength(m_ByteCount + 1);
+    return m_Payload;
+  }//resetPayload
+
   /**
    * Returns the value of the register at
    * the given position (relative to the reference
@@ -128,9 +160,63 @@ public final class ReadMultipleRegistersResponse
    */
   public int getRegisterValue(int index)
       throws IndexOutOfBoundsException {
-    return m_Registers[index].toUnsignedShort();
+    if (m_Registers != null) {
+      return m_Registers[index].toUnsignedShort();
+    }
+    if (index < 0 || index >= getWordCount()) {
+      throw new IndexOutOfBoundsException();
+    }
+    return ((m_Payload[index * 2] & 0xff) << 8) | (m_Payload[index * 2 + 1] & 0xff);
   }//getRegisterValue
 
+  /**
+   * Copies the values of the registers read into the given
+   * array, starting at the given offset. The values are
+   * taken from the received payload, without creating
+   * <tt>Register</tt> instances.
+   * <p>
+   * @param dest   the <tt>short[]</tt> to copy the values to.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values copied, i.e. the word count.
+   *
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int getRegisterValues(short[] dest, int offset)
+      throws IndexOutOfBoundsException {
+    int count = getWordCount();
+    if (offset < 0 || offset + count > dest.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = 0; i < count; i++) {
+      dest[offset + i] = (short) getRegisterValue(i);
+    }
+    return count;
+  }//getRegisterValues
+
+  /**
+   * Copies the values of the registers read into the given
+   * array, starting at the given offset, interpreted as
+   * unsigned short. The values are taken from the received
+   * payload, without creating <tt>Register</tt> instances.
+   * <p>
+   * @param dest   the <tt>int[]</tt> to copy the values to.
+   * @param offset the index in <tt>dest</tt> of the first value.
+   * @return the number of values copied, i.e. the word count.
+   *
+   * @throws IndexOutOfBoundsException if <tt>dest</tt> is too short.
+   */
+  public int getRegisterValues(int[] dest, int offset)
+      throws IndexOutOfBoundsException {
+    int count = getWordCount();
+    if (offset < 0 || offset + count > dest.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = 0; i < count; i++) {
+      dest[offset + i] = getRegisterValue(i);
+    }
+    return count;
+  }//getRegisterValues
+
   /**
    * Returns the <tt>Register</tt> at
    * the given position (relative to the reference
@@ -149,23 +235,61 @@ public final class ReadMultipleRegistersResponse
     if (index >= getWordCount()) {
       throw new IndexOutOfBoundsException();
     } else {
-      return m_Registers[index];
+      return getRegisters()[index];
     }
   }//getRegister
 
   /**
    * Returns a reference to the array of registers
    * read.
+   * <p>
+   * The registers of a received response are created
+   * from its payload on the first call.
    *
    * @return a <tt>Register[]</tt> instance.
    */
   public Register[] getRegisters() {
+    if (m_Registers == null && m_Payload != null) {
+      Register[] registers = new Register[getWordCount()];
+      ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+      for (int k = 0; k < registers.length; k++) {
+        registers[k] = pimf.createRegister(m_Payload[k * 2], m_Payload[k * 2 + 1]);
+      }
+      m_Registers = registers;
+    }
     return m_Registers;
   }//getRegisters
 
+  /**
+   * Returns the raw register data of this response, two bytes
+   * per register in the order received, for decoding values
+   * directly, e.g. with a {@link pl.itachi.modbus.util.RegisterCodec}.
+   * <p>
+   * The returned array may be longer than the byte count; it
+   * is owned by this response and must not be modified.
+   *
+   * @return the register data as <tt>byte[]</tt>.
+   */
+  public byte[] getPayload() {
+    if (m_Payload == null && m_Registers != null) {
+      byte[] payload = new byte[m_ByteCount];
+      for (int k = 0; k < getWordCount(); k++) {
+        byte[] b = m_Registers[k].toBytes();
+        payload[k * 2] = b[0];
+        payload[k * 2 + 1] = b[1];
+      }
+      m_Payload = payload;
+    }
+    return m_Payload;
+  }//getPayload
+
   public void writeData(DataOutput dout)
       throws IOException {
     dout.writeByte(m_ByteCount);
+    if (m_Registers == null) {
+      dout.write(m_Payload, 0, m_ByteCount);
+      return;
+    }
     for (int k = 0; k < getWordCount(); k++) {
       dout.write(m_Registers[k].toBytes());
     }
@@ -175,12 +299,12 @@ public final class ReadMultipleRegistersResponse
       throws IOException {
     setByteCount(din.readUnsignedByte());
 
-    m_Registers = new Register[getWordCount()];
-    ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
-
-    for (int k = 0; k < getWordCount(); k++) {
-      m_Registers[k] = pimf.createRegister(din.readByte(), din.readByte());
+    //keep the raw payload, registers are created on demand
+    if (m_Payload == null || m_Payload.length < m_ByteCount) {
+      m_Payload = new byte[m_ByteCount];
     }
+    din.readFully(m_Payload, 0, m_ByteCount);
+    m_Registers = null;
 
     //update data length
     setDataLength(getByteCount() + 1);
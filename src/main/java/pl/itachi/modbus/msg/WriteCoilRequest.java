@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.DigitalOut;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
@@ -56,6 +57,10 @@ import java.io.IOException;
 public final class WriteCoilRequest
         extends ModbusRequest {
 
+    //class attributes, packed bits of a single coil
+    private static final byte[] COIL_ON = {1};
+    private static final byte[] COIL_OFF = {0};
+
     //instance attributes
     private int m_Reference;
     private boolean m_Coil;
@@ -103,17 +108,30 @@ public final class WriteCoilRequest
 
     private ModbusResponse prepareResponse(ProcessImage processImage) {
         WriteCoilResponse response = null;
-        DigitalOut dout = null;
+        boolean coil;
 
         try {
-            dout = processImage.getDigitalOut(this.getReference());
-            //3. set coil
-            dout.set(this.getCoil());
+            if (processImage instanceof BulkProcessImage) {
+                //written through the image, so that the range listeners are notified
+                ((BulkProcessImage) processImage).setDigitalOutBits(this.getReference(), 1,
+                        (this.getCoil()) ? COIL_ON : COIL_OFF, 0);
+                coil = this.getCoil();
+            } else {
+                DigitalOut dout = processImage.getDigitalOut(this.getReference());
+                //3. set coil
+                dout.set(this.getCoil());
+                coil = dout.isSet();
+            }
             //if(Modbus.debug) System.out.println("set coil ref="+this.getReference()+" state=" + this.getCoil());
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new WriteCoilResponse(this.getReference(), dout.isSet());
+        response = (WriteCoilResponse) getPooledResponse();
+        if (response == null) {
+            response = new WriteCoilResponse(this.getReference(), coil);
+        } else {
+            response.reset(this.getReference(), coil);
+        }
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -120,6 +120,18 @@ public final class WriteCoilResponse
     //setChanged(true);
   }//setReference
 
+  /**
+   * Prepares this response for being reused.
+   *
+   * @param reference the reference of the coil written to.
+   * @param b the state of the coil after the write.
+   */
+  void reset(int reference, boolean b) {
+    setReference(reference);
+    setCoil(b);
+    setDataLength(4);
+  }//reset
+
   public void writeData(DataOutput dout)
       throws IOException {
     dout.writeShort(getReference());
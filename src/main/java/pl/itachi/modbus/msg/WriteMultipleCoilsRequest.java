@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.DigitalOut;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
@@ -122,10 +123,15 @@ public final class WriteMultipleCoilsRequest
         DigitalOut douts[] = null;
 
         try {
-            douts = processImage.getDigitalOutRange(m_Reference, m_Coils.size());
-            //3. set coils
-            for (int i = 0; i < douts.length; i++) {
-                douts[i].set(m_Coils.getBit(i));
+            if (processImage instanceof BulkProcessImage && m_Coils.isLSBAccess()) {
+                ((BulkProcessImage) processImage).setDigitalOutBits(m_Reference,
+                        m_Coils.size(), m_Coils.getBytes(), 0);
+            } else {
+                douts = processImage.getDigitalOutRange(m_Reference, m_Coils.size());
+                //3. set coils
+                for (int i = 0; i < douts.length; i++) {
+                    douts[i].set(m_Coils.getBit(i));
+                }
             }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
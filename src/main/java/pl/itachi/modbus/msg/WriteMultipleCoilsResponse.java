@@ -76,6 +76,7 @@ public final class WriteMultipleCoilsResponse
     super();
     m_Reference = ref;
     m_BitCount = count;
+    setDataLength(4);
   }//constructor(int)
 
   /**
@@ -37,6 +37,7 @@ import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
 import pl.itachi.modbus.io.NonWordDataHandler;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
 import pl.itachi.modbus.procimg.ProcessImageFactory;
@@ -61,6 +62,8 @@ public final class WriteMultipleRegistersRequest
     //instance attributes
     private int m_Reference;
     private Register[] m_Registers;
+    private byte[] m_Payload;
+    private int m_WordCount;
     private NonWordDataHandler m_NonWordDataHandler = null;
 
     /**
@@ -88,6 +91,24 @@ public final class WriteMultipleRegistersRequest
         setRegisters(registers);
     }//constructor
 
+    /**
+     * Constructs a new <tt>WriteMultipleRegistersRequest</tt>
+     * instance with a given reference and raw register data
+     * to be written.
+     * <p>
+     *
+     * @param ref  the reference number of the register
+     *             to start writing to.
+     * @param data the register data, two bytes per register.
+     * @see #setPayload(byte[])
+     */
+    public WriteMultipleRegistersRequest(int ref, byte[] data) {
+        super();
+        setFunctionCode(Modbus.WRITE_MULTIPLE_REGISTERS);
+        setReference(ref);
+        setPayload(data);
+    }//constructor
+
     @Override
     public ModbusResponse createResponse() {
         return prepareResponse(ModbusCoupler.getReference().getProcessImage());
@@ -104,16 +125,36 @@ public final class WriteMultipleRegistersRequest
         if (m_NonWordDataHandler == null) {
             Register[] regs = null;
             try {
-                //TODO: realize a setRegisterRange()?
-                regs = processImage.getRegisterRange(this.getReference(), this.getWordCount());
-                //3. set Register values
-                for (int i = 0; i < regs.length; i++) {
-                    regs[i].setValue(this.getRegister(i).toBytes());
+                if (processImage instanceof BulkProcessImage) {
+                    //one atomic write and one notification for the whole range
+                    ((BulkProcessImage) processImage).setRegisterBytes(this.getReference(),
+                            this.getWordCount(), encodeRegisters(), 0);
+                } else if (isPooled()) {
+                    //check the range first, then write without allocating a range
+                    if (this.getReference() < 0 ||
+                            this.getReference() + this.getWordCount() > processImage.getRegisterCount()) {
+                        throw new IllegalAddressException();
+                    }
+                    for (int i = 0; i < this.getWordCount(); i++) {
+                        processImage.getRegister(this.getReference() + i)
+                                .setValue(this.getRegisterValue(i));
+                    }
+                } else {
+                    regs = processImage.getRegisterRange(this.getReference(), this.getWordCount());
+                    //3. set Register values
+                    for (int i = 0; i < regs.length; i++) {
+                        regs[i].setValue(this.getRegisterValue(i));
+                    }
                 }
             } catch (IllegalAddressException iaex) {
                 return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
             }
-            response = new WriteMultipleRegistersResponse(this.getReference(), regs.length);
+            response = (WriteMultipleRegistersResponse) getPooledResponse();
+            if (response == null) {
+                response = new WriteMultipleRegistersResponse(this.getReference(), this.getWordCount());
+            } else {
+                response.reset(this.getReference(), this.getWordCount());
+            }
         } else {
             int result = m_NonWordDataHandler.commitUpdate();
             if (result > 0) {
@@ -171,8 +212,54 @@ public final class WriteMultipleRegistersRequest
      */
     public void setRegisters(Register[] registers) {
         m_Registers = registers;
+        m_Payload = null;
+        m_WordCount = registers.length;
+        //reference, word count, byte count and the register data
+        setDataLength(5 + m_WordCount * 2);
     }//setRegisters
 
+    /**
+     * Sets the raw register data to be written with this
+     * <tt>WriteMultipleRegistersRequest</tt>, two bytes per
+     * register, e.g. as encoded with a
+     * {@link pl.itachi.modbus.util.RegisterCodec}.
+     * The data is written as it is, without creating
+     * <tt>Register</tt> instances; it is not copied.
+     * <p>
+     *
+     * @param data the register data as <tt>byte[]</tt>.
+     * @throws IllegalArgumentException if the length of the
+     *                                  data is odd.
+     */
+    public void setPayload(byte[] data) {
+        if (data.length % 2 != 0) {
+            throw new IllegalArgumentException("Odd register data length.");
+        }
+        m_Payload = data;
+        m_Registers = null;
+        m_WordCount = data.length / 2;
+        //reference, word count, byte count and the register data
+        setDataLength(5 + data.length);
+    }//setPayload
+
+    /**
+     * Returns the values of the registers in their wire format,
+     * encoding them only if they were not read or set that way.
+     *
+     * @return the <tt>byte[]</tt> holding the values.
+     */
+    private byte[] encodeRegisters() {
+        if (m_Registers == null) {
+            return m_Payload;
+        }
+        byte[] data = new byte[m_Registers.length * 2];
+        for (int i = 0; i < m_Registers.length; i++) {
+            int v = m_Registers[i].toUnsignedShort();
+            data[i * 2] = (byte) (v >>> 8);
+            data[i * 2 + 1] = (byte) v;
+        }
+        return data;
+    }//encodeRegisters
 
     /**
      * Returns the registers to be written with this
@@ -182,6 +269,14 @@ public final class WriteMultipleRegistersRequest
      * @return the registers to be written as <tt>Register[]</tt>.
      */
     public Register[] getRegisters() {
+        if (m_Registers == null && m_Payload != null) {
+            Register[] registers = new Register[m_WordCount];
+            ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = pimf.createRegister(m_Payload[k * 2], m_Payload[k * 2 + 1]);
+            }
+            m_Registers = registers;
+        }
         return m_Registers;
     }//getRegisters
 
@@ -202,7 +297,7 @@ public final class WriteMultipleRegistersRequest
         if (index >= getWordCount()) {
             throw new IndexOutOfBoundsException();
         } else {
-            return m_Registers[index];
+            return getRegisters()[index];
         }
     }//getRegister
 
@@ -221,6 +316,12 @@ public final class WriteMultipleRegistersRequest
      */
     public int getRegisterValue(int index)
             throws IndexOutOfBoundsException {
+        if (m_Registers == null && m_Payload != null) {
+            if (index < 0 || index >= getWordCount()) {
+                throw new IndexOutOfBoundsException();
+            }
+            return ((m_Payload[index * 2] & 0xff) << 8) | (m_Payload[index * 2 + 1] & 0xff);
+        }
         return m_Registers[index].toUnsignedShort();
     }//getRegisterValue
 
@@ -244,7 +345,7 @@ public final class WriteMultipleRegistersRequest
      * as <tt>int</tt>.
      */
     public int getWordCount() {
-        return m_Registers.length;
+        return m_WordCount;
     }//getWordCount
 
     /**
@@ -274,8 +375,10 @@ public final class WriteMultipleRegistersRequest
         //3. the byte count as byte
         dout.writeByte(getByteCount());
         //4. write values
-        if (m_NonWordDataHandler == null) {
-            for (int n = 0; n < m_Registers.length; n++) {
+        if (m_NonWordDataHandler == null && m_Registers == null) {
+            dout.write(m_Payload, 0, getByteCount());
+        } else if (m_NonWordDataHandler == null) {
+            for (int n = 0; n < m_WordCount; n++) {
                 dout.write(m_Registers[n].toBytes());
             }
         } else {
@@ -294,14 +397,17 @@ public final class WriteMultipleRegistersRequest
 
         //read values
         if (m_NonWordDataHandler == null) {
-            m_Registers = new Register[wc];
-            ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
-            for (int i = 0; i < wc; i++) {
-                m_Registers[i] = pimf.createRegister(din.readByte(), din.readByte());
+            //keep the raw register data, reusing the buffer of the
+            //previous request; registers are created on demand
+            if (m_Payload == null || m_Payload.length < wc * 2) {
+                m_Payload = new byte[wc * 2];
             }
+            din.readFully(m_Payload, 0, wc * 2);
+            m_Registers = null;
         } else {
             m_NonWordDataHandler.readData(din, m_Reference, wc);
         }
+        m_WordCount = wc;
     }//readData
 
 }//class WriteMultipleRegistersRequest
@@ -129,6 +129,18 @@ public final class WriteMultipleRegistersResponse
     m_WordCount = count;
   }//setWordCount
 
+  /**
+   * Prepares this response for being reused.
+   *
+   * @param reference the reference of the first register written to.
+   * @param wordcount the number of registers written.
+   */
+  void reset(int reference, int wordcount) {
+    setReference(reference);
+    setWordCount(wordcount);
+    setDataLength(4);
+  }//reset
+
   public void writeData(DataOutput dout)
       throws IOException {
     dout.writeShort(m_Reference);
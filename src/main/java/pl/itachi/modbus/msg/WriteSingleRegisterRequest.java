@@ -36,6 +36,7 @@ package pl.itachi.modbus.msg;
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.procimg.BulkProcessImage;
 import pl.itachi.modbus.procimg.IllegalAddressException;
 import pl.itachi.modbus.procimg.ProcessImage;
 import pl.itachi.modbus.procimg.Register;
@@ -101,16 +102,29 @@ public final class WriteSingleRegisterRequest
 
     private ModbusResponse prepareResponse(ProcessImage processImage) {
         WriteSingleRegisterResponse response = null;
-        Register reg = null;
+        int value;
 
         try {
-            reg = processImage.getRegister(m_Reference);
-            //3. set Register
-            reg.setValue(m_Register.toBytes());
+            if (processImage instanceof BulkProcessImage) {
+                //written through the image, so that the range listeners are notified
+                ((BulkProcessImage) processImage).setRegisterBytes(m_Reference, 1,
+                        m_Register.toBytes(), 0);
+                value = m_Register.getValue();
+            } else {
+                Register reg = processImage.getRegister(m_Reference);
+                //3. set Register
+                reg.setValue(m_Register.toBytes());
+                value = reg.getValue();
+            }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new WriteSingleRegisterResponse(this.getReference(), reg.getValue());
+        response = (WriteSingleRegisterResponse) getPooledResponse();
+        if (response == null) {
+            response = new WriteSingleRegisterResponse(this.getReference(), value);
+        } else {
+            response.reset(this.getReference(), value);
+        }
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -181,7 +195,12 @@ public final class WriteSingleRegisterRequest
     public void readData(DataInput din)
             throws IOException {
         m_Reference = din.readUnsignedShort();
-        m_Register = ModbusCoupler.getReference().getProcessImageFactory().createRegister(din.readByte(), din.readByte());
+        if (isPooled() && m_Register != null) {
+            //reuse the register of the previous request
+            m_Register.setValue(din.readShort());
+        } else {
+            m_Register = ModbusCoupler.getReference().getProcessImageFactory().createRegister(din.readByte(), din.readByte());
+        }
     }//readData
 
 }//class WriteSingleRegisterRequest
@@ -117,6 +117,18 @@ public final class WriteSingleRegisterResponse
     //setChanged(true);
   }//setReference
 
+  /**
+   * Prepares this response for being reused.
+   *
+   * @param reference the reference of the register written to.
+   * @param value the value of the register after the write.
+   */
+  void reset(int reference, int value) {
+    setReference(reference);
+    setRegisterValue(value);
+    setDataLength(4);
+  }//reset
+
   public void writeData(DataOutput dout)
       throws IOException {
     dout.writeShort(getReference());
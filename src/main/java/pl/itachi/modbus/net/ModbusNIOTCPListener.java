@@ -0,0 +1,351 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusDeviceTable;
+import pl.itachi.modbus.io.WriteStatistics;
+
+/**
+ * Class that implements a non-blocking Modbus/TCP listener.<br>
+ * In contrast to the <tt>ModbusTCPListener</tt>, connections are
+ * not bound to a thread. Event loop threads (reactors) multiplex
+ * the accepted channels through a <tt>Selector</tt> each, decode
+ * incoming frames incrementally and dispatch them to the
+ * same <tt>ModbusRequest.createResponse()</tt> path.
+ * <p>
+ * This makes it possible to serve a large number of mostly idle
+ * connections with a fixed, small number of threads.
+ * <p>
+ * By default a single reactor accepts and serves all connections.
+ * With more reactors, accepted connections are spread over them
+ * as configured through the <tt>Balancing</tt>; every reactor
+ * owns its connections, so threads only meet at the process image.
+ * <p>
+ * All responses produced while handling one readiness event of a
+ * connection are written to its channel with a single write call.
+ *
+ * @see ModbusTCPListener
+ */
+public class ModbusNIOTCPListener
+    implements Runnable {
+
+  /**
+   * Enumeration of the ways accepted connections
+   * are spread over the reactors.
+   */
+  public enum Balancing {
+    /**
+     * Connections are assigned to the reactors in turn.
+     */
+    ROUND_ROBIN,
+    /**
+     * Connections are assigned to the reactor currently
+     * serving the fewest connections.
+     */
+    LEAST_LOADED
+  }//enum Balancing
+
+  private ServerSocketChannel m_ServerChannel;
+  private Thread m_Listener;
+  private int m_Port = Modbus.DEFAULT_PORT;
+  private int m_FloodProtection = 5;
+  private volatile boolean m_Listening;
+  private InetAddress m_Address;
+  private int m_ReactorCount = 1;
+  private Balancing m_Balancing = Balancing.ROUND_ROBIN;
+  private volatile TCPReactor[] m_Reactors;
+  private int m_NextReactor;
+  private WriteStatistics m_WriteStatistics = new WriteStatistics();
+  private volatile ModbusDeviceTable m_Devices;
+
+  /**
+   * Constructs a ModbusNIOTCPListener instance
+   * listening to the local host address.
+   */
+  public ModbusNIOTCPListener() {
+    try {
+      m_Address = InetAddress.getLocalHost();
+    } catch (UnknownHostException ex) {
+
+    }
+  }//constructor
+
+  /**
+   * Constructs a ModbusNIOTCPListener instance.<br>
+   *
+   * @param addr the interface to use for listening.
+   */
+  public ModbusNIOTCPListener(InetAddress addr) {
+    m_Address = addr;
+  }//constructor
+
+  /**
+   * Sets the port to be listened to.
+   *
+   * @param port the number of the IP port as <tt>int</tt>.
+   */
+  public void setPort(int port) {
+    m_Port = port;
+  }//setPort
+
+  /**
+   * Sets the address of the interface to be listened to.
+   *
+   * @param addr an <tt>InetAddress</tt> instance.
+   */
+  public void setAddress(InetAddress addr) {
+    m_Address = addr;
+  }//setAddress
+
+  /**
+   * Sets the number of reactors serving the connections.<br>
+   * Must be called before the listener is started.
+   *
+   * @param count the number of reactors, at least 1.
+   */
+  public void setReactorCount(int count) {
+    m_ReactorCount = Math.max(1, count);
+  }//setReactorCount
+
+  /**
+   * Returns the number of reactors serving the connections.
+   *
+   * @return the number of reactors as <tt>int</tt>.
+   */
+  public int getReactorCount() {
+    return m_ReactorCount;
+  }//getReactorCount
+
+  /**
+   * Sets the way accepted connections are spread
+   * over the reactors.
+   *
+   * @param balancing the <tt>Balancing</tt> to be applied.
+   */
+  public void setBalancing(Balancing balancing) {
+    m_Balancing = balancing;
+  }//setBalancing
+
+  /**
+   * Returns the way accepted connections are spread
+   * over the reactors.
+   *
+   * @return the <tt>Balancing</tt> applied.
+   */
+  public Balancing getBalancing() {
+    return m_Balancing;
+  }//getBalancing
+
+  /**
+   * Returns the number of connections currently served.
+   *
+   * @return the number of connections as <tt>int</tt>.
+   */
+  public int getConnectionCount() {
+    TCPReactor[] reactors = m_Reactors;
+    int count = 0;
+    if (reactors != null) {
+      for (int i = 0; i < reactors.length; i++) {
+        count += reactors[i].getConnectionCount();
+      }
+    }
+    return count;
+  }//getConnectionCount
+
+  /**
+   * Sets the devices served by this listener, each with its own
+   * process image, addressed by the unit identifier of a request.<br>
+   * Without a table, all requests are answered from the process
+   * image of the <tt>ModbusCoupler</tt>.
+   *
+   * @param devices a <tt>ModbusDeviceTable</tt> or null.
+   */
+  public void setDeviceTable(ModbusDeviceTable devices) {
+    m_Devices = devices;
+  }//setDeviceTable
+
+  /**
+   * Returns the devices served by this listener.
+   *
+   * @return the <tt>ModbusDeviceTable</tt>, or null if requests are
+   *         answered from the process image of the <tt>ModbusCoupler</tt>.
+   */
+  public ModbusDeviceTable getDeviceTable() {
+    return m_Devices;
+  }//getDeviceTable
+
+  /**
+   * Returns the statistics of the responses written to all
+   * connections of this listener.
+   *
+   * @return the <tt>WriteStatistics</tt> instance.
+   */
+  public WriteStatistics getWriteStatistics() {
+    return m_WriteStatistics;
+  }//getWriteStatistics
+
+  /**
+   * Starts this <tt>ModbusNIOTCPListener</tt>.
+   */
+  public void start() {
+    m_Listening = true;
+    m_Listener = new Thread(this, "ModbusNIOTCPListener");
+    m_Listener.start();
+  }//start
+
+  /**
+   * Stops this <tt>ModbusNIOTCPListener</tt>, closing
+   * all connections it is currently serving.
+   */
+  public void stop() {
+    m_Listening = false;
+    try {
+      TCPReactor[] reactors = m_Reactors;
+      if (reactors != null) {
+        reactors[0].stop();
+      }
+      m_Listener.join();
+    } catch (Exception ex) {
+      //?
+    }
+  }//stop
+
+  /**
+   * Runs the first reactor, which also accepts incoming connections,
+   * and starts the others in threads of their own.
+   */
+  public void run() {
+    try {
+      TCPReactor[] reactors = new TCPReactor[m_ReactorCount];
+      for (int i = 0; i < reactors.length; i++) {
+        reactors[i] = new TCPReactor(this);
+      }
+      m_Reactors = reactors;
+      m_ServerChannel = ServerSocketChannel.open();
+      m_ServerChannel.configureBlocking(false);
+      m_ServerChannel.socket().bind(new InetSocketAddress(m_Address, m_Port), m_FloodProtection);
+      m_ServerChannel.register(reactors[0].getSelector(), SelectionKey.OP_ACCEPT);
+      if (Modbus.debug) System.out.println("Listenening to " + m_ServerChannel.toString() + "(Port " + m_Port + ")");
+
+      for (int i = 1; i < reactors.length; i++) {
+        reactors[i].start("ModbusNIOTCPListener-" + i);
+      }
+      if (m_Listening) {
+        reactors[0].run();
+      }
+    } catch (IOException e) {
+      //FIXME: this is a major failure, how do we handle this
+      if (Modbus.debug) e.printStackTrace();
+    } finally {
+      close();
+    }
+  }//run
+
+  /**
+   * Tests if this <tt>ModbusNIOTCPListener</tt> is listening
+   * and accepting incoming connections.
+   *
+   * @return true if listening (and accepting incoming connections),
+   *          false otherwise.
+   */
+  public boolean isListening() {
+    return m_Listening;
+  }//isListening
+
+  /**
+   * Accepts all pending connections and hands them
+   * over to the reactors.
+   *
+   * @throws IOException if an I/O related error occurs.
+   */
+  void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = m_ServerChannel.accept()) != null) {
+      if (Modbus.debug) System.out.println("Making new connection " + channel.toString());
+      nextReactor().register(channel);
+    }
+  }//accept
+
+  /**
+   * Returns the reactor the next connection is assigned to.
+   *
+   * @return a <tt>TCPReactor</tt>.
+   */
+  private TCPReactor nextReactor() {
+    TCPReactor[] reactors = m_Reactors;
+    if (m_Balancing == Balancing.LEAST_LOADED) {
+      TCPReactor least = reactors[0];
+      for (int i = 1; i < reactors.length; i++) {
+        if (reactors[i].getConnectionCount() < least.getConnectionCount()) {
+          least = reactors[i];
+        }
+      }
+      return least;
+    }
+    m_NextReactor = (m_NextReactor + 1) % reactors.length;
+    return reactors[m_NextReactor];
+  }//nextReactor
+
+  /**
+   * Stops the reactors, closing all connections,
+   * and closes the server channel.
+   */
+  private void close() {
+    TCPReactor[] reactors = m_Reactors;
+    if (reactors != null) {
+      for (int i = 0; i < reactors.length; i++) {
+        reactors[i].stop();
+        reactors[i].close();
+      }
+    }
+    try {
+      if (m_ServerChannel != null) {
+        m_ServerChannel.close();
+      }
+    } catch (IOException ex) {
+      if (Modbus.debug) ex.printStackTrace();
+    }
+    m_Listening = false;
+  }//close
+
+}//class ModbusNIOTCPListener
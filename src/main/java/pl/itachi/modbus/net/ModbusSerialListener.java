@@ -35,14 +35,16 @@ package pl.itachi.modbus.net;
 
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.ModbusDeviceTable;
 import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.io.ModbusSerialTransport;
 import pl.itachi.modbus.io.ModbusTransport;
+import pl.itachi.modbus.msg.ModbusMessagePool;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
 import pl.itachi.modbus.util.SerialParameters;
 
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Class that implements a ModbusTCPListener.<br>
@@ -57,8 +59,7 @@ public class ModbusSerialListener {
     //Members
     private boolean m_Listening;                //Flag for toggling listening/!listening
     private SerialConnection m_SerialCon;
-    private static int c_RequestCounter = 0;          //counter for amount of requests
-    private List<ModbusDevice> devices;
+    private ModbusDeviceTable m_Devices;
 
     /**
      * Constructs a new <tt>ModbusSerialListener</tt> instance.
@@ -67,8 +68,19 @@ public class ModbusSerialListener {
      * @param devices
      */
     public ModbusSerialListener(SerialParameters params, List<ModbusDevice> devices) {
+        this(params, new ModbusDeviceTable(devices));
+    }//constructor
+
+    /**
+     * Constructs a new <tt>ModbusSerialListener</tt> instance.
+     *
+     * @param params  a <tt>SerialParameters</tt> instance.
+     * @param devices the <tt>ModbusDeviceTable</tt> holding the devices
+     *                to be served, by unit identifier.
+     */
+    public ModbusSerialListener(SerialParameters params, ModbusDeviceTable devices) {
         this.m_SerialCon = new SerialConnection(params);
-        this.devices = devices;
+        this.m_Devices = devices;
 
         listen();
     }//constructor
@@ -81,6 +93,10 @@ public class ModbusSerialListener {
             m_Listening = true;
             m_SerialCon.open();
             ModbusTransport transport = m_SerialCon.getModbusTransport();
+            if (transport instanceof ModbusSerialTransport) {
+                //requests are answered one by one, so they can be reused
+                ((ModbusSerialTransport) transport).setMessagePool(new ModbusMessagePool());
+            }
             do {
                 if (m_Listening) {
                     try {
@@ -88,10 +104,10 @@ public class ModbusSerialListener {
                         ModbusRequest request = transport.readRequest();
                         ModbusResponse response = null;
 
-                        Optional<ModbusDevice> device = devices.stream().filter(d -> d.canHandleRequest(request)).findFirst();
+                        ModbusDevice device = m_Devices.getDevice(request.getUnitID());
 
-                        if (device.isPresent() && device.get().getProcessImage() != null) {
-                            response = request.createResponse(device.get());
+                        if (device != null && device.getProcessImage() != null) {
+                            response = request.createResponse(device);
                         } else {
                             response = request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
                         }
@@ -104,8 +120,6 @@ public class ModbusSerialListener {
                         }
 
                         transport.writeMessage(response);
-
-                        count();
                     } catch (ModbusIOException ex) {
                         ex.printStackTrace();
                         continue;
@@ -142,14 +156,4 @@ public class ModbusSerialListener {
         return m_Listening;
     }//isListening
 
-    private void count() {
-        c_RequestCounter++;
-        if (c_RequestCounter == REQUESTS_TOGC) {
-            System.gc();
-            c_RequestCounter = 0;
-        }
-    }//count
-
-    private static final int REQUESTS_TOGC = 15;
-
 }//class ModbusTCPListener
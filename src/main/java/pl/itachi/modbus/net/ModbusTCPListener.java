@@ -39,9 +39,15 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import pl.itachi.modbus.Modbus;
-import pl.itachi.modbus.util.ThreadPool;
+import pl.itachi.modbus.ModbusDeviceTable;
+import pl.itachi.modbus.io.ModbusTCPTransport;
+import pl.itachi.modbus.io.WriteStatistics;
+import pl.itachi.modbus.util.BoundedThreadPool;
+import pl.itachi.modbus.util.VirtualThreadExecutor;
 
 /**
  * Class that implements a ModbusTCPListener.<br>
@@ -54,10 +60,20 @@ import pl.itachi.modbus.util.ThreadPool;
 public class ModbusTCPListener
     implements Runnable {
 
-  private static int c_RequestCounter = 0;
-
   private ServerSocket m_ServerSocket = null;
-  private ThreadPool m_ThreadPool;
+  private Executor m_Executor;
+  private int m_PoolSize;
+  private BoundedThreadPool m_BusyPool;
+  private int m_MaxOutstanding = 1;
+  private TCPConnectionHandler.ResponseOrder m_ResponseOrder =
+      TCPConnectionHandler.ResponseOrder.STRICT;
+  private Executor m_PipelineExecutor;
+  private ModbusTCPTransport.FlushPolicy m_FlushPolicy =
+      ModbusTCPTransport.FlushPolicy.IMMEDIATE;
+  private int m_FlushBytes = ModbusTCPTransport.DEFAULT_FLUSH_BYTES;
+  private int m_FlushDelay = ModbusTCPTransport.DEFAULT_FLUSH_DELAY;
+  private WriteStatistics m_WriteStatistics = new WriteStatistics();
+  private ModbusDeviceTable m_Devices;
   private Thread m_Listener;
   private int m_Port = Modbus.DEFAULT_PORT;
   private int m_FloodProtection = 5;
@@ -67,11 +83,27 @@ public class ModbusTCPListener
   /**
    * Constructs a ModbusTCPListener instance.<br>
    *
-   * @param poolsize the size of the <tt>ThreadPool</tt> used to handle
+   * @param poolsize the size of the <tt>BoundedThreadPool</tt> used to handle
    *        incoming requests.
    */
   public ModbusTCPListener(int poolsize) {
-    m_ThreadPool = new ThreadPool(poolsize);
+    this(new BoundedThreadPool(poolsize));
+    m_PoolSize = poolsize;
+  }//constructor
+
+  /**
+   * Constructs a ModbusTCPListener instance.<br>
+   * Each accepted connection is handled by a <tt>TCPConnectionHandler</tt>
+   * run through the given <tt>Executor</tt>, for example a
+   * <tt>BoundedThreadPool</tt> or a <tt>VirtualThreadExecutor</tt>.
+   * Connections rejected by a <tt>BoundedThreadPool</tt> are
+   * answered according to its <tt>RejectionPolicy</tt>.
+   *
+   * @param executor the <tt>Executor</tt> used to handle
+   *        incoming connections.
+   */
+  public ModbusTCPListener(Executor executor) {
+    m_Executor = executor;
     try {
       m_Address = InetAddress.getLocalHost();
     } catch (UnknownHostException ex) {
@@ -82,15 +114,127 @@ public class ModbusTCPListener
   /**
    * Constructs a ModbusTCPListener instance.<br>
    *
-   * @param poolsize the size of the <tt>ThreadPool</tt> used to handle
+   * @param poolsize the size of the <tt>BoundedThreadPool</tt> used to handle
    *        incoming requests.
    * @param addr the interface to use for listening.
    */
   public ModbusTCPListener(int poolsize, InetAddress addr) {
-    m_ThreadPool = new ThreadPool(poolsize);
+    m_Executor = new BoundedThreadPool(poolsize);
+    m_PoolSize = poolsize;
     m_Address = addr;
   }//constructor
 
+  /**
+   * Constructs a ModbusTCPListener instance.<br>
+   *
+   * @param executor the <tt>Executor</tt> used to handle
+   *        incoming connections.
+   * @param addr the interface to use for listening.
+   */
+  public ModbusTCPListener(Executor executor, InetAddress addr) {
+    m_Executor = executor;
+    m_Address = addr;
+  }//constructor
+
+  /**
+   * Creates a ModbusTCPListener instance that handles each
+   * connection on its own virtual thread.<br>
+   *
+   * @return the new <tt>ModbusTCPListener</tt>.
+   * @throws IllegalStateException if the runtime does not
+   *         support virtual threads.
+   */
+  public static ModbusTCPListener createVirtualThreadListener() {
+    return new ModbusTCPListener(new VirtualThreadExecutor("ModbusTCPConnection-"));
+  }//createVirtualThreadListener
+
+
+  /**
+   * Returns the <tt>Executor</tt> handling the incoming
+   * connections of this listener, e.g. to monitor it.
+   *
+   * @return the <tt>Executor</tt> instance.
+   */
+  public Executor getExecutor() {
+    return m_Executor;
+  }//getExecutor
+
+  /**
+   * Enables pipelined request handling for the connections
+   * accepted after this call.<br>
+   * Up to <tt>maxOutstanding</tt> requests of one connection are
+   * then processed in parallel through the given <tt>Executor</tt>,
+   * while the connection's handler keeps decoding requests.
+   *
+   * @param maxOutstanding the maximum number of requests per connection
+   *        processed in parallel; 1 disables pipelining.
+   * @param order the order in which the responses are written.
+   * @param executor the <tt>Executor</tt> processing the requests.
+   */
+  public void setPipelining(int maxOutstanding,
+                            TCPConnectionHandler.ResponseOrder order,
+                            Executor executor) {
+    m_MaxOutstanding = maxOutstanding;
+    m_ResponseOrder = order;
+    m_PipelineExecutor = executor;
+  }//setPipelining
+
+  /**
+   * Sets the devices served by this listener, each with its own
+   * process image, addressed by the unit identifier of a request.<br>
+   * Without a table, all requests are answered from the process
+   * image of the <tt>ModbusCoupler</tt>.
+   *
+   * @param devices a <tt>ModbusDeviceTable</tt> or null.
+   */
+  public void setDeviceTable(ModbusDeviceTable devices) {
+    m_Devices = devices;
+  }//setDeviceTable
+
+  /**
+   * Returns the devices served by this listener.
+   *
+   * @return the <tt>ModbusDeviceTable</tt>, or null if requests are
+   *         answered from the process image of the <tt>ModbusCoupler</tt>.
+   */
+  public ModbusDeviceTable getDeviceTable() {
+    return m_Devices;
+  }//getDeviceTable
+
+  /**
+   * Sets the policy for flushing the responses written to
+   * the connections accepted after this call.
+   *
+   * @param policy a <tt>ModbusTCPTransport.FlushPolicy</tt>.
+   * @see ModbusTCPTransport#setFlushPolicy(ModbusTCPTransport.FlushPolicy)
+   */
+  public void setFlushPolicy(ModbusTCPTransport.FlushPolicy policy) {
+    m_FlushPolicy = policy;
+  }//setFlushPolicy
+
+  /**
+   * Sets the thresholds of the <tt>THRESHOLD</tt> flush policy
+   * for the connections accepted after this call.
+   *
+   * @param bytes the number of pending bytes that causes a flush.
+   * @param delay the age in milliseconds of the oldest pending
+   *        response that causes a flush on the next write.
+   * @see ModbusTCPTransport#setFlushThreshold(int, int)
+   */
+  public void setFlushThreshold(int bytes, int delay) {
+    m_FlushBytes = bytes;
+    m_FlushDelay = delay;
+  }//setFlushThreshold
+
+  /**
+   * Returns the statistics of the responses written to all
+   * connections of this listener.
+   *
+   * @return the <tt>WriteStatistics</tt> instance.
+   */
+  public WriteStatistics getWriteStatistics() {
+    return m_WriteStatistics;
+  }//getWriteStatistics
 
   /**
    * Sets the port to be listened to.
@@ -114,13 +258,23 @@ public class ModbusTCPListener
    * Starts this <tt>ModbusTCPListener</tt>.
    */
   public void start() {
+    //a pool created by this listener was shut down by stop()
+    if (m_PoolSize > 0 && ((BoundedThreadPool) m_Executor).isShutdown()) {
+      BoundedThreadPool pool = new BoundedThreadPool(m_PoolSize);
+      pool.setRejectionPolicy(((BoundedThreadPool) m_Executor).getRejectionPolicy());
+      m_Executor = pool;
+    }
     m_Listener = new Thread(this);
     m_Listener.start();
     m_Listening = true;
   }//start
 
   /**
-   * Stops this <tt>ModbusTCPListener</tt>.
+   * Stops this <tt>ModbusTCPListener</tt>.<br>
+   * A <tt>BoundedThreadPool</tt> created by this listener is shut
+   * down as well, and recreated when the listener is started again;
+   * an <tt>Executor</tt> passed to the constructor is left to its
+   * owner. Connections already being handled are not affected.
    */
   public void stop() {
     m_Listening = false;
@@ -130,6 +284,15 @@ public class ModbusTCPListener
     } catch (Exception ex) {
       //?
     }
+    if (m_PoolSize > 0) {
+      ((BoundedThreadPool) m_Executor).shutdown();
+    }
+    synchronized (this) {
+      if (m_BusyPool != null) {
+        m_BusyPool.shutdown();
+        m_BusyPool = null;
+      }
+    }
   }//stop
 
   /**
@@ -152,13 +315,21 @@ public class ModbusTCPListener
         Socket incoming = m_ServerSocket.accept();
         if (Modbus.debug) System.out.println("Making new connection " + incoming.toString());
         if (m_Listening) {
-          //FIXME: Replace with object pool due to resource issues
-          m_ThreadPool.execute(
-              new TCPConnectionHandler(
-                  new TCPSlaveConnection(incoming)
-              )
-          );
-          count();
+          TCPSlaveConnection connection = new TCPSlaveConnection(incoming);
+          ModbusTCPTransport transport = connection.getModbusTransport();
+          transport.setFlushPolicy(m_FlushPolicy);
+          transport.setFlushThreshold(m_FlushBytes, m_FlushDelay);
+          transport.setWriteStatistics(m_WriteStatistics);
+          TCPConnectionHandler handler = new TCPConnectionHandler(connection);
+          handler.setDeviceTable(m_Devices);
+          if (m_MaxOutstanding > 1) {
+            handler.setPipelining(m_MaxOutstanding, m_ResponseOrder, m_PipelineExecutor);
+          }
+          try {
+            m_Executor.execute(handler);
+          } catch (RejectedExecutionException ex) {
+            reject(handler);
+          }
         } else {
           //just close the socket
           incoming.close();
@@ -186,14 +357,46 @@ public class ModbusTCPListener
     return m_Listening;
   }//isListening
 
-  private void count() {
-    c_RequestCounter++;
-    if (c_RequestCounter == REQUESTS_TOGC) {
-      System.gc();
-      c_RequestCounter = 0;
+  /**
+   * Answers a connection that could not be handed to the executor,
+   * as configured through the <tt>RejectionPolicy</tt>.
+   * <p>
+   * Busy answers wait for the request, so they are sent from a
+   * small pool of their own, keeping the accepting thread free;
+   * connections that do not fit into that pool are closed.
+   *
+   * @param handler the handler of the rejected connection.
+   */
+  private void reject(final TCPConnectionHandler handler) {
+    if (Modbus.debug) System.out.println("Rejecting connection, executor saturated.");
+    if (m_Executor instanceof BoundedThreadPool &&
+        ((BoundedThreadPool) m_Executor).getRejectionPolicy()
+            == BoundedThreadPool.RejectionPolicy.SERVER_BUSY) {
+      try {
+        getBusyPool().execute(new Runnable() {
+          public void run() {
+            handler.rejectBusy(REJECT_TIMEOUT);
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        handler.close();
+      }
+    } else {
+      handler.close();
+    }
+  }//reject
+
+  private synchronized BoundedThreadPool getBusyPool() {
+    if (m_BusyPool == null) {
+      m_BusyPool = new BoundedThreadPool(BUSY_POOL_SIZE, BUSY_QUEUE_CAPACITY);
     }
-  }//count
+    return m_BusyPool;
+  }//getBusyPool
 
-  private static final int REQUESTS_TOGC = 10;
+  //time to wait for the request to be answered as busy
+  private static final int REJECT_TIMEOUT = 200;
+  //workers and queued connections answering as busy
+  private static final int BUSY_POOL_SIZE = 2;
+  private static final int BUSY_QUEUE_CAPACITY = 32;
 
 }//class ModbusTCPListener
@@ -34,13 +34,17 @@
 package pl.itachi.modbus.net;
 
 import java.net.InetAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.ModbusDeviceTable;
 import pl.itachi.modbus.ModbusIOException;
 import pl.itachi.modbus.io.ModbusUDPTransport;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.util.BoundedThreadPool;
 
 /**
  * Class that implements a ModbusUDPListener.<br>
@@ -56,6 +60,8 @@ public class ModbusUDPListener {
   private int m_Port = Modbus.DEFAULT_PORT;
   private boolean m_Listening;
   private InetAddress m_Interface;
+  private Executor m_Executor;
+  private volatile ModbusDeviceTable m_Devices;
 
   /**
    * Constructs a new ModbusUDPListener instance.
@@ -93,6 +99,53 @@ public class ModbusUDPListener {
     m_Port = ((port>0)? port : Modbus.DEFAULT_PORT);
   }//setPort
 
+  /**
+   * Returns the <tt>Executor</tt> used to process requests,
+   * or null if requests are processed by the receiving thread.
+   *
+   * @return the <tt>Executor</tt> instance.
+   */
+  public Executor getExecutor() {
+    return m_Executor;
+  }//getExecutor
+
+  /**
+   * Sets the <tt>Executor</tt> used to process requests.<br>
+   * By default requests are processed one after another by the
+   * thread receiving them. Requests rejected by a
+   * <tt>BoundedThreadPool</tt> are answered according to its
+   * <tt>RejectionPolicy</tt>; with <tt>CLOSE</tt> they are dropped.
+   * The executor is left to its owner: stopping this listener does
+   * not shut it down, so it may be shared and the listener restarted.
+   *
+   * @param executor an <tt>Executor</tt>, or null.
+   */
+  public void setExecutor(Executor executor) {
+    m_Executor = executor;
+  }//setExecutor
+
+  /**
+   * Sets the devices served by this listener, each with its own
+   * process image, addressed by the unit identifier of a request.<br>
+   * Without a table, all requests are answered from the process
+   * image of the <tt>ModbusCoupler</tt>.
+   *
+   * @param devices a <tt>ModbusDeviceTable</tt> or null.
+   */
+  public void setDeviceTable(ModbusDeviceTable devices) {
+    m_Devices = devices;
+  }//setDeviceTable
+
+  /**
+   * Returns the devices served by this listener.
+   *
+   * @return the <tt>ModbusDeviceTable</tt>, or null if requests are
+   *         answered from the process image of the <tt>ModbusCoupler</tt>.
+   */
+  public ModbusDeviceTable getDeviceTable() {
+    return m_Devices;
+  }//getDeviceTable
+
   /**
    * Starts this <tt>ModbusUDPListener</tt>.
    */
@@ -118,7 +171,9 @@ public class ModbusUDPListener {
   }//start
 
   /**
-   * Stops this <tt>ModbusUDPListener</tt>.
+   * Stops this <tt>ModbusUDPListener</tt>.<br>
+   * The <tt>Executor</tt> set with {@link #setExecutor(Executor)}
+   * is left to its owner.
    */
   public void stop() {
     //stop listening
@@ -152,23 +207,27 @@ public class ModbusUDPListener {
       try {
         do {
           //1. read the request
-          ModbusRequest request = m_Transport.readRequest();
+          final ModbusRequest request = m_Transport.readRequest();
           //System.out.println("Request:" + request.getHexMessage());
-          ModbusResponse response = null;
 
-          //test if Process image exists
-          if (ModbusCoupler.getReference().getProcessImage() == null) {
-            response =
-                request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+          //2. answer it directly or through the executor
+          if (m_Executor == null) {
+            handle(request);
           } else {
-            response = request.createResponse();
+            try {
+              m_Executor.execute(new Runnable() {
+                public void run() {
+                  try {
+                    handle(request);
+                  } catch (ModbusIOException ex) {
+                    if (Modbus.debug) ex.printStackTrace();
+                  }
+                }
+              });
+            } catch (RejectedExecutionException ex) {
+              reject(request);
+            }
           }
-          /*DEBUG*/
-          if (Modbus.debug) System.out.println("Request:" + request.getHexMessage());
-          if (Modbus.debug) System.out.println("Response:" + response.getHexMessage());
-
-          //System.out.println("Response:" + response.getHexMessage());
-          m_Transport.writeMessage(response);
         } while (m_Continue);
       } catch (ModbusIOException ex) {
         if (!ex.isEOF()) {
@@ -184,6 +243,49 @@ public class ModbusUDPListener {
       }
     }//run
 
+    /**
+     * Creates the response for the given request and writes it.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be answered.
+     * @throws ModbusIOException if the response cannot be written.
+     */
+    private void handle(ModbusRequest request) throws ModbusIOException {
+      ModbusResponse response = null;
+      ModbusDeviceTable devices = m_Devices;
+
+      if (devices != null) {
+        response = devices.createResponse(request);
+      } else if (ModbusCoupler.getReference().getProcessImage() == null) {
+        //test if Process image exists
+        response =
+            request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+      } else {
+        response = request.createResponse();
+      }
+      /*DEBUG*/
+      if (Modbus.debug) System.out.println("Request:" + request.getHexMessage());
+      if (Modbus.debug) System.out.println("Response:" + response.getHexMessage());
+
+      //System.out.println("Response:" + response.getHexMessage());
+      m_Transport.writeMessage(response);
+    }//handle
+
+    /**
+     * Answers a request rejected by the executor, as configured
+     * through the <tt>RejectionPolicy</tt>.
+     *
+     * @param request the rejected <tt>ModbusRequest</tt>.
+     * @throws ModbusIOException if the response cannot be written.
+     */
+    private void reject(ModbusRequest request) throws ModbusIOException {
+      if (m_Executor instanceof BoundedThreadPool &&
+          ((BoundedThreadPool) m_Executor).getRejectionPolicy()
+              == BoundedThreadPool.RejectionPolicy.SERVER_BUSY) {
+        m_Transport.writeMessage(
+            request.createExceptionResponse(Modbus.SLAVE_BUSY_EXCEPTION));
+      }
+    }//reject
+
     public void stop() {
       m_Continue = false;
     }//stop
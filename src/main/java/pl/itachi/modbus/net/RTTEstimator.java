@@ -0,0 +1,263 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.net;
+
+import pl.itachi.modbus.Modbus;
+
+/**
+ * Class implementing an estimator of the round-trip time to
+ * one endpoint, deriving the time to wait for a response.
+ * <p>
+ * As for the retransmission timeout of TCP (RFC 6298), the
+ * estimator keeps a smoothed round-trip time and its variation;
+ * the timeout is the smoothed round-trip time plus four times
+ * the variation. Each timeout doubles the timeout (backoff)
+ * until the next round trip is measured, as does each retry
+ * of a transaction. The timeout is always kept within the
+ * configured floor and ceiling; until the first round trip has
+ * been measured, the initial timeout applies.
+ * <p>
+ * Only round trips of requests that have not been retried
+ * should be measured, as it is unknown which of the requests
+ * a response answers.
+ * <p>
+ * An estimator may be shared by all connections to the
+ * same endpoint.
+ */
+public class RTTEstimator {
+
+  /**
+   * Defines the default floor of the timeout
+   * in milliseconds (<b>100</b>).
+   */
+  public static final int DEFAULT_MIN_TIMEOUT = 100;
+
+  /**
+   * Defines the default ceiling of the timeout
+   * in milliseconds (<b>30000</b>).
+   */
+  public static final int DEFAULT_MAX_TIMEOUT = 30000;
+
+  //limit of the number of doublings
+  private static final int MAX_BACKOFF = 16;
+
+  //instance attributes
+  private int m_MinTimeout = DEFAULT_MIN_TIMEOUT;
+  private int m_MaxTimeout = DEFAULT_MAX_TIMEOUT;
+  private int m_InitialTimeout = Modbus.DEFAULT_TIMEOUT;
+  private double m_SmoothedRTT;
+  private double m_RTTVariance;
+  private int m_Backoff;
+  private long m_Samples;
+  private long m_Timeouts;
+
+  /**
+   * Constructs a new <tt>RTTEstimator</tt> instance
+   * with the default floor and ceiling.
+   */
+  public RTTEstimator() {
+  }//constructor
+
+  /**
+   * Constructs a new <tt>RTTEstimator</tt> instance.
+   *
+   * @param min the floor of the timeout in milliseconds.
+   * @param max the ceiling of the timeout in milliseconds.
+   */
+  public RTTEstimator(int min, int max) {
+    setLimits(min, max);
+  }//constructor
+
+  /**
+   * Sets the floor and ceiling of the timeout.
+   *
+   * @param min the floor of the timeout in milliseconds.
+   * @param max the ceiling of the timeout in milliseconds.
+   * @throws IllegalArgumentException if the floor is not positive or
+   *                                  exceeds the ceiling.
+   */
+  public synchronized void setLimits(int min, int max) {
+    if (min < 1 || min > max) {
+      throw new IllegalArgumentException("Invalid limits: " + min + "/" + max);
+    }
+    m_MinTimeout = min;
+    m_MaxTimeout = max;
+  }//setLimits
+
+  /**
+   * Returns the floor of the timeout.
+   *
+   * @return the floor in milliseconds.
+   */
+  public synchronized int getMinTimeout() {
+    return m_MinTimeout;
+  }//getMinTimeout
+
+  /**
+   * Returns the ceiling of the timeout.
+   *
+   * @return the ceiling in milliseconds.
+   */
+  public synchronized int getMaxTimeout() {
+    return m_MaxTimeout;
+  }//getMaxTimeout
+
+  /**
+   * Sets the timeout applied until the first
+   * round trip has been measured.
+   * The default is <tt>Modbus.DEFAULT_TIMEOUT</tt>.
+   *
+   * @param timeout the initial timeout in milliseconds.
+   */
+  public synchronized void setInitialTimeout(int timeout) {
+    m_InitialTimeout = timeout;
+  }//setInitialTimeout
+
+  /**
+   * Returns the timeout applied until the first
+   * round trip has been measured.
+   *
+   * @return the initial timeout in milliseconds.
+   */
+  public synchronized int getInitialTimeout() {
+    return m_InitialTimeout;
+  }//getInitialTimeout
+
+  /**
+   * Accounts for a measured round trip.
+   *
+   * @param nanos the round-trip time in nanoseconds.
+   */
+  public synchronized void sample(long nanos) {
+    double rtt = nanos / 1000000.0;
+    if (m_Samples == 0) {
+      m_SmoothedRTT = rtt;
+      m_RTTVariance = rtt / 2;
+    } else {
+      m_RTTVariance = 0.75 * m_RTTVariance + 0.25 * Math.abs(m_SmoothedRTT - rtt);
+      m_SmoothedRTT = 0.875 * m_SmoothedRTT + 0.125 * rtt;
+    }
+    m_Samples++;
+    m_Backoff = 0;
+  }//sample
+
+  /**
+   * Accounts for a response that did not arrive in time,
+   * doubling the timeout until the next round trip is measured.
+   */
+  public synchronized void timedOut() {
+    m_Timeouts++;
+    m_Backoff = Math.min(m_Backoff + 1, MAX_BACKOFF);
+  }//timedOut
+
+  /**
+   * Returns the time to wait for a response to a request.
+   *
+   * @return the timeout in milliseconds.
+   */
+  public int getTimeout() {
+    return getTimeout(0);
+  }//getTimeout
+
+  /**
+   * Returns the time to wait for a response to a request
+   * that has been retried the given number of times.
+   *
+   * @param retry the number of retries so far.
+   * @return the timeout in milliseconds.
+   */
+  public synchronized int getTimeout(int retry) {
+    double timeout = (m_Samples == 0)
+        ? m_InitialTimeout
+        : m_SmoothedRTT + Math.max(1, 4 * m_RTTVariance);
+    timeout = Math.max(m_MinTimeout, timeout);
+    timeout *= 1L << Math.min(m_Backoff + Math.max(0, retry), MAX_BACKOFF);
+    return (int) Math.ceil(Math.min(m_MaxTimeout, timeout));
+  }//getTimeout
+
+  /**
+   * Returns the smoothed round-trip time.
+   *
+   * @return the smoothed round-trip time in milliseconds,
+   *         or 0 if no round trip has been measured.
+   */
+  public synchronized double getSmoothedRTT() {
+    return m_SmoothedRTT;
+  }//getSmoothedRTT
+
+  /**
+   * Returns the variation of the round-trip time.
+   *
+   * @return the mean deviation in milliseconds.
+   */
+  public synchronized double getRTTVariance() {
+    return m_RTTVariance;
+  }//getRTTVariance
+
+  /**
+   * Returns the number of round trips measured.
+   *
+   * @return the number of samples as <tt>long</tt>.
+   */
+  public synchronized long getSampleCount() {
+    return m_Samples;
+  }//getSampleCount
+
+  /**
+   * Returns the number of responses that did not arrive in time.
+   *
+   * @return the number of timeouts as <tt>long</tt>.
+   */
+  public synchronized long getTimeoutCount() {
+    return m_Timeouts;
+  }//getTimeoutCount
+
+  /**
+   * Discards all measurements.
+   */
+  public synchronized void reset() {
+    m_SmoothedRTT = 0;
+    m_RTTVariance = 0;
+    m_Backoff = 0;
+    m_Samples = 0;
+    m_Timeouts = 0;
+  }//reset
+
+  public synchronized String toString() {
+    return "RTTEstimator[srtt=" + m_SmoothedRTT + "ms,rttvar=" + m_RTTVariance
+        + "ms,timeout=" + getTimeout() + "ms,samples=" + m_Samples
+        + ",timeouts=" + m_Timeouts + "]";
+  }//toString
+
+}//class RTTEstimator
@@ -0,0 +1,239 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.ModbusDevice;
+import pl.itachi.modbus.ModbusDeviceTable;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.io.BytesInputStream;
+import pl.itachi.modbus.io.BytesOutputStream;
+import pl.itachi.modbus.io.DirectResponseEncoder;
+import pl.itachi.modbus.io.MBAPFrameDecoder;
+import pl.itachi.modbus.io.WriteStatistics;
+import pl.itachi.modbus.msg.ModbusMessagePool;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.procimg.ProcessImage;
+
+/**
+ * Class implementing a handler for a non-blocking
+ * Modbus/TCP connection.
+ * <p>
+ * Incoming bytes are fed to an <tt>MBAPFrameDecoder</tt>, in
+ * whatever chunks they arrive; each complete frame is turned into
+ * a <tt>ModbusRequest</tt>, answered and the response queued
+ * for writing. Responses to reads are encoded directly from
+ * the process image into the (direct) output buffer.
+ * If the peer does not drain its responses, the
+ * handler stops reading until the output has been flushed.
+ * All responses to the frames of one read are gathered in the
+ * output buffer and written with a single call.
+ *
+ * @see ModbusNIOTCPListener
+ */
+class TCPChannelHandler {
+
+  private SocketChannel m_Channel;
+  private ByteBuffer m_Input;
+  private ByteBuffer m_Output;
+  private MBAPFrameDecoder m_Decoder;
+  private BytesInputStream m_ByteIn;
+  private BytesOutputStream m_ByteOut;
+  private ModbusMessagePool m_MessagePool = new ModbusMessagePool();
+  private ModbusDeviceTable m_Devices;
+  private WriteStatistics m_Statistics;
+
+  /**
+   * Constructs a new <tt>TCPChannelHandler</tt> instance.
+   *
+   * @param channel the accepted, non-blocking channel.
+   * @param devices the <tt>ModbusDeviceTable</tt> requests are dispatched
+   *        to, or null to use the process image of the <tt>ModbusCoupler</tt>.
+   * @param statistics the <tt>WriteStatistics</tt> the writes
+   *        are accounted in.
+   */
+  public TCPChannelHandler(SocketChannel channel, ModbusDeviceTable devices,
+                           WriteStatistics statistics) {
+    m_Channel = channel;
+    m_Devices = devices;
+    m_Statistics = statistics;
+    m_Input = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH * 4);
+    m_Output = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH * 4);
+    m_Decoder = new MBAPFrameDecoder();
+    m_ByteIn = new BytesInputStream(m_Decoder.getBuffer());
+    m_ByteOut = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+  }//constructor
+
+  /**
+   * Handles the ready operations of the given key.
+   *
+   * @param key the <tt>SelectionKey</tt> of this handler's channel.
+   */
+  public void handle(SelectionKey key) {
+    try {
+      if (key.isWritable()) {
+        flush();
+        decode();
+      }
+      if (key.isValid() && key.isReadable()) {
+        if (m_Channel.read(m_Input) == -1) {
+          close();
+          return;
+        }
+        decode();
+      }
+      //only read more when all responses have been written
+      if (m_Output.position() > 0) {
+        key.interestOps(SelectionKey.OP_WRITE);
+      } else {
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    } catch (Exception ex) {
+      if (Modbus.debug) ex.printStackTrace();
+      close();
+    }
+  }//handle
+
+  /**
+   * Closes the channel of this handler.
+   */
+  public void close() {
+    try {
+      m_Channel.close();
+    } catch (IOException ex) {
+      //ignore
+    }
+  }//close
+
+  /**
+   * Feeds the input buffer to the frame decoder and answers all
+   * complete frames, as long as there is space left for the responses.
+   *
+   * @throws IOException if a response cannot be written.
+   * @throws ModbusIOException if a frame is corrupt.
+   */
+  private void decode() throws IOException, ModbusIOException {
+    m_Input.flip();
+    try {
+      while (m_Input.hasRemaining()) {
+        if (m_Output.remaining() < MBAPFrameDecoder.MAX_FRAME_LENGTH) {
+          flush();
+          if (m_Output.remaining() < MBAPFrameDecoder.MAX_FRAME_LENGTH) {
+            break;
+          }
+        }
+        if (m_Decoder.feed(m_Input)) {
+          process(m_Decoder.getFrameLength());
+          m_Decoder.next();
+        }
+      }
+    } finally {
+      m_Input.compact();
+    }
+    flush();
+  }//decode
+
+  /**
+   * Reads the request from the decoded frame, creates
+   * the response and appends it to the output buffer.
+   *
+   * @param length the length of the frame in bytes.
+   * @throws IOException if an I/O related error occurs.
+   */
+  private void process(int length) throws IOException {
+    m_ByteIn.reset(m_ByteIn.getBuffer(), length);
+    m_ByteIn.skip(7);
+    int functionCode = m_ByteIn.readUnsignedByte();
+    m_ByteIn.reset();
+    ModbusRequest request = m_MessagePool.getRequest(functionCode);
+    request.readFrom(m_ByteIn);
+
+    ProcessImage image = null;
+    if (m_Devices == null) {
+      image = ModbusCoupler.getReference().getProcessImage();
+    } else {
+      ModbusDevice device = m_Devices.getDevice(request.getUnitID());
+      if (device != null) {
+        image = device.getProcessImage();
+      }
+    }
+    m_Statistics.messageWritten();
+    //reads are encoded straight from the process image
+    if (!Modbus.debug
+        && DirectResponseEncoder.encode(request, image, m_Output, m_ByteOut.getBuffer())) {
+      return;
+    }
+
+    ModbusResponse response = null;
+    if (m_Devices != null) {
+      response = m_Devices.createResponse(request);
+    } else if (image == null) {
+      //test if Process image exists
+      response =
+          request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+    } else {
+      response = request.createResponse();
+    }
+    /*DEBUG*/
+    if (Modbus.debug) System.out.println("Request:" + request.getHexMessage());
+    if (Modbus.debug) System.out.println("Response:" + response.getHexMessage());
+
+    m_ByteOut.reset();
+    response.writeTo(m_ByteOut);
+    m_Output.put(m_ByteOut.getBuffer(), 0, m_ByteOut.size());
+  }//process
+
+  /**
+   * Writes as much of the pending output as the
+   * channel accepts without blocking.
+   *
+   * @throws IOException if an I/O related error occurs.
+   */
+  private void flush() throws IOException {
+    if (m_Output.position() > 0) {
+      m_Output.flip();
+      int written = m_Channel.write(m_Output);
+      m_Output.compact();
+      m_Statistics.bytesWritten(written);
+    }
+  }//flush
+
+}//class TCPChannelHandler
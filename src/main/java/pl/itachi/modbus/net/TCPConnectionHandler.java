@@ -33,23 +33,75 @@
  ***/
 package pl.itachi.modbus.net;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.ModbusDeviceTable;
 import pl.itachi.modbus.ModbusIOException;
-import pl.itachi.modbus.io.ModbusTransport;
+import pl.itachi.modbus.io.ModbusTCPTransport;
+import pl.itachi.modbus.msg.ModbusMessagePool;
 import pl.itachi.modbus.msg.ModbusRequest;
 import pl.itachi.modbus.msg.ModbusResponse;
 
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
+ * <p>
+ * By default requests are handled strictly one after another.
+ * With pipelining enabled, the handler keeps decoding requests
+ * while up to a given number of earlier requests of the same
+ * connection are processed in parallel; each response carries
+ * the transaction identifier of its request.
+ * <p>
+ * Responses that become ready while others are being written
+ * are flushed together, if the transport's <tt>FlushPolicy</tt>
+ * allows to coalesce them.
  *
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
  */
 public class TCPConnectionHandler implements Runnable {
 
+    /**
+     * Enumeration of the orders in which pipelined
+     * responses are written.
+     */
+    public enum ResponseOrder {
+        /**
+         * Responses are written in the order the requests were received.
+         */
+        STRICT,
+        /**
+         * Responses are written as soon as they are ready.
+         */
+        COMPLETION
+    }//enum ResponseOrder
+
+    //time to wait for outstanding responses when the connection ends
+    private static final long DRAIN_TIMEOUT = 5000;
+
     private TCPSlaveConnection m_Connection;
-    private ModbusTransport m_Transport;
+    private ModbusTCPTransport m_Transport;
+    private ModbusDeviceTable m_Devices;
+
+    //pipelining
+    private int m_MaxOutstanding = 1;
+    private ResponseOrder m_ResponseOrder = ResponseOrder.STRICT;
+    private Executor m_PipelineExecutor;
+    private Semaphore m_Window;
+    private Map<Long, ModbusResponse> m_Completed;
+    //a lock, not a monitor: writing may block a virtual thread
+    private final ReentrantLock m_CompletedLock = new ReentrantLock();
+    private long m_NextToWrite;
+    private AtomicInteger m_Completing = new AtomicInteger();
+    private volatile boolean m_WriteFailed;
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -71,46 +123,229 @@ public class TCPConnectionHandler implements Runnable {
         m_Transport = m_Connection.getModbusTransport();
     }//setConnection
 
+    /**
+     * Sets the devices requests are dispatched to by unit
+     * identifier; null answers all requests from the process
+     * image of the <tt>ModbusCoupler</tt>.
+     *
+     * @param devices a <tt>ModbusDeviceTable</tt> or null.
+     */
+    public void setDeviceTable(ModbusDeviceTable devices) {
+        m_Devices = devices;
+    }//setDeviceTable
+
+    /**
+     * Enables pipelined handling of requests.<br>
+     * Must be called before the handler is run.
+     *
+     * @param maxOutstanding the maximum number of requests processed in
+     *                       parallel; 1 disables pipelining.
+     * @param order          the order in which responses are written.
+     * @param executor       the <tt>Executor</tt> processing the requests.
+     */
+    public void setPipelining(int maxOutstanding, ResponseOrder order, Executor executor) {
+        m_MaxOutstanding = Math.max(1, maxOutstanding);
+        m_ResponseOrder = order;
+        m_PipelineExecutor = executor;
+    }//setPipelining
+
     public void run() {
         try {
-            do {
-                //1. read the request
-                ModbusRequest request = m_Transport.readRequest();
-                //System.out.println("Request:" + request.getHexMessage());
-                ModbusResponse response = null;
-
-                //test if Process image exists
-                if (ModbusCoupler.getReference().getProcessImage() == null) {
-                    response =
-                            request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
-                } else {
-                    response = request.createResponse();
-                }
-        /*DEBUG*/
-                if (Modbus.debug) {
-                    System.out.println("Request:" + request.getHexMessage());
-                }
-                if (Modbus.debug) {
-                    System.out.println("Response:" + response.getHexMessage());
-                }
-
-                //System.out.println("Response:" + response.getHexMessage());
-                m_Transport.writeMessage(response);
-            } while (true);
+            if (m_MaxOutstanding > 1 && m_PipelineExecutor != null) {
+                runPipelined();
+            } else {
+                //requests are answered one by one, so they can be reused
+                m_Connection.setMessagePool(new ModbusMessagePool());
+                do {
+                    //1. read the request
+                    ModbusRequest request = m_Transport.readRequest();
+                    //System.out.println("Request:" + request.getHexMessage());
+                    m_Transport.writeMessage(createResponse(request));
+                } while (true);
+            }
         } catch (ModbusIOException ex) {
             if (!ex.isEOF()) {
                 //other troubles, output for debug
                 ex.printStackTrace();
             }
         } finally {
-            try {
-                m_Connection.close();
-            } catch (Exception ex) {
-                //ignore
+            close();
+        }
+    }//run
+
+    /**
+     * Reads requests ahead and hands them to the pipeline executor,
+     * blocking while the maximum number of requests is outstanding.
+     *
+     * @throws ModbusIOException if a request cannot be read.
+     */
+    private void runPipelined() throws ModbusIOException {
+        m_Window = new Semaphore(m_MaxOutstanding);
+        m_Completed = new HashMap<Long, ModbusResponse>();
+        m_NextToWrite = 0;
+        long sequence = 0;
+        try {
+            while (!m_WriteFailed) {
+                final ModbusRequest request = m_Transport.readRequest();
+                final long seq = sequence++;
+                m_Window.acquireUninterruptibly();
+                Runnable task = new Runnable() {
+                    public void run() {
+                        try {
+                            ModbusResponse response = createResponse(request);
+                            m_Completing.incrementAndGet();
+                            complete(seq, response);
+                        } catch (RuntimeException ex) {
+                            if (Modbus.debug) ex.printStackTrace();
+                            m_WriteFailed = true;
+                            close();
+                            m_Window.release();
+                        }
+                    }
+                };
+                try {
+                    m_PipelineExecutor.execute(task);
+                } catch (RejectedExecutionException ex) {
+                    task.run();
+                }
+            }
+        } finally {
+            //let outstanding responses be written before closing
+            if (!m_WriteFailed) {
+                try {
+                    m_Window.tryAcquire(m_MaxOutstanding, DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }//runPipelined
+
+    /**
+     * Writes the response of a pipelined request, respecting the
+     * configured <tt>ResponseOrder</tt>.<br>
+     * The output is flushed unless another response is waiting to
+     * be written, which will then flush both.
+     *
+     * @param seq      the sequence number of the request.
+     * @param response the response to be written.
+     */
+    private void complete(long seq, ModbusResponse response) {
+        m_CompletedLock.lock();
+        try {
+            if (m_ResponseOrder == ResponseOrder.COMPLETION) {
+                write(response);
+                m_Window.release();
+            } else {
+                m_Completed.put(seq, response);
+                ModbusResponse next;
+                while ((next = m_Completed.remove(m_NextToWrite)) != null) {
+                    write(next);
+                    m_NextToWrite++;
+                    m_Window.release();
+                }
             }
+            if (m_Completing.decrementAndGet() == 0) {
+                flush();
+            }
+        } finally {
+            m_CompletedLock.unlock();
+        }
+    }//complete
 
+    /**
+     * Writes a pipelined response; a failure closes the connection,
+     * which also ends the reading of requests.
+     *
+     * @param response the response to be written.
+     */
+    private void write(ModbusResponse response) {
+        if (m_WriteFailed) {
+            return;
         }
-    }//run
+        try {
+            m_Transport.writeMessage(response);
+        } catch (ModbusIOException ex) {
+            m_WriteFailed = true;
+            close();
+        }
+    }//write
+
+    /**
+     * Flushes the pipelined responses written so far.
+     */
+    private void flush() {
+        if (m_WriteFailed) {
+            return;
+        }
+        try {
+            m_Transport.flush();
+        } catch (ModbusIOException ex) {
+            m_WriteFailed = true;
+            close();
+        }
+    }//flush
+
+    /**
+     * Creates the response for the given request.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be answered.
+     * @return the corresponding <tt>ModbusResponse</tt>.
+     */
+    private ModbusResponse createResponse(ModbusRequest request) {
+        ModbusResponse response = null;
+
+        if (m_Devices != null) {
+            response = m_Devices.createResponse(request);
+        } else if (ModbusCoupler.getReference().getProcessImage() == null) {
+            //test if Process image exists
+            response =
+                    request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+        } else {
+            response = request.createResponse();
+        }
+        /*DEBUG*/
+        if (Modbus.debug) {
+            System.out.println("Request:" + request.getHexMessage());
+        }
+        if (Modbus.debug) {
+            System.out.println("Response:" + response.getHexMessage());
+        }
+        return response;
+    }//createResponse
+
+    /**
+     * Answers the first request on the connection with a
+     * <i>slave device busy</i> exception and closes it.
+     * This is used when there are no resources to handle
+     * the connection.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     *                the request.
+     */
+    public void rejectBusy(int timeout) {
+        try {
+            m_Connection.setTimeout(timeout);
+            ModbusRequest request = m_Transport.readRequest();
+            m_Transport.writeMessage(
+                    request.createExceptionResponse(Modbus.SLAVE_BUSY_EXCEPTION));
+        } catch (ModbusIOException ex) {
+            //nothing to answer
+        } finally {
+            close();
+        }
+    }//rejectBusy
+
+    /**
+     * Closes the connection handled by this <tt>TCPConnectionHandler</tt>.
+     */
+    public void close() {
+        try {
+            m_Connection.close();
+        } catch (Exception ex) {
+            //ignore
+        }
+    }//close
 
 }//TCPConnectionHandler
 
@@ -36,6 +36,7 @@ package pl.itachi.modbus.net;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.io.ModbusTCPTransport;
@@ -59,6 +60,7 @@ public class TCPMasterConnection {
 
   //private int m_Retries = Modbus.DEFAULT_RETRIES;
   private ModbusTCPTransport m_ModbusTransport;
+  private volatile RTTEstimator m_RTTEstimator;
 
   /**
    * Constructs a <tt>TCPMasterConnection</tt> instance
@@ -147,6 +149,52 @@ public class TCPMasterConnection {
     }
   }//setTimeout
 
+  /**
+   * Sets the estimator of the round-trip time to the slave,
+   * which then determines the time to wait for a response
+   * instead of the timeout of this <tt>TCPMasterConnection</tt>.
+   *
+   * @param estimator a <tt>RTTEstimator</tt>, or null to
+   *                  apply the timeout.
+   */
+  public void setRTTEstimator(RTTEstimator estimator) {
+    RTTEstimator previous = m_RTTEstimator;
+    m_RTTEstimator = estimator;
+    if (estimator == null && previous != null && m_Connected) {
+      setTimeout(m_Timeout);
+    }
+  }//setRTTEstimator
+
+  /**
+   * Returns the estimator of the round-trip time to the slave.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null if the timeout applies.
+   */
+  public RTTEstimator getRTTEstimator() {
+    return m_RTTEstimator;
+  }//getRTTEstimator
+
+  /**
+   * Prepares the socket to wait for the response to a request
+   * that has been retried the given number of times.
+   *
+   * @param retry the number of retries so far.
+   * @return the time to wait in milliseconds.
+   */
+  public int prepareResponseTimeout(int retry) {
+    RTTEstimator estimator = m_RTTEstimator;
+    if (estimator == null) {
+      return m_Timeout;
+    }
+    int timeout = estimator.getTimeout(retry);
+    try {
+      m_Socket.setSoTimeout(timeout);
+    } catch (IOException ex) {
+      //handle?
+    }
+    return timeout;
+  }//prepareResponseTimeout
+
   /**
    * Returns the destination port of this
    * <tt>TCPMasterConnection</tt>.
@@ -197,5 +245,37 @@ public class TCPMasterConnection {
     return m_Connected;
   }//isConnected
 
+  /**
+   * Tests if this <tt>TCPMasterConnection</tt> can still be used
+   * without sending a request, i.e. the slave has not closed it
+   * and has sent nothing unsolicited. Blocks for about a millisecond,
+   * so it should only be called for connections that have been idle.
+   *
+   * @return <tt>true</tt> if usable, <tt>false</tt> otherwise.
+   */
+  public synchronized boolean isHealthy() {
+    if (!m_Connected || m_Socket.isClosed() || m_Socket.isInputShutdown()) {
+      return false;
+    }
+    try {
+      if (m_Socket.getInputStream().available() > 0) {
+        return false;
+      }
+      m_Socket.setSoTimeout(1);
+      try {
+        //a closed connection reads the end of the stream,
+        //any byte read would be a stale response
+        m_Socket.getInputStream().read();
+        return false;
+      } catch (SocketTimeoutException ex) {
+        return true;
+      } finally {
+        m_Socket.setSoTimeout(m_Timeout);
+      }
+    } catch (IOException ex) {
+      return false;
+    }
+  }//isHealthy
+
 
 }//class TCPMasterConnection
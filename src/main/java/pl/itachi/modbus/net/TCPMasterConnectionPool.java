@@ -0,0 +1,467 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.net;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+
+/**
+ * Class implementing a pool of <tt>TCPMasterConnection</tt>
+ * instances to one slave, shared by several threads.
+ * <p>
+ * A thread checks a connection out, executes its transactions and
+ * checks it back in; at most the configured number of connections
+ * are open at the same time, further threads wait for one to be
+ * checked in. Connections are opened on demand. Idle connections
+ * are reused most recently used first, so that surplus connections
+ * age and are closed once they have been idle longer than the
+ * maximum idle time (e.g. before the slave drops them). A connection
+ * idle for longer than the validation time is checked for health
+ * before it is reused.
+ * A connection that failed should be invalidated instead of
+ * being checked in.
+ */
+public class TCPMasterConnectionPool {
+
+  /**
+   * Defines the default maximum time in milliseconds a
+   * connection may stay idle before it is closed.
+   */
+  public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+
+  /**
+   * Defines the default time in milliseconds a connection
+   * may stay idle before it is checked for health on reuse.
+   */
+  public static final long DEFAULT_VALIDATION_IDLE_TIME = 500;
+
+  //instance attributes
+  private InetAddress m_Address;
+  private int m_Port = Modbus.DEFAULT_PORT;
+  private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+  private volatile RTTEstimator m_RTTEstimator;
+  private int m_MaxConnections;
+  private long m_MaxIdleTime = DEFAULT_MAX_IDLE_TIME;
+  private long m_ValidationIdleTime = DEFAULT_VALIDATION_IDLE_TIME;
+  private long m_CheckoutTimeout = Modbus.DEFAULT_TIMEOUT;
+  private Semaphore m_Available;
+  private Deque<IdleConnection> m_Idle = new ArrayDeque<IdleConnection>();
+  //generation each checked out connection was opened or reused in,
+  //close() starts a new one; guarded by m_Idle
+  private Map<TCPMasterConnection, Integer> m_CheckedOut =
+      new IdentityHashMap<TCPMasterConnection, Integer>();
+  private int m_Generation;
+
+  //metrics
+  private AtomicLong m_Checkouts = new AtomicLong();
+  private AtomicLong m_CheckoutTimeouts = new AtomicLong();
+  private AtomicLong m_WaitTime = new AtomicLong();
+  private AtomicLong m_MaxWaitTime = new AtomicLong();
+  private AtomicLong m_Evictions = new AtomicLong();
+
+  /**
+   * Constructs a new <tt>TCPMasterConnectionPool</tt> instance.
+   *
+   * @param addr           the <tt>InetAddress</tt> of the slave.
+   * @param port           the port the slave is listening to.
+   * @param maxConnections the maximum number of open connections.
+   */
+  public TCPMasterConnectionPool(InetAddress addr, int port, int maxConnections) {
+    m_Address = addr;
+    m_Port = port;
+    m_MaxConnections = Math.max(1, maxConnections);
+    m_Available = new Semaphore(m_MaxConnections, true);
+  }//constructor
+
+  /**
+   * Returns the <tt>InetAddress</tt> of the slave.
+   *
+   * @return the address as <tt>InetAddress</tt>.
+   */
+  public InetAddress getAddress() {
+    return m_Address;
+  }//getAddress
+
+  /**
+   * Returns the port of the slave.
+   *
+   * @return the port number as <tt>int</tt>.
+   */
+  public int getPort() {
+    return m_Port;
+  }//getPort
+
+  /**
+   * Returns the maximum number of open connections.
+   *
+   * @return the maximum number as <tt>int</tt>.
+   */
+  public int getMaxConnections() {
+    return m_MaxConnections;
+  }//getMaxConnections
+
+  /**
+   * Sets the timeout of the connections opened by this pool.
+   *
+   * @param timeout the timeout in milliseconds.
+   */
+  public void setTimeout(int timeout) {
+    m_Timeout = timeout;
+  }//setTimeout
+
+  /**
+   * Returns the timeout of the connections opened by this pool.
+   *
+   * @return the timeout in milliseconds.
+   */
+  public int getTimeout() {
+    return m_Timeout;
+  }//getTimeout
+
+  /**
+   * Sets the estimator of the round-trip time shared by the
+   * connections of this pool, which then determines the time
+   * to wait for a response instead of the timeout.
+   *
+   * @param estimator a <tt>RTTEstimator</tt>, or null to
+   *                  apply the timeout.
+   */
+  public void setRTTEstimator(RTTEstimator estimator) {
+    m_RTTEstimator = estimator;
+  }//setRTTEstimator
+
+  /**
+   * Returns the estimator of the round-trip time shared
+   * by the connections of this pool.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null if the timeout applies.
+   */
+  public RTTEstimator getRTTEstimator() {
+    return m_RTTEstimator;
+  }//getRTTEstimator
+
+  /**
+   * Sets the maximum time a connection may stay idle
+   * before it is closed.
+   *
+   * @param ms the maximum idle time in milliseconds.
+   */
+  public void setMaxIdleTime(long ms) {
+    m_MaxIdleTime = ms;
+  }//setMaxIdleTime
+
+  /**
+   * Returns the maximum time a connection may stay idle
+   * before it is closed.
+   *
+   * @return the maximum idle time in milliseconds.
+   */
+  public long getMaxIdleTime() {
+    return m_MaxIdleTime;
+  }//getMaxIdleTime
+
+  /**
+   * Sets the time a connection may stay idle before it
+   * is checked for health when it is reused.
+   *
+   * @param ms the validation idle time in milliseconds.
+   */
+  public void setValidationIdleTime(long ms) {
+    m_ValidationIdleTime = ms;
+  }//setValidationIdleTime
+
+  /**
+   * Returns the time a connection may stay idle before
+   * it is checked for health when it is reused.
+   *
+   * @return the validation idle time in milliseconds.
+   */
+  public long getValidationIdleTime() {
+    return m_ValidationIdleTime;
+  }//getValidationIdleTime
+
+  /**
+   * Sets the maximum time to wait for a connection
+   * to become available.
+   *
+   * @param ms the time to wait in milliseconds.
+   */
+  public void setCheckoutTimeout(long ms) {
+    m_CheckoutTimeout = ms;
+  }//setCheckoutTimeout
+
+  /**
+   * Returns the maximum time to wait for a connection
+   * to become available.
+   *
+   * @return the time to wait in milliseconds.
+   */
+  public long getCheckoutTimeout() {
+    return m_CheckoutTimeout;
+  }//getCheckoutTimeout
+
+  /**
+   * Checks a connection out of this pool, waiting while all
+   * connections are in use; an idle connection is reused if
+   * it has not been idle for too long and is still healthy,
+   * otherwise a new one is opened.
+   *
+   * @return a connected <tt>TCPMasterConnection</tt>.
+   * @throws ModbusIOException if no connection becomes available
+   *         in time, or a connection cannot be opened.
+   */
+  public TCPMasterConnection checkout() throws ModbusIOException {
+    long start = System.nanoTime();
+    try {
+      if (!m_Available.tryAcquire(m_CheckoutTimeout, TimeUnit.MILLISECONDS)) {
+        m_CheckoutTimeouts.incrementAndGet();
+        throw new ModbusIOException("No connection available.");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ModbusIOException("Interrupted.");
+    }
+    recordWait(System.nanoTime() - start);
+
+    evictIdle();
+    TCPMasterConnection con = null;
+    try {
+      IdleConnection idle;
+      while ((idle = pollIdle()) != null) {
+        con = idle.m_Connection;
+        long idleTime = System.currentTimeMillis() - idle.m_Since;
+        if (con.isConnected() && (idleTime < m_ValidationIdleTime || con.isHealthy())) {
+          con.setRTTEstimator(m_RTTEstimator);
+          return checkedOut(con);
+        }
+        con.close();
+      }
+      con = new TCPMasterConnection(m_Address);
+      con.setPort(m_Port);
+      con.connect();
+      con.setTimeout(m_Timeout);
+      con.setRTTEstimator(m_RTTEstimator);
+      return checkedOut(con);
+    } catch (Exception ex) {
+      m_Available.release();
+      throw new ModbusIOException("Connecting failed.");
+    }
+  }//checkout
+
+  /**
+   * Returns a connection to this pool for reuse. A connection
+   * checked out before the pool was closed is closed instead.
+   *
+   * @param con a <tt>TCPMasterConnection</tt> checked out of this pool.
+   */
+  public void checkin(TCPMasterConnection con) {
+    boolean reuse;
+    synchronized (m_Idle) {
+      Integer generation = m_CheckedOut.remove(con);
+      reuse = generation != null && generation.intValue() == m_Generation && con.isConnected();
+      if (reuse) {
+        m_Idle.push(new IdleConnection(con, System.currentTimeMillis()));
+      }
+    }
+    if (!reuse) {
+      con.close();
+    }
+    m_Available.release();
+    evictIdle();
+  }//checkin
+
+  /**
+   * Closes and discards a connection that failed, instead
+   * of returning it to this pool.
+   *
+   * @param con a <tt>TCPMasterConnection</tt> checked out of this pool.
+   */
+  public void invalidate(TCPMasterConnection con) {
+    synchronized (m_Idle) {
+      m_CheckedOut.remove(con);
+    }
+    con.close();
+    m_Available.release();
+  }//invalidate
+
+  /**
+   * Closes the connections that have been idle for
+   * longer than the maximum idle time.
+   */
+  public void evictIdle() {
+    long limit = System.currentTimeMillis() - m_MaxIdleTime;
+    synchronized (m_Idle) {
+      //the least recently used connections are at the end
+      for (Iterator<IdleConnection> iter = m_Idle.descendingIterator(); iter.hasNext(); ) {
+        IdleConnection idle = iter.next();
+        if (idle.m_Since > limit) {
+          break;
+        }
+        iter.remove();
+        idle.m_Connection.close();
+        m_Evictions.incrementAndGet();
+      }
+    }
+  }//evictIdle
+
+  /**
+   * Closes all idle connections; connections in use are closed
+   * when they are checked in. Connections are opened again
+   * on demand.
+   */
+  public void close() {
+    synchronized (m_Idle) {
+      m_Generation++;
+      while (!m_Idle.isEmpty()) {
+        m_Idle.pop().m_Connection.close();
+      }
+    }
+  }//close
+
+  /**
+   * Returns the number of idle connections.
+   *
+   * @return the number of connections as <tt>int</tt>.
+   */
+  public int getIdleCount() {
+    synchronized (m_Idle) {
+      return m_Idle.size();
+    }
+  }//getIdleCount
+
+  /**
+   * Returns the number of connections checked out.
+   *
+   * @return the number of connections as <tt>int</tt>.
+   */
+  public int getActiveCount() {
+    return m_MaxConnections - m_Available.availablePermits();
+  }//getActiveCount
+
+  /**
+   * Returns the number of successful checkouts.
+   *
+   * @return the number of checkouts as <tt>long</tt>.
+   */
+  public long getCheckoutCount() {
+    return m_Checkouts.get();
+  }//getCheckoutCount
+
+  /**
+   * Returns the number of checkouts that failed, because
+   * no connection became available in time.
+   *
+   * @return the number of checkouts as <tt>long</tt>.
+   */
+  public long getCheckoutTimeoutCount() {
+    return m_CheckoutTimeouts.get();
+  }//getCheckoutTimeoutCount
+
+  /**
+   * Returns the average time a checkout waited for a connection.
+   *
+   * @return the average wait time in milliseconds.
+   */
+  public double getAverageWaitTime() {
+    long checkouts = m_Checkouts.get();
+    return (checkouts == 0) ? 0 : m_WaitTime.get() / 1000000.0 / checkouts;
+  }//getAverageWaitTime
+
+  /**
+   * Returns the longest time a checkout waited for a connection.
+   *
+   * @return the maximum wait time in milliseconds.
+   */
+  public double getMaxWaitTime() {
+    return m_MaxWaitTime.get() / 1000000.0;
+  }//getMaxWaitTime
+
+  /**
+   * Returns the number of connections closed
+   * because they were idle for too long.
+   *
+   * @return the number of connections as <tt>long</tt>.
+   */
+  public long getEvictionCount() {
+    return m_Evictions.get();
+  }//getEvictionCount
+
+  private IdleConnection pollIdle() {
+    synchronized (m_Idle) {
+      return m_Idle.poll();
+    }
+  }//pollIdle
+
+  private TCPMasterConnection checkedOut(TCPMasterConnection con) {
+    synchronized (m_Idle) {
+      m_CheckedOut.put(con, Integer.valueOf(m_Generation));
+    }
+    return con;
+  }//checkedOut
+
+  private void recordWait(long nanos) {
+    m_Checkouts.incrementAndGet();
+    m_WaitTime.addAndGet(nanos);
+    long max;
+    do {
+      max = m_MaxWaitTime.get();
+    } while (nanos > max && !m_MaxWaitTime.compareAndSet(max, nanos));
+  }//recordWait
+
+  /**
+   * Holds an idle connection and the time it was checked in.
+   */
+  private static class IdleConnection {
+
+    private TCPMasterConnection m_Connection;
+    private long m_Since;
+
+    IdleConnection(TCPMasterConnection con, long since) {
+      m_Connection = con;
+      m_Since = since;
+    }//constructor
+
+  }//inner class IdleConnection
+
+}//class TCPMasterConnectionPool
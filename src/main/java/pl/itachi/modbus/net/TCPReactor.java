@@ -0,0 +1,222 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.itachi.modbus.Modbus;
+
+/**
+ * Class implementing an event loop that serves a set of
+ * non-blocking Modbus/TCP connections.
+ * <p>
+ * A reactor owns its <tt>Selector</tt> and all connections
+ * registered with it, including their buffers and decode state;
+ * they are only ever touched by the reactor's thread. Other
+ * threads hand over accepted channels through
+ * {@link #register(SocketChannel)}.
+ *
+ * @see ModbusNIOTCPListener
+ */
+class TCPReactor
+    implements Runnable {
+
+  private ModbusNIOTCPListener m_Listener;
+  private Selector m_Selector;
+  private Thread m_Thread;
+  private ConcurrentLinkedQueue<SocketChannel> m_Pending =
+      new ConcurrentLinkedQueue<SocketChannel>();
+  private AtomicInteger m_Connections = new AtomicInteger();
+  private volatile boolean m_Running = true;
+
+  /**
+   * Constructs a new <tt>TCPReactor</tt> instance.
+   *
+   * @param listener the listener accepting connections for this reactor.
+   * @throws IOException if the selector cannot be opened.
+   */
+  public TCPReactor(ModbusNIOTCPListener listener) throws IOException {
+    m_Listener = listener;
+    m_Selector = Selector.open();
+  }//constructor
+
+  /**
+   * Returns the <tt>Selector</tt> of this reactor.
+   *
+   * @return the <tt>Selector</tt>.
+   */
+  public Selector getSelector() {
+    return m_Selector;
+  }//getSelector
+
+  /**
+   * Returns the number of connections currently served
+   * by this reactor, including those not yet registered.
+   *
+   * @return the number of connections as <tt>int</tt>.
+   */
+  public int getConnectionCount() {
+    return m_Connections.get();
+  }//getConnectionCount
+
+  /**
+   * Starts this reactor in a thread of its own.
+   *
+   * @param name the name of the thread.
+   */
+  public void start(String name) {
+    m_Thread = new Thread(this, name);
+    m_Thread.start();
+  }//start
+
+  /**
+   * Stops this reactor; if it runs in a thread of its own,
+   * waits until it has closed all of its connections.
+   */
+  public void stop() {
+    m_Running = false;
+    m_Selector.wakeup();
+    if (m_Thread != null && m_Thread != Thread.currentThread()) {
+      try {
+        m_Thread.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }//stop
+
+  /**
+   * Hands an accepted channel over to this reactor.
+   * May be called from any thread.
+   *
+   * @param channel the accepted <tt>SocketChannel</tt>.
+   */
+  public void register(SocketChannel channel) {
+    m_Connections.incrementAndGet();
+    m_Pending.add(channel);
+    m_Selector.wakeup();
+  }//register
+
+  /**
+   * Runs the event loop in the calling thread
+   * until this reactor is stopped.
+   */
+  public void run() {
+    try {
+      while (m_Running) {
+        m_Selector.select();
+        registerPending();
+        Iterator<SelectionKey> iter = m_Selector.selectedKeys().iterator();
+        while (iter.hasNext()) {
+          SelectionKey key = iter.next();
+          iter.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            m_Listener.accept();
+          } else {
+            ((TCPChannelHandler) key.attachment()).handle(key);
+            if (!key.isValid()) {
+              m_Connections.decrementAndGet();
+            }
+          }
+        }
+      }
+    } catch (ClosedSelectorException ex) {
+      //stopped
+    } catch (IOException e) {
+      //FIXME: this is a major failure, how do we handle this
+      if (Modbus.debug) e.printStackTrace();
+    } finally {
+      close();
+    }
+  }//run
+
+  /**
+   * Registers the channels handed over since the last
+   * selection for reading.
+   */
+  private void registerPending() {
+    SocketChannel channel;
+    while ((channel = m_Pending.poll()) != null) {
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(m_Selector, SelectionKey.OP_READ, new TCPChannelHandler(channel, m_Listener.getDeviceTable(),
+            m_Listener.getWriteStatistics()));
+      } catch (IOException ex) {
+        if (Modbus.debug) ex.printStackTrace();
+        m_Connections.decrementAndGet();
+        try {
+          channel.close();
+        } catch (IOException ignore) {
+        }
+      }
+    }
+  }//registerPending
+
+  /**
+   * Closes all connections of this reactor and its selector.
+   * Must not be called while the event loop is running.
+   */
+  public void close() {
+    m_Running = false;
+    try {
+      SocketChannel channel;
+      while ((channel = m_Pending.poll()) != null) {
+        channel.close();
+      }
+      if (m_Selector.isOpen()) {
+        for (SelectionKey key : m_Selector.keys()) {
+          if (key.attachment() instanceof TCPChannelHandler) {
+            ((TCPChannelHandler) key.attachment()).close();
+          }
+        }
+        m_Selector.close();
+      }
+    } catch (IOException ex) {
+      if (Modbus.debug) ex.printStackTrace();
+    }
+    m_Connections.set(0);
+  }//close
+
+}//class TCPReactor
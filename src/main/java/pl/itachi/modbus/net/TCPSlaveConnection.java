@@ -39,7 +39,7 @@ import java.net.Socket;
 
 import pl.itachi.modbus.Modbus;
 import pl.itachi.modbus.io.ModbusTCPTransport;
-import pl.itachi.modbus.io.ModbusTransport;
+import pl.itachi.modbus.msg.ModbusMessagePool;
 
 /**
  * Class that implements a TCPSlaveConnection.
@@ -92,9 +92,9 @@ public class TCPSlaveConnection {
    * Returns the <tt>ModbusTransport</tt> associated with this
    * <tt>TCPMasterConnection</tt>.
    *
-   * @return the connection's <tt>ModbusTransport</tt>.
+   * @return the connection's <tt>ModbusTCPTransport</tt>.
    */
-  public ModbusTransport getModbusTransport() {
+  public ModbusTCPTransport getModbusTransport() {
     return m_ModbusTransport;
   }//getIO
 
@@ -167,4 +167,15 @@ public class TCPSlaveConnection {
     return m_Connected;
   }//isConnected
 
+  /**
+   * Sets the pool the requests received through this
+   * <tt>TCPSlaveConnection</tt> are read into.
+   *
+   * @param pool a <tt>ModbusMessagePool</tt> or null.
+   * @see ModbusTCPTransport#setMessagePool(ModbusMessagePool)
+   */
+  public void setMessagePool(ModbusMessagePool pool) {
+    m_ModbusTransport.setMessagePool(pool);
+  }//setMessagePool
+
 }//class TCPSlaveConnection
@@ -50,6 +50,7 @@ public class UDPMasterConnection {
   private UDPMasterTerminal m_Terminal;
   private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
   private boolean m_Connected;
+  private volatile RTTEstimator m_RTTEstimator;
 
   private InetAddress m_Address;
   private int m_Port = Modbus.DEFAULT_PORT;
@@ -135,6 +136,48 @@ public class UDPMasterConnection {
     m_Terminal.setTimeout(timeout);
   }//setTimeout
 
+  /**
+   * Sets the estimator of the round-trip time to the slave,
+   * which then determines the time to wait for a response
+   * instead of the timeout of this <tt>UDPMasterConnection</tt>.
+   *
+   * @param estimator a <tt>RTTEstimator</tt>, or null to
+   *                  apply the timeout.
+   */
+  public void setRTTEstimator(RTTEstimator estimator) {
+    RTTEstimator previous = m_RTTEstimator;
+    m_RTTEstimator = estimator;
+    if (estimator == null && previous != null && m_Terminal != null) {
+      m_Terminal.setTimeout(m_Timeout);
+    }
+  }//setRTTEstimator
+
+  /**
+   * Returns the estimator of the round-trip time to the slave.
+   *
+   * @return the <tt>RTTEstimator</tt>, or null if the timeout applies.
+   */
+  public RTTEstimator getRTTEstimator() {
+    return m_RTTEstimator;
+  }//getRTTEstimator
+
+  /**
+   * Prepares the terminal to wait for the response to a request
+   * that has been retried the given number of times.
+   *
+   * @param retry the number of retries so far.
+   * @return the time to wait in milliseconds.
+   */
+  public int prepareResponseTimeout(int retry) {
+    RTTEstimator estimator = m_RTTEstimator;
+    if (estimator == null) {
+      return m_Timeout;
+    }
+    int timeout = estimator.getTimeout(retry);
+    m_Terminal.setTimeout(timeout);
+    return timeout;
+  }//prepareResponseTimeout
+
   /**
    * Returns the destination port of this
    * <tt>UDPMasterConnection</tt>.
@@ -102,4 +102,24 @@ public interface UDPTerminal {
    */
   public byte[] receiveMessage() throws Exception;
 
+  /**
+   * Sets the time receiving a message may block, in
+   * milliseconds. Terminals without a timeout ignore it.
+   *
+   * @param timeout the timeout as <tt>int</tt>.
+   */
+  public default void setTimeout(int timeout) {
+  }//setTimeout
+
+  /**
+   * Returns the time receiving a message may block, in
+   * milliseconds.
+   *
+   * @return the timeout as <tt>int</tt>, or -1 if this terminal
+   *         has no timeout.
+   */
+  public default int getTimeout() {
+    return -1;
+  }//getTimeout
+
 }//interface UDPTerminal
@@ -0,0 +1,837 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+/**
+ * Class implementing a process image backed by
+ * primitive arrays.
+ * <p>
+ * Registers and input registers are stored in a <tt>short[]</tt>
+ * each, digital outs (coils) and digital ins (discretes) packed
+ * into a <tt>long[]</tt> each. A table of 65536 registers thus
+ * takes 128 kB, instead of an object and a byte array per
+ * register as with the {@link SimpleProcessImage}.
+ * <p>
+ * Besides the bulk transfers of {@link BulkProcessImage}, values
+ * are accessed through the value accessors of this class. The
+ * <tt>Register</tt>, <tt>InputRegister</tt>, <tt>DigitalOut</tt>
+ * and <tt>DigitalIn</tt> instances returned by the
+ * {@link ProcessImage} methods are views of the arrays, created on
+ * demand; setting a view sets the value in the image. Instances
+ * passed to the <tt>set</tt> and <tt>add</tt> methods are not
+ * kept, only their current value is copied into the image.
+ * <p>
+ * The tables should be sized on construction; the <tt>add</tt>
+ * and <tt>remove</tt> methods grow and shrink them for compatibility,
+ * but are meant to be used while setting up the image only. As
+ * instances are not kept, only views of this image can be removed;
+ * the elements following a removed one move down by one reference.
+ * All accesses, including those through the views, are synchronized
+ * on the image, so that the arrays replaced when a table grows are
+ * seen by every thread; writes notify the range listeners. A range
+ * is thus written with a single lock acquisition, and never read
+ * half written.
+ */
+public class ArrayProcessImage
+    implements ProcessImageImplementation, BulkProcessImage {
+
+  //instance attributes
+  private long[] m_DigitalOuts;
+  private int m_DigitalOutCount;
+  private long[] m_DigitalIns;
+  private int m_DigitalInCount;
+  private short[] m_InputRegisters;
+  private int m_InputRegisterCount;
+  private short[] m_Registers;
+  private int m_RegisterCount;
+  private final RangeListenerList m_Listeners = new RangeListenerList();
+
+  /**
+   * Constructs a new, empty <tt>ArrayProcessImage</tt> instance.
+   */
+  public ArrayProcessImage() {
+    this(0, 0, 0, 0);
+  }//constructor
+
+  /**
+   * Constructs a new <tt>ArrayProcessImage</tt> instance
+   * with tables of the given sizes, all values zero.
+   *
+   * @param digitalouts the number of digital outs (coils).
+   * @param digitalins the number of digital ins (discretes).
+   * @param inputregisters the number of input registers.
+   * @param registers the number of registers.
+   */
+  public ArrayProcessImage(int digitalouts, int digitalins,
+                           int inputregisters, int registers) {
+    m_DigitalOuts = new long[(digitalouts + 63) >>> 6];
+    m_DigitalOutCount = digitalouts;
+    m_DigitalIns = new long[(digitalins + 63) >>> 6];
+    m_DigitalInCount = digitalins;
+    m_InputRegisters = new short[inputregisters];
+    m_InputRegisterCount = inputregisters;
+    m_Registers = new short[registers];
+    m_RegisterCount = registers;
+  }//constructor
+
+  /*** Value accessors **********************************/
+
+  /**
+   * Tests if the digital out at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public synchronized boolean isDigitalOutSet(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalOutCount);
+    return getBit(m_DigitalOuts, ref);
+  }//isDigitalOutSet
+
+  /**
+   * Sets the state of the digital out at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalOutState(int ref, boolean b)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, 1, m_DigitalOutCount);
+      setBit(m_DigitalOuts, ref, b);
+    }
+    m_Listeners.fire(this, RangeListener.DIGITAL_OUTS, ref, 1);
+  }//setDigitalOutState
+
+  /**
+   * Tests if the digital in at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public synchronized boolean isDigitalInSet(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalInCount);
+    return getBit(m_DigitalIns, ref);
+  }//isDigitalInSet
+
+  /**
+   * Sets the state of the digital in at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalInState(int ref, boolean b)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, 1, m_DigitalInCount);
+      setBit(m_DigitalIns, ref, b);
+    }
+    m_Listeners.fire(this, RangeListener.DIGITAL_INS, ref, 1);
+  }//setDigitalInState
+
+  /**
+   * Returns the value of the input register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public synchronized int getInputRegisterValue(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_InputRegisterCount);
+    return m_InputRegisters[ref] & 0xffff;
+  }//getInputRegisterValue
+
+  /**
+   * Sets the value of the input register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setInputRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, 1, m_InputRegisterCount);
+      m_InputRegisters[ref] = (short) v;
+    }
+    m_Listeners.fire(this, RangeListener.INPUT_REGISTERS, ref, 1);
+  }//setInputRegisterValue
+
+  /**
+   * Returns the value of the register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public synchronized int getRegisterValue(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_RegisterCount);
+    return m_Registers[ref] & 0xffff;
+  }//getRegisterValue
+
+  /**
+   * Sets the value of the register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, 1, m_RegisterCount);
+      m_Registers[ref] = (short) v;
+    }
+    m_Listeners.fire(this, RangeListener.REGISTERS, ref, 1);
+  }//setRegisterValue
+
+  /**
+   * Copies the values of a range of input registers.
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param dest the <tt>short[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public synchronized void getInputRegisterValues(int ref, int count, short[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_InputRegisterCount);
+    System.arraycopy(m_InputRegisters, ref, dest, off, count);
+  }//getInputRegisterValues
+
+  /**
+   * Sets the values of a range of input registers.
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param src the <tt>short[]</tt> holding the values.
+   * @param off the index in <tt>src</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setInputRegisterValues(int ref, int count, short[] src, int off)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, count, m_InputRegisterCount);
+      System.arraycopy(src, off, m_InputRegisters, ref, count);
+    }
+    m_Listeners.fire(this, RangeListener.INPUT_REGISTERS, ref, count);
+  }//setInputRegisterValues
+
+  /**
+   * Copies the values of a range of registers.
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param dest the <tt>short[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public synchronized void getRegisterValues(int ref, int count, short[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_RegisterCount);
+    System.arraycopy(m_Registers, ref, dest, off, count);
+  }//getRegisterValues
+
+  /**
+   * Sets the values of a range of registers.
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param src the <tt>short[]</tt> holding the values.
+   * @param off the index in <tt>src</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setRegisterValues(int ref, int count, short[] src, int off)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, count, m_RegisterCount);
+      System.arraycopy(src, off, m_Registers, ref, count);
+    }
+    m_Listeners.fire(this, RangeListener.REGISTERS, ref, count);
+  }//setRegisterValues
+
+  /*** BulkProcessImage *********************************/
+
+  public synchronized void getRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_RegisterCount);
+    toBytes(m_Registers, ref, count, dest, off);
+  }//getRegisterBytes
+
+  public void setRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, count, m_RegisterCount);
+      short[] regs = m_Registers;
+      for (int i = 0, j = off; i < count; i++, j += 2) {
+        regs[ref + i] = (short) ((src[j] << 8) | (src[j + 1] & 0xff));
+      }
+    }
+    m_Listeners.fire(this, RangeListener.REGISTERS, ref, count);
+  }//setRegisterBytes
+
+  public synchronized void getInputRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_InputRegisterCount);
+    toBytes(m_InputRegisters, ref, count, dest, off);
+  }//getInputRegisterBytes
+
+  public synchronized void getDigitalOutBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_DigitalOutCount);
+    packBits(m_DigitalOuts, ref, count, dest, off);
+  }//getDigitalOutBits
+
+  public void setDigitalOutBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    synchronized (this) {
+      checkRange(ref, count, m_DigitalOutCount);
+      long[] bits = m_DigitalOuts;
+      for (int i = 0; i < count; i++) {
+        setBit(bits, ref + i, (src[off + (i >>> 3)] & (1 << (i & 7))) != 0);
+      }
+    }
+    m_Listeners.fire(this, RangeListener.DIGITAL_OUTS, ref, count);
+  }//setDigitalOutBits
+
+  public synchronized void getDigitalInBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_DigitalInCount);
+    packBits(m_DigitalIns, ref, count, dest, off);
+  }//getDigitalInBits
+
+  public void addRangeListener(RangeListener l) {
+    m_Listeners.add(l);
+  }//addRangeListener
+
+  public void removeRangeListener(RangeListener l) {
+    m_Listeners.remove(l);
+  }//removeRangeListener
+
+  /*** ProcessImage *************************************/
+
+  public synchronized DigitalOut[] getDigitalOutRange(int ref, int count)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_DigitalOutCount);
+    DigitalOut[] douts = new DigitalOut[count];
+    for (int i = 0; i < douts.length; i++) {
+      douts[i] = new DigitalOutView(ref + i);
+    }
+    return douts;
+  }//getDigitalOutRange
+
+  public synchronized DigitalOut getDigitalOut(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalOutCount);
+    return new DigitalOutView(ref);
+  }//getDigitalOut
+
+  public synchronized int getDigitalOutCount() {
+    return m_DigitalOutCount;
+  }//getDigitalOutCount
+
+  public synchronized DigitalIn[] getDigitalInRange(int ref, int count)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_DigitalInCount);
+    DigitalIn[] dins = new DigitalIn[count];
+    for (int i = 0; i < dins.length; i++) {
+      dins[i] = new DigitalInView(ref + i);
+    }
+    return dins;
+  }//getDigitalInRange
+
+  public synchronized DigitalIn getDigitalIn(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalInCount);
+    return new DigitalInView(ref);
+  }//getDigitalIn
+
+  public synchronized int getDigitalInCount() {
+    return m_DigitalInCount;
+  }//getDigitalInCount
+
+  public synchronized InputRegister[] getInputRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_InputRegisterCount);
+    InputRegister[] iregs = new InputRegister[count];
+    for (int i = 0; i < iregs.length; i++) {
+      iregs[i] = new InputRegisterView(ref + i);
+    }
+    return iregs;
+  }//getInputRegisterRange
+
+  public synchronized InputRegister getInputRegister(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_InputRegisterCount);
+    return new InputRegisterView(ref);
+  }//getInputRegister
+
+  public synchronized int getInputRegisterCount() {
+    return m_InputRegisterCount;
+  }//getInputRegisterCount
+
+  public synchronized Register[] getRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    checkRange(ref, count, m_RegisterCount);
+    Register[] regs = new Register[count];
+    for (int i = 0; i < regs.length; i++) {
+      regs[i] = new RegisterView(ref + i);
+    }
+    return regs;
+  }//getRegisterRange
+
+  public synchronized Register getRegister(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_RegisterCount);
+    return new RegisterView(ref);
+  }//getRegister
+
+  public synchronized int getRegisterCount() {
+    return m_RegisterCount;
+  }//getRegisterCount
+
+  /*** ProcessImageImplementation ***********************/
+
+  public void setDigitalOut(int ref, DigitalOut _do)
+      throws IllegalAddressException {
+    setDigitalOutState(ref, _do.isSet());
+  }//setDigitalOut
+
+  public synchronized void addDigitalOut(DigitalOut _do) {
+    if (m_DigitalOutCount == m_DigitalOuts.length << 6) {
+      m_DigitalOuts = grow(m_DigitalOuts);
+    }
+    setBit(m_DigitalOuts, m_DigitalOutCount++, _do.isSet());
+  }//addDigitalOut
+
+  /**
+   * Removes the digital out the given view refers to, moving the
+   * following ones down by one reference; does nothing if
+   * the digital out is not a view of this image.
+   *
+   * @param _do a <tt>DigitalOut</tt> obtained from this image.
+   */
+  public void removeDigitalOut(DigitalOut _do) {
+    int ref = viewRef(_do, RangeListener.DIGITAL_OUTS);
+    int moved;
+    synchronized (this) {
+      if (ref < 0 || ref >= m_DigitalOutCount) {
+        return;
+      }
+      removeBit(m_DigitalOuts, ref, m_DigitalOutCount);
+      moved = --m_DigitalOutCount - ref;
+    }
+    if (moved > 0) {
+      m_Listeners.fire(this, RangeListener.DIGITAL_OUTS, ref, moved);
+    }
+  }//removeDigitalOut
+
+  public void setDigitalIn(int ref, DigitalIn di)
+      throws IllegalAddressException {
+    setDigitalInState(ref, di.isSet());
+  }//setDigitalIn
+
+  public synchronized void addDigitalIn(DigitalIn di) {
+    if (m_DigitalInCount == m_DigitalIns.length << 6) {
+      m_DigitalIns = grow(m_DigitalIns);
+    }
+    setBit(m_DigitalIns, m_DigitalInCount++, di.isSet());
+  }//addDigitalIn
+
+  /**
+   * Removes the digital in the given view refers to, moving the
+   * following ones down by one reference; does nothing if
+   * the digital in is not a view of this image.
+   *
+   * @param di a <tt>DigitalIn</tt> obtained from this image.
+   */
+  public void removeDigitalIn(DigitalIn di) {
+    int ref = viewRef(di, RangeListener.DIGITAL_INS);
+    int moved;
+    synchronized (this) {
+      if (ref < 0 || ref >= m_DigitalInCount) {
+        return;
+      }
+      removeBit(m_DigitalIns, ref, m_DigitalInCount);
+      moved = --m_DigitalInCount - ref;
+    }
+    if (moved > 0) {
+      m_Listeners.fire(this, RangeListener.DIGITAL_INS, ref, moved);
+    }
+  }//removeDigitalIn
+
+  public void setInputRegister(int ref, InputRegister reg)
+      throws IllegalAddressException {
+    setInputRegisterValue(ref, reg.toShort());
+  }//setInputRegister
+
+  public synchronized void addInputRegister(InputRegister reg) {
+    if (m_InputRegisterCount == m_InputRegisters.length) {
+      m_InputRegisters = grow(m_InputRegisters);
+    }
+    m_InputRegisters[m_InputRegisterCount++] = reg.toShort();
+  }//addInputRegister
+
+  /**
+   * Removes the input register the given view refers to, moving the
+   * following ones down by one reference; does nothing if
+   * the input register is not a view of this image.
+   *
+   * @param reg a <tt>InputRegister</tt> obtained from this image.
+   */
+  public void removeInputRegister(InputRegister reg) {
+    int ref = viewRef(reg, RangeListener.INPUT_REGISTERS);
+    int moved;
+    synchronized (this) {
+      if (ref < 0 || ref >= m_InputRegisterCount) {
+        return;
+      }
+      System.arraycopy(m_InputRegisters, ref + 1, m_InputRegisters, ref, m_InputRegisterCount - ref - 1);
+      m_InputRegisters[m_InputRegisterCount - 1] = 0;
+      moved = --m_InputRegisterCount - ref;
+    }
+    if (moved > 0) {
+      m_Listeners.fire(this, RangeListener.INPUT_REGISTERS, ref, moved);
+    }
+  }//removeInputRegister
+
+  public void setRegister(int ref, Register reg)
+      throws IllegalAddressException {
+    setRegisterValue(ref, reg.toShort());
+  }//setRegister
+
+  public synchronized void addRegister(Register reg) {
+    if (m_RegisterCount == m_Registers.length) {
+      m_Registers = grow(m_Registers);
+    }
+    m_Registers[m_RegisterCount++] = reg.toShort();
+  }//addRegister
+
+  /**
+   * Removes the register the given view refers to, moving the
+   * following ones down by one reference; does nothing if
+   * the register is not a view of this image.
+   *
+   * @param reg a <tt>Register</tt> obtained from this image.
+   */
+  public void removeRegister(Register reg) {
+    int ref = viewRef(reg, RangeListener.REGISTERS);
+    int moved;
+    synchronized (this) {
+      if (ref < 0 || ref >= m_RegisterCount) {
+        return;
+      }
+      System.arraycopy(m_Registers, ref + 1, m_Registers, ref, m_RegisterCount - ref - 1);
+      m_Registers[m_RegisterCount - 1] = 0;
+      moved = --m_RegisterCount - ref;
+    }
+    if (moved > 0) {
+      m_Listeners.fire(this, RangeListener.REGISTERS, ref, moved);
+    }
+  }//removeRegister
+
+  /*** Helpers ******************************************/
+
+  private static void checkRange(int ref, int count, int size)
+      throws IllegalAddressException {
+    if (ref < 0 || count < 0 || ref + count > size) {
+      throw new IllegalAddressException();
+    }
+  }//checkRange
+
+  private static boolean getBit(long[] bits, int idx) {
+    return (bits[idx >>> 6] & (1L << idx)) != 0;
+  }//getBit
+
+  private static void setBit(long[] bits, int idx, boolean b) {
+    if (b) {
+      bits[idx >>> 6] |= 1L << idx;
+    } else {
+      bits[idx >>> 6] &= ~(1L << idx);
+    }
+  }//setBit
+
+  private static void toBytes(short[] regs, int ref, int count, byte[] dest, int off) {
+    for (int i = 0; i < count; i++, off += 2) {
+      short v = regs[ref + i];
+      dest[off] = (byte) (v >> 8);
+      dest[off + 1] = (byte) v;
+    }
+  }//toBytes
+
+  /**
+   * Packs <tt>count</tt> bits starting at <tt>ref</tt> into
+   * bytes, eight at a time.
+   */
+  private static void packBits(long[] bits, int ref, int count, byte[] dest, int off) {
+    int bytes = (count + 7) >>> 3;
+    for (int j = 0; j < bytes; j++) {
+      int idx = ref + (j << 3);
+      int word = idx >>> 6;
+      int shift = idx & 63;
+      long w = bits[word] >>> shift;
+      if (shift > 56 && word + 1 < bits.length) {
+        w |= bits[word + 1] << (64 - shift);
+      }
+      dest[off + j] = (byte) w;
+    }
+    if ((count & 7) != 0) {
+      dest[off + bytes - 1] &= (byte) ((1 << (count & 7)) - 1);
+    }
+  }//packBits
+
+  /**
+   * Removes bit <tt>idx</tt> of the <tt>count</tt> bits in use,
+   * moving the following bits down by one.
+   */
+  private static void removeBit(long[] bits, int idx, int count) {
+    int word = idx >>> 6;
+    long below = (1L << idx) - 1;
+    bits[word] = (bits[word] & below) | ((bits[word] >>> 1) & ~below);
+    int last = (count - 1) >>> 6;
+    for (int w = word; w < last; w++) {
+      bits[w] |= bits[w + 1] << 63;
+      bits[w + 1] >>>= 1;
+    }
+    setBit(bits, count - 1, false);
+  }//removeBit
+
+  /**
+   * Returns the reference of the given element if it is a view
+   * of the given table of this image, -1 otherwise.
+   */
+  private int viewRef(Object element, int table) {
+    if (element instanceof View) {
+      View view = (View) element;
+      if (view.getImage() == this && view.getTable() == table) {
+        return view.getRef();
+      }
+    }
+    return -1;
+  }//viewRef
+
+  private static long[] grow(long[] bits) {
+    long[] grown = new long[Math.max(1, bits.length * 2)];
+    System.arraycopy(bits, 0, grown, 0, bits.length);
+    return grown;
+  }//grow
+
+  private static short[] grow(short[] regs) {
+    short[] grown = new short[Math.max(16, regs.length * 2)];
+    System.arraycopy(regs, 0, grown, 0, regs.length);
+    return grown;
+  }//grow
+
+  /*** Views ********************************************/
+
+  /**
+   * Interface implemented by the views, identifying the
+   * element they refer to.
+   */
+  private interface View {
+
+    ArrayProcessImage getImage();
+
+    int getTable();
+
+    int getRef();
+
+  }//interface View
+
+  /**
+   * Class implementing a view of an input register of the image.
+   */
+  private class InputRegisterView
+      implements InputRegister, View {
+
+    protected final int m_Ref;
+
+    InputRegisterView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public ArrayProcessImage getImage() {
+      return ArrayProcessImage.this;
+    }//getImage
+
+    public int getTable() {
+      return RangeListener.INPUT_REGISTERS;
+    }//getTable
+
+    public int getRef() {
+      return m_Ref;
+    }//getRef
+
+    protected short get() {
+      synchronized (ArrayProcessImage.this) {
+        return m_InputRegisters[m_Ref];
+      }
+    }//get
+
+    public int getValue() {
+      return get() & 0xffff;
+    }//getValue
+
+    public int toUnsignedShort() {
+      return get() & 0xffff;
+    }//toUnsignedShort
+
+    public short toShort() {
+      return get();
+    }//toShort
+
+    public byte[] toBytes() {
+      short v = get();
+      return new byte[]{(byte) (v >> 8), (byte) v};
+    }//toBytes
+
+  }//class InputRegisterView
+
+  /**
+   * Class implementing a view of a register of the image.
+   */
+  private class RegisterView
+      extends InputRegisterView
+      implements Register {
+
+    RegisterView(int ref) {
+      super(ref);
+    }//constructor
+
+    public int getTable() {
+      return RangeListener.REGISTERS;
+    }//getTable
+
+    protected short get() {
+      synchronized (ArrayProcessImage.this) {
+        return m_Registers[m_Ref];
+      }
+    }//get
+
+    public void setValue(int v) {
+      setRegisterValue(m_Ref, v);
+    }//setValue
+
+    public void setValue(short s) {
+      setRegisterValue(m_Ref, s);
+    }//setValue
+
+    public void setValue(byte[] bytes) {
+      if (bytes.length < 2) {
+        throw new IllegalArgumentException();
+      }
+      setRegisterValue(m_Ref, (bytes[0] << 8) | (bytes[1] & 0xff));
+    }//setValue
+
+  }//class RegisterView
+
+  /**
+   * Class implementing a view of a digital in of the image.
+   */
+  private class DigitalInView
+      implements DigitalIn, View {
+
+    private final int m_Ref;
+
+    DigitalInView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public ArrayProcessImage getImage() {
+      return ArrayProcessImage.this;
+    }//getImage
+
+    public int getTable() {
+      return RangeListener.DIGITAL_INS;
+    }//getTable
+
+    public int getRef() {
+      return m_Ref;
+    }//getRef
+
+    public boolean isSet() {
+      synchronized (ArrayProcessImage.this) {
+        return getBit(m_DigitalIns, m_Ref);
+      }
+    }//isSet
+
+  }//class DigitalInView
+
+  /**
+   * Class implementing a view of a digital out of the image.
+   */
+  private class DigitalOutView
+      implements DigitalOut, View {
+
+    private final int m_Ref;
+
+    DigitalOutView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public ArrayProcessImage getImage() {
+      return ArrayProcessImage.this;
+    }//getImage
+
+    public int getTable() {
+      return RangeListener.DIGITAL_OUTS;
+    }//getTable
+
+    public int getRef() {
+      return m_Ref;
+    }//getRef
+
+    public boolean isSet() {
+      synchronized (ArrayProcessImage.this) {
+        return getBit(m_DigitalOuts, m_Ref);
+      }
+    }//isSet
+
+    public void set(boolean b) {
+      setDigitalOutState(m_Ref, b);
+    }//set
+
+  }//class DigitalOutView
+
+}//class ArrayProcessImage
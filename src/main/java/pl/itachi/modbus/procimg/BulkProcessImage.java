@@ -0,0 +1,183 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+/**
+ * Interface defining a process image that can transfer
+ * ranges of its tables in their wire format, without
+ * handing out an instance per register or bit.
+ * <p>
+ * Registers are transferred as two bytes each, most
+ * significant byte first. Bits are transferred packed
+ * eight per byte, the first bit in the least significant
+ * bit of the first byte, with unused high bits of the
+ * last byte cleared.
+ * <p>
+ * Each set method writes its range atomically with respect to
+ * the other transfers of this interface: a get never returns a
+ * range half written by a set. After the whole range has been
+ * written, the registered {@link RangeListener} instances are
+ * notified once for the range.
+ * <p>
+ * Implementations notify the listeners of every write made
+ * through the image: the set methods of this interface, their
+ * own single element setters, the <tt>set</tt> methods of
+ * {@link ProcessImageImplementation}, and the elements they hand
+ * out as views of their tables, each notifying a range of one.
+ * Writes to element instances held by an image, rather than
+ * views of it, cannot be seen and are not published; see
+ * {@link SimpleProcessImage}.
+ * <p>
+ * The read and write request implementations (FC 1, 2, 3, 4,
+ * 5, 6, 15 and 16), and the <tt>DirectResponseEncoder</tt> of the
+ * non-blocking listener, use these methods instead of the element
+ * and range accessors whenever the process image of the slave
+ * implements this interface, so that all writes by a master are
+ * published.
+ *
+ * @see ArrayProcessImage
+ */
+public interface BulkProcessImage extends ProcessImage {
+
+  /**
+   * Copies the values of a range of registers.
+   * <p>
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param dest the <tt>byte[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void getRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Sets the values of a range of registers.
+   * <p>
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param src the <tt>byte[]</tt> holding the values.
+   * @param off the index in <tt>src</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void setRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Copies the values of a range of input registers.
+   * <p>
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param dest the <tt>byte[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void getInputRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Copies the states of a range of digital outs (coils),
+   * packed into bits.
+   * <p>
+   *
+   * @param ref the reference of the first digital out.
+   * @param count the number of digital outs.
+   * @param dest the <tt>byte[]</tt> to copy the states to.
+   * @param off the index in <tt>dest</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void getDigitalOutBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Sets the states of a range of digital outs (coils)
+   * from packed bits.
+   * <p>
+   *
+   * @param ref the reference of the first digital out.
+   * @param count the number of digital outs.
+   * @param src the <tt>byte[]</tt> holding the states.
+   * @param off the index in <tt>src</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void setDigitalOutBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Copies the states of a range of digital ins (discretes),
+   * packed into bits.
+   * <p>
+   *
+   * @param ref the reference of the first digital in.
+   * @param count the number of digital ins.
+   * @param dest the <tt>byte[]</tt> to copy the states to.
+   * @param off the index in <tt>dest</tt> of the first byte.
+   *
+   * @throws IllegalAddressException if the range from ref
+   *         to ref+count is non existant.
+   */
+  public void getDigitalInBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException;
+
+  /**
+   * Adds a listener to be notified of the ranges written
+   * to this process image, if it is not already added.
+   * <p>
+   *
+   * @param l the <tt>RangeListener</tt> to be added.
+   */
+  public void addRangeListener(RangeListener l);
+
+  /**
+   * Removes a listener from this process image.
+   * <p>
+   *
+   * @param l the <tt>RangeListener</tt> to be removed.
+   */
+  public void removeRangeListener(RangeListener l);
+
+}//interface BulkProcessImage
@@ -0,0 +1,136 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+/**
+ * Class holding a batch of changes drained from a
+ * {@link ChangeEventBus}.
+ * <p>
+ * A batch is meant to be allocated once by a consumer and
+ * reused for every drain. Its changes are sorted by table
+ * and reference, and do not overlap or abut each other.
+ */
+public final class ChangeBatch {
+
+  //table, reference and count packed per change
+  final long[] m_Changes;
+  int m_Size;
+  long m_Dropped;
+
+  /**
+   * Constructs a new <tt>ChangeBatch</tt> instance that
+   * can take the given number of events per drain.
+   *
+   * @param capacity the maximum number of events per drain.
+   */
+  public ChangeBatch(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity + ".");
+    }
+    m_Changes = new long[capacity];
+  }//constructor
+
+  /**
+   * Returns the maximum number of events taken per drain.
+   *
+   * @return the capacity of this batch.
+   */
+  public int getCapacity() {
+    return m_Changes.length;
+  }//getCapacity
+
+  /**
+   * Returns the number of changes in this batch.
+   *
+   * @return the number of changes.
+   */
+  public int size() {
+    return m_Size;
+  }//size
+
+  /**
+   * Returns the table of the change at the given index,
+   * one of the constants of {@link RangeListener}.
+   *
+   * @param idx the index of the change.
+   * @return the table.
+   */
+  public int getTable(int idx) {
+    checkIndex(idx);
+    return (int) (m_Changes[idx] >>> 60);
+  }//getTable
+
+  /**
+   * Returns the reference of the first element of the
+   * change at the given index.
+   *
+   * @param idx the index of the change.
+   * @return the reference.
+   */
+  public int getReference(int idx) {
+    checkIndex(idx);
+    return (int) (m_Changes[idx] >>> 30) & ChangeEventBus.MAX_RANGE;
+  }//getReference
+
+  /**
+   * Returns the number of elements of the change at the
+   * given index.
+   *
+   * @param idx the index of the change.
+   * @return the number of elements.
+   */
+  public int getCount(int idx) {
+    checkIndex(idx);
+    return (int) m_Changes[idx] & ChangeEventBus.MAX_RANGE;
+  }//getCount
+
+  /**
+   * Returns the number of events that were dropped by the bus,
+   * because it was full, since the previous drain. If it is not
+   * zero, this batch is incomplete and the consumer should read
+   * the process image in full.
+   *
+   * @return the number of dropped events.
+   */
+  public long getDropped() {
+    return m_Dropped;
+  }//getDropped
+
+  private void checkIndex(int idx) {
+    if (idx < 0 || idx >= m_Size) {
+      throw new IndexOutOfBoundsException("Index " + idx + ", size " + m_Size);
+    }
+  }//checkIndex
+
+}//class ChangeBatch
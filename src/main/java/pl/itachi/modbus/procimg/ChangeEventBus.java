@@ -0,0 +1,255 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a bus that carries changes of a
+ * process image to a consumer on another thread.
+ * <p>
+ * Added as {@link RangeListener} to a {@link BulkProcessImage}, a
+ * bus turns every write into an event (table, reference, count)
+ * and puts it into a bounded ring buffer, without a lock: a writer
+ * claims a slot with a single compare-and-set and never waits for
+ * the consumer. If the ring is full the event is dropped and
+ * counted, so a slow consumer never blocks the thread handling a
+ * Modbus request.
+ * <p>
+ * The consumer calls {@link #drain(ChangeBatch)} on its own thread,
+ * at its own pace. A drain takes up to a batch worth of events
+ * and coalesces them: repeated writes to the same elements, and
+ * overlapping or adjacent ranges of a table, are merged into one
+ * change. A bus has a single consumer; each consumer should use
+ * a bus of its own.
+ * <p>
+ * The bus counts the published, dropped and consumed events;
+ * the lag is the number of events published but not yet drained.
+ */
+public class ChangeEventBus
+    implements RangeListener {
+
+  /**
+   * The largest reference or count an event can carry.
+   */
+  public static final int MAX_RANGE = (1 << 30) - 1;
+
+  //instance attributes
+  private final int m_Mask;
+  private final long[] m_Events;
+  private final AtomicLongArray m_Sequences;
+  private final AtomicLong m_Tail = new AtomicLong();
+  private final AtomicLong m_Head = new AtomicLong();
+  private final AtomicLong m_Dropped = new AtomicLong();
+  private volatile long m_Coalesced;
+  private long m_DroppedSeen;
+
+  /**
+   * Constructs a new <tt>ChangeEventBus</tt> instance
+   * holding up to the given number of events.
+   *
+   * @param capacity the capacity of the ring, a power of two.
+   */
+  public ChangeEventBus(int capacity) {
+    if (capacity < 2 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity + ".");
+    }
+    m_Mask = capacity - 1;
+    m_Events = new long[capacity];
+    m_Sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      m_Sequences.set(i, i);
+    }
+  }//constructor
+
+  public void rangeChanged(ProcessImage image, int table, int ref, int count) {
+    publish(table, ref, count);
+  }//rangeChanged
+
+  /**
+   * Publishes a change event. This method never blocks;
+   * it may be called from any number of threads.
+   *
+   * @param table the table, one of the constants of {@link RangeListener}.
+   * @param ref the reference of the first element changed.
+   * @param count the number of elements changed.
+   * @return true if published, false if dropped because the bus is full.
+   */
+  public boolean publish(int table, int ref, int count) {
+    if (table < 0 || table > 15 || ref < 0 || ref > MAX_RANGE
+        || count <= 0 || count > MAX_RANGE) {
+      throw new IllegalArgumentException();
+    }
+    long event = ((long) table << 60) | ((long) ref << 30) | count;
+    for (;;) {
+      long t = m_Tail.get();
+      int slot = (int) t & m_Mask;
+      long s = m_Sequences.get(slot);
+      if (s == t) {
+        if (m_Tail.compareAndSet(t, t + 1)) {
+          m_Events[slot] = event;
+          //releases the event to the consumer
+          m_Sequences.lazySet(slot, t + 1);
+          return true;
+        }
+      } else if (s < t) {
+        //slot not yet consumed, the ring is full
+        m_Dropped.incrementAndGet();
+        return false;
+      }
+    }
+  }//publish
+
+  /**
+   * Drains up to the capacity of the given batch of events
+   * from this bus, and coalesces them into the batch. This
+   * method never blocks; it must only be called by the
+   * consumer of this bus.
+   *
+   * @param batch the <tt>ChangeBatch</tt> to be filled.
+   * @return the number of changes in the batch, 0 if there were
+   *         no events.
+   */
+  public int drain(ChangeBatch batch) {
+    long[] changes = batch.m_Changes;
+    long h = m_Head.get();
+    int n = 0;
+    while (n < changes.length) {
+      int slot = (int) h & m_Mask;
+      if (m_Sequences.get(slot) != h + 1) {
+        //empty, or the next event not yet written
+        break;
+      }
+      changes[n++] = m_Events[slot];
+      //hands the slot back to the producers
+      m_Sequences.lazySet(slot, h + m_Mask + 1);
+      h++;
+    }
+    m_Head.lazySet(h);
+    long dropped = m_Dropped.get();
+    batch.m_Dropped = dropped - m_DroppedSeen;
+    m_DroppedSeen = dropped;
+    batch.m_Size = coalesce(changes, n);
+    if (batch.m_Size < n) {
+      m_Coalesced = m_Coalesced + (n - batch.m_Size);
+    }
+    return batch.m_Size;
+  }//drain
+
+  /**
+   * Returns the number of events published to this bus.
+   *
+   * @return the number of events published.
+   */
+  public long getPublishedCount() {
+    return m_Tail.get();
+  }//getPublishedCount
+
+  /**
+   * Returns the number of events dropped, because
+   * this bus was full.
+   *
+   * @return the number of events dropped.
+   */
+  public long getDroppedCount() {
+    return m_Dropped.get();
+  }//getDroppedCount
+
+  /**
+   * Returns the number of events drained from this bus.
+   *
+   * @return the number of events drained.
+   */
+  public long getConsumedCount() {
+    return m_Head.get();
+  }//getConsumedCount
+
+  /**
+   * Returns the number of events merged into other
+   * events while draining.
+   *
+   * @return the number of events coalesced.
+   */
+  public long getCoalescedCount() {
+    return m_Coalesced;
+  }//getCoalescedCount
+
+  /**
+   * Returns the number of events published to this
+   * bus, but not yet drained.
+   *
+   * @return the lag of the consumer, in events.
+   */
+  public long getLag() {
+    long h = m_Head.get();
+    return Math.max(0, m_Tail.get() - h);
+  }//getLag
+
+  /**
+   * Sorts the given events by table and reference, and merges
+   * those of the same table whose ranges overlap or abut.
+   *
+   * @return the number of events left.
+   */
+  private static int coalesce(long[] events, int n) {
+    if (n < 2) {
+      return n;
+    }
+    Arrays.sort(events, 0, n);
+    int size = 0;
+    long cur = events[0];
+    int table = (int) (cur >>> 60);
+    int start = (int) (cur >>> 30) & MAX_RANGE;
+    long end = start + (cur & MAX_RANGE);
+    for (int i = 1; i < n; i++) {
+      long e = events[i];
+      int t = (int) (e >>> 60);
+      int ref = (int) (e >>> 30) & MAX_RANGE;
+      long eend = ref + (e & MAX_RANGE);
+      if (t == table && ref <= end && Math.max(end, eend) - start <= MAX_RANGE) {
+        end = Math.max(end, eend);
+      } else {
+        events[size++] = ((long) table << 60) | ((long) start << 30) | (end - start);
+        table = t;
+        start = ref;
+        end = eend;
+      }
+    }
+    events[size++] = ((long) table << 60) | ((long) start << 30) | (end - start);
+    return size;
+  }//coalesce
+
+}//class ChangeEventBus
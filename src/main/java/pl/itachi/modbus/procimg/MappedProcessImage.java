@@ -0,0 +1,782 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class implementing a process image backed by a memory mapped
+ * file, so that it can be shared with other processes.
+ * <p>
+ * Another process maps the same file and updates the values in
+ * place; the slave serves them straight from the mapping, without
+ * copies or other inter process communication.
+ * <p>
+ * <b>Layout</b><br>
+ * All numbers are big endian. The file starts with a header of
+ * {@link #HEADER_LENGTH} bytes:
+ * <pre>
+ *  offset  size  field
+ *       0     4  magic, {@link #MAGIC} ("JMPI")
+ *       4     4  layout version, {@link #LAYOUT_VERSION}
+ *       8     4  number of digital outs (coils)
+ *      12     4  number of digital ins (discretes)
+ *      16     4  number of input registers
+ *      20     4  number of registers
+ *      24     4  offset of the digital out region
+ *      28     4  offset of the digital in region
+ *      32     4  offset of the input register region
+ *      36     4  offset of the register region
+ *      40    24  reserved, zero
+ * </pre>
+ * It is followed by the four regions, in the order above, each
+ * starting at an offset that is a multiple of eight. A region
+ * starts with an eight byte sequence counter, followed by its data
+ * in the Modbus wire format: two bytes per register, most
+ * significant byte first, or bits packed eight per byte, the first
+ * bit in the least significant bit of the first byte.
+ * <p>
+ * <b>Sequence counters</b><br>
+ * The counter of a region is even while the region is stable. A
+ * writer increments it to an odd value before modifying the data,
+ * and to the next even value afterwards. A reader reads the
+ * counter, retrying while it is odd, then reads the data and
+ * reads the counter again; if the two values differ, the data may
+ * be inconsistent and the read is retried. All range reads of this
+ * class (i.e. all responses for more than one value) follow this
+ * protocol, so they are consistent with respect to any writer
+ * following it. A region must be written by one process at a time;
+ * writers within this process are serialized per region.
+ * <p>
+ * Single registers are read without the protocol, a register
+ * being stored as one aligned 16 bit value. The counters are
+ * accessed through a <tt>VarHandle</tt> view of the mapping:
+ * a writer publishes the odd value before a release fence and the
+ * even value with release semantics, a reader loads the counter
+ * with acquire semantics and checks it again after an acquire
+ * fence, so the data accesses cannot move across them.
+ * <p>
+ * As with the {@link ArrayProcessImage}, the instances returned by the
+ * {@link ProcessImage} methods are views of the image, created on
+ * demand. The mapping is released when the instance is garbage
+ * collected. {@link RangeListener} instances are notified of the
+ * writes made through this instance only, not of those made by
+ * other processes.
+ */
+public class MappedProcessImage
+    implements BulkProcessImage {
+
+  /**
+   * The magic number at the start of the file, "JMPI".
+   */
+  public static final int MAGIC = 0x4A4D5049;
+
+  /**
+   * The version of the layout described by this class.
+   */
+  public static final int LAYOUT_VERSION = 1;
+
+  /**
+   * The length of the header, in bytes.
+   */
+  public static final int HEADER_LENGTH = 64;
+
+  private static final int SPINS = 100;
+
+  //the sequence counters, as aligned big endian longs of the mapping
+  private static final VarHandle SEQUENCE =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  //instance attributes
+  private final MappedByteBuffer m_Buffer;
+  private final Region m_DigitalOuts;
+  private final Region m_DigitalIns;
+  private final Region m_InputRegisters;
+  private final Region m_Registers;
+  private final RangeListenerList m_Listeners = new RangeListenerList();
+
+  private MappedProcessImage(MappedByteBuffer buffer) {
+    m_Buffer = buffer;
+    m_DigitalOuts = new Region(RangeListener.DIGITAL_OUTS, buffer.getInt(24), buffer.getInt(8));
+    m_DigitalIns = new Region(RangeListener.DIGITAL_INS, buffer.getInt(28), buffer.getInt(12));
+    m_InputRegisters = new Region(RangeListener.INPUT_REGISTERS, buffer.getInt(32), buffer.getInt(16));
+    m_Registers = new Region(RangeListener.REGISTERS, buffer.getInt(36), buffer.getInt(20));
+  }//constructor
+
+  /**
+   * Creates a file with tables of the given sizes, all values
+   * zero, and maps it. An existing file is overwritten.
+   *
+   * @param file the file to be created.
+   * @param digitalouts the number of digital outs (coils).
+   * @param digitalins the number of digital ins (discretes).
+   * @param inputregisters the number of input registers.
+   * @param registers the number of registers.
+   * @return the <tt>MappedProcessImage</tt> of the file.
+   * @throws IOException if the file cannot be created or mapped.
+   */
+  public static MappedProcessImage create(File file, int digitalouts, int digitalins,
+                                          int inputregisters, int registers)
+      throws IOException {
+    if (digitalouts < 0 || digitalins < 0 || inputregisters < 0 || registers < 0) {
+      throw new IllegalArgumentException("Negative table size.");
+    }
+    int dout = HEADER_LENGTH;
+    int din = align(dout + 8 + (digitalouts + 7) / 8);
+    int ireg = align(din + 8 + (digitalins + 7) / 8);
+    int reg = align(ireg + 8 + inputregisters * 2);
+    int length = align(reg + 8 + registers * 2);
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      raf.setLength(length);
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buffer.putInt(4, LAYOUT_VERSION);
+      buffer.putInt(8, digitalouts);
+      buffer.putInt(12, digitalins);
+      buffer.putInt(16, inputregisters);
+      buffer.putInt(20, registers);
+      buffer.putInt(24, dout);
+      buffer.putInt(28, din);
+      buffer.putInt(32, ireg);
+      buffer.putInt(36, reg);
+      //the magic last, marking the header complete
+      buffer.putInt(0, MAGIC);
+      return new MappedProcessImage(buffer);
+    } finally {
+      raf.close();
+    }
+  }//create
+
+  /**
+   * Maps an existing file, e.g. one created by another process.
+   *
+   * @param file the file to be mapped.
+   * @return the <tt>MappedProcessImage</tt> of the file.
+   * @throws IOException if the file cannot be mapped, or does not
+   *                     have a valid layout.
+   */
+  public static MappedProcessImage open(File file)
+      throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      long length = raf.length();
+      if (length < HEADER_LENGTH || length > Integer.MAX_VALUE) {
+        throw new IOException("Invalid process image file length " + length + ".");
+      }
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a process image file.");
+      }
+      if (buffer.getInt(4) != LAYOUT_VERSION) {
+        throw new IOException("Unsupported layout version " + buffer.getInt(4) + ".");
+      }
+      //the regions must be in order and within the file
+      long end = HEADER_LENGTH;
+      for (int i = 0; i < 4; i++) {
+        int count = buffer.getInt(8 + i * 4);
+        int offset = buffer.getInt(24 + i * 4);
+        long size = 8 + ((i < 2) ? (count + 7L) / 8 : count * 2L);
+        if (count < 0 || offset < end || offset % 8 != 0) {
+          throw new IOException("Invalid region " + i + ".");
+        }
+        end = offset + size;
+      }
+      if (end > length) {
+        throw new IOException("Process image file truncated.");
+      }
+      return new MappedProcessImage(buffer);
+    } finally {
+      raf.close();
+    }
+  }//open
+
+  /**
+   * Writes the changes of the mapping to the file on the
+   * storage device.
+   */
+  public void force() {
+    m_Buffer.force();
+  }//force
+
+  /*** Value accessors **********************************/
+
+  /**
+   * Tests if the digital out at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public boolean isDigitalOutSet(int ref)
+      throws IllegalAddressException {
+    return getBit(m_DigitalOuts, ref);
+  }//isDigitalOutSet
+
+  /**
+   * Sets the state of the digital out at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalOutState(int ref, boolean b)
+      throws IllegalAddressException {
+    setBit(m_DigitalOuts, ref, b);
+  }//setDigitalOutState
+
+  /**
+   * Tests if the digital in at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public boolean isDigitalInSet(int ref)
+      throws IllegalAddressException {
+    return getBit(m_DigitalIns, ref);
+  }//isDigitalInSet
+
+  /**
+   * Sets the state of the digital in at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalInState(int ref, boolean b)
+      throws IllegalAddressException {
+    setBit(m_DigitalIns, ref, b);
+  }//setDigitalInState
+
+  /**
+   * Returns the value of the input register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public int getInputRegisterValue(int ref)
+      throws IllegalAddressException {
+    return getWord(m_InputRegisters, ref);
+  }//getInputRegisterValue
+
+  /**
+   * Sets the value of the input register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setInputRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    setWord(m_InputRegisters, ref, v);
+  }//setInputRegisterValue
+
+  /**
+   * Returns the value of the register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public int getRegisterValue(int ref)
+      throws IllegalAddressException {
+    return getWord(m_Registers, ref);
+  }//getRegisterValue
+
+  /**
+   * Sets the value of the register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    setWord(m_Registers, ref, v);
+  }//setRegisterValue
+
+  /**
+   * Sets the values of a range of input registers as one
+   * consistent update.
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param src the <tt>byte[]</tt> holding the values, two bytes
+   *        per register.
+   * @param off the index in <tt>src</tt> of the first byte.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setInputRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    writeBytes(m_InputRegisters, ref, count, src, off);
+  }//setInputRegisterBytes
+
+  /**
+   * Sets the states of a range of digital ins (discretes)
+   * from packed bits, as one consistent update.
+   *
+   * @param ref the reference of the first digital in.
+   * @param count the number of digital ins.
+   * @param src the <tt>byte[]</tt> holding the states.
+   * @param off the index in <tt>src</tt> of the first byte.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setDigitalInBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    writeBits(m_DigitalIns, ref, count, src, off);
+  }//setDigitalInBits
+
+  /*** BulkProcessImage *********************************/
+
+  public void getRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    readBytes(m_Registers, ref, count, dest, off);
+  }//getRegisterBytes
+
+  public void setRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    writeBytes(m_Registers, ref, count, src, off);
+  }//setRegisterBytes
+
+  public void getInputRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    readBytes(m_InputRegisters, ref, count, dest, off);
+  }//getInputRegisterBytes
+
+  public void getDigitalOutBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    readBits(m_DigitalOuts, ref, count, dest, off);
+  }//getDigitalOutBits
+
+  public void setDigitalOutBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    writeBits(m_DigitalOuts, ref, count, src, off);
+  }//setDigitalOutBits
+
+  public void getDigitalInBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    readBits(m_DigitalIns, ref, count, dest, off);
+  }//getDigitalInBits
+
+  public void addRangeListener(RangeListener l) {
+    m_Listeners.add(l);
+  }//addRangeListener
+
+  public void removeRangeListener(RangeListener l) {
+    m_Listeners.remove(l);
+  }//removeRangeListener
+
+  /*** ProcessImage *************************************/
+
+  public DigitalOut[] getDigitalOutRange(int ref, int count)
+      throws IllegalAddressException {
+    m_DigitalOuts.checkRange(ref, count);
+    DigitalOut[] douts = new DigitalOut[count];
+    for (int i = 0; i < douts.length; i++) {
+      douts[i] = new DigitalOutView(ref + i);
+    }
+    return douts;
+  }//getDigitalOutRange
+
+  public DigitalOut getDigitalOut(int ref)
+      throws IllegalAddressException {
+    m_DigitalOuts.checkRange(ref, 1);
+    return new DigitalOutView(ref);
+  }//getDigitalOut
+
+  public int getDigitalOutCount() {
+    return m_DigitalOuts.m_Count;
+  }//getDigitalOutCount
+
+  public DigitalIn[] getDigitalInRange(int ref, int count)
+      throws IllegalAddressException {
+    m_DigitalIns.checkRange(ref, count);
+    DigitalIn[] dins = new DigitalIn[count];
+    for (int i = 0; i < dins.length; i++) {
+      dins[i] = new DigitalInView(ref + i);
+    }
+    return dins;
+  }//getDigitalInRange
+
+  public DigitalIn getDigitalIn(int ref)
+      throws IllegalAddressException {
+    m_DigitalIns.checkRange(ref, 1);
+    return new DigitalInView(ref);
+  }//getDigitalIn
+
+  public int getDigitalInCount() {
+    return m_DigitalIns.m_Count;
+  }//getDigitalInCount
+
+  public InputRegister[] getInputRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    m_InputRegisters.checkRange(ref, count);
+    InputRegister[] iregs = new InputRegister[count];
+    for (int i = 0; i < iregs.length; i++) {
+      iregs[i] = new InputRegisterView(m_InputRegisters, ref + i);
+    }
+    return iregs;
+  }//getInputRegisterRange
+
+  public InputRegister getInputRegister(int ref)
+      throws IllegalAddressException {
+    m_InputRegisters.checkRange(ref, 1);
+    return new InputRegisterView(m_InputRegisters, ref);
+  }//getInputRegister
+
+  public int getInputRegisterCount() {
+    return m_InputRegisters.m_Count;
+  }//getInputRegisterCount
+
+  public Register[] getRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    m_Registers.checkRange(ref, count);
+    Register[] regs = new Register[count];
+    for (int i = 0; i < regs.length; i++) {
+      regs[i] = new RegisterView(ref + i);
+    }
+    return regs;
+  }//getRegisterRange
+
+  public Register getRegister(int ref)
+      throws IllegalAddressException {
+    m_Registers.checkRange(ref, 1);
+    return new RegisterView(ref);
+  }//getRegister
+
+  public int getRegisterCount() {
+    return m_Registers.m_Count;
+  }//getRegisterCount
+
+  /*** Sequence protocol ********************************/
+
+  /**
+   * Waits for the counter of the given region to be even
+   * and returns it.
+   */
+  private long beginRead(Region r) {
+    for (int spins = 0; ; spins++) {
+      //acquire: the data reads cannot move before the load
+      long seq = (long) SEQUENCE.getAcquire(m_Buffer, r.m_Position);
+      if ((seq & 1) == 0) {
+        return seq;
+      }
+      if (spins >= SPINS) {
+        Thread.yield();
+      }
+    }
+  }//beginRead
+
+  /**
+   * Tests if the given region was not written since the
+   * corresponding call to {@link #beginRead(Region)}.
+   */
+  private boolean endRead(Region r, long seq) {
+    //the data reads cannot move after the fence
+    VarHandle.acquireFence();
+    return (long) SEQUENCE.getAcquire(m_Buffer, r.m_Position) == seq;
+  }//endRead
+
+  /**
+   * Marks the given region as being written; the lock of
+   * the region must be held.
+   */
+  private long beginWrite(Region r) {
+    long seq = (long) SEQUENCE.getOpaque(m_Buffer, r.m_Position) + 1;
+    SEQUENCE.setOpaque(m_Buffer, r.m_Position, seq);
+    //the data writes cannot move before the odd counter
+    VarHandle.releaseFence();
+    return seq;
+  }//beginWrite
+
+  /**
+   * Marks the given region as stable again; the lock of
+   * the region must be held.
+   */
+  private void endWrite(Region r, long seq) {
+    //release: the data writes cannot move after the even counter
+    SEQUENCE.setRelease(m_Buffer, r.m_Position, seq + 1);
+  }//endWrite
+
+  /*** Helpers ******************************************/
+
+  private int getWord(Region r, int ref) {
+    r.checkRange(ref, 1);
+    return m_Buffer.getShort(r.m_Data + ref * 2) & 0xffff;
+  }//getWord
+
+  private void setWord(Region r, int ref, int v) {
+    r.checkRange(ref, 1);
+    synchronized (r) {
+      long seq = beginWrite(r);
+      m_Buffer.putShort(r.m_Data + ref * 2, (short) v);
+      endWrite(r, seq);
+    }
+    m_Listeners.fire(this, r.m_Table, ref, 1);
+  }//setWord
+
+  private boolean getBit(Region r, int ref) {
+    r.checkRange(ref, 1);
+    return (m_Buffer.get(r.m_Data + (ref >>> 3)) & (1 << (ref & 7))) != 0;
+  }//getBit
+
+  private void setBit(Region r, int ref, boolean b) {
+    r.checkRange(ref, 1);
+    int pos = r.m_Data + (ref >>> 3);
+    synchronized (r) {
+      long seq = beginWrite(r);
+      int v = m_Buffer.get(pos);
+      v = (b) ? v | (1 << (ref & 7)) : v & ~(1 << (ref & 7));
+      m_Buffer.put(pos, (byte) v);
+      endWrite(r, seq);
+    }
+    m_Listeners.fire(this, r.m_Table, ref, 1);
+  }//setBit
+
+  private void readBytes(Region r, int ref, int count, byte[] dest, int off) {
+    r.checkRange(ref, count);
+    int pos = r.m_Data + ref * 2;
+    int len = count * 2;
+    long seq;
+    do {
+      seq = beginRead(r);
+      for (int i = 0; i < len; i++) {
+        dest[off + i] = m_Buffer.get(pos + i);
+      }
+    } while (!endRead(r, seq));
+  }//readBytes
+
+  private void writeBytes(Region r, int ref, int count, byte[] src, int off) {
+    r.checkRange(ref, count);
+    int pos = r.m_Data + ref * 2;
+    int len = count * 2;
+    synchronized (r) {
+      long seq = beginWrite(r);
+      for (int i = 0; i < len; i++) {
+        m_Buffer.put(pos + i, src[off + i]);
+      }
+      endWrite(r, seq);
+    }
+    m_Listeners.fire(this, r.m_Table, ref, count);
+  }//writeBytes
+
+  private void readBits(Region r, int ref, int count, byte[] dest, int off) {
+    r.checkRange(ref, count);
+    int bytes = (count + 7) >>> 3;
+    int shift = ref & 7;
+    int pos = r.m_Data + (ref >>> 3);
+    int end = r.m_Data + ((r.m_Count + 7) >>> 3);
+    long seq;
+    do {
+      seq = beginRead(r);
+      for (int j = 0; j < bytes; j++) {
+        int v = (m_Buffer.get(pos + j) & 0xff) >>> shift;
+        if (shift > 0 && pos + j + 1 < end) {
+          v |= m_Buffer.get(pos + j + 1) << (8 - shift);
+        }
+        dest[off + j] = (byte) v;
+      }
+    } while (!endRead(r, seq));
+    if ((count & 7) != 0) {
+      dest[off + bytes - 1] &= (byte) ((1 << (count & 7)) - 1);
+    }
+  }//readBits
+
+  private void writeBits(Region r, int ref, int count, byte[] src, int off) {
+    r.checkRange(ref, count);
+    synchronized (r) {
+      long seq = beginWrite(r);
+      for (int i = 0; i < count; i++) {
+        int idx = ref + i;
+        int pos = r.m_Data + (idx >>> 3);
+        int v = m_Buffer.get(pos);
+        if ((src[off + (i >>> 3)] & (1 << (i & 7))) != 0) {
+          v |= 1 << (idx & 7);
+        } else {
+          v &= ~(1 << (idx & 7));
+        }
+        m_Buffer.put(pos, (byte) v);
+      }
+      endWrite(r, seq);
+    }
+    m_Listeners.fire(this, r.m_Table, ref, count);
+  }//writeBits
+
+  private static int align(int offset) {
+    return (offset + 7) & ~7;
+  }//align
+
+  /**
+   * Class describing a region of the mapping; it also serves
+   * as the lock serializing the writers of this process.
+   */
+  private static final class Region {
+
+    final int m_Table;
+    final int m_Position;
+    final int m_Data;
+    final int m_Count;
+
+    Region(int table, int position, int count) {
+      m_Table = table;
+      m_Position = position;
+      m_Data = position + 8;
+      m_Count = count;
+    }//constructor
+
+    void checkRange(int ref, int count)
+        throws IllegalAddressException {
+      if (ref < 0 || count < 0 || ref + count > m_Count) {
+        throw new IllegalAddressException();
+      }
+    }//checkRange
+
+  }//class Region
+
+  /*** Views ********************************************/
+
+  /**
+   * Class implementing a view of an input register of the image.
+   */
+  private class InputRegisterView
+      implements InputRegister {
+
+    private final Region m_Region;
+    protected final int m_Ref;
+
+    InputRegisterView(Region r, int ref) {
+      m_Region = r;
+      m_Ref = ref;
+    }//constructor
+
+    public int getValue() {
+      return getWord(m_Region, m_Ref);
+    }//getValue
+
+    public int toUnsignedShort() {
+      return getWord(m_Region, m_Ref);
+    }//toUnsignedShort
+
+    public short toShort() {
+      return (short) getWord(m_Region, m_Ref);
+    }//toShort
+
+    public byte[] toBytes() {
+      int v = getWord(m_Region, m_Ref);
+      return new byte[]{(byte) (v >> 8), (byte) v};
+    }//toBytes
+
+  }//class InputRegisterView
+
+  /**
+   * Class implementing a view of a register of the image.
+   */
+  private class RegisterView
+      extends InputRegisterView
+      implements Register {
+
+    RegisterView(int ref) {
+      super(m_Registers, ref);
+    }//constructor
+
+    public void setValue(int v) {
+      setRegisterValue(m_Ref, v);
+    }//setValue
+
+    public void setValue(short s) {
+      setRegisterValue(m_Ref, s);
+    }//setValue
+
+    public void setValue(byte[] bytes) {
+      if (bytes.length < 2) {
+        throw new IllegalArgumentException();
+      }
+      setRegisterValue(m_Ref, (bytes[0] << 8) | (bytes[1] & 0xff));
+    }//setValue
+
+  }//class RegisterView
+
+  /**
+   * Class implementing a view of a digital in of the image.
+   */
+  private class DigitalInView
+      implements DigitalIn {
+
+    private final int m_Ref;
+
+    DigitalInView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public boolean isSet() {
+      return isDigitalInSet(m_Ref);
+    }//isSet
+
+  }//class DigitalInView
+
+  /**
+   * Class implementing a view of a digital out of the image.
+   */
+  private class DigitalOutView
+      implements DigitalOut {
+
+    private final int m_Ref;
+
+    DigitalOutView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public boolean isSet() {
+      return isDigitalOutSet(m_Ref);
+    }//isSet
+
+    public void set(boolean b) {
+      setDigitalOutState(m_Ref, b);
+    }//set
+
+  }//class DigitalOutView
+
+}//class MappedProcessImage
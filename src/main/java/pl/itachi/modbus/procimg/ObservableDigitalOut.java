@@ -60,4 +60,15 @@ public class ObservableDigitalOut
     notifyObservers("value");
   }//set
 
+  /**
+   * Sets the state of this digital out without notifying
+   * the observers; used by the {@link SimpleProcessImage}
+   * to notify them once a whole range is written.
+   *
+   * @param b true to set, false to reset.
+   */
+  void setQuietly(boolean b) {
+    m_Set = b;
+  }//setQuietly
+
 }//class ObservableDigitalIn
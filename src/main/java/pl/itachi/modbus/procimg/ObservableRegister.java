@@ -59,9 +59,9 @@ public class ObservableRegister
     return ((m_Register[0] & 0xff) << 8 | (m_Register[1] & 0xff));
   }//toUnsignedShort
 
-  public final synchronized void setValue(int v) {
-    m_Register[0] = (byte) (0xff & (v >> 8));
-    m_Register[1] = (byte) (0xff & v);
+  public final void setValue(int v) {
+    setBytesQuietly((byte) (0xff & (v >> 8)), (byte) (0xff & v));
+    //notify outside of the monitor, a slow observer must not block other writers
     notifyObservers("value");
   }//setValue
 
@@ -69,18 +69,16 @@ public class ObservableRegister
     return (short) ((m_Register[0] << 8) | (m_Register[1] & 0xff));
   }//toShort
 
-  public final synchronized void setValue(short s) {
-    m_Register[0] = (byte) (0xff & (s >> 8));
-    m_Register[1] = (byte) (0xff & s);
+  public final void setValue(short s) {
+    setBytesQuietly((byte) (0xff & (s >> 8)), (byte) (0xff & s));
     notifyObservers("value");
   }//setValue
 
-  public final synchronized void setValue(byte[] bytes) {
+  public final void setValue(byte[] bytes) {
     if (bytes.length < 2) {
       throw new IllegalArgumentException();
     } else {
-      m_Register[0] = bytes[0];
-      m_Register[1] = bytes[1];
+      setBytesQuietly(bytes[0], bytes[1]);
       notifyObservers("value");
     }
   }//setValue
@@ -88,5 +86,18 @@ public class ObservableRegister
   public byte[] toBytes() {
     return m_Register;
   }//toBytes
+
+  /**
+   * Sets the content of this register without notifying
+   * the observers; used by the {@link SimpleProcessImage}
+   * to notify them once a whole range is written.
+   *
+   * @param hi the most significant byte.
+   * @param lo the least significant byte.
+   */
+  final synchronized void setBytesQuietly(byte hi, byte lo) {
+    m_Register[0] = hi;
+    m_Register[1] = lo;
+  }//setBytesQuietly
   
 }//class ObservableRegister
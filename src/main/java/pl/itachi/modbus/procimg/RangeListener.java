@@ -0,0 +1,80 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+/**
+ * Interface defining a listener for changes of
+ * ranges of a {@link BulkProcessImage}.
+ * <p>
+ * A listener is notified once per write, after the whole
+ * range has been written, on the thread that wrote it.
+ * It should therefore return quickly, and it must not
+ * write to the image it is notified of.
+ *
+ * @see BulkProcessImage#addRangeListener(RangeListener)
+ */
+public interface RangeListener {
+
+  /**
+   * Identifies the table of digital outs (coils).
+   */
+  public static final int DIGITAL_OUTS = 0;
+
+  /**
+   * Identifies the table of digital ins (discretes).
+   */
+  public static final int DIGITAL_INS = 1;
+
+  /**
+   * Identifies the table of input registers.
+   */
+  public static final int INPUT_REGISTERS = 2;
+
+  /**
+   * Identifies the table of registers.
+   */
+  public static final int REGISTERS = 3;
+
+  /**
+   * Notifies this listener that a range of a table
+   * of a process image has been written.
+   *
+   * @param image the process image.
+   * @param table the table, one of the constants of this interface.
+   * @param ref the reference of the first element written.
+   * @param count the number of elements written.
+   */
+  public void rangeChanged(ProcessImage image, int table, int ref, int count);
+
+}//interface RangeListener
@@ -0,0 +1,83 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+/**
+ * Class implementing a list of {@link RangeListener}
+ * instances for a process image.
+ * <p>
+ * The list is copied on modification, so notifying the
+ * listeners takes no lock, and costs a single read if
+ * there are none.
+ */
+final class RangeListenerList {
+
+  private static final RangeListener[] EMPTY = new RangeListener[0];
+
+  private volatile RangeListener[] m_Listeners = EMPTY;
+
+  synchronized void add(RangeListener l) {
+    RangeListener[] ls = m_Listeners;
+    for (int i = 0; i < ls.length; i++) {
+      if (ls[i] == l) {
+        return;
+      }
+    }
+    RangeListener[] nls = new RangeListener[ls.length + 1];
+    System.arraycopy(ls, 0, nls, 0, ls.length);
+    nls[ls.length] = l;
+    m_Listeners = nls;
+  }//add
+
+  synchronized void remove(RangeListener l) {
+    RangeListener[] ls = m_Listeners;
+    for (int i = 0; i < ls.length; i++) {
+      if (ls[i] == l) {
+        RangeListener[] nls = new RangeListener[ls.length - 1];
+        System.arraycopy(ls, 0, nls, 0, i);
+        System.arraycopy(ls, i + 1, nls, i, nls.length - i);
+        m_Listeners = nls;
+        return;
+      }
+    }
+  }//remove
+
+  void fire(ProcessImage image, int table, int ref, int count) {
+    RangeListener[] ls = m_Listeners;
+    for (int i = 0; i < ls.length; i++) {
+      ls[i].rangeChanged(image, table, ref, count);
+    }
+  }//fire
+
+}//class RangeListenerList
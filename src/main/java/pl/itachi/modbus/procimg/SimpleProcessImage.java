@@ -39,12 +39,26 @@ import java.util.Vector;
  * Class implementing a simple process image
  * to be able to run unit tests or handle
  * simple cases.
+ * <p>
+ * The transfers of {@link BulkProcessImage} hold the lock of
+ * the table they access for the whole range. A range is thus
+ * written with a single lock acquisition, and never read half
+ * written by them. {@link ObservableRegister} and
+ * {@link ObservableDigitalOut} instances in a written range are
+ * notified after the whole range has been written, so that their
+ * observers do not see the intermediate states.
+ * <p>
+ * The bulk transfers and the <tt>set</tt> methods replacing an
+ * element are published to {@link RangeListener} instances. As
+ * this image hands out the elements it holds, and not views,
+ * writes made directly to an element are not; the write requests
+ * (FC 5, 6, 15 and 16) therefore use the bulk transfers.
  *
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
  */
 public class SimpleProcessImage
-    implements ProcessImageImplementation {
+    implements ProcessImageImplementation, BulkProcessImage {
 
   //instance attributes
   protected Vector m_DigitalInputs;
@@ -52,6 +66,7 @@ public class SimpleProcessImage
   protected Vector m_InputRegisters;
   protected Vector m_Registers;
   protected boolean m_Locked = false;
+  private final RangeListenerList m_Listeners = new RangeListenerList();
 
   /**
    * Constructs a new <tt>SimpleProcessImage</tt> instance.
@@ -91,6 +106,7 @@ public class SimpleProcessImage
       } catch (IndexOutOfBoundsException ex) {
         throw new IllegalAddressException();
       }
+      m_Listeners.fire(this, RangeListener.DIGITAL_INS, ref, 1);
     }
   }//setDigitalIn
 
@@ -141,6 +157,7 @@ public class SimpleProcessImage
       } catch (IndexOutOfBoundsException ex) {
         throw new IllegalAddressException();
       }
+      m_Listeners.fire(this, RangeListener.DIGITAL_OUTS, ref, 1);
     }
   }//setDigitalOut
 
@@ -190,6 +207,7 @@ public class SimpleProcessImage
       } catch (IndexOutOfBoundsException ex) {
         throw new IllegalAddressException();
       }
+      m_Listeners.fire(this, RangeListener.INPUT_REGISTERS, ref, 1);
     }
   }//setInputRegister
 
@@ -240,6 +258,7 @@ public class SimpleProcessImage
       } catch (IndexOutOfBoundsException ex) {
         throw new IllegalAddressException();
       }
+      m_Listeners.fire(this, RangeListener.REGISTERS, ref, 1);
     }
   }//setRegister
 
@@ -270,4 +289,134 @@ public class SimpleProcessImage
     }
   }//getRegisterRange
 
+  /*** BulkProcessImage *********************************/
+
+  public void getRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    synchronized (m_Registers) {
+      checkRange(ref, count, m_Registers.size());
+      for (int i = 0, j = off; i < count; i++, j += 2) {
+        int v = ((InputRegister) m_Registers.elementAt(ref + i)).getValue();
+        dest[j] = (byte) (v >>> 8);
+        dest[j + 1] = (byte) v;
+      }
+    }
+  }//getRegisterBytes
+
+  public void setRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    //the registers written, kept to be notified outside the lock
+    ObservableRegister[] observed = null;
+    synchronized (m_Registers) {
+      checkRange(ref, count, m_Registers.size());
+      for (int i = 0, j = off; i < count; i++, j += 2) {
+        Register r = (Register) m_Registers.elementAt(ref + i);
+        if (r instanceof ObservableRegister) {
+          ((ObservableRegister) r).setBytesQuietly(src[j], src[j + 1]);
+          if (observed == null) {
+            observed = new ObservableRegister[count];
+          }
+          observed[i] = (ObservableRegister) r;
+        } else {
+          r.setValue(((src[j] & 0xff) << 8) | (src[j + 1] & 0xff));
+        }
+      }
+    }
+    if (observed != null) {
+      for (int i = 0; i < count; i++) {
+        if (observed[i] != null) {
+          observed[i].notifyObservers("value");
+        }
+      }
+    }
+    m_Listeners.fire(this, RangeListener.REGISTERS, ref, count);
+  }//setRegisterBytes
+
+  public void getInputRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    synchronized (m_InputRegisters) {
+      checkRange(ref, count, m_InputRegisters.size());
+      for (int i = 0, j = off; i < count; i++, j += 2) {
+        int v = ((InputRegister) m_InputRegisters.elementAt(ref + i)).getValue();
+        dest[j] = (byte) (v >>> 8);
+        dest[j + 1] = (byte) v;
+      }
+    }
+  }//getInputRegisterBytes
+
+  public void getDigitalOutBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    synchronized (m_DigitalOutputs) {
+      checkRange(ref, count, m_DigitalOutputs.size());
+      for (int j = 0; j < (count + 7) >>> 3; j++) {
+        dest[off + j] = 0;
+      }
+      for (int i = 0; i < count; i++) {
+        if (((DigitalOut) m_DigitalOutputs.elementAt(ref + i)).isSet()) {
+          dest[off + (i >>> 3)] |= (byte) (1 << (i & 7));
+        }
+      }
+    }
+  }//getDigitalOutBits
+
+  public void setDigitalOutBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    //the digital outs written, kept to be notified outside the lock
+    ObservableDigitalOut[] observed = null;
+    synchronized (m_DigitalOutputs) {
+      checkRange(ref, count, m_DigitalOutputs.size());
+      for (int i = 0; i < count; i++) {
+        DigitalOut d = (DigitalOut) m_DigitalOutputs.elementAt(ref + i);
+        boolean b = (src[off + (i >>> 3)] & (1 << (i & 7))) != 0;
+        if (d instanceof ObservableDigitalOut) {
+          ((ObservableDigitalOut) d).setQuietly(b);
+          if (observed == null) {
+            observed = new ObservableDigitalOut[count];
+          }
+          observed[i] = (ObservableDigitalOut) d;
+        } else {
+          d.set(b);
+        }
+      }
+    }
+    if (observed != null) {
+      for (int i = 0; i < count; i++) {
+        if (observed[i] != null) {
+          observed[i].notifyObservers("value");
+        }
+      }
+    }
+    m_Listeners.fire(this, RangeListener.DIGITAL_OUTS, ref, count);
+  }//setDigitalOutBits
+
+  public void getDigitalInBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    synchronized (m_DigitalInputs) {
+      checkRange(ref, count, m_DigitalInputs.size());
+      for (int j = 0; j < (count + 7) >>> 3; j++) {
+        dest[off + j] = 0;
+      }
+      for (int i = 0; i < count; i++) {
+        if (((DigitalIn) m_DigitalInputs.elementAt(ref + i)).isSet()) {
+          dest[off + (i >>> 3)] |= (byte) (1 << (i & 7));
+        }
+      }
+    }
+  }//getDigitalInBits
+
+  public void addRangeListener(RangeListener l) {
+    m_Listeners.add(l);
+  }//addRangeListener
+
+  public void removeRangeListener(RangeListener l) {
+    m_Listeners.remove(l);
+  }//removeRangeListener
+
+  private static void checkRange(int ref, int count, int size)
+      throws IllegalAddressException {
+    if (ref < 0 || count < 0 || ref + count > size) {
+      throw new IllegalAddressException();
+    }
+  }//checkRange
+
 }//class SimpleProcessImage
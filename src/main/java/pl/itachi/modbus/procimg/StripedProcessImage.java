@@ -0,0 +1,823 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class implementing a process image with consistent range
+ * reads and writes, without a global lock.
+ * <p>
+ * Each table is divided into stripes of a fixed number of
+ * registers (or the same amount of memory worth of bits). Every
+ * stripe has a lock and a version counter. A writer locks the
+ * stripes it touches, in ascending order, makes their versions
+ * odd, modifies the values and makes the versions even again.
+ * A reader never locks: it reads the versions of the stripes
+ * covering its range, waiting while any of them is odd, copies
+ * the values, and retries if any version changed meanwhile.
+ * <p>
+ * Every range read and write of this class is thus atomic, also
+ * across stripe boundaries; a value spread over several
+ * registers, e.g. a float, is never returned torn as long as it
+ * is written as one range. Writers only contend when their
+ * ranges share a stripe, and readers only retry when a range
+ * they read is written at the same time.
+ * <p>
+ * The tables are sized on construction. The instances returned by
+ * the {@link ProcessImage} methods are views of the image, created
+ * on demand; a single view reads or writes a single value.
+ *
+ * @see ArrayProcessImage
+ */
+public class StripedProcessImage
+    implements BulkProcessImage {
+
+  /**
+   * The default number of registers per stripe.
+   */
+  public static final int DEFAULT_STRIPE_SIZE = 64;
+
+  //instance attributes
+  private final Table m_DigitalOuts;
+  private final Table m_DigitalIns;
+  private final Table m_InputRegisters;
+  private final Table m_Registers;
+  private final RangeListenerList m_Listeners = new RangeListenerList();
+
+  /**
+   * Constructs a new <tt>StripedProcessImage</tt> instance
+   * with tables of the given sizes, all values zero, and
+   * the default stripe size.
+   *
+   * @param digitalouts the number of digital outs (coils).
+   * @param digitalins the number of digital ins (discretes).
+   * @param inputregisters the number of input registers.
+   * @param registers the number of registers.
+   */
+  public StripedProcessImage(int digitalouts, int digitalins,
+                             int inputregisters, int registers) {
+    this(digitalouts, digitalins, inputregisters, registers, DEFAULT_STRIPE_SIZE);
+  }//constructor
+
+  /**
+   * Constructs a new <tt>StripedProcessImage</tt> instance
+   * with tables of the given sizes, all values zero.
+   * <p>
+   * Smaller stripes let more writers proceed in parallel, but
+   * make readers of long ranges check more versions.
+   *
+   * @param digitalouts the number of digital outs (coils).
+   * @param digitalins the number of digital ins (discretes).
+   * @param inputregisters the number of input registers.
+   * @param registers the number of registers.
+   * @param stripesize the number of registers per stripe, a power
+   *        of two of at least 2; a stripe of a bit table holds
+   *        sixteen times as many bits.
+   */
+  public StripedProcessImage(int digitalouts, int digitalins,
+                             int inputregisters, int registers, int stripesize) {
+    if (stripesize < 2 || (stripesize & (stripesize - 1)) != 0) {
+      throw new IllegalArgumentException("Invalid stripe size " + stripesize + ".");
+    }
+    //two registers or 32 bits per unit
+    int units = stripesize / 2;
+    m_DigitalOuts = new Table(RangeListener.DIGITAL_OUTS, digitalouts, 5, units);
+    m_DigitalIns = new Table(RangeListener.DIGITAL_INS, digitalins, 5, units);
+    m_InputRegisters = new Table(RangeListener.INPUT_REGISTERS, inputregisters, 1, units);
+    m_Registers = new Table(RangeListener.REGISTERS, registers, 1, units);
+  }//constructor
+
+  /*** Value accessors **********************************/
+
+  /**
+   * Tests if the digital out at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public boolean isDigitalOutSet(int ref)
+      throws IllegalAddressException {
+    return m_DigitalOuts.getBit(ref);
+  }//isDigitalOutSet
+
+  /**
+   * Sets the state of the digital out at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalOutState(int ref, boolean b)
+      throws IllegalAddressException {
+    m_DigitalOuts.setBit(ref, b);
+  }//setDigitalOutState
+
+  /**
+   * Tests if the digital in at the given reference is set.
+   *
+   * @param ref the reference.
+   * @return true if set, false otherwise.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public boolean isDigitalInSet(int ref)
+      throws IllegalAddressException {
+    return m_DigitalIns.getBit(ref);
+  }//isDigitalInSet
+
+  /**
+   * Sets the state of the digital in at the given reference.
+   *
+   * @param ref the reference.
+   * @param b true to set, false to reset.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setDigitalInState(int ref, boolean b)
+      throws IllegalAddressException {
+    m_DigitalIns.setBit(ref, b);
+  }//setDigitalInState
+
+  /**
+   * Sets the states of a range of digital ins (discretes)
+   * from packed bits, atomically.
+   *
+   * @param ref the reference of the first digital in.
+   * @param count the number of digital ins.
+   * @param src the <tt>byte[]</tt> holding the states.
+   * @param off the index in <tt>src</tt> of the first byte.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setDigitalInBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    m_DigitalIns.writeBits(ref, count, src, off);
+  }//setDigitalInBits
+
+  /**
+   * Returns the value of the input register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public int getInputRegisterValue(int ref)
+      throws IllegalAddressException {
+    return m_InputRegisters.getWord(ref);
+  }//getInputRegisterValue
+
+  /**
+   * Sets the value of the input register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setInputRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    m_InputRegisters.setWord(ref, v);
+  }//setInputRegisterValue
+
+  /**
+   * Copies the values of a range of input registers, atomically.
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param dest the <tt>short[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void getInputRegisterValues(int ref, int count, short[] dest, int off)
+      throws IllegalAddressException {
+    m_InputRegisters.readWords(ref, count, dest, off);
+  }//getInputRegisterValues
+
+  /**
+   * Sets the values of a range of input registers, atomically.
+   *
+   * @param ref the reference of the first input register.
+   * @param count the number of input registers.
+   * @param src the <tt>short[]</tt> holding the values.
+   * @param off the index in <tt>src</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setInputRegisterValues(int ref, int count, short[] src, int off)
+      throws IllegalAddressException {
+    m_InputRegisters.writeWords(ref, count, src, off);
+  }//setInputRegisterValues
+
+  /**
+   * Returns the value of the register at the given
+   * reference, as unsigned short.
+   *
+   * @param ref the reference.
+   * @return the value as <tt>int</tt>.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public int getRegisterValue(int ref)
+      throws IllegalAddressException {
+    return m_Registers.getWord(ref);
+  }//getRegisterValue
+
+  /**
+   * Sets the value of the register at the given reference.
+   *
+   * @param ref the reference.
+   * @param v the value; only the lower 16 bits are used.
+   * @throws IllegalAddressException if the reference is invalid.
+   */
+  public void setRegisterValue(int ref, int v)
+      throws IllegalAddressException {
+    m_Registers.setWord(ref, v);
+  }//setRegisterValue
+
+  /**
+   * Copies the values of a range of registers, atomically.
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param dest the <tt>short[]</tt> to copy the values to.
+   * @param off the index in <tt>dest</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void getRegisterValues(int ref, int count, short[] dest, int off)
+      throws IllegalAddressException {
+    m_Registers.readWords(ref, count, dest, off);
+  }//getRegisterValues
+
+  /**
+   * Sets the values of a range of registers, atomically.
+   *
+   * @param ref the reference of the first register.
+   * @param count the number of registers.
+   * @param src the <tt>short[]</tt> holding the values.
+   * @param off the index in <tt>src</tt> of the first value.
+   * @throws IllegalAddressException if the range is invalid.
+   */
+  public void setRegisterValues(int ref, int count, short[] src, int off)
+      throws IllegalAddressException {
+    m_Registers.writeWords(ref, count, src, off);
+  }//setRegisterValues
+
+  /*** BulkProcessImage *********************************/
+
+  public void getRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    m_Registers.readWords(ref, count, dest, off);
+  }//getRegisterBytes
+
+  public void setRegisterBytes(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    m_Registers.writeWords(ref, count, src, off);
+  }//setRegisterBytes
+
+  public void getInputRegisterBytes(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    m_InputRegisters.readWords(ref, count, dest, off);
+  }//getInputRegisterBytes
+
+  public void getDigitalOutBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    m_DigitalOuts.readBits(ref, count, dest, off);
+  }//getDigitalOutBits
+
+  public void setDigitalOutBits(int ref, int count, byte[] src, int off)
+      throws IllegalAddressException {
+    m_DigitalOuts.writeBits(ref, count, src, off);
+  }//setDigitalOutBits
+
+  public void getDigitalInBits(int ref, int count, byte[] dest, int off)
+      throws IllegalAddressException {
+    m_DigitalIns.readBits(ref, count, dest, off);
+  }//getDigitalInBits
+
+  public void addRangeListener(RangeListener l) {
+    m_Listeners.add(l);
+  }//addRangeListener
+
+  public void removeRangeListener(RangeListener l) {
+    m_Listeners.remove(l);
+  }//removeRangeListener
+
+  /*** ProcessImage *************************************/
+
+  public DigitalOut[] getDigitalOutRange(int ref, int count)
+      throws IllegalAddressException {
+    m_DigitalOuts.checkRange(ref, count);
+    DigitalOut[] douts = new DigitalOut[count];
+    for (int i = 0; i < douts.length; i++) {
+      douts[i] = new DigitalOutView(ref + i);
+    }
+    return douts;
+  }//getDigitalOutRange
+
+  public DigitalOut getDigitalOut(int ref)
+      throws IllegalAddressException {
+    m_DigitalOuts.checkRange(ref, 1);
+    return new DigitalOutView(ref);
+  }//getDigitalOut
+
+  public int getDigitalOutCount() {
+    return m_DigitalOuts.m_Count;
+  }//getDigitalOutCount
+
+  public DigitalIn[] getDigitalInRange(int ref, int count)
+      throws IllegalAddressException {
+    m_DigitalIns.checkRange(ref, count);
+    DigitalIn[] dins = new DigitalIn[count];
+    for (int i = 0; i < dins.length; i++) {
+      dins[i] = new DigitalInView(ref + i);
+    }
+    return dins;
+  }//getDigitalInRange
+
+  public DigitalIn getDigitalIn(int ref)
+      throws IllegalAddressException {
+    m_DigitalIns.checkRange(ref, 1);
+    return new DigitalInView(ref);
+  }//getDigitalIn
+
+  public int getDigitalInCount() {
+    return m_DigitalIns.m_Count;
+  }//getDigitalInCount
+
+  public InputRegister[] getInputRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    m_InputRegisters.checkRange(ref, count);
+    InputRegister[] iregs = new InputRegister[count];
+    for (int i = 0; i < iregs.length; i++) {
+      iregs[i] = new InputRegisterView(m_InputRegisters, ref + i);
+    }
+    return iregs;
+  }//getInputRegisterRange
+
+  public InputRegister getInputRegister(int ref)
+      throws IllegalAddressException {
+    m_InputRegisters.checkRange(ref, 1);
+    return new InputRegisterView(m_InputRegisters, ref);
+  }//getInputRegister
+
+  public int getInputRegisterCount() {
+    return m_InputRegisters.m_Count;
+  }//getInputRegisterCount
+
+  public Register[] getRegisterRange(int ref, int count)
+      throws IllegalAddressException {
+    m_Registers.checkRange(ref, count);
+    Register[] regs = new Register[count];
+    for (int i = 0; i < regs.length; i++) {
+      regs[i] = new RegisterView(ref + i);
+    }
+    return regs;
+  }//getRegisterRange
+
+  public Register getRegister(int ref)
+      throws IllegalAddressException {
+    m_Registers.checkRange(ref, 1);
+    return new RegisterView(ref);
+  }//getRegister
+
+  public int getRegisterCount() {
+    return m_Registers.m_Count;
+  }//getRegisterCount
+
+  /**
+   * Class implementing a striped table of registers or bits.
+   * <p>
+   * The values are packed into 32 bit units, two registers
+   * (the first in the high half) or 32 bits (the first in the
+   * least significant bit) per unit. Units are read with
+   * volatile semantics and written with ordered stores, so that
+   * the version checks of a reader are ordered against its
+   * reads of the values, without a fence on either side.
+   * Listeners are notified after the stripes are released.
+   */
+  private final class Table {
+
+    //versions spaced by a cache line
+    private static final int PAD = 8;
+    private static final int SPINS = 100;
+
+    final int m_Table;
+    final int m_Count;
+    private final int m_UnitShift;
+    private final int m_StripeShift;
+    private final AtomicIntegerArray m_Data;
+    private final AtomicLongArray m_Versions;
+    private final ReentrantLock[] m_Locks;
+
+    /**
+     * Constructs a table.
+     *
+     * @param table the table, as identified to listeners.
+     * @param count the number of elements.
+     * @param unitshift log2 of the elements per unit, 1 or 5.
+     * @param units the number of units per stripe, a power of two.
+     */
+    Table(int table, int count, int unitshift, int units) {
+      if (count < 0) {
+        throw new IllegalArgumentException("Negative table size.");
+      }
+      m_Table = table;
+      m_Count = count;
+      m_UnitShift = unitshift;
+      m_StripeShift = Integer.numberOfTrailingZeros(units);
+      int unitcount = (count + (1 << unitshift) - 1) >>> unitshift;
+      int stripes = Math.max(1, (unitcount + units - 1) >>> m_StripeShift);
+      m_Data = new AtomicIntegerArray(unitcount);
+      m_Versions = new AtomicLongArray(stripes * PAD);
+      m_Locks = new ReentrantLock[stripes];
+      for (int i = 0; i < stripes; i++) {
+        m_Locks[i] = new ReentrantLock();
+      }
+    }//constructor
+
+    void checkRange(int ref, int count)
+        throws IllegalAddressException {
+      if (ref < 0 || count < 0 || ref + count > m_Count) {
+        throw new IllegalAddressException();
+      }
+    }//checkRange
+
+    private int stripe(int ref) {
+      return (ref >>> m_UnitShift) >>> m_StripeShift;
+    }//stripe
+
+    /*** Sequence protocol ****************************/
+
+    /**
+     * Waits until none of the given stripes is being
+     * written, and returns the sum of their versions.
+     * Versions only grow, so the sum only stays the same
+     * if none of them changed.
+     */
+    private long beginRead(int first, int last) {
+      for (int spins = 0; ; spins++) {
+        long sum = 0;
+        boolean stable = true;
+        for (int s = first; s <= last; s++) {
+          long v = m_Versions.get(s * PAD);
+          if ((v & 1) != 0) {
+            stable = false;
+            break;
+          }
+          sum += v;
+        }
+        if (stable) {
+          return sum;
+        }
+        if (spins >= SPINS) {
+          Thread.yield();
+        }
+      }
+    }//beginRead
+
+    private boolean endRead(int first, int last, long sum) {
+      for (int s = first; s <= last; s++) {
+        sum -= m_Versions.get(s * PAD);
+      }
+      return sum == 0;
+    }//endRead
+
+    private void beginWrite(int first, int last) {
+      for (int s = first; s <= last; s++) {
+        m_Locks[s].lock();
+      }
+      for (int s = first; s <= last; s++) {
+        m_Versions.lazySet(s * PAD, m_Versions.get(s * PAD) + 1);
+      }
+    }//beginWrite
+
+    private void endWrite(int first, int last) {
+      for (int s = last; s >= first; s--) {
+        m_Versions.lazySet(s * PAD, m_Versions.get(s * PAD) + 1);
+        m_Locks[s].unlock();
+      }
+    }//endWrite
+
+    /*** Registers ************************************/
+
+    private int word(int ref) {
+      int unit = m_Data.get(ref >>> 1);
+      return ((ref & 1) == 0) ? unit >>> 16 : unit & 0xffff;
+    }//word
+
+    /**
+     * Sets a register; the lock of its stripe must be held.
+     */
+    private void putWord(int ref, int v) {
+      int idx = ref >>> 1;
+      int unit = m_Data.get(idx);
+      if ((ref & 1) == 0) {
+        unit = (unit & 0xffff) | (v << 16);
+      } else {
+        unit = (unit & 0xffff0000) | (v & 0xffff);
+      }
+      m_Data.lazySet(idx, unit);
+    }//putWord
+
+    int getWord(int ref) {
+      checkRange(ref, 1);
+      return word(ref);
+    }//getWord
+
+    void setWord(int ref, int v) {
+      checkRange(ref, 1);
+      int s = stripe(ref);
+      beginWrite(s, s);
+      try {
+        putWord(ref, v);
+      } finally {
+        endWrite(s, s);
+      }
+      m_Listeners.fire(StripedProcessImage.this, m_Table, ref, 1);
+    }//setWord
+
+    void readWords(int ref, int count, byte[] dest, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      long seq;
+      do {
+        seq = beginRead(first, last);
+        for (int i = 0; i < count; i++) {
+          int v = word(ref + i);
+          dest[off + i * 2] = (byte) (v >>> 8);
+          dest[off + i * 2 + 1] = (byte) v;
+        }
+      } while (!endRead(first, last, seq));
+    }//readWords
+
+    void readWords(int ref, int count, short[] dest, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      long seq;
+      do {
+        seq = beginRead(first, last);
+        for (int i = 0; i < count; i++) {
+          dest[off + i] = (short) word(ref + i);
+        }
+      } while (!endRead(first, last, seq));
+    }//readWords
+
+    void writeWords(int ref, int count, byte[] src, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      beginWrite(first, last);
+      try {
+        for (int i = 0; i < count; i++) {
+          putWord(ref + i, ((src[off + i * 2] & 0xff) << 8) | (src[off + i * 2 + 1] & 0xff));
+        }
+      } finally {
+        endWrite(first, last);
+      }
+      m_Listeners.fire(StripedProcessImage.this, m_Table, ref, count);
+    }//writeWords
+
+    void writeWords(int ref, int count, short[] src, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      beginWrite(first, last);
+      try {
+        for (int i = 0; i < count; i++) {
+          putWord(ref + i, src[off + i] & 0xffff);
+        }
+      } finally {
+        endWrite(first, last);
+      }
+      m_Listeners.fire(StripedProcessImage.this, m_Table, ref, count);
+    }//writeWords
+
+    /*** Bits *****************************************/
+
+    private boolean bit(int ref) {
+      return (m_Data.get(ref >>> 5) & (1 << ref)) != 0;
+    }//bit
+
+    /**
+     * Sets a bit; the lock of its stripe must be held.
+     */
+    private void putBit(int ref, boolean b) {
+      int idx = ref >>> 5;
+      int unit = m_Data.get(idx);
+      unit = (b) ? unit | (1 << ref) : unit & ~(1 << ref);
+      m_Data.lazySet(idx, unit);
+    }//putBit
+
+    boolean getBit(int ref) {
+      checkRange(ref, 1);
+      return bit(ref);
+    }//getBit
+
+    void setBit(int ref, boolean b) {
+      checkRange(ref, 1);
+      int s = stripe(ref);
+      beginWrite(s, s);
+      try {
+        putBit(ref, b);
+      } finally {
+        endWrite(s, s);
+      }
+      m_Listeners.fire(StripedProcessImage.this, m_Table, ref, 1);
+    }//setBit
+
+    void readBits(int ref, int count, byte[] dest, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      int bytes = (count + 7) >>> 3;
+      int units = m_Data.length();
+      long seq;
+      do {
+        seq = beginRead(first, last);
+        for (int j = 0; j < bytes; j++) {
+          int idx = ref + (j << 3);
+          int unit = idx >>> 5;
+          int shift = idx & 31;
+          int v = m_Data.get(unit) >>> shift;
+          if (shift > 24 && unit + 1 < units) {
+            v |= m_Data.get(unit + 1) << (32 - shift);
+          }
+          dest[off + j] = (byte) v;
+        }
+      } while (!endRead(first, last, seq));
+      if ((count & 7) != 0) {
+        dest[off + bytes - 1] &= (byte) ((1 << (count & 7)) - 1);
+      }
+    }//readBits
+
+    void writeBits(int ref, int count, byte[] src, int off) {
+      checkRange(ref, count);
+      if (count == 0) {
+        return;
+      }
+      int first = stripe(ref);
+      int last = stripe(ref + count - 1);
+      beginWrite(first, last);
+      try {
+        for (int i = 0; i < count; i++) {
+          putBit(ref + i, (src[off + (i >>> 3)] & (1 << (i & 7))) != 0);
+        }
+      } finally {
+        endWrite(first, last);
+      }
+      m_Listeners.fire(StripedProcessImage.this, m_Table, ref, count);
+    }//writeBits
+
+  }//class Table
+
+  /*** Views ********************************************/
+
+  /**
+   * Class implementing a view of an input register of the image.
+   */
+  private static class InputRegisterView
+      implements InputRegister {
+
+    private final Table m_Table;
+    protected final int m_Ref;
+
+    InputRegisterView(Table t, int ref) {
+      m_Table = t;
+      m_Ref = ref;
+    }//constructor
+
+    public int getValue() {
+      return m_Table.getWord(m_Ref);
+    }//getValue
+
+    public int toUnsignedShort() {
+      return m_Table.getWord(m_Ref);
+    }//toUnsignedShort
+
+    public short toShort() {
+      return (short) m_Table.getWord(m_Ref);
+    }//toShort
+
+    public byte[] toBytes() {
+      int v = m_Table.getWord(m_Ref);
+      return new byte[]{(byte) (v >> 8), (byte) v};
+    }//toBytes
+
+  }//class InputRegisterView
+
+  /**
+   * Class implementing a view of a register of the image.
+   */
+  private class RegisterView
+      extends InputRegisterView
+      implements Register {
+
+    RegisterView(int ref) {
+      super(m_Registers, ref);
+    }//constructor
+
+    public void setValue(int v) {
+      setRegisterValue(m_Ref, v);
+    }//setValue
+
+    public void setValue(short s) {
+      setRegisterValue(m_Ref, s);
+    }//setValue
+
+    public void setValue(byte[] bytes) {
+      if (bytes.length < 2) {
+        throw new IllegalArgumentException();
+      }
+      setRegisterValue(m_Ref, (bytes[0] << 8) | (bytes[1] & 0xff));
+    }//setValue
+
+  }//class RegisterView
+
+  /**
+   * Class implementing a view of a digital in of the image.
+   */
+  private class DigitalInView
+      implements DigitalIn {
+
+    private final int m_Ref;
+
+    DigitalInView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public boolean isSet() {
+      return m_DigitalIns.getBit(m_Ref);
+    }//isSet
+
+  }//class DigitalInView
+
+  /**
+   * Class implementing a view of a digital out of the image.
+   */
+  private class DigitalOutView
+      implements DigitalOut {
+
+    private final int m_Ref;
+
+    DigitalOutView(int ref) {
+      m_Ref = ref;
+    }//constructor
+
+    public boolean isSet() {
+      return m_DigitalOuts.getBit(m_Ref);
+    }//isSet
+
+    public void set(boolean b) {
+      setDigitalOutState(m_Ref, b);
+    }//set
+
+  }//class DigitalOutView
+
+}//class StripedProcessImage
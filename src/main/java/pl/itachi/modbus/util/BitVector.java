@@ -213,6 +213,70 @@ public final class BitVector {
     return m_Data.length;
   }//byteSize
 
+  /**
+   * Copies the states of the first <tt>count</tt> bits of this
+   * <tt>BitVector</tt> into the given array, starting at the
+   * given offset.
+   * <p>
+   * @param dest the <tt>boolean[]</tt> to copy the states to.
+   * @param offset the index in <tt>dest</tt> of the first state.
+   * @param count the number of bits to be copied.
+   *
+   * @throws IndexOutOfBoundsException if <tt>count</tt> exceeds
+   *         the store of this <tt>BitVector</tt>, or <tt>dest</tt>
+   *         is too short.
+   */
+  public final void getBits(boolean[] dest, int offset, int count)
+      throws IndexOutOfBoundsException {
+    if (count > m_Data.length * 8 || offset < 0 || offset + count > dest.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (m_MSBAccess) {
+      for (int i = 0; i < count; i++) {
+        dest[offset + i] = getBit(i);
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      dest[offset + i] = (m_Data[i >>> 3] & (0x01 << (i & 7))) != 0;
+    }
+  }//getBits
+
+  /**
+   * Copies the states of the first <tt>count</tt> bits of this
+   * <tt>BitVector</tt> into the given array of packed bits,
+   * starting at the given bit offset. Bit <tt>n</tt> of the
+   * destination is bit <tt>n % 64</tt> (from the LSB) of
+   * <tt>dest[n / 64]</tt>; the other bits of <tt>dest</tt>
+   * are not changed.
+   * <p>
+   * @param dest the <tt>long[]</tt> to copy the states to.
+   * @param offset the index of the first destination bit.
+   * @param count the number of bits to be copied.
+   *
+   * @throws IndexOutOfBoundsException if <tt>count</tt> exceeds
+   *         the store of this <tt>BitVector</tt>, or <tt>dest</tt>
+   *         is too short.
+   */
+  public final void getBits(long[] dest, int offset, int count)
+      throws IndexOutOfBoundsException {
+    if (count > m_Data.length * 8 || offset < 0
+        || offset + (long) count > dest.length * 64L) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = 0; i < count; i++) {
+      int bit = offset + i;
+      long mask = 1L << (bit & 63);
+      boolean b = (m_MSBAccess) ? getBit(i)
+          : (m_Data[i >>> 3] & (0x01 << (i & 7))) != 0;
+      if (b) {
+        dest[bit >>> 6] |= mask;
+      } else {
+        dest[bit >>> 6] &= ~mask;
+      }
+    }
+  }//getBits
+
   /**
    * Returns a <tt>String</tt> representing the
    * contents of the bit collection in a way that
@@ -0,0 +1,229 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class implementing a thread pool with a bounded task queue.
+ * <p>
+ * In contrast to the <tt>ThreadPool</tt>, tasks that do not fit
+ * into the queue are rejected with a
+ * <tt>RejectedExecutionException</tt> instead of piling up,
+ * the pool can be shut down, and the queue depth, the number of
+ * active workers and the number of rejections can be monitored.
+ * <p>
+ * How a rejection is answered is up to the caller; listeners
+ * consult the pool's <tt>RejectionPolicy</tt>.
+ *
+ * @see ThreadPool
+ */
+public class BoundedThreadPool implements Executor {
+
+  /**
+   * Defines the default capacity of the task queue.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+  /**
+   * Enumeration of the ways a listener may answer work that
+   * has been rejected by a <tt>BoundedThreadPool</tt>.
+   */
+  public enum RejectionPolicy {
+    /**
+     * Close the connection without answering.
+     */
+    CLOSE,
+    /**
+     * Answer with a Modbus <i>slave device busy</i> exception.
+     */
+    SERVER_BUSY
+  }//enum RejectionPolicy
+
+  //instance attributes and associations
+  private ThreadPoolExecutor m_Executor;
+  private RejectionPolicy m_RejectionPolicy = RejectionPolicy.CLOSE;
+  private AtomicLong m_Rejected = new AtomicLong();
+
+  /**
+   * Constructs a new <tt>BoundedThreadPool</tt> instance
+   * with a queue of the default capacity.
+   *
+   * @param size the number of worker threads.
+   */
+  public BoundedThreadPool(int size) {
+    this(size, DEFAULT_QUEUE_CAPACITY);
+  }//constructor
+
+  /**
+   * Constructs a new <tt>BoundedThreadPool</tt> instance.
+   *
+   * @param size the number of worker threads.
+   * @param capacity the maximum number of queued tasks.
+   */
+  public BoundedThreadPool(int size, int capacity) {
+    m_Executor = new ThreadPoolExecutor(size, size,
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(capacity),
+        new PoolThreadFactory());
+    m_Executor.prestartAllCoreThreads();
+  }//constructor
+
+  /**
+   * Execute the <tt>Runnable</tt> instance
+   * through a thread in this <tt>BoundedThreadPool</tt>.
+   *
+   * @param task the <tt>Runnable</tt> to be executed.
+   * @throws RejectedExecutionException if the queue is full or
+   *         the pool has been shut down.
+   */
+  public void execute(Runnable task) {
+    try {
+      m_Executor.execute(task);
+    } catch (RejectedExecutionException ex) {
+      m_Rejected.incrementAndGet();
+      throw ex;
+    }
+  }//execute
+
+  /**
+   * Returns the policy to be applied to rejected work.
+   *
+   * @return the <tt>RejectionPolicy</tt>.
+   */
+  public RejectionPolicy getRejectionPolicy() {
+    return m_RejectionPolicy;
+  }//getRejectionPolicy
+
+  /**
+   * Sets the policy to be applied to rejected work.
+   *
+   * @param policy the <tt>RejectionPolicy</tt>.
+   */
+  public void setRejectionPolicy(RejectionPolicy policy) {
+    m_RejectionPolicy = policy;
+  }//setRejectionPolicy
+
+  /**
+   * Returns the number of tasks waiting in the queue.
+   *
+   * @return the queue depth as <tt>int</tt>.
+   */
+  public int getQueueDepth() {
+    return m_Executor.getQueue().size();
+  }//getQueueDepth
+
+  /**
+   * Returns the number of workers currently running a task.
+   *
+   * @return the number of active workers as <tt>int</tt>.
+   */
+  public int getActiveWorkers() {
+    return m_Executor.getActiveCount();
+  }//getActiveWorkers
+
+  /**
+   * Returns the number of tasks that have been rejected
+   * since this pool was created.
+   *
+   * @return the number of rejections as <tt>long</tt>.
+   */
+  public long getRejectedCount() {
+    return m_Rejected.get();
+  }//getRejectedCount
+
+  /**
+   * Initiates an orderly shutdown; queued tasks are still
+   * executed, but no new tasks are accepted.
+   */
+  public void shutdown() {
+    m_Executor.shutdown();
+  }//shutdown
+
+  /**
+   * Shuts this pool down and waits for the running and queued
+   * tasks to complete. Workers that have not finished in time
+   * are interrupted.
+   *
+   * @param timeout the maximum time to wait in milliseconds.
+   * @return true if all tasks completed, false otherwise.
+   */
+  public boolean shutdown(long timeout) {
+    m_Executor.shutdown();
+    try {
+      if (m_Executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    m_Executor.shutdownNow();
+    return false;
+  }//shutdown
+
+  /**
+   * Tests if this pool has been shut down.
+   *
+   * @return true if shut down, false otherwise.
+   */
+  public boolean isShutdown() {
+    return m_Executor.isShutdown();
+  }//isShutdown
+
+  /**
+   * Inner class implementing the factory for the
+   * named worker threads of a <tt>BoundedThreadPool</tt>.
+   */
+  private static class PoolThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger c_PoolNumber = new AtomicInteger();
+    private final AtomicInteger m_ThreadNumber = new AtomicInteger();
+    private final String m_Prefix =
+        "BoundedThreadPool-" + c_PoolNumber.incrementAndGet() + "-";
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, m_Prefix + m_ThreadNumber.incrementAndGet());
+      t.setDaemon(false);
+      return t;
+    }
+  }//PoolThreadFactory
+
+}//class BoundedThreadPool
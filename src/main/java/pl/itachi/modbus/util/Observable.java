@@ -45,6 +45,8 @@ import java.util.Vector;
 public class Observable {
 
   private Vector m_Observers;
+  //copy of m_Observers, iterated without holding its lock
+  private volatile Observer[] m_Snapshot = new Observer[0];
 
   /**
    * Constructs a new Observable instance.
@@ -69,6 +71,7 @@ public class Observable {
     synchronized (m_Observers) {
       if (!m_Observers.contains(o)) {
         m_Observers.addElement(o);
+        updateSnapshot();
 
       }
     }
@@ -82,7 +85,9 @@ public class Observable {
    */
   public void removeObserver(Observer o) {
     synchronized (m_Observers) {
-      m_Observers.removeElement(o);
+      if (m_Observers.removeElement(o)) {
+        updateSnapshot();
+      }
     }
   }//removeObserver
 
@@ -93,21 +98,32 @@ public class Observable {
   public void removeObservers() {
     synchronized (m_Observers) {
       m_Observers.removeAllElements();
+      updateSnapshot();
     }
   }//removeObservers
 
   /**
    * Notifies all observer instances in the set of observers
    * of this <tt>Observable</tt>.
+   * <p>
+   * The observers are notified without holding the lock of the
+   * set, so a slow observer does not block other threads adding,
+   * removing or notifying observers. An observer added or removed
+   * during the notification may or may not be notified.
    *
    * @param arg an arbitrary argument to be passed.
    */
   public void notifyObservers(Object arg) {
-    synchronized (m_Observers) {
-      for (int i = 0; i < m_Observers.size(); i++) {
-        ((Observer) m_Observers.elementAt(i)).update(this, arg);
-      }
+    Observer[] observers = m_Snapshot;
+    for (int i = 0; i < observers.length; i++) {
+      observers[i].update(this, arg);
     }
   }//notifyObservers
 
+  private void updateSnapshot() {
+    Observer[] observers = new Observer[m_Observers.size()];
+    m_Observers.copyInto(observers);
+    m_Snapshot = observers;
+  }//updateSnapshot
+
 }//class Observable
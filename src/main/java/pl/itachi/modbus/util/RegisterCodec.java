@@ -0,0 +1,414 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.util;
+
+/**
+ * Class implementing a codec for values spread over
+ * consecutive registers (int32, uint32, float32, int64 and
+ * float64), under a given word order profile.
+ * <p>
+ * The profiles are named after the order in which the bytes
+ * <tt>A</tt> (most significant) to <tt>D</tt> (least significant)
+ * of a 32 bit value appear in the registers:
+ * <ul>
+ * <li><tt>ABCD</tt>: big endian, as specified by Modbus.</li>
+ * <li><tt>CDAB</tt>: the words are swapped.</li>
+ * <li><tt>BADC</tt>: the bytes within each word are swapped.</li>
+ * <li><tt>DCBA</tt>: little endian, both are swapped.</li>
+ * </ul>
+ * For 64 bit values, the word swap reverses the order of all
+ * four words.
+ * <p>
+ * Values are read from and written to buffers directly at a
+ * given register index, without intermediate arrays. A buffer
+ * is either raw register data as a <tt>byte[]</tt> (two bytes
+ * per register, as in a message payload), or register values as
+ * an <tt>int[]</tt> (one unsigned short per element).
+ * Instances are immutable and may be shared between threads.
+ */
+public final class RegisterCodec {
+
+  /**
+   * The big endian profile, as specified by Modbus.
+   */
+  public static final RegisterCodec ABCD = new RegisterCodec("ABCD", false, false);
+
+  /**
+   * The profile with swapped words.
+   */
+  public static final RegisterCodec CDAB = new RegisterCodec("CDAB", true, false);
+
+  /**
+   * The profile with swapped bytes within each word.
+   */
+  public static final RegisterCodec BADC = new RegisterCodec("BADC", false, true);
+
+  /**
+   * The little endian profile.
+   */
+  public static final RegisterCodec DCBA = new RegisterCodec("DCBA", true, true);
+
+  private final String m_Name;
+  private final boolean m_WordSwap;
+  private final boolean m_ByteSwap;
+
+  private RegisterCodec(String name, boolean wordswap, boolean byteswap) {
+    m_Name = name;
+    m_WordSwap = wordswap;
+    m_ByteSwap = byteswap;
+  }//constructor
+
+  /**
+   * Returns the codec for the profile with the given name.
+   *
+   * @param name one of <tt>ABCD</tt>, <tt>CDAB</tt>, <tt>BADC</tt>
+   *             or <tt>DCBA</tt>.
+   * @return the <tt>RegisterCodec</tt> of the profile.
+   * @throws IllegalArgumentException if the profile is unknown.
+   */
+  public static RegisterCodec forName(String name) {
+    if (ABCD.m_Name.equalsIgnoreCase(name)) {
+      return ABCD;
+    } else if (CDAB.m_Name.equalsIgnoreCase(name)) {
+      return CDAB;
+    } else if (BADC.m_Name.equalsIgnoreCase(name)) {
+      return BADC;
+    } else if (DCBA.m_Name.equalsIgnoreCase(name)) {
+      return DCBA;
+    }
+    throw new IllegalArgumentException("Unknown word order " + name + ".");
+  }//forName
+
+  /**
+   * Returns the name of the profile of this codec.
+   *
+   * @return the name, e.g. <tt>ABCD</tt>.
+   */
+  public String getName() {
+    return m_Name;
+  }//getName
+
+  /**
+   * Tests if this codec swaps the order of the words.
+   *
+   * @return true if the words are swapped, false otherwise.
+   */
+  public boolean isWordSwapped() {
+    return m_WordSwap;
+  }//isWordSwapped
+
+  /**
+   * Tests if this codec swaps the bytes within each word.
+   *
+   * @return true if the bytes are swapped, false otherwise.
+   */
+  public boolean isByteSwapped() {
+    return m_ByteSwap;
+  }//isByteSwapped
+
+  public String toString() {
+    return m_Name;
+  }//toString
+
+  /*** byte[] buffers ***********************************/
+
+  /**
+   * Reads an int32 value from two registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @return the value as <tt>int</tt>.
+   */
+  public int getInt(byte[] data, int index) {
+    return (word(data, index, 0, 2) << 16) | word(data, index, 1, 2);
+  }//getInt
+
+  /**
+   * Reads an uint32 value from two registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @return the value as <tt>long</tt>.
+   */
+  public long getUnsignedInt(byte[] data, int index) {
+    return getInt(data, index) & 0xffffffffL;
+  }//getUnsignedInt
+
+  /**
+   * Reads a float32 value from two registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @return the value as <tt>float</tt>.
+   */
+  public float getFloat(byte[] data, int index) {
+    return Float.intBitsToFloat(getInt(data, index));
+  }//getFloat
+
+  /**
+   * Reads an int64 value from four registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @return the value as <tt>long</tt>.
+   */
+  public long getLong(byte[] data, int index) {
+    return ((long) word(data, index, 0, 4) << 48)
+        | ((long) word(data, index, 1, 4) << 32)
+        | ((long) word(data, index, 2, 4) << 16)
+        | (long) word(data, index, 3, 4);
+  }//getLong
+
+  /**
+   * Reads a float64 value from four registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @return the value as <tt>double</tt>.
+   */
+  public double getDouble(byte[] data, int index) {
+    return Double.longBitsToDouble(getLong(data, index));
+  }//getDouble
+
+  /**
+   * Writes an int32 value into two registers of raw register data.
+   * An uint32 value is written the same way, cast to <tt>int</tt>.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @param v     the value to be written.
+   */
+  public void putInt(byte[] data, int index, int v) {
+    setWord(data, index, 0, 2, v >>> 16);
+    setWord(data, index, 1, 2, v);
+  }//putInt
+
+  /**
+   * Writes a float32 value into two registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @param f     the value to be written.
+   */
+  public void putFloat(byte[] data, int index, float f) {
+    putInt(data, index, Float.floatToIntBits(f));
+  }//putFloat
+
+  /**
+   * Writes an int64 value into four registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @param v     the value to be written.
+   */
+  public void putLong(byte[] data, int index, long v) {
+    setWord(data, index, 0, 4, (int) (v >>> 48));
+    setWord(data, index, 1, 4, (int) (v >>> 32));
+    setWord(data, index, 2, 4, (int) (v >>> 16));
+    setWord(data, index, 3, 4, (int) v);
+  }//putLong
+
+  /**
+   * Writes a float64 value into four registers of raw register data.
+   *
+   * @param data  the register data, two bytes per register.
+   * @param index the index of the first register.
+   * @param d     the value to be written.
+   */
+  public void putDouble(byte[] data, int index, double d) {
+    putLong(data, index, Double.doubleToLongBits(d));
+  }//putDouble
+
+  /*** int[] buffers ************************************/
+
+  /**
+   * Reads an int32 value from two register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @return the value as <tt>int</tt>.
+   */
+  public int getInt(int[] words, int index) {
+    return (word(words, index, 0, 2) << 16) | word(words, index, 1, 2);
+  }//getInt
+
+  /**
+   * Reads an uint32 value from two register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @return the value as <tt>long</tt>.
+   */
+  public long getUnsignedInt(int[] words, int index) {
+    return getInt(words, index) & 0xffffffffL;
+  }//getUnsignedInt
+
+  /**
+   * Reads a float32 value from two register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @return the value as <tt>float</tt>.
+   */
+  public float getFloat(int[] words, int index) {
+    return Float.intBitsToFloat(getInt(words, index));
+  }//getFloat
+
+  /**
+   * Reads an int64 value from four register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @return the value as <tt>long</tt>.
+   */
+  public long getLong(int[] words, int index) {
+    return ((long) word(words, index, 0, 4) << 48)
+        | ((long) word(words, index, 1, 4) << 32)
+        | ((long) word(words, index, 2, 4) << 16)
+        | (long) word(words, index, 3, 4);
+  }//getLong
+
+  /**
+   * Reads a float64 value from four register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @return the value as <tt>double</tt>.
+   */
+  public double getDouble(int[] words, int index) {
+    return Double.longBitsToDouble(getLong(words, index));
+  }//getDouble
+
+  /**
+   * Writes an int32 value into two register values.
+   * An uint32 value is written the same way, cast to <tt>int</tt>.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @param v     the value to be written.
+   */
+  public void putInt(int[] words, int index, int v) {
+    setWord(words, index, 0, 2, v >>> 16);
+    setWord(words, index, 1, 2, v);
+  }//putInt
+
+  /**
+   * Writes a float32 value into two register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @param f     the value to be written.
+   */
+  public void putFloat(int[] words, int index, float f) {
+    putInt(words, index, Float.floatToIntBits(f));
+  }//putFloat
+
+  /**
+   * Writes an int64 value into four register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @param v     the value to be written.
+   */
+  public void putLong(int[] words, int index, long v) {
+    setWord(words, index, 0, 4, (int) (v >>> 48));
+    setWord(words, index, 1, 4, (int) (v >>> 32));
+    setWord(words, index, 2, 4, (int) (v >>> 16));
+    setWord(words, index, 3, 4, (int) v);
+  }//putLong
+
+  /**
+   * Writes a float64 value into four register values.
+   *
+   * @param words the register values, one per element.
+   * @param index the index of the first register.
+   * @param d     the value to be written.
+   */
+  public void putDouble(int[] words, int index, double d) {
+    putLong(words, index, Double.doubleToLongBits(d));
+  }//putDouble
+
+  /*** Helpers ******************************************/
+
+  /**
+   * Returns the <tt>i</tt>th most significant word of a value
+   * spanning <tt>n</tt> registers, from raw register data.
+   */
+  private int word(byte[] data, int index, int i, int n) {
+    int pos = (index + ((m_WordSwap) ? n - 1 - i : i)) << 1;
+    if (m_ByteSwap) {
+      return ((data[pos + 1] & 0xff) << 8) | (data[pos] & 0xff);
+    }
+    return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+  }//word
+
+  /**
+   * Sets the <tt>i</tt>th most significant word of a value
+   * spanning <tt>n</tt> registers, in raw register data.
+   */
+  private void setWord(byte[] data, int index, int i, int n, int w) {
+    int pos = (index + ((m_WordSwap) ? n - 1 - i : i)) << 1;
+    if (m_ByteSwap) {
+      data[pos] = (byte) w;
+      data[pos + 1] = (byte) (w >>> 8);
+    } else {
+      data[pos] = (byte) (w >>> 8);
+      data[pos + 1] = (byte) w;
+    }
+  }//setWord
+
+  /**
+   * Returns the <tt>i</tt>th most significant word of a value
+   * spanning <tt>n</tt> registers, from register values.
+   */
+  private int word(int[] words, int index, int i, int n) {
+    int w = words[index + ((m_WordSwap) ? n - 1 - i : i)];
+    if (m_ByteSwap) {
+      return ((w & 0xff) << 8) | ((w >>> 8) & 0xff);
+    }
+    return w & 0xffff;
+  }//word
+
+  /**
+   * Sets the <tt>i</tt>th most significant word of a value
+   * spanning <tt>n</tt> registers, in register values.
+   */
+  private void setWord(int[] words, int index, int i, int n, int w) {
+    if (m_ByteSwap) {
+      w = ((w & 0xff) << 8) | ((w >>> 8) & 0xff);
+    }
+    words[index + ((m_WordSwap) ? n - 1 - i : i)] = w & 0xffff;
+  }//setWord
+
+}//class RegisterCodec
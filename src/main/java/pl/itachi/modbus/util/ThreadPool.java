@@ -33,13 +33,18 @@
  ***/
 package pl.itachi.modbus.util;
 
+import java.util.concurrent.Executor;
+
 /**
  * Class implementing a simple thread pool.
  *
+ * @deprecated the task queue of this pool is unbounded and its
+ *             threads cannot be stopped; use <tt>BoundedThreadPool</tt>.
  * @author Dieter Wimberger
  * @version 1.2rc1 (09/11/2004)
  */
-public class ThreadPool {
+@Deprecated
+public class ThreadPool implements Executor {
 
   //instance attributes and associations
   private LinkedQueue m_TaskPool;
@@ -0,0 +1,126 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class implementing an <tt>Executor</tt> that runs each task
+ * on its own virtual thread.
+ * <p>
+ * Virtual threads are cheap enough to be used one per
+ * connection, so blocking handlers like the
+ * <tt>TCPConnectionHandler</tt> scale to a large number of
+ * connections without a fixed-size pool. They require a
+ * JDK 21 or newer runtime; the builder is looked up
+ * reflectively so the library still runs on older JVMs.
+ *
+ * @see ThreadPool
+ */
+public class VirtualThreadExecutor implements Executor {
+
+  private static final Method c_OfVirtual;
+  private static final Method c_Name;
+  private static final Method c_Factory;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      name = builder.getMethod("name", String.class, long.class);
+      factory = builder.getMethod("factory");
+    } catch (Exception ex) {
+      //not supported by this runtime
+      ofVirtual = null;
+    }
+    c_OfVirtual = ofVirtual;
+    c_Name = name;
+    c_Factory = factory;
+  }//initializer
+
+  private ThreadFactory m_Factory;
+
+  /**
+   * Constructs a new <tt>VirtualThreadExecutor</tt> instance.
+   *
+   * @param name the prefix for the names of the started threads.
+   * @throws IllegalStateException if the runtime does not
+   *         support virtual threads.
+   */
+  public VirtualThreadExecutor(String name) {
+    if (!isSupported()) {
+      throw new IllegalStateException("Virtual threads are not supported by this runtime.");
+    }
+    try {
+      Object builder = c_Name.invoke(c_OfVirtual.invoke(null), name, 0L);
+      m_Factory = (ThreadFactory) c_Factory.invoke(builder);
+    } catch (Exception ex) {
+      throw new IllegalStateException("Virtual threads are not supported by this runtime.");
+    }
+  }//constructor
+
+  /**
+   * Constructs a new <tt>VirtualThreadExecutor</tt> instance.
+   *
+   * @throws IllegalStateException if the runtime does not
+   *         support virtual threads.
+   */
+  public VirtualThreadExecutor() {
+    this("modbus-");
+  }//constructor
+
+  /**
+   * Starts the given task on a new virtual thread.
+   *
+   * @param task the <tt>Runnable</tt> to be executed.
+   */
+  public void execute(Runnable task) {
+    m_Factory.newThread(task).start();
+  }//execute
+
+  /**
+   * Tests if the running JVM supports virtual threads.
+   *
+   * @return true if supported, false otherwise.
+   */
+  public static boolean isSupported() {
+    return c_OfVirtual != null;
+  }//isSupported
+
+}//class VirtualThreadExecutor
@@ -0,0 +1,248 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the incremental decoding of MBAP frames.
+ */
+public class MBAPFrameDecoderTest {
+
+  //FC3 request, FC16 request of 123 registers, FC3 request
+  private static final byte[][] FRAMES = {
+      frame(1, new byte[]{1, 3, 0, 0, 0, 10}),
+      frame(2, fc16(123)),
+      frame(3, new byte[]{1, 3, 0, 5, 0, 1})
+  };
+
+  /**
+   * Splits the stream of frames in two at every offset and
+   * feeds both parts from arrays.
+   */
+  @Test
+  public void feedArraySplitAtEveryOffset() throws Exception {
+    byte[] stream = concat(FRAMES);
+    for (int split = 0; split <= stream.length; split++) {
+      MBAPFrameDecoder decoder = new MBAPFrameDecoder();
+      List<byte[]> frames = new ArrayList<byte[]>();
+      feed(decoder, stream, 0, split, frames);
+      feed(decoder, stream, split, stream.length - split, frames);
+      assertFrames("split at " + split, frames);
+      assertTrue(decoder.isIdle());
+    }
+  }//feedArraySplitAtEveryOffset
+
+  /**
+   * Splits the stream of frames in two at every offset and
+   * feeds both parts from buffers.
+   */
+  @Test
+  public void feedBufferSplitAtEveryOffset() throws Exception {
+    byte[] stream = concat(FRAMES);
+    for (int split = 0; split <= stream.length; split++) {
+      MBAPFrameDecoder decoder = new MBAPFrameDecoder();
+      List<byte[]> frames = new ArrayList<byte[]>();
+      feed(decoder, ByteBuffer.wrap(stream, 0, split), frames);
+      ByteBuffer rest = ByteBuffer.wrap(stream);
+      rest.position(split);
+      feed(decoder, rest, frames);
+      assertFrames("split at " + split, frames);
+    }
+  }//feedBufferSplitAtEveryOffset
+
+  /**
+   * Reads the frames from a stream that returns at most
+   * a given number of bytes per read, for every chunk size.
+   */
+  @Test
+  public void readFrameInChunksOfEverySize() throws Exception {
+    byte[] stream = concat(FRAMES);
+    for (int chunk = 1; chunk <= stream.length; chunk++) {
+      MBAPFrameDecoder decoder = new MBAPFrameDecoder();
+      InputStream in = new ChunkedInputStream(stream, chunk);
+      List<byte[]> frames = new ArrayList<byte[]>();
+      while (decoder.readFrame(in)) {
+        frames.add(Arrays.copyOf(decoder.getBuffer(), decoder.getFrameLength()));
+        decoder.next();
+      }
+      assertFrames("chunk " + chunk, frames);
+    }
+  }//readFrameInChunksOfEverySize
+
+  @Test
+  public void rejectsOversizedFrame() {
+    byte[] header = {0, 1, 0, 0, (byte) ((Modbus.MAX_MESSAGE_LENGTH + 1) >>> 8),
+        (byte) (Modbus.MAX_MESSAGE_LENGTH + 1)};
+    assertRejected(header);
+  }//rejectsOversizedFrame
+
+  @Test
+  public void rejectsForeignProtocol() {
+    assertRejected(new byte[]{0, 1, 0, 1, 0, 6});
+  }//rejectsForeignProtocol
+
+  /**
+   * Checks that an invalid header leaves the decoder idle,
+   * ready to decode the next frame.
+   */
+  private static void assertRejected(byte[] header) {
+    MBAPFrameDecoder decoder = new MBAPFrameDecoder();
+    try {
+      decoder.feed(header, 0, header.length);
+      fail("header accepted");
+    } catch (ModbusIOException ex) {
+      //expected
+    }
+    assertTrue(decoder.isIdle());
+    assertFalse(decoder.hasFrame());
+    try {
+      List<byte[]> frames = new ArrayList<byte[]>();
+      byte[] stream = concat(FRAMES);
+      feed(decoder, stream, 0, stream.length, frames);
+      assertFrames("after error", frames);
+    } catch (ModbusIOException ex) {
+      fail("decoder kept the rejected header: " + ex.getMessage());
+    }
+  }//assertRejected
+
+  private static void feed(MBAPFrameDecoder decoder, byte[] data, int off, int len,
+                           List<byte[]> frames)
+      throws ModbusIOException {
+    while (len > 0) {
+      int n = decoder.feed(data, off, len);
+      off += n;
+      len -= n;
+      if (decoder.hasFrame()) {
+        frames.add(Arrays.copyOf(decoder.getBuffer(), decoder.getFrameLength()));
+        decoder.next();
+      }
+    }
+  }//feed
+
+  private static void feed(MBAPFrameDecoder decoder, ByteBuffer data, List<byte[]> frames)
+      throws ModbusIOException {
+    while (data.hasRemaining()) {
+      if (decoder.feed(data)) {
+        frames.add(Arrays.copyOf(decoder.getBuffer(), decoder.getFrameLength()));
+        decoder.next();
+      }
+    }
+  }//feed
+
+  private static void assertFrames(String msg, List<byte[]> frames) {
+    assertEquals(msg, FRAMES.length, frames.size());
+    for (int i = 0; i < FRAMES.length; i++) {
+      assertArrayEquals(msg + ", frame " + i, FRAMES[i], frames.get(i));
+    }
+  }//assertFrames
+
+  private static byte[] frame(int tid, byte[] pdu) {
+    byte[] frame = new byte[MBAPFrameDecoder.HEADER_LENGTH + pdu.length];
+    frame[0] = (byte) (tid >>> 8);
+    frame[1] = (byte) tid;
+    frame[4] = (byte) (pdu.length >>> 8);
+    frame[5] = (byte) pdu.length;
+    System.arraycopy(pdu, 0, frame, MBAPFrameDecoder.HEADER_LENGTH, pdu.length);
+    return frame;
+  }//frame
+
+  private static byte[] fc16(int count) {
+    byte[] pdu = new byte[7 + count * 2];
+    pdu[0] = 1;
+    pdu[1] = 16;
+    pdu[5] = (byte) count;
+    pdu[6] = (byte) (count * 2);
+    for (int i = 7; i < pdu.length; i++) {
+      pdu[i] = (byte) i;
+    }
+    return pdu;
+  }//fc16
+
+  private static byte[] concat(byte[][] frames) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] f : frames) {
+      out.write(f, 0, f.length);
+    }
+    return out.toByteArray();
+  }//concat
+
+  /**
+   * An input stream returning at most a given number
+   * of bytes per read.
+   */
+  private static final class ChunkedInputStream extends InputStream {
+
+    private final byte[] m_Data;
+    private final int m_Chunk;
+    private int m_Pos;
+
+    ChunkedInputStream(byte[] data, int chunk) {
+      m_Data = data;
+      m_Chunk = chunk;
+    }//constructor
+
+    public int read() throws IOException {
+      return m_Pos < m_Data.length ? m_Data[m_Pos++] & 0xff : -1;
+    }//read
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (m_Pos == m_Data.length) {
+        return -1;
+      }
+      int n = Math.min(Math.min(len, m_Chunk), m_Data.length - m_Pos);
+      System.arraycopy(m_Data, m_Pos, b, off, n);
+      m_Pos += n;
+      return n;
+    }//read
+
+  }//class ChunkedInputStream
+
+}//class MBAPFrameDecoderTest
@@ -0,0 +1,152 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusIOException;
+import pl.itachi.modbus.msg.ModbusMessage;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ModbusResponse;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that <tt>ResponseReader</tt> discards responses to other
+ * requests, and restores the read timeout of the transport.
+ */
+public class ResponseReaderTest {
+
+  @Test
+  public void restoresTimeoutOfTransport() throws Exception {
+    FakeTransport io = new FakeTransport(3000);
+    ModbusRequest request = request(7);
+    ModbusResponse answer = response(7);
+    io.m_Responses.add(response(6));
+    io.m_Responses.add(answer);
+
+    assertSame(answer, ResponseReader.read(io, request, true, 500));
+    //shortened to the time left, then back to the configured value
+    assertEquals(2, io.m_Set.size());
+    assertTrue("shortened to " + io.m_Set.get(0), io.m_Set.get(0) <= 500);
+    assertEquals(3000, io.m_Timeout);
+  }//restoresTimeoutOfTransport
+
+  @Test
+  public void restoresGivenTimeoutIfUnknown() throws Exception {
+    FakeTransport io = new FakeTransport(-1);
+    io.m_Responses.add(response(6));
+    io.m_Responses.add(response(7));
+
+    ResponseReader.read(io, request(7), true, 500);
+    assertEquals(500, io.m_Timeout);
+  }//restoresGivenTimeoutIfUnknown
+
+  @Test
+  public void leavesTimeoutAloneWithoutDiscards() throws Exception {
+    FakeTransport io = new FakeTransport(3000);
+    io.m_Responses.add(response(6));
+
+    ResponseReader.read(io, request(7), false, 500);
+    assertEquals(0, io.m_Set.size());
+    assertEquals(3000, io.m_Timeout);
+  }//leavesTimeoutAloneWithoutDiscards
+
+  private static ModbusRequest request(int tid) {
+    ModbusRequest request = new ReadMultipleRegistersRequest(0, 1);
+    request.setTransactionID(tid);
+    return request;
+  }//request
+
+  /**
+   * Returns a response to a FC 3 request of one register, read
+   * from the wire.
+   */
+  private static ModbusResponse response(int tid) throws Exception {
+    ModbusResponse response = ModbusResponse.createModbusResponse(Modbus.READ_MULTIPLE_REGISTERS);
+    response.readFrom(new BytesInputStream(new byte[]{
+        0, (byte) tid, 0, 0, 0, 5, 0, Modbus.READ_MULTIPLE_REGISTERS, 2, 0, 1}));
+    return response;
+  }//response
+
+  /**
+   * A transport handing out queued responses, recording the
+   * timeouts set.
+   */
+  private static class FakeTransport implements ModbusTransport {
+
+    final ArrayDeque<ModbusResponse> m_Responses = new ArrayDeque<ModbusResponse>();
+    final List<Integer> m_Set = new ArrayList<Integer>();
+    int m_Timeout;
+
+    FakeTransport(int timeout) {
+      m_Timeout = timeout;
+    }//constructor
+
+    public void close() {
+    }//close
+
+    public void writeMessage(ModbusMessage msg) {
+    }//writeMessage
+
+    public ModbusRequest readRequest() throws ModbusIOException {
+      throw new ModbusIOException("Not a slave.");
+    }//readRequest
+
+    public ModbusResponse readResponse() throws ModbusIOException {
+      if (m_Responses.isEmpty()) {
+        throw new ModbusIOException("Timeout.");
+      }
+      return m_Responses.poll();
+    }//readResponse
+
+    public void setReadTimeout(int timeout) {
+      m_Set.add(timeout);
+      m_Timeout = timeout;
+    }//setReadTimeout
+
+    public int getReadTimeout() {
+      return m_Timeout;
+    }//getReadTimeout
+
+  }//class FakeTransport
+
+}//class ResponseReaderTest
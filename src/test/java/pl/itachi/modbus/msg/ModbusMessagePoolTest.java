@@ -0,0 +1,368 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.msg;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.io.BytesInputStream;
+import pl.itachi.modbus.io.BytesOutputStream;
+import pl.itachi.modbus.net.TCPConnectionHandler;
+import pl.itachi.modbus.net.TCPSlaveConnection;
+import pl.itachi.modbus.procimg.DigitalIn;
+import pl.itachi.modbus.procimg.DigitalOut;
+import pl.itachi.modbus.procimg.IllegalAddressException;
+import pl.itachi.modbus.procimg.InputRegister;
+import pl.itachi.modbus.procimg.ProcessImage;
+import pl.itachi.modbus.procimg.Register;
+import pl.itachi.modbus.procimg.SimpleInputRegister;
+import pl.itachi.modbus.procimg.SimpleProcessImage;
+import pl.itachi.modbus.procimg.SimpleRegister;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the reuse of pooled requests and responses.
+ */
+public class ModbusMessagePoolTest {
+
+  private static final int WORDS = 100;
+  private static final int WARMUP = 20000;
+  private static final int ROUNDS = 10000;
+
+  private ProcessImage m_Saved;
+  private SimpleProcessImage m_Image;
+
+  @Before
+  public void setUp() {
+    m_Saved = ModbusCoupler.getReference().getProcessImage();
+    m_Image = new SimpleProcessImage();
+    for (int i = 0; i < 2 * WORDS; i++) {
+      m_Image.addRegister(new SimpleRegister(i));
+      m_Image.addInputRegister(new SimpleInputRegister(i));
+    }
+    ModbusCoupler.getReference().setProcessImage(m_Image);
+  }//setUp
+
+  @After
+  public void tearDown() {
+    ModbusCoupler.getReference().setProcessImage(m_Saved);
+  }//tearDown
+
+  /**
+   * Alternates FC3, FC4 and FC16 requests taken from a pool and
+   * checks that answering them allocates nothing on this thread.
+   */
+  @Test
+  public void pooledRequestsDoNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean tmx = allocationMXBean();
+    if (tmx == null) {
+      return;
+    }
+
+    ModbusMessagePool pool = new ModbusMessagePool();
+    BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+    byte[] frame = new byte[5 + WORDS * 2];
+    frame[0] = 0;
+    frame[1] = (byte) WORDS;
+    frame[2] = 0;
+    frame[3] = (byte) WORDS;
+    frame[4] = (byte) (WORDS * 2);
+    BytesInputStream in = new BytesInputStream(frame);
+
+    for (int i = 0; i < WARMUP; i++) {
+      answer(pool, in, frame, out);
+    }
+    long tid = Thread.currentThread().getId();
+    long before = tmx.getThreadAllocatedBytes(tid);
+    for (int i = 0; i < ROUNDS; i++) {
+      answer(pool, in, frame, out);
+    }
+    long perRound = (tmx.getThreadAllocatedBytes(tid) - before) / ROUNDS;
+    assertTrue("allocated " + perRound + " bytes per round", perRound < 16);
+  }//pooledRequestsDoNotAllocate
+
+  /**
+   * Sends FC3, FC4 and FC16 requests to a <tt>TCPConnectionHandler</tt>
+   * over a local socket and checks that reading the pooled requests
+   * and writing their responses through the <tt>ModbusTCPTransport</tt>
+   * allocates nothing on the handler thread.
+   */
+  @Test
+  public void handlerLoopDoesNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean tmx = allocationMXBean();
+    if (tmx == null) {
+      return;
+    }
+
+    ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Socket client = null;
+    Thread serving = null;
+    try {
+      client = new Socket(server.getInetAddress(), server.getLocalPort());
+      client.setTcpNoDelay(true);
+      Socket accepted = server.accept();
+      accepted.setTcpNoDelay(true);
+      final TCPConnectionHandler handler =
+          new TCPConnectionHandler(new TCPSlaveConnection(accepted));
+      serving = new Thread(new Runnable() {
+        public void run() {
+          handler.run();
+        }
+      }, "ModbusMessagePoolTest handler");
+      serving.setDaemon(true);
+      serving.start();
+
+      DataOutputStream out = new DataOutputStream(client.getOutputStream());
+      DataInputStream in = new DataInputStream(client.getInputStream());
+      byte[] request = requestFrames();
+      byte[] response = new byte[2 * 9 + 4 * WORDS + 12];
+
+      for (int i = 0; i < WARMUP / 10; i++) {
+        exchange(out, in, request, response);
+      }
+      //the handler is blocked reading the next request here
+      long before = tmx.getThreadAllocatedBytes(serving.getId());
+      for (int i = 0; i < ROUNDS / 10; i++) {
+        exchange(out, in, request, response);
+      }
+      long perRound = (tmx.getThreadAllocatedBytes(serving.getId()) - before) / (ROUNDS / 10);
+      assertEquals(Modbus.WRITE_MULTIPLE_REGISTERS, response[response.length - 5]);
+      assertTrue("allocated " + perRound + " bytes per round", perRound < 16);
+    } finally {
+      if (client != null) {
+        client.close();
+      }
+      server.close();
+      if (serving != null) {
+        serving.join(5000);
+      }
+    }
+  }//handlerLoopDoesNotAllocate
+
+  /**
+   * Checks that a pooled response never exposes registers of a
+   * previous, longer read.
+   */
+  @Test
+  public void pooledResponseHoldsExactlyWordCount() {
+    ModbusCoupler.getReference().setProcessImage(new PlainProcessImage(m_Image));
+    ModbusMessagePool pool = new ModbusMessagePool();
+
+    ReadMultipleRegistersRequest rreq =
+        (ReadMultipleRegistersRequest) pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+    rreq.setReference(0);
+    rreq.setWordCount(10);
+    ReadMultipleRegistersResponse rres = (ReadMultipleRegistersResponse) rreq.createResponse();
+    assertEquals(10, rres.getRegisters().length);
+    rreq.setReference(5);
+    rreq.setWordCount(2);
+    assertSame(rres, rreq.createResponse());
+    assertEquals(2, rres.getWordCount());
+    assertEquals(2, rres.getRegisters().length);
+    assertEquals(5, rres.getRegisterValue(0));
+    assertEquals(6, rres.getRegisterValue(1));
+
+    ReadInputRegistersRequest ireq =
+        (ReadInputRegistersRequest) pool.getRequest(Modbus.READ_INPUT_REGISTERS);
+    ireq.setReference(0);
+    ireq.setWordCount(10);
+    ReadInputRegistersResponse ires = (ReadInputRegistersResponse) ireq.createResponse();
+    assertEquals(10, ires.getRegisters().length);
+    ireq.setReference(7);
+    ireq.setWordCount(3);
+    assertSame(ires, ireq.createResponse());
+    assertEquals(3, ires.getWordCount());
+    assertEquals(3, ires.getRegisters().length);
+    assertEquals(9, ires.getRegisterValue(2));
+  }//pooledResponseHoldsExactlyWordCount
+
+  /**
+   * Returns the thread bean measuring allocations, or null if
+   * the platform cannot measure them.
+   */
+  private static com.sun.management.ThreadMXBean allocationMXBean() {
+    java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) mx;
+    if (!tmx.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+    tmx.setThreadAllocatedMemoryEnabled(true);
+    return tmx;
+  }//allocationMXBean
+
+  /**
+   * Returns an FC3, an FC4 and an FC16 request over <tt>WORDS</tt>
+   * registers, framed for Modbus/TCP.
+   */
+  private static byte[] requestFrames() throws Exception {
+    BytesOutputStream frames = new BytesOutputStream(3 * 12 + 5 + 2 * WORDS);
+    //FC3
+    frames.writeShort(1);
+    frames.writeShort(Modbus.DEFAULT_PROTOCOL_ID);
+    frames.writeShort(6);
+    frames.writeByte(Modbus.DEFAULT_UNIT_ID);
+    frames.writeByte(Modbus.READ_MULTIPLE_REGISTERS);
+    frames.writeShort(0);
+    frames.writeShort(WORDS);
+    //FC4
+    frames.writeShort(2);
+    frames.writeShort(Modbus.DEFAULT_PROTOCOL_ID);
+    frames.writeShort(6);
+    frames.writeByte(Modbus.DEFAULT_UNIT_ID);
+    frames.writeByte(Modbus.READ_INPUT_REGISTERS);
+    frames.writeShort(WORDS);
+    frames.writeShort(WORDS);
+    //FC16
+    frames.writeShort(3);
+    frames.writeShort(Modbus.DEFAULT_PROTOCOL_ID);
+    frames.writeShort(7 + 2 * WORDS);
+    frames.writeByte(Modbus.DEFAULT_UNIT_ID);
+    frames.writeByte(Modbus.WRITE_MULTIPLE_REGISTERS);
+    frames.writeShort(0);
+    frames.writeShort(WORDS);
+    frames.writeByte(2 * WORDS);
+    for (int i = 0; i < WORDS; i++) {
+      frames.writeShort(i);
+    }
+    return frames.toByteArray();
+  }//requestFrames
+
+  private static void exchange(DataOutputStream out, DataInputStream in,
+                               byte[] request, byte[] response)
+      throws Exception {
+    out.write(request);
+    out.flush();
+    in.readFully(response);
+  }//exchange
+
+  private static void answer(ModbusMessagePool pool, BytesInputStream in,
+                             byte[] frame, BytesOutputStream out)
+      throws Exception {
+    ModbusRequest req = pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+    ((ReadMultipleRegistersRequest) req).setReference(0);
+    ((ReadMultipleRegistersRequest) req).setWordCount(WORDS);
+    out.reset();
+    req.createResponse().writeData(out);
+
+    req = pool.getRequest(Modbus.READ_INPUT_REGISTERS);
+    ((ReadInputRegistersRequest) req).setReference(WORDS);
+    ((ReadInputRegistersRequest) req).setWordCount(WORDS);
+    out.reset();
+    req.createResponse().writeData(out);
+
+    req = pool.getRequest(Modbus.WRITE_MULTIPLE_REGISTERS);
+    in.reset(frame);
+    req.readData(in);
+    out.reset();
+    req.createResponse().writeData(out);
+  }//answer
+
+  /**
+   * A process image that only offers the plain
+   * <tt>ProcessImage</tt> interface.
+   */
+  private static final class PlainProcessImage implements ProcessImage {
+
+    private final ProcessImage m_Image;
+
+    PlainProcessImage(ProcessImage image) {
+      m_Image = image;
+    }//constructor
+
+    public DigitalOut[] getDigitalOutRange(int offset, int count) {
+      return m_Image.getDigitalOutRange(offset, count);
+    }
+
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+      return m_Image.getDigitalOut(ref);
+    }
+
+    public int getDigitalOutCount() {
+      return m_Image.getDigitalOutCount();
+    }
+
+    public DigitalIn[] getDigitalInRange(int offset, int count) {
+      return m_Image.getDigitalInRange(offset, count);
+    }
+
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+      return m_Image.getDigitalIn(ref);
+    }
+
+    public int getDigitalInCount() {
+      return m_Image.getDigitalInCount();
+    }
+
+    public InputRegister[] getInputRegisterRange(int offset, int count) {
+      return m_Image.getInputRegisterRange(offset, count);
+    }
+
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+      return m_Image.getInputRegister(ref);
+    }
+
+    public int getInputRegisterCount() {
+      return m_Image.getInputRegisterCount();
+    }
+
+    public Register[] getRegisterRange(int offset, int count) {
+      return m_Image.getRegisterRange(offset, count);
+    }
+
+    public Register getRegister(int ref) throws IllegalAddressException {
+      return m_Image.getRegister(ref);
+    }
+
+    public int getRegisterCount() {
+      return m_Image.getRegisterCount();
+    }
+
+  }//class PlainProcessImage
+
+}//class ModbusMessagePoolTest
@@ -0,0 +1,138 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.msg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pl.itachi.modbus.ModbusCoupler;
+import pl.itachi.modbus.procimg.ArrayProcessImage;
+import pl.itachi.modbus.procimg.BulkProcessImage;
+import pl.itachi.modbus.procimg.ProcessImage;
+import pl.itachi.modbus.procimg.RangeListener;
+import pl.itachi.modbus.procimg.SimpleDigitalOut;
+import pl.itachi.modbus.procimg.SimpleProcessImage;
+import pl.itachi.modbus.procimg.SimpleRegister;
+import pl.itachi.modbus.procimg.StripedProcessImage;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the single write requests (FC 5 and 6), and the
+ * element setters of the process images, notify the
+ * <tt>RangeListener</tt> instances of every image.
+ */
+public class SingleWriteRequestTest {
+
+  private ProcessImage m_Saved;
+  private List<int[]> m_Fired;
+
+  @Before
+  public void setUp() {
+    m_Saved = ModbusCoupler.getReference().getProcessImage();
+    m_Fired = new ArrayList<int[]>();
+  }//setUp
+
+  @After
+  public void tearDown() {
+    ModbusCoupler.getReference().setProcessImage(m_Saved);
+  }//tearDown
+
+  @Test
+  public void writeRequestsNotifyEveryImage() {
+    SimpleProcessImage simple = new SimpleProcessImage();
+    for (int i = 0; i < 4; i++) {
+      simple.addRegister(new SimpleRegister(0));
+      simple.addDigitalOut(new SimpleDigitalOut(false));
+    }
+    BulkProcessImage[] images = {
+        simple,
+        new ArrayProcessImage(4, 0, 0, 4),
+        new StripedProcessImage(4, 0, 0, 4)
+    };
+    for (BulkProcessImage image : images) {
+      String name = image.getClass().getSimpleName();
+      m_Fired.clear();
+      image.addRangeListener(new Recorder());
+      ModbusCoupler.getReference().setProcessImage(image);
+
+      WriteSingleRegisterResponse wsr = (WriteSingleRegisterResponse)
+          new WriteSingleRegisterRequest(2, new SimpleRegister(0x1234)).createResponse();
+      assertEquals(name, 0x1234, wsr.getRegisterValue());
+      assertEquals(name, 0x1234, image.getRegister(2).getValue());
+
+      WriteCoilResponse wcr = (WriteCoilResponse) new WriteCoilRequest(3, true).createResponse();
+      assertEquals(name, true, wcr.getCoil());
+      assertEquals(name, true, image.getDigitalOut(3).isSet());
+
+      assertEquals(name, 2, m_Fired.size());
+      assertChange(name, m_Fired.get(0), RangeListener.REGISTERS, 2);
+      assertChange(name, m_Fired.get(1), RangeListener.DIGITAL_OUTS, 3);
+    }
+  }//writeRequestsNotifyEveryImage
+
+  @Test
+  public void replacingElementsNotifies() {
+    SimpleProcessImage image = new SimpleProcessImage();
+    image.addRegister(new SimpleRegister(0));
+    image.addDigitalOut(new SimpleDigitalOut(false));
+    image.addRangeListener(new Recorder());
+    image.setRegister(0, new SimpleRegister(7));
+    image.setDigitalOut(0, new SimpleDigitalOut(true));
+    image.setLocked(true);
+    //a locked image is not changed, so nothing is published
+    image.setRegister(0, new SimpleRegister(8));
+    assertEquals(2, m_Fired.size());
+    assertChange("register", m_Fired.get(0), RangeListener.REGISTERS, 0);
+    assertChange("coil", m_Fired.get(1), RangeListener.DIGITAL_OUTS, 0);
+  }//replacingElementsNotifies
+
+  private static void assertChange(String msg, int[] change, int table, int ref) {
+    assertEquals(msg, table, change[0]);
+    assertEquals(msg, ref, change[1]);
+    assertEquals(msg, 1, change[2]);
+  }//assertChange
+
+  private class Recorder implements RangeListener {
+
+    public void rangeChanged(ProcessImage image, int table, int ref, int count) {
+      m_Fired.add(new int[]{table, ref, count});
+    }//rangeChanged
+
+  }//class Recorder
+
+}//class SingleWriteRequestTest
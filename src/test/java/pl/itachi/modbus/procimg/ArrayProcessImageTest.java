@@ -0,0 +1,151 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the removal of elements from an <tt>ArrayProcessImage</tt>,
+ * and writes through its views.
+ */
+public class ArrayProcessImageTest {
+
+  /**
+   * Removes random digital outs and ins, across word boundaries,
+   * and compares the image with a list after every removal.
+   */
+  @Test
+  public void removeBitsMovesFollowingBitsDown() {
+    Random rnd = new Random(42);
+    ArrayProcessImage image = new ArrayProcessImage(200, 200, 0, 0);
+    List<Boolean> outs = new ArrayList<Boolean>();
+    List<Boolean> ins = new ArrayList<Boolean>();
+    for (int i = 0; i < 200; i++) {
+      boolean b = rnd.nextBoolean();
+      image.setDigitalOutState(i, b);
+      outs.add(b);
+      b = rnd.nextBoolean();
+      image.setDigitalInState(i, b);
+      ins.add(b);
+    }
+    while (!outs.isEmpty()) {
+      int ref = rnd.nextInt(outs.size());
+      image.removeDigitalOut(image.getDigitalOut(ref));
+      outs.remove(ref);
+      ref = rnd.nextInt(ins.size());
+      image.removeDigitalIn(image.getDigitalIn(ref));
+      ins.remove(ref);
+      assertEquals(outs.size(), image.getDigitalOutCount());
+      assertEquals(ins.size(), image.getDigitalInCount());
+      for (int i = 0; i < outs.size(); i++) {
+        assertEquals("out " + i, outs.get(i).booleanValue(), image.isDigitalOutSet(i));
+        assertEquals("in " + i, ins.get(i).booleanValue(), image.isDigitalInSet(i));
+      }
+    }
+    //a removed table can grow again, without stale bits
+    image.addDigitalOut(new SimpleDigitalOut(false));
+    assertEquals(false, image.isDigitalOutSet(0));
+  }//removeBitsMovesFollowingBitsDown
+
+  @Test
+  public void removeRegistersMovesFollowingRegistersDown() {
+    ArrayProcessImage image = new ArrayProcessImage(0, 0, 5, 5);
+    for (int i = 0; i < 5; i++) {
+      image.setRegisterValue(i, 100 + i);
+      image.setInputRegisterValue(i, 200 + i);
+    }
+    final List<int[]> fired = new ArrayList<int[]>();
+    image.addRangeListener(new RangeListener() {
+      public void rangeChanged(ProcessImage img, int table, int ref, int count) {
+        fired.add(new int[]{table, ref, count});
+      }
+    });
+    image.removeRegister(image.getRegister(1));
+    image.removeInputRegister(image.getInputRegister(4));
+    assertEquals(4, image.getRegisterCount());
+    assertEquals(100, image.getRegisterValue(0));
+    assertEquals(102, image.getRegisterValue(1));
+    assertEquals(104, image.getRegisterValue(3));
+    assertEquals(4, image.getInputRegisterCount());
+    assertEquals(203, image.getInputRegisterValue(3));
+    //a change of the registers moved, none for the last input register
+    assertEquals(1, fired.size());
+    assertEquals(RangeListener.REGISTERS, fired.get(0)[0]);
+    assertEquals(1, fired.get(0)[1]);
+    assertEquals(3, fired.get(0)[2]);
+  }//removeRegistersMovesFollowingRegistersDown
+
+  @Test
+  public void removeIgnoresForeignElements() {
+    ArrayProcessImage image = new ArrayProcessImage(1, 1, 1, 1);
+    ArrayProcessImage other = new ArrayProcessImage(1, 1, 1, 1);
+    image.removeRegister(new SimpleRegister(0));
+    image.removeRegister(other.getRegister(0));
+    //a register view is an input register, but of the other table
+    image.removeInputRegister(image.getRegister(0));
+    image.removeDigitalOut(other.getDigitalOut(0));
+    assertEquals(1, image.getRegisterCount());
+    assertEquals(1, image.getInputRegisterCount());
+    assertEquals(1, image.getDigitalOutCount());
+  }//removeIgnoresForeignElements
+
+  @Test
+  public void registerViewWritesThroughImage() {
+    ArrayProcessImage image = new ArrayProcessImage(0, 0, 0, 3);
+    final List<int[]> fired = new ArrayList<int[]>();
+    image.addRangeListener(new RangeListener() {
+      public void rangeChanged(ProcessImage img, int table, int ref, int count) {
+        fired.add(new int[]{table, ref, count});
+      }
+    });
+    Register reg = image.getRegister(2);
+    reg.setValue(0x1234);
+    reg.setValue((short) -1);
+    reg.setValue(new byte[]{0x56, 0x78});
+    assertEquals(0x5678, image.getRegisterValue(2));
+    assertEquals(3, fired.size());
+    for (int[] change : fired) {
+      assertEquals(RangeListener.REGISTERS, change[0]);
+      assertEquals(2, change[1]);
+      assertEquals(1, change[2]);
+    }
+  }//registerViewWritesThroughImage
+
+}//class ArrayProcessImageTest
@@ -0,0 +1,205 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the ring of a <tt>ChangeEventBus</tt>, the packing of its
+ * events and their coalescing into a <tt>ChangeBatch</tt>.
+ */
+public class ChangeEventBusTest {
+
+  @Test
+  public void fullRingDropsInsteadOfBlocking() {
+    ChangeEventBus bus = new ChangeEventBus(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(bus.publish(RangeListener.REGISTERS, i * 10, 1));
+    }
+    assertFalse(bus.publish(RangeListener.REGISTERS, 100, 1));
+    assertFalse(bus.publish(RangeListener.REGISTERS, 200, 1));
+    assertEquals(2, bus.getDroppedCount());
+    assertEquals(4, bus.getPublishedCount());
+    assertEquals(4, bus.getLag());
+
+    ChangeBatch batch = new ChangeBatch(8);
+    assertEquals(4, bus.drain(batch));
+    assertEquals(2, batch.getDropped());
+    assertEquals(0, bus.getLag());
+    //the drained slots are free again, the drops reported once
+    assertTrue(bus.publish(RangeListener.REGISTERS, 300, 1));
+    assertEquals(1, bus.drain(batch));
+    assertEquals(0, batch.getDropped());
+    assertEquals(300, batch.getReference(0));
+    assertEquals(0, bus.drain(batch));
+  }//fullRingDropsInsteadOfBlocking
+
+  @Test
+  public void overlappingAndAdjacentRangesCoalesce() {
+    ChangeEventBus bus = new ChangeEventBus(16);
+    bus.publish(RangeListener.REGISTERS, 12, 10);
+    bus.publish(RangeListener.REGISTERS, 26, 1);
+    bus.publish(RangeListener.DIGITAL_OUTS, 10, 1);
+    //overlapping 12+10, then abutting 10+15
+    bus.publish(RangeListener.REGISTERS, 10, 5);
+    bus.publish(RangeListener.REGISTERS, 22, 3);
+    bus.publish(RangeListener.REGISTERS, 26, 1);
+
+    ChangeBatch batch = new ChangeBatch(16);
+    assertEquals(3, bus.drain(batch));
+    assertChange(batch, 0, RangeListener.DIGITAL_OUTS, 10, 1);
+    assertChange(batch, 1, RangeListener.REGISTERS, 10, 15);
+    //separated by register 25
+    assertChange(batch, 2, RangeListener.REGISTERS, 26, 1);
+    assertEquals(3, bus.getCoalescedCount());
+    assertEquals(6, bus.getConsumedCount());
+  }//overlappingAndAdjacentRangesCoalesce
+
+  @Test
+  public void packingKeepsLargestValues() {
+    int max = ChangeEventBus.MAX_RANGE;
+    ChangeEventBus bus = new ChangeEventBus(8);
+    bus.publish(RangeListener.REGISTERS, max, max);
+    //the sign bit of the packed event
+    bus.publish(15, max, 1);
+    bus.publish(RangeListener.DIGITAL_OUTS, 0, 1);
+    //abutting, but a merged count would not fit
+    bus.publish(RangeListener.INPUT_REGISTERS, 0, max);
+    bus.publish(RangeListener.INPUT_REGISTERS, max, 1);
+
+    ChangeBatch batch = new ChangeBatch(8);
+    assertEquals(5, bus.drain(batch));
+    List<String> changes = new ArrayList<String>();
+    for (int i = 0; i < batch.size(); i++) {
+      changes.add(batch.getTable(i) + ":" + batch.getReference(i) + "+" + batch.getCount(i));
+    }
+    assertTrue(changes.toString(), changes.contains(RangeListener.REGISTERS + ":" + max + "+" + max));
+    assertTrue(changes.toString(), changes.contains("15:" + max + "+1"));
+    assertTrue(changes.toString(), changes.contains(RangeListener.DIGITAL_OUTS + ":0+1"));
+    assertTrue(changes.toString(), changes.contains(RangeListener.INPUT_REGISTERS + ":0+" + max));
+    assertTrue(changes.toString(), changes.contains(RangeListener.INPUT_REGISTERS + ":" + max + "+1"));
+
+    assertRejected(bus, 16, 0, 1);
+    assertRejected(bus, -1, 0, 1);
+    assertRejected(bus, RangeListener.REGISTERS, max + 1, 1);
+    assertRejected(bus, RangeListener.REGISTERS, 0, max + 1);
+    assertRejected(bus, RangeListener.REGISTERS, 0, 0);
+  }//packingKeepsLargestValues
+
+  /**
+   * Producers retry dropped events until published, while the
+   * consumer drains; every event has to arrive exactly once.
+   */
+  @Test
+  public void concurrentProducersLoseAndDuplicateNothing() throws Exception {
+    final int producers = 4;
+    final int events = 20000;
+    final ChangeEventBus bus = new ChangeEventBus(64);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      final int table = p;
+      threads.add(new Thread() {
+        public void run() {
+          for (int i = 0; i < events; i++) {
+            //never abutting, so that nothing is coalesced
+            while (!bus.publish(table, i * 2, 1)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    BitSet[] seen = new BitSet[producers];
+    for (int p = 0; p < producers; p++) {
+      seen[p] = new BitSet(events);
+    }
+    ChangeBatch batch = new ChangeBatch(16);
+    long received = 0;
+    long deadline = System.currentTimeMillis() + 30000;
+    while (received < (long) producers * events) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("received " + received + " events only");
+      }
+      int n = bus.drain(batch);
+      if (n == 0) {
+        Thread.yield();
+      }
+      for (int i = 0; i < n; i++) {
+        int idx = batch.getReference(i) / 2;
+        assertEquals(1, batch.getCount(i));
+        assertFalse("duplicate " + idx, seen[batch.getTable(i)].get(idx));
+        seen[batch.getTable(i)].set(idx);
+        received++;
+      }
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(0, bus.drain(batch));
+    assertEquals(0, bus.getCoalescedCount());
+    assertEquals((long) producers * events, bus.getPublishedCount());
+    assertEquals((long) producers * events, bus.getConsumedCount());
+    for (int p = 0; p < producers; p++) {
+      assertEquals(events, seen[p].cardinality());
+    }
+  }//concurrentProducersLoseAndDuplicateNothing
+
+  private static void assertChange(ChangeBatch batch, int idx, int table, int ref, int count) {
+    assertEquals("table " + idx, table, batch.getTable(idx));
+    assertEquals("reference " + idx, ref, batch.getReference(idx));
+    assertEquals("count " + idx, count, batch.getCount(idx));
+  }//assertChange
+
+  private static void assertRejected(ChangeEventBus bus, int table, int ref, int count) {
+    try {
+      bus.publish(table, ref, count);
+      fail(table + ":" + ref + "+" + count + " accepted");
+    } catch (IllegalArgumentException expected) {
+      //rejected
+    }
+  }//assertRejected
+
+}//class ChangeEventBusTest
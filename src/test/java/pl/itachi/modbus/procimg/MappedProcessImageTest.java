@@ -0,0 +1,255 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the file layout of a <tt>MappedProcessImage</tt>, and the
+ * consistency of range reads through one mapping while another
+ * one of the same file is written.
+ */
+public class MappedProcessImageTest {
+
+  private static final long DURATION = 500;
+
+  private File m_File;
+
+  @Before
+  public void setUp() throws IOException {
+    m_File = File.createTempFile("procimg", ".map");
+  }//setUp
+
+  @After
+  public void tearDown() {
+    m_File.delete();
+  }//tearDown
+
+  @Test
+  public void createWritesHeaderAndOpenReadsIt() throws IOException {
+    MappedProcessImage created = MappedProcessImage.create(m_File, 10, 20, 5, 7);
+    created.setDigitalOutState(9, true);
+    created.setDigitalInState(19, true);
+    created.setInputRegisterValue(4, 0x1234);
+    created.setRegisterValue(6, 0xfedc);
+    created.force();
+
+    RandomAccessFile raf = new RandomAccessFile(m_File, "r");
+    try {
+      //regions start at multiples of eight, after their predecessor
+      assertEquals(144, raf.length());
+      int[] expected = {MappedProcessImage.MAGIC, MappedProcessImage.LAYOUT_VERSION,
+          10, 20, 5, 7, 64, 80, 96, 120};
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals("header word " + i, expected[i], raf.readInt());
+      }
+      for (int i = expected.length * 4; i < MappedProcessImage.HEADER_LENGTH; i++) {
+        assertEquals("reserved byte " + i, 0, raf.readByte());
+      }
+      //the data follows the sequence counter of its region
+      raf.seek(64 + 8 + 1);
+      assertEquals(0x02, raf.readByte());
+      raf.seek(80 + 8 + 2);
+      assertEquals(0x08, raf.readByte());
+      raf.seek(96 + 8 + 8);
+      assertEquals(0x1234, raf.readShort());
+      raf.seek(120 + 8 + 12);
+      assertEquals(0xfedc, raf.readShort() & 0xffff);
+      //every write left its counter even
+      for (int offset : new int[]{64, 80, 96, 120}) {
+        raf.seek(offset);
+        assertEquals("counter at " + offset, 2, raf.readLong());
+      }
+    } finally {
+      raf.close();
+    }
+
+    MappedProcessImage opened = MappedProcessImage.open(m_File);
+    assertEquals(10, opened.getDigitalOutCount());
+    assertEquals(20, opened.getDigitalInCount());
+    assertEquals(5, opened.getInputRegisterCount());
+    assertEquals(7, opened.getRegisterCount());
+    assertTrue(opened.isDigitalOutSet(9));
+    assertTrue(opened.isDigitalInSet(19));
+    assertEquals(0x1234, opened.getInputRegisterValue(4));
+    assertEquals(0xfedc, opened.getRegisterValue(6));
+    //both mappings share the file
+    opened.setRegisterValue(0, 42);
+    assertEquals(42, created.getRegisterValue(0));
+  }//createWritesHeaderAndOpenReadsIt
+
+  @Test
+  public void openRejectsInvalidFiles() throws IOException {
+    MappedProcessImage.create(m_File, 8, 8, 8, 8);
+    patchInt(0, 0x12345678);
+    assertRejected("bad magic");
+
+    MappedProcessImage.create(m_File, 8, 8, 8, 8);
+    patchInt(4, MappedProcessImage.LAYOUT_VERSION + 1);
+    assertRejected("bad version");
+
+    MappedProcessImage.create(m_File, 8, 8, 8, 8);
+    RandomAccessFile raf = new RandomAccessFile(m_File, "rw");
+    try {
+      raf.setLength(raf.length() - 8);
+    } finally {
+      raf.close();
+    }
+    assertRejected("truncated");
+
+    MappedProcessImage.create(m_File, 8, 8, 8, 8);
+    patchInt(20, 1000);
+    assertRejected("register count beyond the file");
+
+    MappedProcessImage.create(m_File, 8, 8, 8, 8);
+    patchInt(28, 84);
+    assertRejected("misaligned region");
+
+    raf = new RandomAccessFile(m_File, "rw");
+    try {
+      raf.setLength(MappedProcessImage.HEADER_LENGTH - 1);
+    } finally {
+      raf.close();
+    }
+    assertRejected("shorter than the header");
+  }//openRejectsInvalidFiles
+
+  /**
+   * Writes whole tables with one value through one mapping and
+   * reads random ranges through another, as a second process would.
+   */
+  @Test
+  public void rangesReadThroughAnotherMappingAreNeverTorn() throws Exception {
+    final int size = 256;
+    final MappedProcessImage writer = MappedProcessImage.create(m_File, size * 8, 0, 0, size);
+    final MappedProcessImage reader = MappedProcessImage.open(m_File);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    final AtomicLong reads = new AtomicLong();
+    final long end = System.currentTimeMillis() + DURATION;
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int w = 0; w < 2; w++) {
+      final int id = w;
+      threads.add(new Thread() {
+        public void run() {
+          byte[] words = new byte[size * 2];
+          byte[] bits = new byte[size];
+          for (int seq = id; System.currentTimeMillis() < end && failure.get() == null; seq += 2) {
+            Arrays.fill(words, (byte) seq);
+            writer.setRegisterBytes(0, size, words, 0);
+            Arrays.fill(bits, (byte) (((seq & 1) == 0) ? 0 : 0xff));
+            writer.setDigitalOutBits(0, size * 8, bits, 0);
+          }
+        }
+      });
+    }
+    for (int r = 0; r < 2; r++) {
+      final long seed = r;
+      threads.add(new Thread() {
+        public void run() {
+          Random rnd = new Random(seed);
+          byte[] dest = new byte[size * 2];
+          while (System.currentTimeMillis() < end && failure.get() == null) {
+            int ref = rnd.nextInt(size - 2);
+            int count = 2 + rnd.nextInt(size - ref - 1);
+            reader.getRegisterBytes(ref, count, dest, 0);
+            String torn = uniform(dest, count * 2);
+            if (torn == null) {
+              //whole bytes only, so that every byte is full
+              reader.getDigitalOutBits(ref * 8, count * 8, dest, 0);
+              torn = uniform(dest, count);
+            }
+            if (torn != null) {
+              failure.compareAndSet(null, "read " + ref + "+" + count + ": " + torn);
+            }
+            reads.incrementAndGet();
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get(), failure.get());
+    assertTrue("no reads", reads.get() > 0);
+  }//rangesReadThroughAnotherMappingAreNeverTorn
+
+  private void patchInt(long pos, int v) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(m_File, "rw");
+    try {
+      raf.seek(pos);
+      raf.writeInt(v);
+    } finally {
+      raf.close();
+    }
+  }//patchInt
+
+  private void assertRejected(String msg) {
+    try {
+      MappedProcessImage.open(m_File);
+      fail(msg + " accepted");
+    } catch (IOException expected) {
+      //rejected
+    }
+  }//assertRejected
+
+  private static String uniform(byte[] data, int length) {
+    for (int i = 1; i < length; i++) {
+      if (data[i] != data[0]) {
+        return "byte " + i + " differs";
+      }
+    }
+    return null;
+  }//uniform
+
+}//class MappedProcessImageTest
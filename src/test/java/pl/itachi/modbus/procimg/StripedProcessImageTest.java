@@ -0,0 +1,214 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.procimg;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import pl.itachi.modbus.Modbus;
+import pl.itachi.modbus.io.DirectResponseEncoder;
+import pl.itachi.modbus.msg.ModbusRequest;
+import pl.itachi.modbus.msg.ReadCoilsRequest;
+import pl.itachi.modbus.msg.ReadMultipleRegistersRequest;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests the consistency of range reads of a
+ * <tt>StripedProcessImage</tt> under concurrent range writes.
+ * <p>
+ * Writers always set a whole table to one value, so any range
+ * read holding two different values has been torn. Small stripes
+ * make every range span many of them.
+ */
+public class StripedProcessImageTest {
+
+  private static final int SIZE = 256;
+  private static final int STRIPE = 4;
+  private static final int WRITERS = 3;
+  private static final int READERS = 2;
+  private static final long DURATION = 500;
+
+  @Test
+  public void registerRangesAreNeverTorn() throws Exception {
+    final StripedProcessImage image = new StripedProcessImage(0, 0, 0, SIZE, STRIPE);
+    run(new Workload() {
+      public void write(int seq, short[] values, byte[] bits) {
+        Arrays.fill(values, (short) seq);
+        image.setRegisterValues(0, SIZE, values, 0);
+      }
+
+      public String read(int ref, int count, byte[] dest) {
+        image.getRegisterBytes(ref, count, dest, 0);
+        return uniform(dest, count * 2);
+      }
+    });
+  }//registerRangesAreNeverTorn
+
+  @Test
+  public void bitRangesAreNeverTorn() throws Exception {
+    final StripedProcessImage image = new StripedProcessImage(SIZE * 8, 0, 0, 0, STRIPE);
+    run(new Workload() {
+      public void write(int seq, short[] values, byte[] bits) {
+        Arrays.fill(bits, (byte) (((seq & 1) == 0) ? 0 : 0xff));
+        image.setDigitalOutBits(0, SIZE * 8, bits, 0);
+      }
+
+      public String read(int ref, int count, byte[] dest) {
+        //whole bytes only, so that every byte is full
+        image.getDigitalOutBits(ref * 8, count * 8, dest, 0);
+        return uniform(dest, count);
+      }
+    });
+  }//bitRangesAreNeverTorn
+
+  /**
+   * Reads through the direct encoder of the non-blocking listener,
+   * which has to use the range transfers of the image, both in
+   * place and staged.
+   */
+  @Test
+  public void directlyEncodedResponsesAreNeverTorn() throws Exception {
+    final StripedProcessImage image = new StripedProcessImage(SIZE * 8, 0, 0, SIZE, STRIPE);
+    run(new Workload() {
+      public void write(int seq, short[] values, byte[] bits) {
+        Arrays.fill(values, (short) seq);
+        image.setRegisterValues(0, SIZE, values, 0);
+        Arrays.fill(bits, (byte) (((seq & 1) == 0) ? 0 : 0xff));
+        image.setDigitalOutBits(0, SIZE * 8, bits, 0);
+      }
+
+      public String read(int ref, int count, byte[] dest) {
+        count = Math.min(count, Modbus.MAX_READ_REGISTERS);
+        ByteBuffer out = ((ref & 1) == 0)
+            ? ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH + 6)
+            : ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + 6);
+        String torn = encode(new ReadMultipleRegistersRequest(ref, count), out, dest, count * 2);
+        if (torn != null) {
+          return "FC 3 " + torn;
+        }
+        out.clear();
+        torn = encode(new ReadCoilsRequest(ref * 8, count * 8), out, dest, count);
+        return (torn == null) ? null : "FC 1 " + torn;
+      }
+
+      private String encode(ModbusRequest request, ByteBuffer out, byte[] dest, int length) {
+        assertTrue(DirectResponseEncoder.encode(request, image, out, new byte[Modbus.MAX_MESSAGE_LENGTH]));
+        out.flip();
+        //skip the MBAP header, function code and byte count
+        out.position(9);
+        out.get(dest, 0, length);
+        return uniform(dest, length);
+      }
+    });
+  }//directlyEncodedResponsesAreNeverTorn
+
+  private static void run(final Workload workload) throws Exception {
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    final AtomicLong reads = new AtomicLong();
+    final long end = System.currentTimeMillis() + DURATION;
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int w = 0; w < WRITERS; w++) {
+      final int id = w;
+      threads.add(new Thread() {
+        public void run() {
+          short[] values = new short[SIZE];
+          byte[] bits = new byte[SIZE];
+          for (int seq = id; System.currentTimeMillis() < end && failure.get() == null;
+               seq += WRITERS) {
+            workload.write(seq, values, bits);
+          }
+        }
+      });
+    }
+    for (int r = 0; r < READERS; r++) {
+      final long seed = r;
+      threads.add(new Thread() {
+        public void run() {
+          Random rnd = new Random(seed);
+          byte[] dest = new byte[SIZE * 2];
+          while (System.currentTimeMillis() < end && failure.get() == null) {
+            int ref = rnd.nextInt(SIZE - 2);
+            int count = 2 + rnd.nextInt(SIZE - ref - 1);
+            String torn = workload.read(ref, count, dest);
+            if (torn != null) {
+              failure.compareAndSet(null, "read " + ref + "+" + count + ": " + torn);
+            }
+            reads.incrementAndGet();
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get(), failure.get());
+    assertTrue("no reads", reads.get() > 0);
+  }//run
+
+  /**
+   * Tests that the registers repeat the same two bytes, the
+   * bits the same byte.
+   */
+  private static String uniform(byte[] data, int length) {
+    for (int i = 2; i < length; i++) {
+      if (data[i] != data[i - 2]) {
+        return "byte " + i + " differs";
+      }
+    }
+    return null;
+  }//uniform
+
+  /**
+   * A writer and reader pair; every thread passes its own buffers.
+   */
+  private interface Workload {
+
+    void write(int seq, short[] values, byte[] bits);
+
+    String read(int ref, int count, byte[] dest);
+
+  }//interface Workload
+
+}//class StripedProcessImageTest
@@ -0,0 +1,204 @@
+//License
+/***
+ * Java Modbus Library (jamod)
+ * Copyright (c) 2002-2004, jamod development team
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the author nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS ``AS
+ * IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ***/
+package pl.itachi.modbus.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the word and byte orders of <tt>RegisterCodec</tt>, on raw
+ * register data and on register values, at odd register indices.
+ */
+public class RegisterCodecTest {
+
+  private static final RegisterCodec[] PROFILES = {
+      RegisterCodec.ABCD, RegisterCodec.CDAB, RegisterCodec.BADC, RegisterCodec.DCBA
+  };
+
+  @Test
+  public void intLayoutOfEveryProfile() {
+    assertInt(RegisterCodec.ABCD, 0x11, 0x22, 0x33, 0x44);
+    assertInt(RegisterCodec.CDAB, 0x33, 0x44, 0x11, 0x22);
+    assertInt(RegisterCodec.BADC, 0x22, 0x11, 0x44, 0x33);
+    assertInt(RegisterCodec.DCBA, 0x44, 0x33, 0x22, 0x11);
+  }//intLayoutOfEveryProfile
+
+  @Test
+  public void longLayoutOfEveryProfile() {
+    assertLong(RegisterCodec.ABCD, 1, 2, 3, 4, 5, 6, 7, 8);
+    assertLong(RegisterCodec.CDAB, 7, 8, 5, 6, 3, 4, 1, 2);
+    assertLong(RegisterCodec.BADC, 2, 1, 4, 3, 6, 5, 8, 7);
+    assertLong(RegisterCodec.DCBA, 8, 7, 6, 5, 4, 3, 2, 1);
+  }//longLayoutOfEveryProfile
+
+  /**
+   * Writes and reads random values at odd indices of both buffer
+   * kinds, and compares the raw data with the register values.
+   */
+  @Test
+  public void valuesRoundTripInEveryProfile() {
+    Random rnd = new Random(7);
+    for (RegisterCodec codec : PROFILES) {
+      String name = codec.getName();
+      for (int n = 0; n < 1000; n++) {
+        byte[] data = new byte[20];
+        int[] words = new int[10];
+        int i = rnd.nextInt();
+        float f = Float.intBitsToFloat(rnd.nextInt());
+        long l = rnd.nextLong();
+        double d = Double.longBitsToDouble(rnd.nextLong());
+
+        codec.putInt(data, 1, i);
+        codec.putInt(words, 1, i);
+        assertEquals(name, i, codec.getInt(data, 1));
+        assertEquals(name, i, codec.getInt(words, 1));
+        assertEquals(name, i & 0xffffffffL, codec.getUnsignedInt(data, 1));
+        assertEquals(name, i & 0xffffffffL, codec.getUnsignedInt(words, 1));
+        assertSameRegisters(name, data, words);
+
+        //NaN payloads are written canonical, as by ModbusUtil
+        codec.putFloat(data, 3, f);
+        codec.putFloat(words, 3, f);
+        assertEquals(name, Float.floatToIntBits(f), Float.floatToIntBits(codec.getFloat(data, 3)));
+        assertEquals(name, Float.floatToIntBits(f), Float.floatToIntBits(codec.getFloat(words, 3)));
+        assertSameRegisters(name, data, words);
+
+        codec.putLong(data, 5, l);
+        codec.putLong(words, 5, l);
+        assertEquals(name, l, codec.getLong(data, 5));
+        assertEquals(name, l, codec.getLong(words, 5));
+        assertSameRegisters(name, data, words);
+
+        codec.putDouble(data, 5, d);
+        codec.putDouble(words, 5, d);
+        assertEquals(name, Double.doubleToLongBits(d), Double.doubleToLongBits(codec.getDouble(data, 5)));
+        assertEquals(name, Double.doubleToLongBits(d), Double.doubleToLongBits(codec.getDouble(words, 5)));
+        assertSameRegisters(name, data, words);
+        //the neighbours are untouched
+        assertEquals(name, 0, data[0]);
+        assertEquals(name, 0, data[1]);
+        assertEquals(name, 0, words[9]);
+      }
+    }
+  }//valuesRoundTripInEveryProfile
+
+  /**
+   * The Modbus order has to match the conversions of
+   * <tt>ModbusUtil</tt>, in both directions.
+   */
+  @Test
+  public void abcdMatchesModbusUtil() {
+    Random rnd = new Random(11);
+    RegisterCodec codec = RegisterCodec.ABCD;
+    for (int n = 0; n < 1000; n++) {
+      byte[] data = new byte[14];
+      int i = rnd.nextInt();
+      float f = Float.intBitsToFloat(rnd.nextInt());
+      long l = rnd.nextLong();
+
+      System.arraycopy(ModbusUtil.intToRegisters(i), 0, data, 2, 4);
+      assertEquals(i, codec.getInt(data, 1));
+      codec.putInt(data, 3, i);
+      assertEquals(i, ModbusUtil.registersToInt(slice(data, 3, 4)));
+
+      System.arraycopy(ModbusUtil.floatToRegisters(f), 0, data, 2, 4);
+      assertEquals(Float.floatToIntBits(f), Float.floatToIntBits(codec.getFloat(data, 1)));
+      codec.putFloat(data, 3, f);
+      assertEquals(Float.floatToIntBits(f),
+          Float.floatToIntBits(ModbusUtil.registersToFloat(slice(data, 3, 4))));
+
+      System.arraycopy(ModbusUtil.longToRegisters(l), 0, data, 2, 8);
+      assertEquals(l, codec.getLong(data, 1));
+      codec.putLong(data, 3, l);
+      assertEquals(l, ModbusUtil.registersToLong(slice(data, 3, 8)));
+    }
+  }//abcdMatchesModbusUtil
+
+  @Test
+  public void forNameIgnoresCase() {
+    for (RegisterCodec codec : PROFILES) {
+      assertSame(codec, RegisterCodec.forName(codec.getName().toLowerCase()));
+    }
+  }//forNameIgnoresCase
+
+  private static void assertInt(RegisterCodec codec, int... bytes) {
+    byte[] data = new byte[6];
+    codec.putInt(data, 1, 0x11223344);
+    assertArrayEquals(codec.getName(), expected(6, bytes), data);
+    int[] words = new int[3];
+    codec.putInt(words, 1, 0x11223344);
+    assertSameRegisters(codec.getName(), data, words);
+    assertEquals(codec.getName(), 0x11223344, codec.getInt(data, 1));
+  }//assertInt
+
+  private static void assertLong(RegisterCodec codec, int... bytes) {
+    byte[] data = new byte[10];
+    codec.putLong(data, 1, 0x0102030405060708L);
+    assertArrayEquals(codec.getName(), expected(10, bytes), data);
+    int[] words = new int[5];
+    codec.putLong(words, 1, 0x0102030405060708L);
+    assertSameRegisters(codec.getName(), data, words);
+    assertEquals(codec.getName(), 0x0102030405060708L, codec.getLong(data, 1));
+  }//assertLong
+
+  /**
+   * Returns the given bytes after an empty first register.
+   */
+  private static byte[] expected(int length, int... bytes) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < bytes.length; i++) {
+      data[2 + i] = (byte) bytes[i];
+    }
+    return data;
+  }//expected
+
+  private static byte[] slice(byte[] data, int index, int length) {
+    byte[] b = new byte[length];
+    System.arraycopy(data, index * 2, b, 0, length);
+    return b;
+  }//slice
+
+  private static void assertSameRegisters(String msg, byte[] data, int[] words) {
+    for (int i = 0; i < words.length; i++) {
+      assertEquals(msg + " register " + i,
+          ((data[i * 2] & 0xff) << 8) | (data[i * 2 + 1] & 0xff), words[i]);
+    }
+  }//assertSameRegisters
+
+}//class RegisterCodecTest